@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.graphics;
+
+import com.google.vr.sdk.samples.benchmarks.GlRecorder;
+
+/**
+ * JVM stand-in for SurfaceTexture. There is no producer, so frames only become available when
+ * {@link android.view.Surface#postFrame()} is called, e.g., by a replay that simulates a decoder.
+ */
+public class SurfaceTexture {
+  /** Mirrors SurfaceTexture.OnFrameAvailableListener. */
+  public interface OnFrameAvailableListener {
+    void onFrameAvailable(SurfaceTexture surfaceTexture);
+  }
+
+  private OnFrameAvailableListener listener;
+
+  public SurfaceTexture(int texName) {}
+
+  public void setOnFrameAvailableListener(OnFrameAvailableListener listener) {
+    this.listener = listener;
+  }
+
+  public void setDefaultBufferSize(int width, int height) {}
+
+  /** Counted as a GL call since it binds the latest frame to the texture on the GL thread. */
+  public void updateTexImage() {
+    GlRecorder.recordCall();
+  }
+
+  public void release() {}
+
+  /** Not part of the Android API. Called by the Surface stand-in when a frame is posted. */
+  public void onFramePosted() {
+    if (listener != null) {
+      listener.onFrameAvailable(this);
+    }
+  }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.opengl;
+
+import com.google.vr.sdk.samples.benchmarks.GlRecorder;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * JVM stand-in for the GLES20 calls made by the samples. There is no GL context, so each call is
+ * counted by {@link GlRecorder} and queries report success, e.g., every shader compiles. Object
+ * names are unique but never reused.
+ */
+public class GLES20 {
+  public static final int GL_NO_ERROR = 0;
+  public static final int GL_TRUE = 1;
+  public static final int GL_LINES = 0x0001;
+  public static final int GL_TRIANGLES = 0x0004;
+  public static final int GL_TRIANGLE_STRIP = 0x0005;
+  public static final int GL_DEPTH_BUFFER_BIT = 0x0100;
+  public static final int GL_SRC_ALPHA = 0x0302;
+  public static final int GL_ONE_MINUS_SRC_ALPHA = 0x0303;
+  public static final int GL_BLEND = 0x0BE2;
+  public static final int GL_DEPTH_TEST = 0x0B71;
+  public static final int GL_MAX_TEXTURE_SIZE = 0x0D33;
+  public static final int GL_TEXTURE_2D = 0x0DE1;
+  public static final int GL_UNSIGNED_BYTE = 0x1401;
+  public static final int GL_UNSIGNED_SHORT = 0x1403;
+  public static final int GL_UNSIGNED_INT = 0x1405;
+  public static final int GL_FLOAT = 0x1406;
+  public static final int GL_RGBA = 0x1908;
+  public static final int GL_VERSION = 0x1F02;
+  public static final int GL_EXTENSIONS = 0x1F03;
+  public static final int GL_NEAREST = 0x2600;
+  public static final int GL_LINEAR = 0x2601;
+  public static final int GL_LINEAR_MIPMAP_LINEAR = 0x2703;
+  public static final int GL_TEXTURE_MAG_FILTER = 0x2800;
+  public static final int GL_TEXTURE_MIN_FILTER = 0x2801;
+  public static final int GL_TEXTURE_WRAP_S = 0x2802;
+  public static final int GL_TEXTURE_WRAP_T = 0x2803;
+  public static final int GL_REPEAT = 0x2901;
+  public static final int GL_COLOR_BUFFER_BIT = 0x4000;
+  public static final int GL_CLAMP_TO_EDGE = 0x812F;
+  public static final int GL_TEXTURE0 = 0x84C0;
+  public static final int GL_TEXTURE1 = 0x84C1;
+  public static final int GL_ARRAY_BUFFER = 0x8892;
+  public static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+  public static final int GL_STATIC_DRAW = 0x88E4;
+  public static final int GL_FRAGMENT_SHADER = 0x8B30;
+  public static final int GL_VERTEX_SHADER = 0x8B31;
+  public static final int GL_COMPILE_STATUS = 0x8B81;
+  public static final int GL_LINK_STATUS = 0x8B82;
+
+  // Reported by glGetIntegerv(GL_MAX_TEXTURE_SIZE). Every headset supports at least this.
+  private static final int MAX_TEXTURE_SIZE = 4096;
+
+  // Objects.
+
+  public static int glCreateShader(int type) {
+    GlRecorder.recordCall();
+    return GlRecorder.newName();
+  }
+
+  public static void glShaderSource(int shader, String string) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glCompileShader(int shader) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    GlRecorder.recordCall();
+    params[offset] = GL_TRUE;
+  }
+
+  public static String glGetShaderInfoLog(int shader) {
+    GlRecorder.recordCall();
+    return "";
+  }
+
+  public static void glDeleteShader(int shader) {
+    GlRecorder.recordCall();
+  }
+
+  public static int glCreateProgram() {
+    GlRecorder.recordCall();
+    return GlRecorder.newName();
+  }
+
+  public static void glAttachShader(int program, int shader) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glLinkProgram(int program) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    GlRecorder.recordCall();
+    params[offset] = GL_TRUE;
+  }
+
+  public static String glGetProgramInfoLog(int program) {
+    GlRecorder.recordCall();
+    return "";
+  }
+
+  public static void glDeleteProgram(int program) {
+    GlRecorder.recordCall();
+  }
+
+  public static int glGetAttribLocation(int program, String name) {
+    GlRecorder.recordLocationLookup();
+    return GlRecorder.newAttribLocation();
+  }
+
+  public static int glGetUniformLocation(int program, String name) {
+    GlRecorder.recordLocationLookup();
+    return GlRecorder.newName();
+  }
+
+  public static void glGenBuffers(int n, int[] buffers, int offset) {
+    GlRecorder.recordCall();
+    for (int i = 0; i < n; ++i) {
+      buffers[offset + i] = GlRecorder.newName();
+    }
+  }
+
+  public static void glDeleteBuffers(int n, int[] buffers, int offset) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glGenTextures(int n, int[] textures, int offset) {
+    GlRecorder.recordCall();
+    for (int i = 0; i < n; ++i) {
+      textures[offset + i] = GlRecorder.newName();
+    }
+  }
+
+  public static void glGenTextures(int n, IntBuffer textures) {
+    GlRecorder.recordCall();
+    for (int i = 0; i < n; ++i) {
+      textures.put(textures.position() + i, GlRecorder.newName());
+    }
+  }
+
+  public static void glDeleteTextures(int n, int[] textures, int offset) {
+    GlRecorder.recordCall();
+  }
+
+  // State.
+
+  public static int glGetError() {
+    // Not recorded since it's only used to check the other calls.
+    return GL_NO_ERROR;
+  }
+
+  public static void glGetIntegerv(int pname, int[] params, int offset) {
+    GlRecorder.recordCall();
+    params[offset] = (pname == GL_MAX_TEXTURE_SIZE) ? MAX_TEXTURE_SIZE : 0;
+  }
+
+  public static String glGetString(int name) {
+    GlRecorder.recordCall();
+    return (name == GL_VERSION) ? "OpenGL ES 2.0 JVM stand-in" : "";
+  }
+
+  public static void glEnable(int cap) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glDisable(int cap) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glBlendFunc(int sfactor, int dfactor) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glViewport(int x, int y, int width, int height) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glLineWidth(float width) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glClearColor(float red, float green, float blue, float alpha) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glClear(int mask) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glUseProgram(int program) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glActiveTexture(int texture) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glBindTexture(int target, int texture) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glTexParameteri(int target, int pname, int param) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glTexParameterf(int target, int pname, float param) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glBindBuffer(int target, int buffer) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glEnableVertexAttribArray(int index) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glDisableVertexAttribArray(int index) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer pointer) {
+    GlRecorder.recordCall();
+  }
+
+  // Uniforms.
+
+  public static void glUniform1i(int location, int x) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glUniform1f(int location, float x) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glUniform2f(int location, float x, float y) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glUniform3f(int location, float x, float y, float z) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glUniform3fv(int location, int count, float[] v, int offset) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glUniform4f(int location, float x, float y, float z, float w) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glUniformMatrix4fv(
+      int location, int count, boolean transpose, FloatBuffer value) {
+    GlRecorder.recordCall();
+  }
+
+  // Uploads & draws.
+
+  public static void glBufferData(int target, int size, Buffer data, int usage) {
+    GlRecorder.recordUpload(size);
+  }
+
+  /** Assumes RGBA bytes, which are the only pixels the samples upload. */
+  public static void glTexImage2D(int target, int level, int internalformat, int width,
+      int height, int border, int format, int type, Buffer pixels) {
+    GlRecorder.recordUpload(pixels == null ? 0 : 4L * width * height);
+  }
+
+  /** Assumes RGBA bytes, which are the only pixels the samples upload. */
+  public static void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width,
+      int height, int format, int type, Buffer pixels) {
+    GlRecorder.recordUpload(4L * width * height);
+  }
+
+  public static void glGenerateMipmap(int target) {
+    GlRecorder.recordCall();
+  }
+
+  public static void glDrawArrays(int mode, int first, int count) {
+    GlRecorder.recordDraw();
+  }
+
+  public static void glDrawElements(int mode, int count, int type, int offset) {
+    GlRecorder.recordDraw();
+  }
+
+  public static void glDrawElements(int mode, int count, int type, Buffer indices) {
+    GlRecorder.recordDraw();
+  }
+}
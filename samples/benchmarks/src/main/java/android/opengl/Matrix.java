@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.opengl;
+
+/**
+ * JVM stand-in for the android.opengl.Matrix methods used by the samples. Android implements
+ * multiplyMM & multiplyMV natively, so these are plain Java loops over the same column-major
+ * layout. Benchmarks comparing against this measure the JIT-compiled Java rather than Android's
+ * native code.
+ */
+public class Matrix {
+  private static final float[] temp = new float[32];
+
+  /** Computes {@code result = lhs * rhs}. The result must not overlap either input. */
+  public static void multiplyMM(
+      float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    for (int column = 0; column < 4; ++column) {
+      float x = rhs[rhsOffset + 4 * column];
+      float y = rhs[rhsOffset + 4 * column + 1];
+      float z = rhs[rhsOffset + 4 * column + 2];
+      float w = rhs[rhsOffset + 4 * column + 3];
+      for (int row = 0; row < 4; ++row) {
+        result[resultOffset + 4 * column + row] = lhs[lhsOffset + row] * x
+            + lhs[lhsOffset + 4 + row] * y
+            + lhs[lhsOffset + 8 + row] * z
+            + lhs[lhsOffset + 12 + row] * w;
+      }
+    }
+  }
+
+  /** Computes {@code resultVec = lhsMat * rhsVec}. The result must not overlap either input. */
+  public static void multiplyMV(float[] resultVec, int resultVecOffset, float[] lhsMat,
+      int lhsMatOffset, float[] rhsVec, int rhsVecOffset) {
+    float x = rhsVec[rhsVecOffset];
+    float y = rhsVec[rhsVecOffset + 1];
+    float z = rhsVec[rhsVecOffset + 2];
+    float w = rhsVec[rhsVecOffset + 3];
+    for (int row = 0; row < 4; ++row) {
+      resultVec[resultVecOffset + row] = lhsMat[lhsMatOffset + row] * x
+          + lhsMat[lhsMatOffset + 4 + row] * y
+          + lhsMat[lhsMatOffset + 8 + row] * z
+          + lhsMat[lhsMatOffset + 12 + row] * w;
+    }
+  }
+
+  public static void setIdentityM(float[] sm, int smOffset) {
+    for (int i = 0; i < 16; ++i) {
+      sm[smOffset + i] = (i % 5 == 0) ? 1 : 0;
+    }
+  }
+
+  public static void frustumM(float[] m, int offset, float left, float right, float bottom,
+      float top, float near, float far) {
+    if (left == right || top == bottom || near == far || near <= 0 || far <= 0) {
+      throw new IllegalArgumentException("Invalid frustum");
+    }
+    float rWidth = 1 / (right - left);
+    float rHeight = 1 / (top - bottom);
+    float rDepth = 1 / (near - far);
+    for (int i = 0; i < 16; ++i) {
+      m[offset + i] = 0;
+    }
+    m[offset] = 2 * near * rWidth;
+    m[offset + 5] = 2 * near * rHeight;
+    m[offset + 8] = (right + left) * rWidth;
+    m[offset + 9] = (top + bottom) * rHeight;
+    m[offset + 10] = (far + near) * rDepth;
+    m[offset + 11] = -1;
+    m[offset + 14] = 2 * far * near * rDepth;
+  }
+
+  /** @param fovy Vertical field of view in degrees. */
+  public static void perspectiveM(
+      float[] m, int offset, float fovy, float aspect, float zNear, float zFar) {
+    float f = 1 / (float) Math.tan(fovy * (Math.PI / 360));
+    float rangeReciprocal = 1 / (zNear - zFar);
+    for (int i = 0; i < 16; ++i) {
+      m[offset + i] = 0;
+    }
+    m[offset] = f / aspect;
+    m[offset + 5] = f;
+    m[offset + 10] = (zFar + zNear) * rangeReciprocal;
+    m[offset + 11] = -1;
+    m[offset + 14] = 2 * zFar * zNear * rangeReciprocal;
+  }
+
+  public static float length(float x, float y, float z) {
+    return (float) Math.sqrt(x * x + y * y + z * z);
+  }
+
+  /** @param a Angle in degrees around the axis {@code (x, y, z)}, which needn't be normalized. */
+  public static void setRotateM(float[] rm, int rmOffset, float a, float x, float y, float z) {
+    float radians = (float) Math.toRadians(a);
+    float s = (float) Math.sin(radians);
+    float c = (float) Math.cos(radians);
+    float length = length(x, y, z);
+    if (length != 1) {
+      float recipLength = 1 / length;
+      x *= recipLength;
+      y *= recipLength;
+      z *= recipLength;
+    }
+    float nc = 1 - c;
+    rm[rmOffset] = x * x * nc + c;
+    rm[rmOffset + 1] = y * x * nc + z * s;
+    rm[rmOffset + 2] = x * z * nc - y * s;
+    rm[rmOffset + 3] = 0;
+    rm[rmOffset + 4] = x * y * nc - z * s;
+    rm[rmOffset + 5] = y * y * nc + c;
+    rm[rmOffset + 6] = y * z * nc + x * s;
+    rm[rmOffset + 7] = 0;
+    rm[rmOffset + 8] = x * z * nc + y * s;
+    rm[rmOffset + 9] = y * z * nc - x * s;
+    rm[rmOffset + 10] = z * z * nc + c;
+    rm[rmOffset + 11] = 0;
+    rm[rmOffset + 12] = 0;
+    rm[rmOffset + 13] = 0;
+    rm[rmOffset + 14] = 0;
+    rm[rmOffset + 15] = 1;
+  }
+
+  /** Computes {@code rm = m * rotation}. */
+  public static void rotateM(float[] rm, int rmOffset, float[] m, int mOffset, float a, float x,
+      float y, float z) {
+    synchronized (temp) {
+      setRotateM(temp, 0, a, x, y, z);
+      multiplyMM(rm, rmOffset, m, mOffset, temp, 0);
+    }
+  }
+
+  /** Computes {@code m = m * rotation}. */
+  public static void rotateM(float[] m, int mOffset, float a, float x, float y, float z) {
+    synchronized (temp) {
+      setRotateM(temp, 0, a, x, y, z);
+      multiplyMM(temp, 16, m, mOffset, temp, 0);
+      System.arraycopy(temp, 16, m, mOffset, 16);
+    }
+  }
+
+  /** Computes {@code m = m * scale}. */
+  public static void scaleM(float[] m, int mOffset, float x, float y, float z) {
+    for (int i = 0; i < 4; ++i) {
+      m[mOffset + i] *= x;
+      m[mOffset + 4 + i] *= y;
+      m[mOffset + 8 + i] *= z;
+    }
+  }
+
+  /** Computes {@code m = m * translation}. */
+  public static void translateM(float[] m, int mOffset, float x, float y, float z) {
+    for (int i = 0; i < 4; ++i) {
+      m[mOffset + 12 + i] +=
+          m[mOffset + i] * x + m[mOffset + 4 + i] * y + m[mOffset + 8 + i] * z;
+    }
+  }
+
+  public static void setLookAtM(float[] rm, int rmOffset, float eyeX, float eyeY, float eyeZ,
+      float centerX, float centerY, float centerZ, float upX, float upY, float upZ) {
+    float fx = centerX - eyeX;
+    float fy = centerY - eyeY;
+    float fz = centerZ - eyeZ;
+    float rlf = 1 / length(fx, fy, fz);
+    fx *= rlf;
+    fy *= rlf;
+    fz *= rlf;
+
+    // s = f x up, normalized.
+    float sx = fy * upZ - fz * upY;
+    float sy = fz * upX - fx * upZ;
+    float sz = fx * upY - fy * upX;
+    float rls = 1 / length(sx, sy, sz);
+    sx *= rls;
+    sy *= rls;
+    sz *= rls;
+
+    // u = s x f.
+    float ux = sy * fz - sz * fy;
+    float uy = sz * fx - sx * fz;
+    float uz = sx * fy - sy * fx;
+
+    rm[rmOffset] = sx;
+    rm[rmOffset + 1] = ux;
+    rm[rmOffset + 2] = -fx;
+    rm[rmOffset + 3] = 0;
+    rm[rmOffset + 4] = sy;
+    rm[rmOffset + 5] = uy;
+    rm[rmOffset + 6] = -fy;
+    rm[rmOffset + 7] = 0;
+    rm[rmOffset + 8] = sz;
+    rm[rmOffset + 9] = uz;
+    rm[rmOffset + 10] = -fz;
+    rm[rmOffset + 11] = 0;
+    rm[rmOffset + 12] = 0;
+    rm[rmOffset + 13] = 0;
+    rm[rmOffset + 14] = 0;
+    rm[rmOffset + 15] = 1;
+    translateM(rm, rmOffset, -eyeX, -eyeY, -eyeZ);
+  }
+}
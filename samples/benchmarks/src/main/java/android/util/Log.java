@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+/**
+ * JVM stand-in for android.util.Log. Warnings & errors go to stderr. Other messages are dropped so
+ * they don't disturb benchmark output.
+ */
+public final class Log {
+  public static final int VERBOSE = 2;
+  public static final int DEBUG = 3;
+  public static final int INFO = 4;
+  public static final int WARN = 5;
+  public static final int ERROR = 6;
+
+  private Log() {}
+
+  public static boolean isLoggable(String tag, int level) {
+    return false;
+  }
+
+  public static int v(String tag, String msg) {
+    return 0;
+  }
+
+  public static int d(String tag, String msg) {
+    return 0;
+  }
+
+  public static int i(String tag, String msg) {
+    return 0;
+  }
+
+  public static int w(String tag, String msg) {
+    return e(tag, msg);
+  }
+
+  public static int w(String tag, String msg, Throwable tr) {
+    return e(tag, msg, tr);
+  }
+
+  public static int e(String tag, String msg) {
+    System.err.println(tag + ": " + msg);
+    return 0;
+  }
+
+  public static int e(String tag, String msg, Throwable tr) {
+    e(tag, msg);
+    tr.printStackTrace();
+    return 0;
+  }
+}
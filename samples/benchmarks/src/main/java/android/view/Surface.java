@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+
+/** JVM stand-in for a Surface that feeds a {@link SurfaceTexture}. */
+public class Surface {
+  private final SurfaceTexture surfaceTexture;
+
+  public Surface(SurfaceTexture surfaceTexture) {
+    this.surfaceTexture = surfaceTexture;
+  }
+
+  /** There is nothing to draw into, so this always returns null. */
+  public Canvas lockCanvas(Rect inOutDirty) {
+    return null;
+  }
+
+  public void unlockCanvasAndPost(Canvas canvas) {
+    postFrame();
+  }
+
+  /**
+   * Not part of the Android API. Simulates a producer, e.g., a video decoder, queueing a frame.
+   * This notifies the SurfaceTexture's listener.
+   */
+  public void postFrame() {
+    surfaceTexture.onFramePosted();
+  }
+
+  public void release() {}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.benchmarks;
+
+import android.opengl.Matrix;
+
+/**
+ * A fixed stereo rig for the replay targets, standing in for the per-eye matrices that the GVR SDK
+ * reports on a device.
+ */
+public final class Eyes {
+  // Half of a typical interpupillary distance in meters.
+  private static final float HALF_IPD = 0.032f;
+  private static final float FOV_Y_DEGREES = 90;
+
+  private Eyes() {}
+
+  /** Writes the transform from head space to the given eye's space, 0 being the left eye. */
+  public static void getEyeFromHead(int eye, float[] eyeFromHead) {
+    Matrix.setIdentityM(eyeFromHead, 0);
+    eyeFromHead[12] = eye == 0 ? HALF_IPD : -HALF_IPD;
+  }
+
+  /** Writes a square perspective projection between the given planes. */
+  public static void getPerspective(float near, float far, float[] perspective) {
+    Matrix.perspectiveM(perspective, 0, FOV_Y_DEGREES, 1, near, far);
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.benchmarks;
+
+import com.google.vr.sdk.samples.common.replay.RenderLoopReplay;
+
+/**
+ * Base class of the replay targets that draw through the GL stand-ins. It reports the counters of
+ * {@link GlRecorder}, which only grow, so the replay's per-frame deltas are the GL work of each
+ * frame.
+ */
+public abstract class GlCountingTarget implements RenderLoopReplay.Target {
+  private static final String[] COUNTER_NAMES = {
+      "glCalls", "drawCalls", "uploadedBytes", "locationLookups"};
+
+  @Override
+  public String[] getCounterNames() {
+    return COUNTER_NAMES.clone();
+  }
+
+  @Override
+  public long getCounter(int index) {
+    switch (index) {
+      case 0:
+        return GlRecorder.getCalls();
+      case 1:
+        return GlRecorder.getDrawCalls();
+      case 2:
+        return GlRecorder.getUploadedBytes();
+      case 3:
+        return GlRecorder.getLocationLookups();
+      default:
+        throw new IndexOutOfBoundsException("Counter " + index);
+    }
+  }
+
+  /** Releases the target's GL resources after the replay. */
+  public abstract void shutdown();
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.benchmarks;
+
+/**
+ * Counts the calls made to the GL stand-ins in the android.opengl package. GL is only used from
+ * one thread at a time, so this isn't synchronized.
+ */
+public final class GlRecorder {
+  // Attribute locations wrap around since GlStateCache tracks them in an int mask.
+  private static final int MAX_VERTEX_ATTRIBS = 16;
+
+  private static long calls;
+  private static long drawCalls;
+  private static long uploadedBytes;
+  private static long locationLookups;
+  private static int nextName = 1;
+  private static int nextAttribLocation;
+
+  private GlRecorder() {}
+
+  /** Called by the stand-ins for every GL call. */
+  public static void recordCall() {
+    ++calls;
+  }
+
+  /** Called by the stand-ins for glDraw* calls. */
+  public static void recordDraw() {
+    ++calls;
+    ++drawCalls;
+  }
+
+  /** Called by the stand-ins for calls that upload data to the GPU. */
+  public static void recordUpload(long bytes) {
+    ++calls;
+    uploadedBytes += bytes;
+  }
+
+  /** Called by the stand-ins for glGetAttribLocation & glGetUniformLocation. */
+  public static void recordLocationLookup() {
+    ++calls;
+    ++locationLookups;
+  }
+
+  /** Returns a new object name for glGen* & glCreate* calls. */
+  public static int newName() {
+    return nextName++;
+  }
+
+  /** Returns a vertex attribute location for glGetAttribLocation. */
+  public static int newAttribLocation() {
+    int location = nextAttribLocation;
+    nextAttribLocation = (nextAttribLocation + 1) % MAX_VERTEX_ATTRIBS;
+    return location;
+  }
+
+  /** Number of GL calls including draws & uploads. */
+  public static long getCalls() {
+    return calls;
+  }
+
+  public static long getDrawCalls() {
+    return drawCalls;
+  }
+
+  /** Bytes passed to glBufferData, glTexImage2D & glTexSubImage2D. */
+  public static long getUploadedBytes() {
+    return uploadedBytes;
+  }
+
+  /** Number of shader variable locations queried by name. */
+  public static long getLocationLookups() {
+    return locationLookups;
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.benchmarks;
+
+import com.google.vr.sdk.samples.common.math.Mat4;
+import com.google.vr.sdk.samples.common.math.Quat;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the matrix work in VideoSceneRenderer.updateHeadAndEyeMatrices: the per-eye
+ * eyeFromWorld products and the quaternion extracted for the audio engine. The GvrApi calls that
+ * supply the matrices aren't included.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeadPoseBenchmark {
+  private float[] headFromWorldTable;
+  private final float[] eyeFromHead = new float[16];
+  private final float[][] eyeFromWorld = new float[2][16];
+  private final float[] headOrientation = new float[4];
+  private int index;
+
+  @Setup
+  public void setUp() {
+    headFromWorldTable = Poses.randomRotations(2);
+    // A typical eye offset of half the IPD.
+    Mat4.setIdentity(eyeFromHead, 0);
+    eyeFromHead[12] = 0.032f;
+  }
+
+  @Benchmark
+  public float[] updateHeadAndEyeMatrices() {
+    index = (index + 1) & Poses.MASK;
+    int headFromWorld = 16 * index;
+    for (int eye = 0; eye < 2; ++eye) {
+      Mat4.multiply(eyeFromWorld[eye], 0, eyeFromHead, 0, headFromWorldTable, headFromWorld);
+    }
+    Quat.fromRotationMatrix(headFromWorldTable, headFromWorld, headOrientation, 0);
+    return headOrientation;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.benchmarks;
+
+import android.opengl.Matrix;
+import com.google.vr.sdk.samples.common.math.Mat4;
+import com.google.vr.sdk.samples.common.math.Quat;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares samples-common's Mat4 & Quat with the android.opengl.Matrix calls they replaced. The
+ * Matrix used here is the Java stand-in, so this measures the fused & single-sqrt algorithms
+ * rather than the JNI overhead that the native Matrix has on a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MathBenchmark {
+  private float[] rotations;
+  private final float[] projection = new float[16];
+  private final float[] view = new float[16];
+  private final float[] vector = {1, 2, 3, 1};
+  private final float[] temp = new float[16];
+  private final float[] result = new float[16];
+  private int index;
+
+  @Setup
+  public void setUp() {
+    rotations = Poses.randomRotations(6);
+    Matrix.perspectiveM(projection, 0, 90, 1, 0.1f, 100);
+    Matrix.setLookAtM(view, 0, 0, 0, 0.01f, 0, 0, 0, 0, 1, 0);
+  }
+
+  private int nextModel() {
+    index = (index + 1) & Poses.MASK;
+    return 16 * index;
+  }
+
+  @Benchmark
+  public float[] matrixMultiplyMM() {
+    Matrix.multiplyMM(result, 0, view, 0, rotations, nextModel());
+    return result;
+  }
+
+  @Benchmark
+  public float[] mat4Multiply() {
+    Mat4.multiply(result, 0, view, 0, rotations, nextModel());
+    return result;
+  }
+
+  /** projection * view * model through a temporary, as the samples did with Matrix. */
+  @Benchmark
+  public float[] matrixViewProjectionModel() {
+    Matrix.multiplyMM(temp, 0, view, 0, rotations, nextModel());
+    Matrix.multiplyMM(result, 0, projection, 0, temp, 0);
+    return result;
+  }
+
+  @Benchmark
+  public float[] mat4ViewProjectionModel() {
+    Mat4.multiply(result, 0, projection, 0, view, 0, rotations, nextModel());
+    return result;
+  }
+
+  @Benchmark
+  public float[] matrixMultiplyMV() {
+    Matrix.multiplyMV(result, 0, rotations, nextModel(), vector, 0);
+    return result;
+  }
+
+  @Benchmark
+  public float[] mat4MultiplyVector() {
+    Mat4.multiplyVector(result, 0, rotations, nextModel(), vector, 0);
+    return result;
+  }
+
+  /**
+   * The quaternion extraction VideoSceneRenderer.updateHeadAndEyeMatrices used before Quat: one
+   * double precision sqrt per component with the signs taken from the off-diagonal elements.
+   */
+  @Benchmark
+  public float[] fourSqrtQuaternion() {
+    int m = nextModel();
+    float sx = rotations[m];
+    float sy = rotations[m + 5];
+    float sz = rotations[m + 10];
+    float w = (float) Math.sqrt(Math.max(0.0f, 1.0 + sx + sy + sz)) * 0.5f;
+    float x = (float) Math.sqrt(Math.max(0.0f, 1.0 + sx - sy - sz)) * 0.5f;
+    float y = (float) Math.sqrt(Math.max(0.0f, 1.0 - sx + sy - sz)) * 0.5f;
+    float z = (float) Math.sqrt(Math.max(0.0f, 1.0 - sx - sy + sz)) * 0.5f;
+    result[0] = (rotations[m + 6] - rotations[m + 9] < 0) != (x < 0) ? -x : x;
+    result[1] = (rotations[m + 8] - rotations[m + 2] < 0) != (y < 0) ? -y : y;
+    result[2] = (rotations[m + 1] - rotations[m + 4] < 0) != (z < 0) ? -z : z;
+    result[3] = w;
+    return result;
+  }
+
+  @Benchmark
+  public float[] shepperdQuaternion() {
+    Quat.fromRotationMatrix(rotations, nextModel(), result, 0);
+    return result;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.benchmarks;
+
+import android.opengl.Matrix;
+import com.google.vr.sdk.controller.Orientation;
+import com.google.vr.sdk.samples.common.concurrent.MatrixExchange;
+import com.google.vr.sdk.samples.common.math.Mat4;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the matrix composition in controllerclient's OrientationRenderer.onDrawFrame,
+ * from reading the phone's orientation to the final MVP matrix. The GL calls aren't included.
+ * The body is a copy that must be kept in sync with the sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OrientationViewBenchmark {
+  // Matches OrientationRenderer.
+  private static final float VIEW_SIZE = 6;
+
+  private final MatrixExchange phoneInWorldSpaceExchange = new MatrixExchange();
+  private final Orientation[] controllerOrientations = new Orientation[Poses.COUNT];
+  private final float[] startFromSensor = {0.5f, 0, 0};
+  private final float[] projectionMatrix = new float[16];
+  private final float[] controllerInStartSpaceMatrix = new float[16];
+  private final float[] tmpMatrix1 = new float[16];
+  private final float[] tmpMatrix2 = new float[16];
+  private final float[] phoneInWorldSpaceMatrix = new float[16];
+  private final float[] mvpMatrix = new float[16];
+  private int index;
+
+  @Setup
+  public void setUp() {
+    float[] q = Poses.randomQuaternions(4);
+    for (int i = 0; i < Poses.COUNT; ++i) {
+      controllerOrientations[i] =
+          new Orientation(q[4 * i], q[4 * i + 1], q[4 * i + 2], q[4 * i + 3]);
+    }
+    phoneInWorldSpaceExchange.publish(Poses.randomRotations(5), 0);
+    Matrix.perspectiveM(projectionMatrix, 0, 90, 16 / 9f, 1, 2 * VIEW_SIZE);
+  }
+
+  @Benchmark
+  public float[] onDrawFrame() {
+    index = (index + 1) & Poses.MASK;
+
+    Matrix.setIdentityM(tmpMatrix1, 0);
+    phoneInWorldSpaceExchange.read(phoneInWorldSpaceMatrix, 0);
+    Matrix.translateM(tmpMatrix1, 0, 0, 0, -VIEW_SIZE);
+    Mat4.multiply(tmpMatrix2, 0, tmpMatrix1, 0, phoneInWorldSpaceMatrix, 0);
+    Matrix.rotateM(tmpMatrix2, 0, 90, 1, 0, 0);
+    Matrix.rotateM(tmpMatrix2, 0, -startFromSensor[0], 0, 1, 0);
+    controllerOrientations[index].toRotationMatrix(controllerInStartSpaceMatrix);
+    Mat4.multiply(
+        mvpMatrix, 0, projectionMatrix, 0, tmpMatrix2, 0, controllerInStartSpaceMatrix, 0);
+    return mvpMatrix;
+  }
+}
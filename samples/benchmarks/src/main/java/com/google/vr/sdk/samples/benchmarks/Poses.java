@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.benchmarks;
+
+import com.google.vr.sdk.samples.common.math.Quat;
+import java.util.Random;
+
+/**
+ * Deterministic inputs for the benchmarks. Each benchmark cycles through a small table of poses
+ * so that branches depending on the pose aren't perfectly predicted.
+ */
+public final class Poses {
+  /** Number of entries in each table. A power of two so that the index can be masked. */
+  public static final int COUNT = 256;
+  public static final int MASK = COUNT - 1;
+
+  private Poses() {}
+
+  /** Returns COUNT random unit quaternions in x, y, z, w order. */
+  public static float[] randomQuaternions(long seed) {
+    Random random = new Random(seed);
+    float[] q = new float[4 * COUNT];
+    for (int i = 0; i < COUNT; ++i) {
+      float x = (float) random.nextGaussian();
+      float y = (float) random.nextGaussian();
+      float z = (float) random.nextGaussian();
+      float w = (float) random.nextGaussian();
+      float norm = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+      q[4 * i] = x / norm;
+      q[4 * i + 1] = y / norm;
+      q[4 * i + 2] = z / norm;
+      q[4 * i + 3] = w / norm;
+    }
+    return q;
+  }
+
+  /** Returns COUNT random rotations of 16 floats each in the android.opengl.Matrix layout. */
+  public static float[] randomRotations(long seed) {
+    float[] q = randomQuaternions(seed);
+    float[] m = new float[16 * COUNT];
+    for (int i = 0; i < COUNT; ++i) {
+      Quat.toRotationMatrix(q, 4 * i, m, 16 * i);
+    }
+    return m;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.benchmarks;
+
+import com.google.vr.sdk.samples.common.replay.PoseTrace;
+import com.google.vr.sdk.samples.common.replay.RenderLoopReplay;
+import com.google.vr.sdk.samples.controllerclient.OrientationViewTarget;
+import com.google.vr.sdk.samples.treasurehunt.TreasureHuntTarget;
+import com.google.vr.sdk.samples.video360.rendering.SceneRendererTarget;
+import com.google.vr.sdk.samples.videoplayer.VideoSceneTarget;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Replays a {@link PoseTrace} through the render loops of video360, videoplayer, TreasureHunt &
+ * controllerclient and prints the per-frame GL calls, uploads & allocations of each, e.g.,
+ *   ./gradlew :samples-benchmarks:replay [-Ptrace=poses.trace]
+ *
+ * <p>Without an argument, the trace checked in at {@link #DEFAULT_TRACE} is used. Traces are
+ * recorded on a device by the videoplayer sample's record_pose_trace setting.
+ */
+public final class ReplayMain {
+  /** Classpath resource of the default trace. */
+  public static final String DEFAULT_TRACE = "/traces/look_around.trace";
+  // Enough frames for lazy initialization & the JIT to settle.
+  private static final int WARMUP_FRAMES = 120;
+
+  private ReplayMain() {}
+
+  public static void main(String[] args) throws IOException {
+    PoseTrace trace = readTrace(args.length > 0 ? args[0] : null);
+    System.out.println("Replaying " + trace.size() + " poses");
+    RenderLoopReplay.AllocationCounter allocationCounter = createAllocationCounter();
+    replay("video360", new SceneRendererTarget(), trace, allocationCounter);
+    replay("videoplayer", new VideoSceneTarget(), trace, allocationCounter);
+    replay("treasurehunt", new TreasureHuntTarget(), trace, allocationCounter);
+    replay("controllerclient", new OrientationViewTarget(), trace, allocationCounter);
+  }
+
+  private static PoseTrace readTrace(String path) throws IOException {
+    InputStream input = path != null
+        ? new FileInputStream(path)
+        : ReplayMain.class.getResourceAsStream(DEFAULT_TRACE);
+    if (input == null) {
+      throw new IOException("Missing " + DEFAULT_TRACE);
+    }
+    try {
+      return PoseTrace.read(new BufferedInputStream(input));
+    } finally {
+      input.close();
+    }
+  }
+
+  private static void replay(
+      String name,
+      GlCountingTarget target,
+      PoseTrace trace,
+      RenderLoopReplay.AllocationCounter allocationCounter) {
+    RenderLoopReplay replay = new RenderLoopReplay(trace, target);
+    replay.setWarmupFrames(WARMUP_FRAMES);
+    replay.setAllocationCounter(allocationCounter);
+    RenderLoopReplay.Result result = replay.run();
+    target.shutdown();
+    System.out.println(result.dump(new StringBuilder(name).append(": ")));
+  }
+
+  /** Returns a counter of the current thread's allocations, or null if the JVM can't count them. */
+  private static RenderLoopReplay.AllocationCounter createAllocationCounter() {
+    if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    if (!threads.isThreadAllocatedMemorySupported()) {
+      return null;
+    }
+    threads.setThreadAllocatedMemoryEnabled(true);
+    final long threadId = Thread.currentThread().getId();
+    return new RenderLoopReplay.AllocationCounter() {
+      @Override
+      public long getAllocatedBytes() {
+        return threads.getThreadAllocatedBytes(threadId);
+      }
+    };
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.controllerclient;
+
+import com.google.vr.sdk.samples.benchmarks.GlCountingTarget;
+import com.google.vr.sdk.samples.common.concurrent.MatrixExchange;
+
+/**
+ * Replays head poses through controllerclient's {@link OrientationRenderer} as the phone's
+ * orientation, which is what moves its camera. There is no controller, so the box keeps the
+ * orientation it has without one.
+ */
+public final class OrientationViewTarget extends GlCountingTarget {
+  // A phone held in landscape.
+  private static final int WIDTH = 1920;
+  private static final int HEIGHT = 1080;
+
+  private final MatrixExchange phoneInWorldSpaceExchange = new MatrixExchange();
+  private final OrientationRenderer renderer = new OrientationRenderer(phoneInWorldSpaceExchange);
+
+  public OrientationViewTarget() {
+    renderer.setStartFromSensorTransformation(new float[3]);
+    renderer.onSurfaceCreated(null, null);
+    renderer.onSurfaceChanged(null, WIDTH, HEIGHT);
+  }
+
+  @Override
+  public void drawFrame(long frameTimeNanos, float[] headFromWorld) {
+    phoneInWorldSpaceExchange.publish(headFromWorld, 0);
+    renderer.onDrawFrame(null);
+  }
+
+  @Override
+  public void shutdown() {}
+}
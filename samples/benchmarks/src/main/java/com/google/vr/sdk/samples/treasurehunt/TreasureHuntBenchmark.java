@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.treasurehunt;
+
+import com.google.vr.sdk.samples.benchmarks.Poses;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures TreasureHuntScene's per-frame onNewFrame & isLookingAtObject, and its hideObject, which
+ * runs each time the cube is found.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TreasureHuntBenchmark {
+  private float[] headViewTable;
+  private final TreasureHuntScene scene = new TreasureHuntScene();
+  private int index;
+
+  @Setup
+  public void setUp() {
+    headViewTable = Poses.randomRotations(3);
+    scene.updateModelPosition();
+  }
+
+  @Benchmark
+  public boolean isLookingAtObject() {
+    index = (index + 1) & Poses.MASK;
+    scene.onNewFrame(headViewTable, 16 * index);
+    return scene.isLookingAtObject();
+  }
+
+  @Benchmark
+  public float[] hideObject() {
+    scene.hideObject();
+    return scene.getModelPosition();
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.treasurehunt;
+
+import com.google.vr.sdk.samples.benchmarks.Eyes;
+import com.google.vr.sdk.samples.benchmarks.GlCountingTarget;
+import com.google.vr.sdk.samples.common.math.Mat4;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Replays head poses through {@link TreasureHuntScene} the way TreasureHuntActivity's
+ * GvrView.StereoRenderer drives it. The trigger is never pulled since hideObject moves the cube
+ * randomly, which would make runs differ.
+ */
+public final class TreasureHuntTarget extends GlCountingTarget {
+  // Match TreasureHuntActivity.
+  private static final float Z_NEAR = 0.1f;
+  private static final float Z_FAR = 100.0f;
+
+  private final TreasureHuntScene scene = new TreasureHuntScene();
+  private final float[] perspective = new float[16];
+  private final float[] eyeFromHead = new float[16];
+  // Eye.getEyeView() on a device, i.e., including the head pose.
+  private final float[] eyeView = new float[16];
+
+  public TreasureHuntTarget() throws IOException {
+    // The benchmarks module puts the sample's res/raw directory on the classpath.
+    scene.glInit(
+        readShader("light_vertex.shader"),
+        readShader("grid_fragment.shader"),
+        readShader("passthrough_fragment.shader"));
+    Eyes.getPerspective(Z_NEAR, Z_FAR, perspective);
+  }
+
+  private static String readShader(String name) throws IOException {
+    InputStream input = TreasureHuntTarget.class.getResourceAsStream("/" + name);
+    if (input == null) {
+      throw new IOException("Missing shader " + name);
+    }
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = input.read(buffer)) != -1) {
+        output.write(buffer, 0, count);
+      }
+      return output.toString("UTF-8");
+    } finally {
+      input.close();
+    }
+  }
+
+  @Override
+  public void drawFrame(long frameTimeNanos, float[] headFromWorld) {
+    scene.onNewFrame(headFromWorld, 0);
+    for (int eye = 0; eye < 2; ++eye) {
+      Eyes.getEyeFromHead(eye, eyeFromHead);
+      Mat4.multiply(eyeView, 0, eyeFromHead, 0, headFromWorld, 0);
+      scene.glDrawEye(eyeView, perspective);
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    scene.glShutdown();
+  }
+}
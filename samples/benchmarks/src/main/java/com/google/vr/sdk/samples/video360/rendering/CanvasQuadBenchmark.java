@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import com.google.vr.sdk.controller.Orientation;
+import com.google.vr.sdk.samples.benchmarks.Poses;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link CanvasQuad#translateClick}, which SceneRenderer runs for every controller event.
+ * The orientations are within a few degrees of the quad so that both the hit & miss paths run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CanvasQuadBenchmark {
+  private final Orientation[] orientations = new Orientation[Poses.COUNT];
+  private int index;
+
+  @Setup
+  public void setUp() {
+    float[] q = Poses.randomQuaternions(1);
+    for (int i = 0; i < Poses.COUNT; ++i) {
+      // Scale down the rotation's axis so that it stays near -Z where the quad is.
+      float scale = 0.3f;
+      float x = q[4 * i] * scale;
+      float y = q[4 * i + 1] * scale;
+      float z = q[4 * i + 2] * scale;
+      float w = (float) Math.sqrt(1 - x * x - y * y - z * z);
+      orientations[i] = new Orientation(x, y, z, w);
+    }
+  }
+
+  @Benchmark
+  public Object translateClick() {
+    index = (index + 1) & Poses.MASK;
+    return CanvasQuad.translateClick(orientations[index]);
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures sphere generation, which runs each time video360 opens media. 128x256 is the
+ * tessellation used for 8K content. createUvSphere is the original triangle strip generator.
+ * buildIndexedUvSphere is the table-driven generator behind createIndexedUvSphere, called directly
+ * so that its cache doesn't hide the cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MeshBenchmark {
+  private static final float RADIUS = 50;
+
+  /** Rows x columns. */
+  @Param({"50x100", "128x256"})
+  public String tessellation;
+
+  private int rows;
+  private int columns;
+
+  @Setup
+  public void setUp() {
+    int separator = tessellation.indexOf('x');
+    rows = Integer.parseInt(tessellation.substring(0, separator));
+    columns = Integer.parseInt(tessellation.substring(separator + 1));
+  }
+
+  @Benchmark
+  public Mesh createUvSphere() {
+    return Mesh.createUvSphere(RADIUS, rows, columns, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+  }
+
+  @Benchmark
+  public Object buildIndexedUvSphere() {
+    return Mesh.buildIndexedUvSphere(RADIUS, rows, columns, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import android.view.Surface;
+import com.google.vr.sdk.base.Eye;
+import com.google.vr.sdk.samples.benchmarks.Eyes;
+import com.google.vr.sdk.samples.benchmarks.GlCountingTarget;
+import com.google.vr.sdk.samples.common.math.Mat4;
+
+/**
+ * Replays head poses through video360's {@link SceneRenderer} in the configuration of
+ * VrVideoActivity playing a monoscopic 360 video: a new video frame every other render frame & a
+ * stereo draw per frame. The UI quad needs a View and isn't drawn.
+ *
+ * <p>The target can also draw each eye as a separate {@link SceneRenderer#glDrawFrame} call. This
+ * is the baseline that the two-eye frame API is compared against.
+ */
+public final class SceneRendererTarget extends GlCountingTarget {
+  // Match MediaLoader.
+  private static final float SPHERE_RADIUS_METERS = 50;
+  private static final float DISPLAY_PIXELS_PER_DEGREE = 15;
+  private static final int VIDEO_WIDTH = 3840;
+  private static final int VIDEO_HEIGHT = 1920;
+  private static final float Z_NEAR = 0.1f;
+  private static final float Z_FAR = 100;
+
+  private final SceneRenderer renderer = SceneRenderer.createFor2D();
+  private final boolean drawEachEyeAsFrame;
+  private final Surface videoSurface;
+  private final float[] perspective = new float[16];
+  private final float[] eyeFromHead = new float[16];
+  private final float[] eyeFromWorld = new float[16];
+  private final float[] viewProjection = new float[16];
+  private int frame;
+
+  /** Draws both eyes in one frame. */
+  public SceneRendererTarget() {
+    this(false);
+  }
+
+  /** @param drawEachEyeAsFrame draw each eye with its own glDrawFrame call */
+  public SceneRendererTarget(boolean drawEachEyeAsFrame) {
+    this.drawEachEyeAsFrame = drawEachEyeAsFrame;
+    renderer.glInit();
+    SphereTessellation tessellation = SphereTessellation.forMedia(
+        VIDEO_WIDTH, VIDEO_HEIGHT, Mesh.MEDIA_MONOSCOPIC, 180, 360,
+        DISPLAY_PIXELS_PER_DEGREE, SphereTessellation.DEFAULT_MAX_ERROR_PIXELS);
+    Mesh mesh = Mesh.createIndexedUvSphere(
+        SPHERE_RADIUS_METERS, tessellation, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+    videoSurface = renderer.createDisplay(VIDEO_WIDTH, VIDEO_HEIGHT, mesh);
+    Eyes.getPerspective(Z_NEAR, Z_FAR, perspective);
+  }
+
+  @Override
+  public void drawFrame(long frameTimeNanos, float[] headFromWorld) {
+    // A 30 fps video on a 60 Hz display.
+    if ((frame++ & 1) == 0) {
+      videoSurface.postFrame();
+    }
+    if (drawEachEyeAsFrame) {
+      for (int eye = 0; eye < 2; ++eye) {
+        getViewProjection(eye, headFromWorld);
+        renderer.glDrawFrame(viewProjection, eye == 0 ? Eye.Type.LEFT : Eye.Type.RIGHT);
+      }
+      return;
+    }
+    if (!renderer.glBeginFrame()) {
+      return;
+    }
+    for (int eye = 0; eye < 2; ++eye) {
+      getViewProjection(eye, headFromWorld);
+      renderer.glDrawEye(viewProjection, eye == 0 ? Eye.Type.LEFT : Eye.Type.RIGHT);
+    }
+    renderer.glEndFrame();
+  }
+
+  /** Writes the given eye's view projection matrix to viewProjection. */
+  private void getViewProjection(int eye, float[] headFromWorld) {
+    Eyes.getEyeFromHead(eye, eyeFromHead);
+    Mat4.multiply(eyeFromWorld, 0, eyeFromHead, 0, headFromWorld, 0);
+    Mat4.multiply(viewProjection, 0, perspective, 0, eyeFromWorld, 0);
+  }
+
+  @Override
+  public void shutdown() {
+    videoSurface.release();
+    renderer.glShutdown();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.videoplayer;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the work that VideoScene.updateVideoFpsFraction does every frame. VideoScene samples
+ * System.nanoTime(), so this repeats its calls on a {@link FrameRateTracker} configured the same
+ * way but with a simulated clock. The clock advances at 90 Hz while the counter advances at 60 Hz,
+ * so the tracker's window is full & pruned on each sample as it is in steady state on a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VideoFpsBenchmark {
+  // Matches VideoScene & VideoSceneRenderer.
+  private static final int MAX_FRAME_RATE_SAMPLES = 512;
+  private static final long AVERAGING_PERIOD_SECONDS = 3;
+  private static final float NATIVE_FRAME_RATE = 60;
+
+  private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 90;
+
+  private FrameRateTracker videoFrameRate;
+  private long timeNanos;
+  private int frame;
+
+  @Setup
+  public void setUp() {
+    videoFrameRate = new FrameRateTracker(
+        MAX_FRAME_RATE_SAMPLES, TimeUnit.SECONDS.toNanos(AVERAGING_PERIOD_SECONDS));
+    // Fill the window.
+    for (int i = 0; i < 4 * 90; ++i) {
+      updateVideoFpsFraction();
+    }
+  }
+
+  @Benchmark
+  public float updateVideoFpsFraction() {
+    timeNanos += FRAME_NANOS;
+    ++frame;
+    int renderedOutputBufferCount = frame * 2 / 3;
+
+    videoFrameRate.setWindowNanos(TimeUnit.SECONDS.toNanos(AVERAGING_PERIOD_SECONDS));
+    videoFrameRate.addSample(timeNanos, renderedOutputBufferCount);
+    float rawFraction = videoFrameRate.getRatePerSecond() / NATIVE_FRAME_RATE;
+    return Math.min(1.0f, Math.max(0.f, rawFraction));
+  }
+}
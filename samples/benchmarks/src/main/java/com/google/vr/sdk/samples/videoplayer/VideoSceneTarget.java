@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.videoplayer;
+
+import android.opengl.GLES20;
+import com.google.vr.sdk.samples.benchmarks.Eyes;
+import com.google.vr.sdk.samples.benchmarks.GlCountingTarget;
+import com.google.vr.sdk.samples.common.gl.GlStateCache;
+import com.google.vr.sdk.samples.common.math.Mat4;
+
+/**
+ * Replays head poses through the GL part of VideoSceneRenderer.drawScene: the video's hole punch &
+ * the frame rate bar, drawn for both eyes. The video itself is composited by the GVR SDK from
+ * BufferViewports, which need the native GvrApi, so they aren't updated.
+ */
+public final class VideoSceneTarget extends GlCountingTarget {
+  // Match VideoSceneRenderer.
+  private static final float NEAR_PLANE = 1.0f;
+  private static final float FAR_PLANE = 10.0f;
+  private static final float NATIVE_FRAME_RATE = 30;
+  // Matches WatchVideoActivity.
+  private static final float[] WORLD_FROM_QUAD = {
+    1.6f, 0.0f, 0.0f, 0.0f,
+    0.0f, 0.9f, 0.0f, 0.0f,
+    0.0f, 0.0f, 1.0f, 0.0f,
+    0.0f, 0.0f, -4.f, 1.0f
+  };
+
+  private final VideoScene videoScene;
+  private final int loadingTextureId;
+  private final float[] perspective = new float[16];
+  private final float[] eyeFromHead = new float[16];
+  private final float[][] eyeFromWorld = new float[2][16];
+  private final float[] perspectiveFromWorld = new float[16];
+  private int renderedFrameCount;
+  private int frame;
+
+  public VideoSceneTarget() {
+    Settings settings = new Settings();
+    settings.showFrameRateBar = true;
+    videoScene = new VideoScene(settings);
+    int[] textureIds = new int[1];
+    GLES20.glGenTextures(1, textureIds, 0);
+    loadingTextureId = textureIds[0];
+    videoScene.prepareGLResources(loadingTextureId);
+    videoScene.setVideoTransform(WORLD_FROM_QUAD);
+    videoScene.setHasVideoPlaybackStarted(true);
+    Eyes.getPerspective(NEAR_PLANE, FAR_PLANE, perspective);
+  }
+
+  @Override
+  public void drawFrame(long frameTimeNanos, float[] headFromWorld) {
+    for (int eye = 0; eye < 2; ++eye) {
+      Eyes.getEyeFromHead(eye, eyeFromHead);
+      Mat4.multiply(eyeFromWorld[eye], 0, eyeFromHead, 0, headFromWorld, 0);
+    }
+
+    // A 30 fps video on a 60 Hz display.
+    if ((frame++ & 1) == 0) {
+      ++renderedFrameCount;
+    }
+    videoScene.updateVideoFpsFraction(3L, NATIVE_FRAME_RATE, renderedFrameCount);
+
+    GLES20.glClearColor(0.2f, 0.2f, 0.2f, 1.0f);
+    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    GlStateCache glState = videoScene.getGlStateCache();
+    glState.glBeginFrame();
+    glState.glDisable(GLES20.GL_DEPTH_TEST);
+    videoScene.getGpuTimer().glBeginFrame();
+    for (int eye = 0; eye < 2; ++eye) {
+      Mat4.multiply(perspectiveFromWorld, 0, perspective, 0, eyeFromWorld[eye], 0);
+      videoScene.draw(perspectiveFromWorld);
+    }
+    videoScene.getGpuTimer().glEndFrame();
+    glState.glEndFrame();
+  }
+
+  @Override
+  public void shutdown() {
+    GLES20.glDeleteTextures(1, new int[] {loadingTextureId}, 0);
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.benchmarks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.vr.sdk.samples.common.replay.PoseTrace;
+import com.google.vr.sdk.samples.common.replay.RenderLoopReplay;
+import com.google.vr.sdk.samples.controllerclient.OrientationViewTarget;
+import com.google.vr.sdk.samples.treasurehunt.TreasureHuntTarget;
+import com.google.vr.sdk.samples.video360.rendering.SceneRendererTarget;
+import com.google.vr.sdk.samples.videoplayer.VideoSceneTarget;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Test;
+
+public final class ReplayTargetsTest {
+  // Counters reported by GlCountingTarget.
+  private static final int GL_CALLS = 0;
+  private static final int DRAW_CALLS = 1;
+  private static final int UPLOADED_BYTES = 2;
+  private static final int LOCATION_LOOKUPS = 3;
+
+  @Test
+  public void checkedInTraceIsReadable() throws IOException {
+    PoseTrace trace = readDefaultTrace();
+    assertEquals(1200, trace.size());
+    assertTrue(trace.getTimeNanos(1) > trace.getTimeNanos(0));
+  }
+
+  @Test
+  public void video360DrawsEveryFrameWithoutUploads() throws IOException {
+    assertDrawsEveryFrameWithoutUploads(new SceneRendererTarget());
+  }
+
+  @Test
+  public void video360StereoFramesMakeFewerCallsThanTwoSingleEyeFrames() throws IOException {
+    RenderLoopReplay.Result stereo = replay(new SceneRendererTarget());
+    RenderLoopReplay.Result baseline = replay(new SceneRendererTarget(true));
+    // Both replay the same poses & video frames, so frame i of one matches frame i of the other.
+    // The same geometry is drawn, but the per-frame setup is only done once.
+    assertEquals(baseline.getFrameCount(), stereo.getFrameCount());
+    for (int frame = 0; frame < stereo.getFrameCount(); ++frame) {
+      assertEquals(baseline.getValue(DRAW_CALLS, frame), stereo.getValue(DRAW_CALLS, frame));
+      assertTrue(
+          "Frame " + frame + ": " + stereo.getValue(GL_CALLS, frame) + " GL calls vs "
+              + baseline.getValue(GL_CALLS, frame),
+          stereo.getValue(GL_CALLS, frame) < baseline.getValue(GL_CALLS, frame));
+    }
+  }
+
+  @Test
+  public void videoPlayerDrawsEveryFrameWithoutUploads() throws IOException {
+    RenderLoopReplay.Result result = assertDrawsEveryFrameWithoutUploads(new VideoSceneTarget());
+    // The hole punch & the frame rate bar for each eye.
+    assertEquals(4, result.getMax(DRAW_CALLS));
+    assertEquals(4.0, result.getMean(DRAW_CALLS), 0);
+  }
+
+  @Test
+  public void treasureHuntDrawsEveryFrameWithoutUploads() throws IOException {
+    RenderLoopReplay.Result result = assertDrawsEveryFrameWithoutUploads(new TreasureHuntTarget());
+    // The cube & the floor for each eye.
+    assertEquals(4, result.getMax(DRAW_CALLS));
+    assertEquals(4.0, result.getMean(DRAW_CALLS), 0);
+  }
+
+  @Test
+  public void orientationViewDrawsEveryFrameWithoutUploads() throws IOException {
+    RenderLoopReplay.Result result =
+        assertDrawsEveryFrameWithoutUploads(new OrientationViewTarget());
+    assertEquals(1, result.getMax(DRAW_CALLS));
+  }
+
+  @Test
+  public void videoPlayerLooksUpNoLocationsAfterInitialization() throws IOException {
+    assertEquals(0, replay(new VideoSceneTarget()).getMax(LOCATION_LOOKUPS));
+  }
+
+  @Test
+  public void orientationViewLooksUpNoLocationsAfterInitialization() throws IOException {
+    assertEquals(0, replay(new OrientationViewTarget()).getMax(LOCATION_LOOKUPS));
+  }
+
+  private static RenderLoopReplay.Result assertDrawsEveryFrameWithoutUploads(
+      GlCountingTarget target) throws IOException {
+    RenderLoopReplay.Result result = replay(target);
+    assertEquals(1190, result.getFrameCount());
+    for (int frame = 0; frame < result.getFrameCount(); ++frame) {
+      assertTrue(result.getValue(DRAW_CALLS, frame) > 0);
+    }
+    assertEquals(0, result.getMax(UPLOADED_BYTES));
+    return result;
+  }
+
+  /** Replays the checked-in trace. Initialization happens in the target's constructor. */
+  private static RenderLoopReplay.Result replay(GlCountingTarget target) throws IOException {
+    RenderLoopReplay replay = new RenderLoopReplay(readDefaultTrace(), target);
+    replay.setWarmupFrames(10);
+    RenderLoopReplay.Result result = replay.run();
+    target.shutdown();
+    return result;
+  }
+
+  private static PoseTrace readDefaultTrace() throws IOException {
+    InputStream input = ReplayMain.class.getResourceAsStream(ReplayMain.DEFAULT_TRACE);
+    try {
+      return PoseTrace.read(input);
+    } finally {
+      input.close();
+    }
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.android;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.util.Log;
+import com.google.vr.sdk.samples.common.cache.DiskLruCache;
+import com.google.vr.sdk.samples.common.cache.MemoryLruCache;
+import com.google.vr.sdk.samples.common.cache.RawImageCache;
+import com.google.vr.sdk.samples.common.cache.RawImageFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * Keeps decoded images in memory and uncompressed on disk so that showing the same image again,
+ * e.g., after the Activity is recreated, doesn't decode it again.
+ *
+ * <p>This adapts ARGB_8888 Bitmaps to a {@link RawImageCache}. Large images can also be written
+ * and read band by band through the raw cache without keeping them in memory. Disk failures are
+ * logged and treated as misses. This is thread-safe.
+ */
+public final class BitmapCache {
+  private static final String TAG = "BitmapCache";
+  // Rows are copied between Bitmaps & files through a band of at most this size rather than a
+  // buffer as large as the image, since direct buffers count against the Java heap on ART.
+  private static final int BAND_BYTES = 1 << 20;
+
+  // Caches by directory name. Each is shared by every Activity in the process.
+  private static final HashMap<String, BitmapCache> instances = new HashMap<>();
+
+  private final MemoryLruCache<String, Bitmap> bitmaps;
+  // Null if the cache directory is unusable.
+  private final RawImageCache disk;
+
+  private BitmapCache(long maxMemoryBytes, RawImageCache disk) {
+    bitmaps = new MemoryLruCache<>(maxMemoryBytes,
+        new MemoryLruCache.Weigher<Bitmap>() {
+          @Override
+          public long weigh(Bitmap bitmap) {
+            return bitmap.getAllocationByteCount();
+          }
+        });
+    this.disk = disk;
+  }
+
+  /**
+   * Returns the process-wide cache stored in a subdirectory of the app's cache directory. This
+   * scans the directory the first time, so it shouldn't be called on the UI thread. The sizes
+   * passed by the first call are used.
+   *
+   * @param directoryName Subdirectory used only by this cache.
+   * @param maxMemoryBytes Total size of the Bitmaps kept in memory.
+   * @param maxDiskBytes Total size of the files kept on disk. Android clears the cache directory
+   *     when storage runs low.
+   */
+  public static BitmapCache get(
+      Context context, String directoryName, long maxMemoryBytes, long maxDiskBytes) {
+    synchronized (instances) {
+      BitmapCache cache = instances.get(directoryName);
+      if (cache == null) {
+        RawImageCache disk = null;
+        try {
+          disk = new RawImageCache(DiskLruCache.open(
+              new File(context.getApplicationContext().getCacheDir(), directoryName),
+              maxDiskBytes));
+        } catch (IOException e) {
+          Log.e(TAG, "Disk cache disabled", e);
+        }
+        cache = new BitmapCache(maxMemoryBytes, disk);
+        instances.put(directoryName, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Returns a cached image, reading it from disk into memory if needed, or null. The Bitmap is
+   * shared by every caller, so it must not be modified or recycled.
+   */
+  public Bitmap get(String key) {
+    Bitmap bitmap = bitmaps.get(key);
+    if (bitmap != null) {
+      return bitmap;
+    }
+    RawImageCache.Reader reader = openRawImage(key);
+    if (reader == null) {
+      return null;
+    }
+    try {
+      bitmap = readBitmap(reader);
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to read " + reader, e);
+      return null;
+    } finally {
+      closeQuietly(reader);
+    }
+    bitmaps.put(key, bitmap);
+    return bitmap;
+  }
+
+  /**
+   * Caches an image in memory & on disk. The Bitmap is shared with later callers of {@link #get},
+   * so it must not be modified or recycled afterwards.
+   *
+   * @param bitmap ARGB_8888 image.
+   */
+  public void put(String key, Bitmap bitmap) {
+    bitmaps.put(key, bitmap);
+    RawImageWriter writer = startRawImage(key, bitmap.getWidth(), bitmap.getHeight());
+    if (writer != null) {
+      writer.writeRows(bitmap);
+      writer.commit();
+    }
+  }
+
+  /**
+   * Opens an image cached on disk without loading it into memory, e.g., to read it band by band.
+   *
+   * @return a reader which the caller closes or null if the image isn't cached.
+   */
+  public RawImageCache.Reader openRawImage(String key) {
+    if (disk == null) {
+      return null;
+    }
+    try {
+      return disk.open(key);
+    } catch (IOException e) {
+      Log.e(TAG, "Dropped invalid entry for " + key, e);
+      return null;
+    }
+  }
+
+  /**
+   * Starts writing an image to the disk cache without keeping it in memory, e.g., band by band.
+   *
+   * @return a writer or null if the disk cache is unusable.
+   */
+  public RawImageWriter startRawImage(String key, int width, int height) {
+    if (disk == null) {
+      return null;
+    }
+    try {
+      return new RawImageWriter(disk.edit(key, width, height));
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to cache " + key, e);
+      return null;
+    }
+  }
+
+  /** Reads the remaining rows of an image into a new Bitmap. */
+  public static Bitmap readBitmap(RawImageCache.Reader reader) throws IOException {
+    int width = reader.getWidth();
+    int height = reader.getRemainingRows();
+    Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    int bandHeight = Math.min(height, getBandHeight(width));
+    ByteBuffer pixels =
+        ByteBuffer.allocateDirect(width * bandHeight * RawImageFormat.BYTES_PER_PIXEL);
+    if (bandHeight == height) {
+      try {
+        readRows(reader, bitmap, pixels);
+      } catch (IOException e) {
+        bitmap.recycle();
+        throw e;
+      }
+      return bitmap;
+    }
+
+    Bitmap band = Bitmap.createBitmap(width, bandHeight, Bitmap.Config.ARGB_8888);
+    Canvas canvas = new Canvas(bitmap);
+    Paint paint = createCopyPaint();
+    try {
+      for (int top = 0; top < height; top += bandHeight) {
+        band.reconfigure(width, Math.min(bandHeight, height - top), Bitmap.Config.ARGB_8888);
+        readRows(reader, band, pixels);
+        canvas.drawBitmap(band, 0, top, paint);
+      }
+    } catch (IOException e) {
+      bitmap.recycle();
+      throw e;
+    } finally {
+      band.recycle();
+    }
+    return bitmap;
+  }
+
+  /**
+   * Reads the next rows of an image into a mutable Bitmap.
+   *
+   * @param rows Destination whose width matches the image. As many rows as it has are read.
+   * @param pixels Scratch buffer with room for the rows. Callers reuse it between bands.
+   * @throws IOException if the image has fewer rows left or the file is truncated.
+   */
+  public static void readRows(RawImageCache.Reader reader, Bitmap rows, ByteBuffer pixels)
+      throws IOException {
+    pixels.clear();
+    pixels.limit(rows.getByteCount());
+    if (reader.readRows(pixels) != rows.getHeight()) {
+      throw new IOException(reader + " has fewer than " + rows.getHeight() + " rows left");
+    }
+    pixels.flip();
+    rows.copyPixelsFromBuffer(pixels);
+  }
+
+  /** Returns the number of rows of an image that are copied at a time. */
+  private static int getBandHeight(int width) {
+    return Math.max(1, BAND_BYTES / (width * RawImageFormat.BYTES_PER_PIXEL));
+  }
+
+  /** Returns a Paint that replaces the destination's pixels with the source's unchanged. */
+  private static Paint createCopyPaint() {
+    Paint paint = new Paint();
+    paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    return paint;
+  }
+
+  private static void closeQuietly(RawImageCache.Reader reader) {
+    try {
+      reader.close();
+    } catch (IOException e) {
+      // Only read from.
+    }
+  }
+
+  @Override
+  public String toString() {
+    return bitmaps + ", " + disk;
+  }
+
+  /**
+   * Writes an image to the disk cache from Bitmaps holding its rows. Errors drop the entry instead
+   * of being thrown, since the image is still displayed without the cache.
+   */
+  public static final class RawImageWriter {
+    private final RawImageCache.Writer writer;
+    private final int bandHeight;
+    // Reused between bands. Created when first needed & released when the entry is done. The
+    // Bitmap, Canvas & Paint are only needed for rows taller than a band.
+    private ByteBuffer pixels;
+    private Bitmap band;
+    private Canvas canvas;
+    private Paint paint;
+    private final Rect source = new Rect();
+    private final Rect destination = new Rect();
+    // Set once the entry is committed or dropped.
+    private boolean isDone;
+
+    private RawImageWriter(RawImageCache.Writer writer) {
+      this.writer = writer;
+      bandHeight = Math.min(writer.getHeight(), getBandHeight(writer.getWidth()));
+    }
+
+    /**
+     * Appends the rows of an ARGB_8888 Bitmap that is as wide as the image. Other rows fail. Rows
+     * taller than a band are copied a band at a time.
+     */
+    public void writeRows(Bitmap rows) {
+      if (isDone) {
+        return;
+      }
+      int width = writer.getWidth();
+      if (rows.getConfig() != Bitmap.Config.ARGB_8888 || rows.getWidth() != width) {
+        fail(new IllegalArgumentException(rows.getWidth() + "x" + rows.getHeight() + " "
+            + rows.getConfig() + " rows don't fit in " + width + "x" + writer.getHeight()));
+        return;
+      }
+      if (pixels == null) {
+        pixels = ByteBuffer.allocateDirect(width * bandHeight * RawImageFormat.BYTES_PER_PIXEL);
+      }
+      if (rows.getHeight() <= bandHeight) {
+        write(rows);
+        return;
+      }
+
+      if (band == null) {
+        band = Bitmap.createBitmap(width, bandHeight, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas();
+        paint = createCopyPaint();
+      }
+      for (int top = 0; top < rows.getHeight() && !isDone; top += bandHeight) {
+        int height = Math.min(bandHeight, rows.getHeight() - top);
+        band.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        canvas.setBitmap(band);
+        source.set(0, top, width, top + height);
+        destination.set(0, 0, width, height);
+        canvas.drawBitmap(rows, source, destination, paint);
+        write(band);
+      }
+    }
+
+    /** Writes rows that fit in the buffer. */
+    private void write(Bitmap rows) {
+      pixels.clear();
+      rows.copyPixelsToBuffer(pixels);
+      pixels.flip();
+      try {
+        writer.writeRows(pixels);
+      } catch (IOException | IllegalArgumentException e) {
+        fail(e);
+      }
+    }
+
+    /** Publishes the entry if every row was written and drops it otherwise. */
+    public void commit() {
+      if (isDone) {
+        return;
+      }
+      isDone = true;
+      releaseBand();
+      try {
+        writer.commit();
+      } catch (IOException e) {
+        Log.e(TAG, "Unable to cache image", e);
+      }
+    }
+
+    /** Drops the entry. */
+    public void abort() {
+      if (!isDone) {
+        isDone = true;
+        releaseBand();
+        writer.abort();
+      }
+    }
+
+    private void releaseBand() {
+      if (band != null) {
+        canvas.setBitmap(null);
+        band.recycle();
+        band = null;
+      }
+      pixels = null;
+    }
+
+    private void fail(Exception e) {
+      Log.e(TAG, "Unable to cache image", e);
+      abort();
+    }
+  }
+}
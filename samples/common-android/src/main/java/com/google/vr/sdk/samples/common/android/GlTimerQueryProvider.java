@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.android;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import com.google.vr.sdk.samples.common.profiling.GpuTimer;
+
+/**
+ * Issues GPU timer queries using EXT_disjoint_timer_query.
+ *
+ * <p>Android only exposes the query entry points through {@link GLES30}, so this requires an
+ * OpenGL ES 3 context in addition to the extension. {@link #isSupported()} returns false otherwise
+ * and the {@link GpuTimer} stays disabled. All methods must be called on the GL thread.
+ */
+public final class GlTimerQueryProvider implements GpuTimer.QueryProvider {
+  private static final String EXTENSION = "GL_EXT_disjoint_timer_query";
+  // Defined by the extension but not by GLES30.
+  private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+  private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+  private final int[] result = new int[1];
+
+  @Override
+  public boolean isSupported() {
+    String version = GLES20.glGetString(GLES20.GL_VERSION);
+    String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+    return version != null
+        && version.startsWith("OpenGL ES 3")
+        && extensions != null
+        && extensions.contains(EXTENSION);
+  }
+
+  @Override
+  public void createQueries(int[] queries) {
+    GLES30.glGenQueries(queries.length, queries, 0);
+  }
+
+  @Override
+  public void deleteQueries(int[] queries) {
+    GLES30.glDeleteQueries(queries.length, queries, 0);
+  }
+
+  @Override
+  public void beginQuery(int query) {
+    GLES30.glBeginQuery(GL_TIME_ELAPSED_EXT, query);
+  }
+
+  @Override
+  public void endQuery() {
+    GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+  }
+
+  @Override
+  public boolean isResultAvailable(int query) {
+    GLES30.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+    return result[0] != 0;
+  }
+
+  @Override
+  public long getResultNanos(int query) {
+    // The 32-bit result overflows after 4 seconds which is far longer than any pass.
+    GLES30.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT, result, 0);
+    return result[0] & 0xFFFFFFFFL;
+  }
+
+  @Override
+  public boolean checkDisjoint() {
+    // Reading GL_GPU_DISJOINT_EXT also clears it.
+    GLES20.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+    return result[0] != 0;
+  }
+}
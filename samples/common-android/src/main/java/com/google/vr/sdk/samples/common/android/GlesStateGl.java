@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.vr.sdk.samples.common.android;
+
+import android.opengl.GLES20;
+import com.google.vr.sdk.samples.common.gl.GlStateCache;
+
+/** Passes the calls of a {@link GlStateCache} to {@link GLES20}. */
+public final class GlesStateGl implements GlStateCache.Gl {
+  /** This has no state, so a single instance is shared by all caches. */
+  public static final GlesStateGl INSTANCE = new GlesStateGl();
+
+  private GlesStateGl() {}
+
+  /** Creates a cache for the current GL context. */
+  public static GlStateCache createCache() {
+    return new GlStateCache(INSTANCE);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    GLES20.glUseProgram(program);
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    GLES20.glActiveTexture(texture);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    GLES20.glBindTexture(target, texture);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    GLES20.glEnable(cap);
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    GLES20.glDisable(cap);
+  }
+
+  @Override
+  public void glBlendFunc(int srcFactor, int dstFactor) {
+    GLES20.glBlendFunc(srcFactor, dstFactor);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    GLES20.glBindBuffer(target, buffer);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    GLES20.glEnableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    GLES20.glDisableVertexAttribArray(index);
+  }
+}
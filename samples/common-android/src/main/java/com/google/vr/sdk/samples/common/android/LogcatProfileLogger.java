@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.vr.sdk.samples.common.android;
+
+import android.util.Log;
+import com.google.vr.sdk.samples.common.profiling.FrameProfiler;
+
+/**
+ * Writes {@link FrameProfiler} summaries to logcat at DEBUG level. Logging is enabled with
+ * {@code adb shell setprop log.tag.<tag> D}.
+ */
+public final class LogcatProfileLogger implements FrameProfiler.Logger {
+  private final String tag;
+
+  public LogcatProfileLogger(String tag) {
+    this.tag = tag;
+  }
+
+  @Override
+  public boolean isLoggable() {
+    return Log.isLoggable(tag, Log.DEBUG);
+  }
+
+  @Override
+  public void log(String summary) {
+    Log.d(tag, summary);
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.cache;
+
+import java.io.File;
+
+/**
+ * Builds cache keys for media. A key changes whenever its source changes, so stale entries are
+ * never returned and are eventually evicted.
+ */
+public final class CacheKeys {
+  private CacheKeys() {}
+
+  /** Identifies a file by its path, size & modification time. */
+  public static String forFile(File file) {
+    return "file:" + file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+  }
+
+  /**
+   * Identifies a file bundled with an app.
+   *
+   * @param version Changes whenever the app is updated, e.g., the package's last update time.
+   */
+  public static String forAsset(String name, long version) {
+    return "asset:" + name + ":" + version;
+  }
+
+  /** Identifies a variant of a source, e.g., a downsampled copy of an image. */
+  public static String forVariant(String sourceKey, String variant) {
+    return sourceKey + "#" + variant;
+  }
+}
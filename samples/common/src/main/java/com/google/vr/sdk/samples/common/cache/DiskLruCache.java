@@ -0,0 +1,268 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the most recently used files in a directory within a total size, e.g., decoded or
+ * downsampled variants of images that are expensive to produce.
+ *
+ * <p>Each entry is a file named after a hash of its key. New entries are written to a temporary
+ * file by an {@link Editor} and renamed into place when committed, so readers never see a partial
+ * entry and a crash only leaves temporary files, which are deleted when the cache is opened. The
+ * last access time is stored as the file's modification time so the eviction order survives
+ * restarts. There is no journal.
+ *
+ * <p>This is thread-safe within a process. A file returned by {@link #get} can be evicted by
+ * another thread before it's opened, in which case opening it fails like a cache miss. On Android
+ * & Linux, a file that is already open stays readable after it's evicted.
+ */
+public final class DiskLruCache {
+  private static final String ENTRY_SUFFIX = ".entry";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final File directory;
+  private final long maxBytes;
+  // Sizes of the entries by file name, from the least to the most recently used.
+  private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(16, .75f, true);
+  private long bytes;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  private DiskLruCache(File directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Opens a cache in a directory, creating it if needed. Entries left by an earlier instance are
+   * kept and evicted if they exceed the size.
+   *
+   * @param directory Directory used only by this cache.
+   * @param maxBytes Total size of the entries.
+   * @throws IOException if the directory can't be created.
+   */
+  public static DiskLruCache open(File directory, long maxBytes) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create " + directory);
+    }
+    DiskLruCache cache = new DiskLruCache(directory, maxBytes);
+    File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Unable to list " + directory);
+    }
+
+    ArrayList<File> entries = new ArrayList<>();
+    for (File file : files) {
+      if (file.getName().endsWith(ENTRY_SUFFIX)) {
+        entries.add(file);
+      } else if (file.getName().endsWith(TEMP_SUFFIX)) {
+        // An edit that was never committed.
+        file.delete();
+      }
+    }
+    File[] sorted = entries.toArray(new File[entries.size()]);
+    Arrays.sort(sorted, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        long difference = a.lastModified() - b.lastModified();
+        return difference != 0 ? (difference < 0 ? -1 : 1) : a.getName().compareTo(b.getName());
+      }
+    });
+    synchronized (cache) {
+      for (File file : sorted) {
+        cache.sizes.put(file.getName(), file.length());
+        cache.bytes += file.length();
+      }
+      cache.trimToSize();
+    }
+    return cache;
+  }
+
+  /**
+   * Returns the file of an entry and marks it as the most recently used, or returns null.
+   */
+  public synchronized File get(String key) {
+    String name = getFileName(key);
+    Long size = sizes.get(name);
+    File file = new File(directory, name);
+    if (size != null && !file.isFile()) {
+      // Deleted by someone else.
+      sizes.remove(name);
+      bytes -= size;
+      size = null;
+    }
+    if (size == null) {
+      ++misses;
+      return null;
+    }
+    ++hits;
+    file.setLastModified(System.currentTimeMillis());
+    return file;
+  }
+
+  /**
+   * Starts writing an entry. The entry isn't visible until the editor is committed. Concurrent
+   * edits of the same key are allowed and the last commit wins.
+   */
+  public Editor edit(String key) throws IOException {
+    return new Editor(key, File.createTempFile("edit", TEMP_SUFFIX, directory));
+  }
+
+  /** Deletes an entry. Returns false if there was none. */
+  public synchronized boolean remove(String key) {
+    String name = getFileName(key);
+    Long size = sizes.remove(name);
+    if (size == null) {
+      return false;
+    }
+    bytes -= size;
+    new File(directory, name).delete();
+    return true;
+  }
+
+  private synchronized boolean commit(String key, File temp) throws IOException {
+    long size = temp.length();
+    if (size > maxBytes) {
+      temp.delete();
+      return false;
+    }
+    String name = getFileName(key);
+    File file = new File(directory, name);
+    if (!temp.renameTo(file)) {
+      temp.delete();
+      throw new IOException("Unable to commit " + file);
+    }
+    Long previous = sizes.put(name, size);
+    if (previous != null) {
+      bytes -= previous;
+    }
+    bytes += size;
+    trimToSize();
+    return true;
+  }
+
+  private void trimToSize() {
+    Iterator<Map.Entry<String, Long>> iterator = sizes.entrySet().iterator();
+    while (bytes > maxBytes) {
+      Map.Entry<String, Long> entry = iterator.next();
+      new File(directory, entry.getKey()).delete();
+      bytes -= entry.getValue();
+      iterator.remove();
+      ++evictions;
+    }
+  }
+
+  private static String getFileName(String key) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+      StringBuilder name = new StringBuilder(digest.length * 2 + ENTRY_SUFFIX.length());
+      for (byte b : digest) {
+        name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return name.append(ENTRY_SUFFIX).toString();
+    } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+      // Every Java platform supports SHA-1 & UTF-8.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Returns the number of entries. */
+  public synchronized int size() {
+    return sizes.size();
+  }
+
+  /** Returns the total size of the entries. */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    long lookups = hits + misses;
+    return String.format("DiskLruCache[%d entries, %d/%d KiB, hit rate %.1f%%, %d evictions]",
+        sizes.size(), bytes >> 10, maxBytes >> 10,
+        lookups == 0 ? 0f : 100f * hits / lookups, evictions);
+  }
+
+  /** Writes a new entry. Either {@link #commit} or {@link #abort} must be called. */
+  public final class Editor {
+    private final String key;
+    private final File file;
+    private boolean isDone;
+
+    private Editor(String key, File file) {
+      this.key = key;
+      this.file = file;
+    }
+
+    /** Returns the temporary file to write the entry to. */
+    public File getFile() {
+      return file;
+    }
+
+    /**
+     * Publishes the entry, replacing any previous one, and evicts old entries to make room.
+     *
+     * @return false if the entry is larger than the whole cache and was dropped.
+     */
+    public boolean commit() throws IOException {
+      if (isDone) {
+        throw new IllegalStateException("Already done");
+      }
+      isDone = true;
+      return DiskLruCache.this.commit(key, file);
+    }
+
+    /** Drops the entry. Does nothing if it was already committed. */
+    public void abort() {
+      if (!isDone) {
+        isDone = true;
+        file.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map that keeps the most recently used values within a total size in bytes, e.g., decoded
+ * images that are expensive to load again.
+ *
+ * <p>Evicted values are only dropped, never released, since a caller may still be using them. A
+ * value larger than the whole cache isn't cached. This is thread-safe.
+ *
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public final class MemoryLruCache<K, V> {
+  /** Measures cached values. */
+  public interface Weigher<V> {
+    /** Returns the size of the value in bytes. It must not change while the value is cached. */
+    long weigh(V value);
+  }
+
+  private final long maxBytes;
+  private final Weigher<V> weigher;
+  // Iterates from the least to the most recently used value.
+  private final LinkedHashMap<K, V> values = new LinkedHashMap<>(16, .75f, true);
+  private long bytes;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * @param maxBytes Total size of the cached values.
+   * @param weigher Measures each value.
+   */
+  public MemoryLruCache(long maxBytes, Weigher<V> weigher) {
+    this.maxBytes = maxBytes;
+    this.weigher = weigher;
+  }
+
+  /** Returns the value for a key and marks it as the most recently used, or returns null. */
+  public synchronized V get(K key) {
+    V value = values.get(key);
+    if (value == null) {
+      ++misses;
+    } else {
+      ++hits;
+    }
+    return value;
+  }
+
+  /**
+   * Caches a value, evicting the least recently used values to make room.
+   *
+   * @return false if the value is too large to be cached.
+   */
+  public synchronized boolean put(K key, V value) {
+    long weight = weigher.weigh(value);
+    if (weight > maxBytes) {
+      remove(key);
+      return false;
+    }
+    V previous = values.put(key, value);
+    if (previous != null) {
+      bytes -= weigher.weigh(previous);
+    }
+    bytes += weight;
+
+    Iterator<Map.Entry<K, V>> iterator = values.entrySet().iterator();
+    while (bytes > maxBytes) {
+      V evicted = iterator.next().getValue();
+      iterator.remove();
+      bytes -= weigher.weigh(evicted);
+      ++evictions;
+    }
+    return true;
+  }
+
+  /** Removes a value. Returns it or null if it wasn't cached. */
+  public synchronized V remove(K key) {
+    V value = values.remove(key);
+    if (value != null) {
+      bytes -= weigher.weigh(value);
+    }
+    return value;
+  }
+
+  /** Removes every value. */
+  public synchronized void clear() {
+    values.clear();
+    bytes = 0;
+  }
+
+  /** Returns the number of cached values. */
+  public synchronized int size() {
+    return values.size();
+  }
+
+  /** Returns the total size of the cached values. */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    long lookups = hits + misses;
+    return String.format("MemoryLruCache[%d values, %d/%d KiB, hit rate %.1f%%, %d evictions]",
+        values.size(), bytes >> 10, maxBytes >> 10,
+        lookups == 0 ? 0f : 100f * hits / lookups, evictions);
+  }
+}
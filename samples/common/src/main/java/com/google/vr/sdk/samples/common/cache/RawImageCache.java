@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.vr.sdk.samples.common.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stores uncompressed images in a {@link DiskLruCache} using the {@link RawImageFormat}.
+ *
+ * <p>Pixels are read and written as whole rows through ByteBuffers, so callers can copy them to
+ * and from their platform's bitmaps without an intermediate array, e.g., with Android's {@code
+ * Bitmap.copyPixelsToBuffer}. Images can be written and read one band at a time. This is
+ * thread-safe, but each {@link Reader} and {@link Writer} must only be used by one thread at a
+ * time.
+ */
+public final class RawImageCache {
+  private final DiskLruCache disk;
+
+  public RawImageCache(DiskLruCache disk) {
+    this.disk = disk;
+  }
+
+  /**
+   * Opens a cached image.
+   *
+   * @return a reader positioned at the first row or null if the image isn't cached.
+   * @throws IOException if the entry can't be read. Invalid entries are removed.
+   */
+  public Reader open(String key) throws IOException {
+    File file = disk.get(key);
+    if (file == null) {
+      return null;
+    }
+    FileInputStream input;
+    try {
+      input = new FileInputStream(file);
+    } catch (IOException e) {
+      // Evicted by another thread.
+      return null;
+    }
+    try {
+      ByteBuffer header = ByteBuffer.allocate(RawImageFormat.HEADER_BYTES);
+      readFully(input.getChannel(), header);
+      header.flip();
+      int[] size = new int[2];
+      RawImageFormat.readHeader(header, file.length(), size);
+      return new Reader(file.getName(), input, size[0], size[1]);
+    } catch (IOException e) {
+      input.close();
+      disk.remove(key);
+      throw e;
+    }
+  }
+
+  /**
+   * Starts writing an image. The entry isn't visible until every row is written and the writer is
+   * committed.
+   */
+  public Writer edit(String key, int width, int height) throws IOException {
+    DiskLruCache.Editor editor = disk.edit(key);
+    try {
+      return new Writer(editor, width, height);
+    } catch (IOException | RuntimeException e) {
+      editor.abort();
+      throw e;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return disk.toString();
+  }
+
+  /** Reads the rows of a cached image in order. */
+  public static final class Reader implements Closeable {
+    private final String name;
+    private final FileInputStream input;
+    private final int width;
+    private final int height;
+    private int readRows;
+
+    private Reader(String name, FileInputStream input, int width, int height) {
+      this.name = name;
+      this.input = input;
+      this.width = width;
+      this.height = height;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    /** Returns the number of rows that haven't been read yet. */
+    public int getRemainingRows() {
+      return height - readRows;
+    }
+
+    /**
+     * Reads the next rows.
+     *
+     * @param rows Receives as many whole rows as fit in its remaining space, or all of the rows
+     *     that are left. Its position is advanced past them.
+     * @return the number of rows read.
+     * @throws IOException if the file is truncated.
+     */
+    public int readRows(ByteBuffer rows) throws IOException {
+      int rowBytes = width * RawImageFormat.BYTES_PER_PIXEL;
+      int count = Math.min(rows.remaining() / rowBytes, height - readRows);
+      int limit = rows.limit();
+      rows.limit(rows.position() + count * rowBytes);
+      try {
+        readFully(input.getChannel(), rows);
+      } finally {
+        rows.limit(limit);
+      }
+      readRows += count;
+      return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+      input.close();
+    }
+
+    @Override
+    public String toString() {
+      return width + "x" + height + " raw image " + name;
+    }
+  }
+
+  /**
+   * Writes the rows of a new image in order. Either {@link #commit} or {@link #abort} must be
+   * called.
+   */
+  public static final class Writer {
+    private final DiskLruCache.Editor editor;
+    private final FileOutputStream output;
+    private final int width;
+    private final int height;
+    private int writtenRows;
+
+    private Writer(DiskLruCache.Editor editor, int width, int height) throws IOException {
+      this.editor = editor;
+      this.width = width;
+      this.height = height;
+      ByteBuffer header = ByteBuffer.allocate(RawImageFormat.HEADER_BYTES);
+      RawImageFormat.writeHeader(header, width, height);
+      header.flip();
+      output = new FileOutputStream(editor.getFile());
+      try {
+        writeFully(output.getChannel(), header);
+      } catch (IOException e) {
+        output.close();
+        throw e;
+      }
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    /**
+     * Appends rows to the image.
+     *
+     * @param rows Whole rows of the image between its position and limit. The position is
+     *     advanced to the limit.
+     * @throws IllegalArgumentException if the buffer doesn't hold whole rows or holds more rows
+     *     than are left.
+     */
+    public void writeRows(ByteBuffer rows) throws IOException {
+      int rowBytes = width * RawImageFormat.BYTES_PER_PIXEL;
+      int count = rows.remaining() / rowBytes;
+      if (rows.remaining() % rowBytes != 0 || writtenRows + count > height) {
+        throw new IllegalArgumentException(rows.remaining() + " bytes of rows don't fit in "
+            + width + "x" + height + " with " + writtenRows + " rows written");
+      }
+      writeFully(output.getChannel(), rows);
+      writtenRows += count;
+    }
+
+    /**
+     * Publishes the image if every row was written and drops it otherwise.
+     *
+     * @return true if the image was published.
+     */
+    public boolean commit() throws IOException {
+      if (writtenRows != height) {
+        abort();
+        return false;
+      }
+      try {
+        output.close();
+      } catch (IOException e) {
+        editor.abort();
+        throw e;
+      }
+      return editor.commit();
+    }
+
+    /** Drops the image. */
+    public void abort() {
+      try {
+        output.close();
+      } catch (IOException e) {
+        // The entry is dropped anyway.
+      }
+      editor.abort();
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new IOException("Truncated cache entry");
+      }
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Header of an uncompressed image in a {@link DiskLruCache}.
+ *
+ * <p>Decoding a large JPEG takes seconds on a phone but reading the same pixels uncompressed is
+ * limited only by storage bandwidth, so cached variants of panoramas are stored as 8-bit RGBA rows
+ * after this header. The rows can be read one band at a time. Each pixel is 4 bytes in R, G, B, A
+ * order with premultiplied alpha, which is the memory layout of an Android ARGB_8888 Bitmap. Header
+ * values are big-endian. {@link RawImageCache} reads and writes these files.
+ */
+public final class RawImageFormat {
+  /** Size of the header in bytes. */
+  public static final int HEADER_BYTES = 16;
+  /** Size of each pixel in bytes. */
+  public static final int BYTES_PER_PIXEL = 4;
+
+  // "RGBA".
+  private static final int MAGIC = 0x52474241;
+  // Version 1 files could hold unpremultiplied pixels.
+  private static final int VERSION = 2;
+
+  private RawImageFormat() {}
+
+  /**
+   * Writes the header of an image.
+   *
+   * @param buffer Receives {@link #HEADER_BYTES} bytes at its position.
+   */
+  public static void writeHeader(ByteBuffer buffer, int width, int height) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+    }
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height);
+  }
+
+  /**
+   * Reads & validates the header of an image.
+   *
+   * @param buffer Holds {@link #HEADER_BYTES} bytes at its position.
+   * @param fileBytes Size of the whole file, which must match the header.
+   * @param size Receives the width & height.
+   * @throws IOException if the header is invalid or the file is truncated.
+   */
+  public static void readHeader(ByteBuffer buffer, long fileBytes, int[] size) throws IOException {
+    if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC
+        || buffer.getInt() != VERSION) {
+      throw new IOException("Not a raw image");
+    }
+    int width = buffer.getInt();
+    int height = buffer.getInt();
+    if (width <= 0 || height <= 0 || getFileBytes(width, height) != fileBytes) {
+      throw new IOException("Invalid raw image " + width + "x" + height + " in " + fileBytes
+          + " bytes");
+    }
+    size[0] = width;
+    size[1] = height;
+  }
+
+  /** Returns the size of the file that holds an image. */
+  public static long getFileBytes(int width, int height) {
+    return HEADER_BYTES + (long) width * height * BYTES_PER_PIXEL;
+  }
+}
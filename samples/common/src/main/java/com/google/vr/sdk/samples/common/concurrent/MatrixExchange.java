@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes 4x4 matrices from one producer thread to one consumer thread without blocking either.
+ *
+ * <p>This is a triple buffer. The producer fills a back buffer and swaps it with the shared middle
+ * buffer. The consumer swaps the middle buffer with its front buffer when a new matrix is
+ * available. Neither thread ever touches the buffer owned by the other, so the consumer always
+ * reads a complete matrix, and it is the latest one that was published. Nothing is allocated after
+ * construction.
+ *
+ * <p>{@link #publish} must only be called by one thread at a time and {@link #read} must only be
+ * called by one thread at a time. These can be different threads.
+ */
+public final class MatrixExchange {
+  private static final int MATRIX_SIZE = 16;
+  // Set in middleState when the middle buffer holds a matrix the consumer hasn't seen.
+  private static final int DIRTY = 1 << 2;
+  private static final int INDEX_MASK = DIRTY - 1;
+
+  private final float[][] buffers = new float[3][MATRIX_SIZE];
+  // Index of the middle buffer, optionally combined with DIRTY.
+  private final AtomicInteger middleState = new AtomicInteger(2);
+  // Only accessed by the producer.
+  private int backIndex = 1;
+  // Only accessed by the consumer.
+  private int frontIndex = 0;
+
+  /** Creates an exchange that holds the identity matrix until the first call to publish. */
+  public MatrixExchange() {
+    for (float[] buffer : buffers) {
+      for (int i = 0; i < MATRIX_SIZE; i += 5) {
+        buffer[i] = 1;
+      }
+    }
+  }
+
+  /**
+   * Makes a copy of the matrix available to the consumer. Called on the producer thread.
+   *
+   * @param matrix Source array.
+   * @param offset Index of the first of the 16 elements in matrix.
+   */
+  public void publish(float[] matrix, int offset) {
+    System.arraycopy(matrix, offset, buffers[backIndex], 0, MATRIX_SIZE);
+    // The atomic swap makes the writes above visible to the consumer once it reads middleState.
+    backIndex = middleState.getAndSet(backIndex | DIRTY) & INDEX_MASK;
+  }
+
+  /**
+   * Copies the latest published matrix. Called on the consumer thread.
+   *
+   * @param matrix Destination array.
+   * @param offset Index of the first of the 16 elements in matrix.
+   * @return true if a new matrix was published since the previous call
+   */
+  public boolean read(float[] matrix, int offset) {
+    boolean updated = false;
+    if ((middleState.get() & DIRTY) != 0) {
+      frontIndex = middleState.getAndSet(frontIndex) & INDEX_MASK;
+      updated = true;
+    }
+    System.arraycopy(buffers[frontIndex], 0, matrix, offset, MATRIX_SIZE);
+    return updated;
+  }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.gl;
+
+/**
+ * Shadow copy of the GL state used by a scene's draw calls.
+ *
+ * <p>Each component of the scene sets all of the state it needs before drawing. Routing these
+ * calls through this class skips the ones that wouldn't change anything, e.g., re-enabling
+ * GL_BLEND for every object or disabling a vertex attribute array that the next object enables
+ * again.
+ *
+ * <p>The GVR SDK and {@code SurfaceTexture} modify GL state outside of this class, so the cache
+ * only trusts its own changes between {@link #glBeginFrame()} and {@link #glEndFrame()}. All
+ * methods must be called on the GL thread.
+ *
+ * <p>The calls that aren't skipped are passed to a {@link Gl}. On Android this forwards them to
+ * GLES20. Tests can substitute a fake that records them.
+ */
+public final class GlStateCache {
+  /** The GL ES 2.0 calls whose state is cached. All methods are called on the GL thread. */
+  public interface Gl {
+    void glUseProgram(int program);
+
+    void glActiveTexture(int texture);
+
+    void glBindTexture(int target, int texture);
+
+    void glEnable(int cap);
+
+    void glDisable(int cap);
+
+    void glBlendFunc(int srcFactor, int dstFactor);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glDisableVertexAttribArray(int index);
+  }
+
+  // Values of the GL ES 2.0 and OES_EGL_image_external enums used below. Callers pass the
+  // identical GLES20 & GLES11Ext constants.
+  private static final int GL_TEXTURE0 = 0x84C0;
+  private static final int GL_TEXTURE_2D = 0x0DE1;
+  private static final int GL_TEXTURE_EXTERNAL_OES = 0x8D65;
+  private static final int GL_ARRAY_BUFFER = 0x8892;
+  private static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+  private static final int GL_BLEND = 0x0BE2;
+  private static final int GL_CULL_FACE = 0x0B44;
+  private static final int GL_DEPTH_TEST = 0x0B71;
+  private static final int GL_SCISSOR_TEST = 0x0C11;
+
+  // Sentinel for state that needs to be reissued because it may have changed outside this class.
+  private static final int UNKNOWN = -1;
+  // The scenes only use a few texture units.
+  private static final int MAX_TEXTURE_UNITS = 4;
+  // Vertex attribute locations are tracked in an int mask.
+  private static final int MAX_VERTEX_ATTRIBS = 32;
+  // Capabilities passed to glEnable & glDisable that are tracked. Others are always issued.
+  private static final int[] TRACKED_CAPS = {
+      GL_BLEND, GL_CULL_FACE, GL_DEPTH_TEST, GL_SCISSOR_TEST
+  };
+  // Index of GL_BLEND in TRACKED_CAPS.
+  private static final int BLEND_INDEX = 0;
+
+  private final Gl gl;
+
+  private int program;
+  private int activeTextureUnit;
+  // Texture bound to GL_TEXTURE_2D & GL_TEXTURE_EXTERNAL_OES for each texture unit.
+  private final int[] texture2dBindings = new int[MAX_TEXTURE_UNITS];
+  private final int[] externalTextureBindings = new int[MAX_TEXTURE_UNITS];
+  // 1, 0 or UNKNOWN for each of TRACKED_CAPS.
+  private final int[] capStates = new int[TRACKED_CAPS.length];
+  private int blendSrcFactor;
+  private int blendDstFactor;
+  private int arrayBuffer;
+  private int elementArrayBuffer;
+  // Bit i is set if vertex attribute array i is enabled.
+  private int enabledVertexAttribArrays;
+
+  // Number of calls that were passed to GL & skipped during the current and previous frame.
+  private int issuedCalls;
+  private int skippedCalls;
+  private int lastFrameIssuedCalls;
+  private int lastFrameSkippedCalls;
+
+  /** @param gl Receives the calls that change state. */
+  public GlStateCache(Gl gl) {
+    this.gl = gl;
+    invalidate();
+  }
+
+  /**
+   * Starts tracking a new frame. This must be called before any other gl* methods in the frame
+   * since GL state may have been modified since the previous frame.
+   */
+  public void glBeginFrame() {
+    lastFrameIssuedCalls = issuedCalls;
+    lastFrameSkippedCalls = skippedCalls;
+    issuedCalls = 0;
+    skippedCalls = 0;
+    invalidate();
+  }
+
+  /**
+   * Restores the state that other GL users expect after the scene is drawn: no vertex attribute
+   * arrays enabled by the scene, no buffer objects bound and GL_BLEND disabled if the scene enabled
+   * it.
+   */
+  public void glEndFrame() {
+    if (capStates[BLEND_INDEX] == 1) {
+      setCap(GL_BLEND, false);
+    }
+    glEnableVertexAttribArrays(0);
+    glBindBuffer(GL_ARRAY_BUFFER, 0);
+    glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+  }
+
+  /** Forgets all cached state so the next call for each piece of state is passed to GL. */
+  public void invalidate() {
+    program = UNKNOWN;
+    activeTextureUnit = UNKNOWN;
+    invalidateTextureBindings();
+    for (int i = 0; i < capStates.length; ++i) {
+      capStates[i] = UNKNOWN;
+    }
+    blendSrcFactor = UNKNOWN;
+    blendDstFactor = UNKNOWN;
+    arrayBuffer = UNKNOWN;
+    elementArrayBuffer = UNKNOWN;
+    // The scene always disables the arrays it used at the end of the frame so assume the GL
+    // default. Arrays enabled by other code are left alone just like they were before this class.
+    enabledVertexAttribArrays = 0;
+  }
+
+  /**
+   * Forgets cached texture bindings. This must be called after {@code
+   * SurfaceTexture.updateTexImage()} since it binds the texture itself.
+   */
+  public void invalidateTextureBindings() {
+    activeTextureUnit = UNKNOWN;
+    for (int i = 0; i < MAX_TEXTURE_UNITS; ++i) {
+      texture2dBindings[i] = UNKNOWN;
+      externalTextureBindings[i] = UNKNOWN;
+    }
+  }
+
+  /** Cached version of glUseProgram. */
+  public void glUseProgram(int program) {
+    if (this.program == program) {
+      ++skippedCalls;
+      return;
+    }
+    gl.glUseProgram(program);
+    this.program = program;
+    ++issuedCalls;
+  }
+
+  /** Cached version of glActiveTexture. */
+  public void glActiveTexture(int texture) {
+    int unit = texture - GL_TEXTURE0;
+    if (unit == activeTextureUnit) {
+      ++skippedCalls;
+      return;
+    }
+    gl.glActiveTexture(texture);
+    activeTextureUnit = unit;
+    ++issuedCalls;
+  }
+
+  /** Cached version of glBindTexture. */
+  public void glBindTexture(int target, int texture) {
+    int[] bindings = null;
+    if (activeTextureUnit >= 0 && activeTextureUnit < MAX_TEXTURE_UNITS) {
+      if (target == GL_TEXTURE_2D) {
+        bindings = texture2dBindings;
+      } else if (target == GL_TEXTURE_EXTERNAL_OES) {
+        bindings = externalTextureBindings;
+      }
+    }
+
+    if (bindings != null && bindings[activeTextureUnit] == texture) {
+      ++skippedCalls;
+      return;
+    }
+    gl.glBindTexture(target, texture);
+    if (bindings != null) {
+      bindings[activeTextureUnit] = texture;
+    }
+    ++issuedCalls;
+  }
+
+  /** Cached version of glEnable. */
+  public void glEnable(int cap) {
+    setCap(cap, true);
+  }
+
+  /** Cached version of glDisable. */
+  public void glDisable(int cap) {
+    setCap(cap, false);
+  }
+
+  private void setCap(int cap, boolean enabled) {
+    int index = -1;
+    for (int i = 0; i < TRACKED_CAPS.length; ++i) {
+      if (TRACKED_CAPS[i] == cap) {
+        index = i;
+        break;
+      }
+    }
+
+    int state = enabled ? 1 : 0;
+    if (index >= 0 && capStates[index] == state) {
+      ++skippedCalls;
+      return;
+    }
+    if (enabled) {
+      gl.glEnable(cap);
+    } else {
+      gl.glDisable(cap);
+    }
+    if (index >= 0) {
+      capStates[index] = state;
+    }
+    ++issuedCalls;
+  }
+
+  /** Cached version of glBlendFunc. */
+  public void glBlendFunc(int srcFactor, int dstFactor) {
+    if (blendSrcFactor == srcFactor && blendDstFactor == dstFactor) {
+      ++skippedCalls;
+      return;
+    }
+    gl.glBlendFunc(srcFactor, dstFactor);
+    blendSrcFactor = srcFactor;
+    blendDstFactor = dstFactor;
+    ++issuedCalls;
+  }
+
+  /** Cached version of glBindBuffer for GL_ARRAY_BUFFER and GL_ELEMENT_ARRAY_BUFFER. */
+  public void glBindBuffer(int target, int buffer) {
+    if (target == GL_ARRAY_BUFFER) {
+      if (arrayBuffer == buffer) {
+        ++skippedCalls;
+        return;
+      }
+      arrayBuffer = buffer;
+    } else if (target == GL_ELEMENT_ARRAY_BUFFER) {
+      if (elementArrayBuffer == buffer) {
+        ++skippedCalls;
+        return;
+      }
+      elementArrayBuffer = buffer;
+    }
+    gl.glBindBuffer(target, buffer);
+    ++issuedCalls;
+  }
+
+  /**
+   * Enables exactly the vertex attribute arrays in the mask and disables the other arrays enabled
+   * through this class. This replaces the glEnableVertexAttribArray / glDisableVertexAttribArray
+   * pairs around each draw call.
+   *
+   * @param mask Bit i is set if attribute location i should be enabled.
+   */
+  public void glEnableVertexAttribArrays(int mask) {
+    int changed = enabledVertexAttribArrays ^ mask;
+    for (int i = 0; i < MAX_VERTEX_ATTRIBS; ++i) {
+      int bit = 1 << i;
+      if ((changed & bit) != 0) {
+        if ((mask & bit) != 0) {
+          gl.glEnableVertexAttribArray(i);
+        } else {
+          gl.glDisableVertexAttribArray(i);
+        }
+        ++issuedCalls;
+      } else if ((mask & bit) != 0) {
+        ++skippedCalls;
+      }
+    }
+    enabledVertexAttribArrays = mask;
+  }
+
+  /** Returns the mask bit for an attribute location, or 0 if the location is invalid. */
+  public static int attribBit(int location) {
+    return location >= 0 && location < MAX_VERTEX_ATTRIBS ? 1 << location : 0;
+  }
+
+  /** Number of state changes that were passed to GL in the previous frame. */
+  public int getLastFrameIssuedCalls() {
+    return lastFrameIssuedCalls;
+  }
+
+  /** Number of redundant state changes that were skipped in the previous frame. */
+  public int getLastFrameSkippedCalls() {
+    return lastFrameSkippedCalls;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.math;
+
+/**
+ * 4x4 matrix operations on float arrays.
+ *
+ * <p>Matrices use the same column-major layout as {@code android.opengl.Matrix} and these methods
+ * can be used in place of it. They are implemented in Java rather than through JNI, which is
+ * faster for 4x4 matrices, and the fused operations avoid temporary arrays when chaining
+ * transforms. No method allocates. Unless noted, the result must not overlap any input.
+ */
+public final class Mat4 {
+  private Mat4() {}
+
+  /** Sets m to the identity matrix. */
+  public static void setIdentity(float[] m, int offset) {
+    for (int i = 0; i < 16; ++i) {
+      m[offset + i] = (i % 5 == 0) ? 1 : 0;
+    }
+  }
+
+  /** result = lhs * rhs. This has the same signature as {@code Matrix.multiplyMM}. */
+  public static void multiply(
+      float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    for (int column = 0; column < 4; ++column) {
+      int c = rhsOffset + column * 4;
+      multiplyColumn(
+          result, resultOffset + column * 4, lhs, lhsOffset,
+          rhs[c], rhs[c + 1], rhs[c + 2], rhs[c + 3]);
+    }
+  }
+
+  /**
+   * result = a * b * c in a single pass. Each column of b * c is computed into locals and
+   * immediately multiplied by a, so no intermediate matrix is needed. This is typically used for
+   * projection * view * model.
+   */
+  public static void multiply(
+      float[] result, int resultOffset,
+      float[] a, int aOffset,
+      float[] b, int bOffset,
+      float[] c, int cOffset) {
+    for (int column = 0; column < 4; ++column) {
+      int i = cOffset + column * 4;
+      float c0 = c[i];
+      float c1 = c[i + 1];
+      float c2 = c[i + 2];
+      float c3 = c[i + 3];
+      float bc0 = b[bOffset] * c0 + b[bOffset + 4] * c1 + b[bOffset + 8] * c2
+          + b[bOffset + 12] * c3;
+      float bc1 = b[bOffset + 1] * c0 + b[bOffset + 5] * c1 + b[bOffset + 9] * c2
+          + b[bOffset + 13] * c3;
+      float bc2 = b[bOffset + 2] * c0 + b[bOffset + 6] * c1 + b[bOffset + 10] * c2
+          + b[bOffset + 14] * c3;
+      float bc3 = b[bOffset + 3] * c0 + b[bOffset + 7] * c1 + b[bOffset + 11] * c2
+          + b[bOffset + 15] * c3;
+      multiplyColumn(result, resultOffset + column * 4, a, aOffset, bc0, bc1, bc2, bc3);
+    }
+  }
+
+  /** Writes m * (x, y, z, w) to 4 elements of result. */
+  private static void multiplyColumn(
+      float[] result, int resultOffset, float[] m, int offset, float x, float y, float z, float w) {
+    result[resultOffset] =
+        m[offset] * x + m[offset + 4] * y + m[offset + 8] * z + m[offset + 12] * w;
+    result[resultOffset + 1] =
+        m[offset + 1] * x + m[offset + 5] * y + m[offset + 9] * z + m[offset + 13] * w;
+    result[resultOffset + 2] =
+        m[offset + 2] * x + m[offset + 6] * y + m[offset + 10] * z + m[offset + 14] * w;
+    result[resultOffset + 3] =
+        m[offset + 3] * x + m[offset + 7] * y + m[offset + 11] * z + m[offset + 15] * w;
+  }
+
+  /** result = m * v for a 4 element vector. This has the same signature as multiplyMV. */
+  public static void multiplyVector(
+      float[] result, int resultOffset, float[] m, int mOffset, float[] v, int vOffset) {
+    multiplyColumn(
+        result, resultOffset, m, mOffset,
+        v[vOffset], v[vOffset + 1], v[vOffset + 2], v[vOffset + 3]);
+  }
+
+  /**
+   * Transforms the origin of the coordinate frame described by model into the space of view, i.e.,
+   * result = view * model * (0, 0, 0, 1). This only needs model's translation column so it is much
+   * cheaper than multiplying the matrices.
+   */
+  public static void transformOrigin(
+      float[] result, int resultOffset, float[] view, int viewOffset, float[] model,
+      int modelOffset) {
+    multiplyVector(result, resultOffset, view, viewOffset, model, modelOffset + 12);
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.math;
+
+/**
+ * Quaternion operations on float arrays.
+ *
+ * <p>Quaternions are stored as 4 consecutive elements in x, y, z, w order. Rotation matrices use
+ * the column-major {@code android.opengl.Matrix} layout. No method allocates. Unless noted, the
+ * result must not overlap any input.
+ */
+public final class Quat {
+  // Below this angle, rotation vector conversions use the small-angle approximation.
+  private static final float EPSILON = 1e-6f;
+
+  private Quat() {}
+
+  /**
+   * Extracts the rotation from the upper 3x3 part of a 4x4 matrix using Shepperd's method. It
+   * divides by the largest of the four possible diagonal combinations so it is stable for any
+   * rotation and only needs one square root. The result is normalized if the matrix is orthonormal.
+   */
+  public static void fromRotationMatrix(float[] m, int offset, float[] q, int qOffset) {
+    float m00 = m[offset];
+    float m10 = m[offset + 1];
+    float m20 = m[offset + 2];
+    float m01 = m[offset + 4];
+    float m11 = m[offset + 5];
+    float m21 = m[offset + 6];
+    float m02 = m[offset + 8];
+    float m12 = m[offset + 9];
+    float m22 = m[offset + 10];
+
+    float trace = m00 + m11 + m22;
+    if (trace >= m00 && trace >= m11 && trace >= m22) {
+      float s = 2 * (float) Math.sqrt(1 + trace);
+      float inverse = 1 / s;
+      q[qOffset] = (m21 - m12) * inverse;
+      q[qOffset + 1] = (m02 - m20) * inverse;
+      q[qOffset + 2] = (m10 - m01) * inverse;
+      q[qOffset + 3] = s / 4;
+    } else if (m00 >= m11 && m00 >= m22) {
+      float s = 2 * (float) Math.sqrt(1 + m00 - m11 - m22);
+      float inverse = 1 / s;
+      q[qOffset] = s / 4;
+      q[qOffset + 1] = (m01 + m10) * inverse;
+      q[qOffset + 2] = (m02 + m20) * inverse;
+      q[qOffset + 3] = (m21 - m12) * inverse;
+    } else if (m11 >= m22) {
+      float s = 2 * (float) Math.sqrt(1 + m11 - m00 - m22);
+      float inverse = 1 / s;
+      q[qOffset] = (m01 + m10) * inverse;
+      q[qOffset + 1] = s / 4;
+      q[qOffset + 2] = (m12 + m21) * inverse;
+      q[qOffset + 3] = (m02 - m20) * inverse;
+    } else {
+      float s = 2 * (float) Math.sqrt(1 + m22 - m00 - m11);
+      float inverse = 1 / s;
+      q[qOffset] = (m02 + m20) * inverse;
+      q[qOffset + 1] = (m12 + m21) * inverse;
+      q[qOffset + 2] = s / 4;
+      q[qOffset + 3] = (m10 - m01) * inverse;
+    }
+  }
+
+  /** Writes the rotation as a 4x4 matrix with no translation. q must be normalized. */
+  public static void toRotationMatrix(float[] q, int qOffset, float[] m, int offset) {
+    float x = q[qOffset];
+    float y = q[qOffset + 1];
+    float z = q[qOffset + 2];
+    float w = q[qOffset + 3];
+    m[offset] = 1 - 2 * (y * y + z * z);
+    m[offset + 1] = 2 * (x * y + w * z);
+    m[offset + 2] = 2 * (x * z - w * y);
+    m[offset + 3] = 0;
+    m[offset + 4] = 2 * (x * y - w * z);
+    m[offset + 5] = 1 - 2 * (x * x + z * z);
+    m[offset + 6] = 2 * (y * z + w * x);
+    m[offset + 7] = 0;
+    m[offset + 8] = 2 * (x * z + w * y);
+    m[offset + 9] = 2 * (y * z - w * x);
+    m[offset + 10] = 1 - 2 * (x * x + y * y);
+    m[offset + 11] = 0;
+    m[offset + 12] = 0;
+    m[offset + 13] = 0;
+    m[offset + 14] = 0;
+    m[offset + 15] = 1;
+  }
+
+  /** result = a * b, i.e., the rotation b followed by the rotation a. */
+  public static void multiply(
+      float[] result, int resultOffset, float[] a, int aOffset, float[] b, int bOffset) {
+    float ax = a[aOffset];
+    float ay = a[aOffset + 1];
+    float az = a[aOffset + 2];
+    float aw = a[aOffset + 3];
+    float bx = b[bOffset];
+    float by = b[bOffset + 1];
+    float bz = b[bOffset + 2];
+    float bw = b[bOffset + 3];
+    result[resultOffset] = aw * bx + ax * bw + ay * bz - az * by;
+    result[resultOffset + 1] = aw * by - ax * bz + ay * bw + az * bx;
+    result[resultOffset + 2] = aw * bz + ax * by - ay * bx + az * bw;
+    result[resultOffset + 3] = aw * bw - ax * bx - ay * by - az * bz;
+  }
+
+  /** result = a * conjugate(b), i.e., the rotation that takes b to a. */
+  public static void multiplyConjugate(
+      float[] result, int resultOffset, float[] a, int aOffset, float[] b, int bOffset) {
+    float ax = a[aOffset];
+    float ay = a[aOffset + 1];
+    float az = a[aOffset + 2];
+    float aw = a[aOffset + 3];
+    float bx = -b[bOffset];
+    float by = -b[bOffset + 1];
+    float bz = -b[bOffset + 2];
+    float bw = b[bOffset + 3];
+    result[resultOffset] = aw * bx + ax * bw + ay * bz - az * by;
+    result[resultOffset + 1] = aw * by - ax * bz + ay * bw + az * bx;
+    result[resultOffset + 2] = aw * bz + ax * by - ay * bx + az * bw;
+    result[resultOffset + 3] = aw * bw - ax * bx - ay * by - az * bz;
+  }
+
+  /** Returns the 4D dot product. Its sign tells whether a and b are in the same hemisphere. */
+  public static float dot(float[] a, int aOffset, float[] b, int bOffset) {
+    return a[aOffset] * b[bOffset] + a[aOffset + 1] * b[bOffset + 1]
+        + a[aOffset + 2] * b[bOffset + 2] + a[aOffset + 3] * b[bOffset + 3];
+  }
+
+  /** Negates q in place. q and -q represent the same rotation. */
+  public static void negate(float[] q, int offset) {
+    for (int i = 0; i < 4; ++i) {
+      q[offset + i] = -q[offset + i];
+    }
+  }
+
+  /**
+   * Converts a rotation vector, whose direction is the axis and whose length is the angle in
+   * radians, to a quaternion.
+   */
+  public static void fromRotationVector(float x, float y, float z, float[] q, int qOffset) {
+    float angle = (float) Math.sqrt(x * x + y * y + z * z);
+    if (angle < EPSILON) {
+      q[qOffset] = x / 2;
+      q[qOffset + 1] = y / 2;
+      q[qOffset + 2] = z / 2;
+      q[qOffset + 3] = 1;
+      return;
+    }
+    float scale = (float) Math.sin(angle / 2) / angle;
+    q[qOffset] = x * scale;
+    q[qOffset + 1] = y * scale;
+    q[qOffset + 2] = z * scale;
+    q[qOffset + 3] = (float) Math.cos(angle / 2);
+  }
+
+  /**
+   * Converts a normalized quaternion to a rotation vector using the shorter of the two equivalent
+   * rotations. The result may overlap q.
+   */
+  public static void toRotationVector(float[] q, int qOffset, float[] v, int vOffset) {
+    float x = q[qOffset];
+    float y = q[qOffset + 1];
+    float z = q[qOffset + 2];
+    float w = q[qOffset + 3];
+    if (w < 0) {
+      x = -x;
+      y = -y;
+      z = -z;
+      w = -w;
+    }
+    float sinHalfAngle = (float) Math.sqrt(x * x + y * y + z * z);
+    float scale;
+    if (sinHalfAngle < EPSILON) {
+      // For small angles, angle / sin(angle / 2) ~= 2.
+      scale = 2;
+    } else {
+      scale = 2 * (float) Math.atan2(sinHalfAngle, w) / sinHalfAngle;
+    }
+    v[vOffset] = x * scale;
+    v[vOffset + 1] = y * scale;
+    v[vOffset + 2] = z * scale;
+  }
+}
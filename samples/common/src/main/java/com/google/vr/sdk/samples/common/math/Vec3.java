@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.math;
+
+/**
+ * 3D vector operations on float arrays. Vectors are stored as 3 consecutive elements. No method
+ * allocates.
+ */
+public final class Vec3 {
+  private Vec3() {}
+
+  /** Returns the dot product of a and b. */
+  public static float dot(float[] a, int aOffset, float[] b, int bOffset) {
+    return a[aOffset] * b[bOffset] + a[aOffset + 1] * b[bOffset + 1]
+        + a[aOffset + 2] * b[bOffset + 2];
+  }
+
+  /** result = cross(a, b). The result must not overlap a or b. */
+  public static void cross(
+      float[] result, int resultOffset, float[] a, int aOffset, float[] b, int bOffset) {
+    result[resultOffset] = a[aOffset + 1] * b[bOffset + 2] - a[aOffset + 2] * b[bOffset + 1];
+    result[resultOffset + 1] = a[aOffset + 2] * b[bOffset] - a[aOffset] * b[bOffset + 2];
+    result[resultOffset + 2] = a[aOffset] * b[bOffset + 1] - a[aOffset + 1] * b[bOffset];
+  }
+
+  /** Returns the length of v. */
+  public static float length(float[] v, int offset) {
+    return (float) Math.sqrt(dot(v, offset, v, offset));
+  }
+
+  /** Scales v to unit length in place. Zero vectors are left unchanged. */
+  public static void normalize(float[] v, int offset) {
+    float length = length(v, offset);
+    if (length > 0) {
+      v[offset] /= length;
+      v[offset + 1] /= length;
+      v[offset + 2] /= length;
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pose;
+
+import com.google.vr.sdk.samples.common.math.Quat;
+
+/**
+ * Predicts where the head will be pointing when the frame being rendered reaches the display.
+ *
+ * <p>This has two parts:
+ *
+ * <ul>
+ *   <li>The prediction horizon is derived from measured frame timing. {@link #onFrameStart} and
+ *       {@link #onFrameSubmitted} track how long the app takes to render a frame and how often
+ *       frames are produced. The horizon is the expected remaining render time plus a configurable
+ *       number of frames spent in the display pipeline after the frame is submitted.
+ *   <li>Head rotations passed to {@link #addPose} are kept in a short history which is
+ *       extrapolated by {@link #predict} using one of the EXTRAPOLATE_* models.
+ * </ul>
+ *
+ * <p>Rotations are passed as 4x4 column-major matrices in the {@code android.opengl.Matrix}
+ * format. Any translation is ignored. This class doesn't allocate after construction and isn't
+ * thread-safe.
+ */
+public final class PosePredictor {
+  /**
+   * {@link #predict} returns the latest pose. Clients can still use
+   * {@link #getPredictionHorizonNanos()} with their platform's own predictor.
+   */
+  public static final int EXTRAPOLATE_NONE = 0;
+  /** Assumes the head keeps rotating at the angular velocity of the last two poses. */
+  public static final int EXTRAPOLATE_CONSTANT_VELOCITY = 1;
+  /** Also extrapolates the change in angular velocity over the last three poses. */
+  public static final int EXTRAPOLATE_CONSTANT_ACCELERATION = 2;
+
+  // Used before any frame timing is available. This matches the SDK samples' historical offset.
+  private static final long DEFAULT_HORIZON_NANOS = 50000000L;
+  private static final long DEFAULT_MAX_HORIZON_NANOS = 100000000L;
+  // After submission, a frame typically waits for the compositor's next vsync and is then scanned
+  // out over the following refresh.
+  private static final float DEFAULT_PIPELINE_FRAMES = 2.f;
+  // Weight of the newest measurement in the exponential moving averages of the frame timing.
+  private static final float SMOOTHING = 0.1f;
+  // Poses that are closer together than this are merged since their velocity would be too noisy.
+  private static final long MIN_POSE_INTERVAL_NANOS = 500000L;
+  private static final float NANOS_PER_SECOND = 1e9f;
+  private static final int HISTORY_SIZE = 3;
+
+  private int model = EXTRAPOLATE_NONE;
+  private float pipelineFrames = DEFAULT_PIPELINE_FRAMES;
+  private long maxHorizonNanos = DEFAULT_MAX_HORIZON_NANOS;
+
+  // Frame timing. A value <= 0 means no measurement is available yet.
+  private long frameStartNanos;
+  private float frameIntervalNanos;
+  private float renderNanos;
+
+  // Ring buffer of the latest poses. Quaternions are stored as x, y, z, w.
+  private final long[] poseTimes = new long[HISTORY_SIZE];
+  private final float[] poses = new float[HISTORY_SIZE * 4];
+  private int newestPose = -1;
+  private int poseCount;
+
+  // Scratch space for predict().
+  private final float[] velocity = new float[3];
+  private final float[] previousVelocity = new float[3];
+  private final float[] rotation = new float[4];
+  private final float[] predicted = new float[4];
+
+  /** Sets the EXTRAPOLATE_* model used by {@link #predict}. */
+  public void setModel(int model) {
+    if (model < EXTRAPOLATE_NONE || model > EXTRAPOLATE_CONSTANT_ACCELERATION) {
+      throw new IllegalArgumentException("Unknown extrapolation model " + model);
+    }
+    this.model = model;
+  }
+
+  /**
+   * Sets the number of frame intervals between submitting a frame and it being displayed. This
+   * depends on the device's compositor.
+   */
+  public void setPipelineFrames(float pipelineFrames) {
+    this.pipelineFrames = Math.max(0, pipelineFrames);
+  }
+
+  /** Limits how far ahead poses are predicted. Large horizons amplify tracking noise. */
+  public void setMaxHorizonNanos(long maxHorizonNanos) {
+    this.maxHorizonNanos = maxHorizonNanos;
+  }
+
+  /** Discards the timing measurements and pose history, e.g., after tracking is recentered. */
+  public void reset() {
+    frameStartNanos = 0;
+    frameIntervalNanos = 0;
+    renderNanos = 0;
+    newestPose = -1;
+    poseCount = 0;
+  }
+
+  /** Records the time the app started rendering a frame. */
+  public void onFrameStart(long timeNanos) {
+    if (frameStartNanos > 0 && timeNanos > frameStartNanos) {
+      frameIntervalNanos = smooth(frameIntervalNanos, timeNanos - frameStartNanos);
+    }
+    frameStartNanos = timeNanos;
+  }
+
+  /** Records the time the frame started by the last {@link #onFrameStart} was submitted. */
+  public void onFrameSubmitted(long timeNanos) {
+    if (frameStartNanos > 0 && timeNanos >= frameStartNanos) {
+      renderNanos = smooth(renderNanos, timeNanos - frameStartNanos);
+    }
+  }
+
+  private static float smooth(float average, long sample) {
+    return average <= 0 ? sample : average + SMOOTHING * (sample - average);
+  }
+
+  /**
+   * Returns how far in the future the current frame is expected to be displayed, relative to the
+   * last call to {@link #onFrameStart}.
+   */
+  public long getPredictionHorizonNanos() {
+    if (frameIntervalNanos <= 0) {
+      return Math.min(DEFAULT_HORIZON_NANOS, maxHorizonNanos);
+    }
+    long horizon = (long) (renderNanos + pipelineFrames * frameIntervalNanos);
+    return Math.max(0, Math.min(horizon, maxHorizonNanos));
+  }
+
+  /**
+   * Adds a measured head rotation to the history.
+   *
+   * @param timeNanos Time the rotation was measured. Must not be earlier than the previous pose.
+   * @param rotationMatrix 4x4 rotation matrix.
+   * @param offset Index of the first element of the matrix.
+   */
+  public void addPose(long timeNanos, float[] rotationMatrix, int offset) {
+    int index;
+    if (poseCount > 0 && timeNanos - poseTimes[newestPose] < MIN_POSE_INTERVAL_NANOS) {
+      // Replace the newest pose rather than computing a velocity over a tiny interval.
+      index = newestPose;
+    } else {
+      index = (newestPose + 1) % HISTORY_SIZE;
+      poseCount = Math.min(poseCount + 1, HISTORY_SIZE);
+    }
+
+    Quat.fromRotationMatrix(rotationMatrix, offset, poses, index * 4);
+    if (poseCount > 1) {
+      // q and -q are the same rotation. Keep consecutive samples in the same hemisphere so the
+      // difference between them is the short rotation. A replaced pose is compared with the one
+      // before it too.
+      int previous = (index + HISTORY_SIZE - 1) % HISTORY_SIZE;
+      if (Quat.dot(poses, previous * 4, poses, index * 4) < 0) {
+        Quat.negate(poses, index * 4);
+      }
+    }
+    poseTimes[index] = timeNanos;
+    newestPose = index;
+  }
+
+  /**
+   * Extrapolates the pose history to the given time.
+   *
+   * @param timeNanos Time the pose should be predicted for, typically the last frame start plus
+   *     {@link #getPredictionHorizonNanos()}.
+   * @param rotationMatrix Receives the predicted 4x4 rotation matrix.
+   * @param offset Index of the first element of the matrix.
+   * @return false if there is no pose history, in which case rotationMatrix is unchanged
+   */
+  public boolean predict(long timeNanos, float[] rotationMatrix, int offset) {
+    if (poseCount == 0) {
+      return false;
+    }
+
+    int newest = newestPose * 4;
+    float horizonSeconds = (timeNanos - poseTimes[newestPose]) / NANOS_PER_SECOND;
+    if (model == EXTRAPOLATE_NONE || poseCount < 2 || horizonSeconds <= 0) {
+      Quat.toRotationMatrix(poses, newest, rotationMatrix, offset);
+      return true;
+    }
+
+    // The rotation vector that is applied to the newest pose.
+    int previous = (newestPose + HISTORY_SIZE - 1) % HISTORY_SIZE;
+    angularVelocity(previous, newestPose, velocity);
+    if (model == EXTRAPOLATE_CONSTANT_ACCELERATION && poseCount == HISTORY_SIZE) {
+      int oldest = (newestPose + 1) % HISTORY_SIZE;
+      angularVelocity(oldest, previous, previousVelocity);
+      // Each velocity is the average over its interval so they are measured at the midpoints.
+      float newestInterval = (poseTimes[newestPose] - poseTimes[previous]) / NANOS_PER_SECOND;
+      float midpointInterval = (poseTimes[newestPose] - poseTimes[oldest]) / 2 / NANOS_PER_SECOND;
+      for (int i = 0; i < 3; ++i) {
+        float acceleration = (velocity[i] - previousVelocity[i]) / midpointInterval;
+        // Velocity at the newest pose, then integrate over the horizon.
+        float currentVelocity = velocity[i] + acceleration * newestInterval / 2;
+        velocity[i] = currentVelocity + acceleration * horizonSeconds / 2;
+      }
+    }
+
+    Quat.fromRotationVector(
+        velocity[0] * horizonSeconds,
+        velocity[1] * horizonSeconds,
+        velocity[2] * horizonSeconds,
+        rotation, 0);
+    Quat.multiply(predicted, 0, rotation, 0, poses, newest);
+    Quat.toRotationMatrix(predicted, 0, rotationMatrix, offset);
+    return true;
+  }
+
+  /**
+   * Computes the average angular velocity in radians per second between two poses in the history
+   * as a rotation vector. The rotation is applied on the left, i.e., to = delta * from.
+   */
+  private void angularVelocity(int from, int to, float[] out) {
+    Quat.multiplyConjugate(rotation, 0, poses, to * 4, poses, from * 4);
+    Quat.toRotationVector(rotation, 0, out, 0);
+    float seconds = (poseTimes[to] - poseTimes[from]) / NANOS_PER_SECOND;
+    for (int i = 0; i < 3; ++i) {
+      out[i] /= seconds;
+    }
+  }
+}
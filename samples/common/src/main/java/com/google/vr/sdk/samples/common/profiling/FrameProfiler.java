@@ -0,0 +1,280 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.profiling;
+
+/**
+ * Measures the CPU time a renderer spends on each frame and in each stage of it.
+ *
+ * <p>A renderer calls {@link #beginFrame} when it starts a frame and {@link #endFrame} when it is
+ * done. Inside the frame, {@link #beginStage} and {@link #endStage} bracket the STAGE_* parts of
+ * it, e.g., {@code SwapChain.acquireFrame}, the scene draw and {@code Frame.submit}. A stage can be
+ * entered several times per frame, e.g., once per eye, and its durations are summed. The interval
+ * between frame starts is compared against the display's vsync period to count missed vsyncs.
+ *
+ * <p>Results are kept in {@link Histogram}s which can be queried directly or formatted with
+ * {@link #dump}. Renderers normally call {@link #maybeLog} after each frame to periodically write
+ * the summary to a {@link Logger} and start a new measurement window. Nothing is allocated after
+ * construction unless the summary is logged, so the profiler can stay enabled in production
+ * builds. This class is not thread-safe; it's normally only used on the GL thread.
+ */
+public final class FrameProfiler {
+  /** Source of monotonic timestamps. Tests can substitute a fake clock. */
+  public interface Clock {
+    /** Returns the current time in nanoseconds. */
+    long nanoTime();
+  }
+
+  /** Destination of the summaries written by {@link #maybeLog}, e.g., the platform's log. */
+  public interface Logger {
+    /** Returns false if summaries would be discarded. This avoids formatting them. */
+    boolean isLoggable();
+
+    /** Writes a summary formatted by {@link #dump}. */
+    void log(String summary);
+  }
+
+  /** {@link System#nanoTime()}. */
+  public static final Clock SYSTEM_CLOCK =
+      new Clock() {
+        @Override
+        public long nanoTime() {
+          return System.nanoTime();
+        }
+      };
+
+  /** Waiting for a buffer to render into, e.g., {@code SwapChain.acquireFrame}. */
+  public static final int STAGE_ACQUIRE = 0;
+  /** Issuing the GL commands for the scene. */
+  public static final int STAGE_DRAW = 1;
+  /** Handing the frame to the compositor, e.g., {@code Frame.submit}. */
+  public static final int STAGE_SUBMIT = 2;
+
+  private static final int STAGE_COUNT = 3;
+  private static final String[] STAGE_NAMES = {"acquire", "draw", "submit"};
+  private static final long DEFAULT_VSYNC_PERIOD_NANOS = 16666667L;
+  // Length of the measurement windows summarized by maybeLog.
+  private static final long LOG_INTERVAL_NANOS = 10000000000L;
+  // 0.25 ms resolution up to 50 ms. Anything slower has already missed several vsyncs.
+  private static final long BUCKET_WIDTH_NANOS = 250000L;
+  private static final int BUCKET_COUNT = 200;
+
+  private final Clock clock;
+  private long vsyncPeriodNanos = DEFAULT_VSYNC_PERIOD_NANOS;
+
+  private final Histogram frameTime = new Histogram(BUCKET_WIDTH_NANOS, BUCKET_COUNT);
+  private final Histogram frameInterval = new Histogram(BUCKET_WIDTH_NANOS, BUCKET_COUNT);
+  private final Histogram[] stageTimes = new Histogram[STAGE_COUNT];
+  private int missedVsyncs;
+  private long windowStartNanos;
+  private GpuTimer gpuTimer;
+  // Reused by maybeLog.
+  private final StringBuilder logBuilder = new StringBuilder();
+
+  // State of the current frame.
+  private boolean inFrame;
+  private long frameStartNanos;
+  private long previousFrameStartNanos;
+  private final long[] frameStageNanos = new long[STAGE_COUNT];
+  // Bit mask of the stages entered during the current frame.
+  private int frameStages;
+  private int currentStage = -1;
+  private long stageStartNanos;
+
+  /** Creates a profiler that uses {@link #SYSTEM_CLOCK}. */
+  public FrameProfiler() {
+    this(SYSTEM_CLOCK);
+  }
+
+  public FrameProfiler(Clock clock) {
+    this.clock = clock;
+    for (int i = 0; i < STAGE_COUNT; ++i) {
+      stageTimes[i] = new Histogram(BUCKET_WIDTH_NANOS, BUCKET_COUNT);
+    }
+    windowStartNanos = clock.nanoTime();
+  }
+
+  /**
+   * Sets the display's refresh period which is used to detect missed vsyncs. Defaults to 60 Hz.
+   */
+  public void setVsyncPeriodNanos(long vsyncPeriodNanos) {
+    if (vsyncPeriodNanos <= 0) {
+      throw new IllegalArgumentException("Invalid vsync period " + vsyncPeriodNanos);
+    }
+    this.vsyncPeriodNanos = vsyncPeriodNanos;
+  }
+
+  /**
+   * Includes the GPU pass timings of the given timer in {@link #dump} and {@link #reset}. The
+   * renderer still drives the timer itself.
+   */
+  public void setGpuTimer(GpuTimer gpuTimer) {
+    this.gpuTimer = gpuTimer;
+  }
+
+  /** Discards all measurements and starts a new measurement window. */
+  public void reset() {
+    if (gpuTimer != null) {
+      gpuTimer.reset();
+    }
+    frameTime.clear();
+    frameInterval.clear();
+    for (Histogram histogram : stageTimes) {
+      histogram.clear();
+    }
+    missedVsyncs = 0;
+    windowStartNanos = clock.nanoTime();
+    // Don't count the time spent before the reset as an interval.
+    previousFrameStartNanos = 0;
+  }
+
+  /** Starts measuring a frame. */
+  public void beginFrame() {
+    long now = clock.nanoTime();
+    if (previousFrameStartNanos != 0) {
+      long interval = now - previousFrameStartNanos;
+      frameInterval.add(interval);
+      // A frame that arrives more than half a period late has missed at least one vsync.
+      long periods = (interval + vsyncPeriodNanos / 2) / vsyncPeriodNanos;
+      if (periods > 1) {
+        missedVsyncs += (int) (periods - 1);
+      }
+    }
+    previousFrameStartNanos = now;
+    frameStartNanos = now;
+    for (int i = 0; i < STAGE_COUNT; ++i) {
+      frameStageNanos[i] = 0;
+    }
+    frameStages = 0;
+    currentStage = -1;
+    inFrame = true;
+  }
+
+  /** Starts measuring one of the STAGE_* parts of the frame. This ends the current stage. */
+  public void beginStage(int stage) {
+    if (!inFrame) {
+      return;
+    }
+    long now = clock.nanoTime();
+    if (currentStage >= 0) {
+      frameStageNanos[currentStage] += now - stageStartNanos;
+    }
+    currentStage = stage;
+    frameStages |= 1 << stage;
+    stageStartNanos = now;
+  }
+
+  /** Stops measuring the current stage. */
+  public void endStage() {
+    if (currentStage < 0) {
+      return;
+    }
+    frameStageNanos[currentStage] += clock.nanoTime() - stageStartNanos;
+    currentStage = -1;
+  }
+
+  /** Finishes the frame and records its measurements. This ends the current stage. */
+  public void endFrame() {
+    if (!inFrame) {
+      return;
+    }
+    endStage();
+    frameTime.add(clock.nanoTime() - frameStartNanos);
+    for (int i = 0; i < STAGE_COUNT; ++i) {
+      if ((frameStages & (1 << i)) != 0) {
+        stageTimes[i].add(frameStageNanos[i]);
+      }
+    }
+    inFrame = false;
+  }
+
+  /** Returns the CPU time from {@link #beginFrame} to {@link #endFrame}. */
+  public Histogram getFrameTimeHistogram() {
+    return frameTime;
+  }
+
+  /** Returns the time between consecutive calls to {@link #beginFrame}. */
+  public Histogram getFrameIntervalHistogram() {
+    return frameInterval;
+  }
+
+  /** Returns the time spent in one of the STAGE_* stages per frame. */
+  public Histogram getStageHistogram(int stage) {
+    return stageTimes[stage];
+  }
+
+  /** Returns the number of completed frames since the last reset. */
+  public int getFrameCount() {
+    return frameTime.getCount();
+  }
+
+  /** Returns the number of vsyncs that passed without a new frame since the last reset. */
+  public int getMissedVsyncCount() {
+    return missedVsyncs;
+  }
+
+  /** Returns true if at least intervalNanos have passed since the last reset. */
+  public boolean isDumpDue(long intervalNanos) {
+    return clock.nanoTime() - windowStartNanos >= intervalNanos;
+  }
+
+  /**
+   * Writes the summary of the current measurement window to the logger and starts a new window
+   * once the window is 10 seconds long. This is called after {@link #endFrame}. The window is
+   * restarted even if the logger discards the summary so that logging can be enabled at any time.
+   *
+   * @return true if a new measurement window was started
+   */
+  public boolean maybeLog(Logger logger) {
+    if (!isDumpDue(LOG_INTERVAL_NANOS)) {
+      return false;
+    }
+    if (logger.isLoggable()) {
+      logBuilder.setLength(0);
+      logger.log(dump(logBuilder).toString());
+    }
+    reset();
+    return true;
+  }
+
+  /**
+   * Appends a human-readable summary of the measurements to the builder. Durations are in
+   * milliseconds.
+   */
+  public StringBuilder dump(StringBuilder builder) {
+    builder
+        .append("frames=")
+        .append(getFrameCount())
+        .append(" missedVsyncs=")
+        .append(missedVsyncs);
+    appendHistogram(builder, "frame", frameTime);
+    appendHistogram(builder, "interval", frameInterval);
+    for (int i = 0; i < STAGE_COUNT; ++i) {
+      if (stageTimes[i].getCount() > 0) {
+        appendHistogram(builder, STAGE_NAMES[i], stageTimes[i]);
+      }
+    }
+    if (gpuTimer != null) {
+      gpuTimer.dump(builder);
+    }
+    return builder;
+  }
+
+  private static void appendHistogram(StringBuilder builder, String name, Histogram histogram) {
+    builder.append("\n  ").append(name).append(": ");
+    histogram.dump(builder);
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.profiling;
+
+/**
+ * Measures the GPU time of the render passes in a frame using asynchronous timer queries.
+ *
+ * <p>A renderer brackets each pass with {@link #glBeginPass} and {@link #glEndPass} between
+ * {@link #glBeginFrame} and {@link #glEndFrame}. A pass can run several times per frame, e.g.,
+ * once per eye, and its times are summed. Query results are only read once the GPU reports that
+ * they are available, which is typically a few frames later. The timer never waits for them. If
+ * all of the queries for the oldest in-flight frame are still pending when a new frame starts, the
+ * new frame isn't timed.
+ *
+ * <p>The GPU commands are issued through a {@link QueryProvider} so the scheduling can be tested
+ * without a GL context. When the provider reports that timer queries aren't supported, every
+ * method is a no-op. Nothing is allocated after {@link #glInit}. All methods must be called on
+ * the GL thread.
+ */
+public final class GpuTimer {
+  /** Issues the GL timer query commands, e.g., using EXT_disjoint_timer_query. */
+  public interface QueryProvider {
+    /** Returns true if timer queries can be used with the current GL context. */
+    boolean isSupported();
+
+    /** Creates queries.length query objects. */
+    void createQueries(int[] queries);
+
+    /** Deletes query objects created by {@link #createQueries}. */
+    void deleteQueries(int[] queries);
+
+    /** Starts measuring elapsed GPU time with the given query. Queries can't be nested. */
+    void beginQuery(int query);
+
+    /** Stops the query started by the last {@link #beginQuery}. */
+    void endQuery();
+
+    /** Returns true if the query's result can be read without blocking. */
+    boolean isResultAvailable(int query);
+
+    /** Returns the elapsed time measured by the query. */
+    long getResultNanos(int query);
+
+    /**
+     * Returns true if an event such as a GPU frequency change occurred since the previous call
+     * which makes the results of the queries in flight meaningless.
+     */
+    boolean checkDisjoint();
+  }
+
+  // Results are usually available after 2 or 3 frames.
+  private static final int FRAMES_IN_FLIGHT = 4;
+  // 0.1 ms resolution up to 20 ms.
+  private static final long BUCKET_WIDTH_NANOS = 100000L;
+  private static final int BUCKET_COUNT = 200;
+
+  private final QueryProvider provider;
+  private final String[] passNames;
+  private final Histogram[] passTimes;
+  private final int maxQueriesPerFrame;
+
+  private boolean supported;
+  // queries[slot * maxQueriesPerFrame + i] is the i-th query of the frame in that slot.
+  private int[] queries;
+  private int[] queryPasses;
+  private final int[] slotQueryCounts = new int[FRAMES_IN_FLIGHT];
+  private final boolean[] slotPending = new boolean[FRAMES_IN_FLIGHT];
+  // Cleared when a disjoint event happens while the frame is in flight.
+  private final boolean[] slotValid = new boolean[FRAMES_IN_FLIGHT];
+  private final long[] framePassNanos;
+  private int oldestSlot;
+  private int currentSlot = -1;
+  private int activeQuery = -1;
+  private int skippedFrames;
+  private int disjointFrames;
+
+  /**
+   * @param provider Issues the GL commands.
+   * @param passNames Names of the passes used in {@link #dump}. Pass ids are indices into this.
+   * @param maxQueriesPerFrame Maximum number of {@link #glBeginPass} calls per frame. Extra passes
+   *     in a frame are not timed.
+   */
+  public GpuTimer(QueryProvider provider, String[] passNames, int maxQueriesPerFrame) {
+    this.provider = provider;
+    this.passNames = passNames.clone();
+    this.maxQueriesPerFrame = maxQueriesPerFrame;
+    passTimes = new Histogram[passNames.length];
+    for (int i = 0; i < passTimes.length; ++i) {
+      passTimes[i] = new Histogram(BUCKET_WIDTH_NANOS, BUCKET_COUNT);
+    }
+    framePassNanos = new long[passNames.length];
+  }
+
+  /** Creates the query objects. Must be called after the GL context is created. */
+  public void glInit() {
+    supported = provider.isSupported();
+    if (!supported) {
+      return;
+    }
+    queries = new int[FRAMES_IN_FLIGHT * maxQueriesPerFrame];
+    queryPasses = new int[queries.length];
+    provider.createQueries(queries);
+    for (int i = 0; i < FRAMES_IN_FLIGHT; ++i) {
+      slotPending[i] = false;
+      slotQueryCounts[i] = 0;
+    }
+    oldestSlot = 0;
+    currentSlot = -1;
+    activeQuery = -1;
+    // Drop any stale disjoint state from before the queries existed.
+    provider.checkDisjoint();
+  }
+
+  /** Deletes the query objects. */
+  public void glShutdown() {
+    if (supported) {
+      provider.deleteQueries(queries);
+      supported = false;
+    }
+  }
+
+  /** Returns false if the GL context doesn't support timer queries. Valid after glInit. */
+  public boolean isSupported() {
+    return supported;
+  }
+
+  /** Collects any finished results and starts timing a new frame if a query slot is free. */
+  public void glBeginFrame() {
+    if (!supported) {
+      return;
+    }
+    glCollectResults();
+    int slot = (oldestSlot + pendingSlotCount()) % FRAMES_IN_FLIGHT;
+    if (slotPending[slot]) {
+      // Every slot is still waiting for the GPU.
+      ++skippedFrames;
+      currentSlot = -1;
+      return;
+    }
+    currentSlot = slot;
+    slotQueryCounts[slot] = 0;
+    slotValid[slot] = true;
+  }
+
+  /** Starts timing the given pass. This ends the current pass. */
+  public void glBeginPass(int pass) {
+    if (currentSlot < 0) {
+      return;
+    }
+    glEndPass();
+    int count = slotQueryCounts[currentSlot];
+    if (count == maxQueriesPerFrame) {
+      return;
+    }
+    int index = currentSlot * maxQueriesPerFrame + count;
+    queryPasses[index] = pass;
+    provider.beginQuery(queries[index]);
+    activeQuery = index;
+    slotQueryCounts[currentSlot] = count + 1;
+  }
+
+  /** Stops timing the current pass. */
+  public void glEndPass() {
+    if (activeQuery >= 0) {
+      provider.endQuery();
+      activeQuery = -1;
+    }
+  }
+
+  /** Finishes the frame. Its results are collected by a later {@link #glBeginFrame}. */
+  public void glEndFrame() {
+    if (currentSlot < 0) {
+      return;
+    }
+    glEndPass();
+    if (slotQueryCounts[currentSlot] > 0) {
+      slotPending[currentSlot] = true;
+    }
+    currentSlot = -1;
+  }
+
+  private int pendingSlotCount() {
+    int count = 0;
+    while (count < FRAMES_IN_FLIGHT && slotPending[(oldestSlot + count) % FRAMES_IN_FLIGHT]) {
+      ++count;
+    }
+    return count;
+  }
+
+  /** Reads the results of completed frames in submission order without blocking. */
+  private void glCollectResults() {
+    if (provider.checkDisjoint()) {
+      for (int i = 0; i < FRAMES_IN_FLIGHT; ++i) {
+        slotValid[i] = false;
+      }
+    }
+    while (slotPending[oldestSlot]) {
+      int first = oldestSlot * maxQueriesPerFrame;
+      int count = slotQueryCounts[oldestSlot];
+      // Queries complete in order, so the last query of the frame finishes last.
+      if (!provider.isResultAvailable(queries[first + count - 1])) {
+        return;
+      }
+      if (slotValid[oldestSlot]) {
+        recordFrame(first, count);
+      } else {
+        ++disjointFrames;
+      }
+      slotPending[oldestSlot] = false;
+      oldestSlot = (oldestSlot + 1) % FRAMES_IN_FLIGHT;
+    }
+  }
+
+  private void recordFrame(int first, int count) {
+    for (int i = 0; i < framePassNanos.length; ++i) {
+      framePassNanos[i] = -1;
+    }
+    for (int i = first; i < first + count; ++i) {
+      int pass = queryPasses[i];
+      long nanos = provider.getResultNanos(queries[i]);
+      framePassNanos[pass] = framePassNanos[pass] < 0 ? nanos : framePassNanos[pass] + nanos;
+    }
+    for (int i = 0; i < framePassNanos.length; ++i) {
+      if (framePassNanos[i] >= 0) {
+        passTimes[i].add(framePassNanos[i]);
+      }
+    }
+  }
+
+  /** Returns the GPU time per frame of the given pass. */
+  public Histogram getPassHistogram(int pass) {
+    return passTimes[pass];
+  }
+
+  /** Returns the number of frames that weren't timed because no query slot was free. */
+  public int getSkippedFrameCount() {
+    return skippedFrames;
+  }
+
+  /** Returns the number of frames whose results were discarded due to a disjoint event. */
+  public int getDisjointFrameCount() {
+    return disjointFrames;
+  }
+
+  /** Discards all measurements. Frames in flight are still collected. */
+  public void reset() {
+    for (Histogram histogram : passTimes) {
+      histogram.clear();
+    }
+    skippedFrames = 0;
+    disjointFrames = 0;
+  }
+
+  /** Appends a summary of the measurements in milliseconds to the builder. */
+  public StringBuilder dump(StringBuilder builder) {
+    if (!supported) {
+      return builder.append("\n  gpu: timer queries not supported");
+    }
+    builder
+        .append("\n  gpu: skipped=")
+        .append(skippedFrames)
+        .append(" disjoint=")
+        .append(disjointFrames);
+    for (int i = 0; i < passTimes.length; ++i) {
+      if (passTimes[i].getCount() > 0) {
+        builder.append("\n  gpu ").append(passNames[i]).append(": ");
+        passTimes[i].dump(builder);
+      }
+    }
+    return builder;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.profiling;
+
+/**
+ * Fixed-width histogram of durations in nanoseconds.
+ *
+ * <p>Durations are counted in buckets of equal width. The last bucket also counts every duration
+ * beyond the histogram's range. The exact count, sum and maximum are kept separately so the mean
+ * and maximum don't depend on the bucket width. Nothing is allocated after construction. This
+ * class is not thread-safe.
+ */
+public final class Histogram {
+  private static final long NANOS_PER_MILLI = 1000000L;
+
+  private final long bucketWidthNanos;
+  private final int[] buckets;
+  private int count;
+  private long sumNanos;
+  private long maxNanos;
+
+  /**
+   * @param bucketWidthNanos Width of each bucket. This is the resolution of the percentiles.
+   * @param bucketCount Number of buckets. Durations of at least
+   *     {@code bucketWidthNanos * (bucketCount - 1)} share the last bucket.
+   */
+  public Histogram(long bucketWidthNanos, int bucketCount) {
+    if (bucketWidthNanos <= 0 || bucketCount <= 0) {
+      throw new IllegalArgumentException("Invalid histogram size");
+    }
+    this.bucketWidthNanos = bucketWidthNanos;
+    buckets = new int[bucketCount];
+  }
+
+  /** Discards all recorded durations. */
+  public void clear() {
+    for (int i = 0; i < buckets.length; ++i) {
+      buckets[i] = 0;
+    }
+    count = 0;
+    sumNanos = 0;
+    maxNanos = 0;
+  }
+
+  /** Records a duration. Negative durations are treated as 0. */
+  public void add(long durationNanos) {
+    if (durationNanos < 0) {
+      durationNanos = 0;
+    }
+    long bucket = durationNanos / bucketWidthNanos;
+    ++buckets[bucket < buckets.length ? (int) bucket : buckets.length - 1];
+    ++count;
+    sumNanos += durationNanos;
+    maxNanos = Math.max(maxNanos, durationNanos);
+  }
+
+  /** Returns the number of recorded durations. */
+  public int getCount() {
+    return count;
+  }
+
+  /** Returns the mean duration or 0 if nothing was recorded. */
+  public long getMeanNanos() {
+    return count == 0 ? 0 : sumNanos / count;
+  }
+
+  /** Returns the longest duration or 0 if nothing was recorded. */
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * Returns an upper bound for the given percentile, i.e., the end of the first bucket at which
+   * the cumulative count reaches it. The result is at most {@link #getMaxNanos()}.
+   *
+   * @param percentile In the range [0, 100].
+   * @return the duration or 0 if nothing was recorded
+   */
+  public long getPercentileNanos(float percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(count * Math.max(0, Math.min(100, percentile)) / 100);
+    int cumulative = 0;
+    for (int i = 0; i < buckets.length - 1; ++i) {
+      cumulative += buckets[i];
+      if (cumulative >= target && cumulative > 0) {
+        return Math.min((i + 1) * bucketWidthNanos, maxNanos);
+      }
+    }
+    return maxNanos;
+  }
+
+  /**
+   * Appends the mean, 50th, 90th and 99th percentiles and maximum in milliseconds to the builder.
+   */
+  public StringBuilder dump(StringBuilder builder) {
+    builder.append("mean=");
+    appendMillis(builder, getMeanNanos());
+    builder.append(" p50=");
+    appendMillis(builder, getPercentileNanos(50));
+    builder.append(" p90=");
+    appendMillis(builder, getPercentileNanos(90));
+    builder.append(" p99=");
+    appendMillis(builder, getPercentileNanos(99));
+    builder.append(" max=");
+    appendMillis(builder, maxNanos);
+    return builder;
+  }
+
+  /** Appends nanos as milliseconds with two decimals without going through String.format. */
+  private static void appendMillis(StringBuilder builder, long nanos) {
+    long hundredths = (nanos + NANOS_PER_MILLI / 200) / (NANOS_PER_MILLI / 100);
+    builder.append(hundredths / 100).append('.');
+    if (hundredths % 100 < 10) {
+      builder.append('0');
+    }
+    builder.append(hundredths % 100);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import java.util.Arrays;
+
+/**
+ * Maps every tile of the finest pyramid level to the atlas slot of its best resident ancestor.
+ *
+ * <p>The table is uploaded as an RGBA texture with one texel per level 0 tile. Red & green hold
+ * the column & row of the atlas slot, blue holds the level of the tile in it and alpha is 255, or
+ * 0 if no ancestor is resident. A shader finds the texel of level {@code l} by dividing the level 0
+ * texel by {@code 2^l}, so a tile of level {@code l} covers a {@code 2^l} square of entries.
+ */
+public final class IndirectionTable {
+  private final int slotsPerRow;
+  private final int columns;
+  private final int rows;
+  private final byte[] entries;
+  private final long[] keys;
+  private final int[] slots;
+  private final int[] order;
+
+  /**
+   * @param pyramid The tiles.
+   * @param capacity Number of atlas slots.
+   * @param slotsPerRow Number of slots in each row of the atlas. Must be <= 256.
+   */
+  public IndirectionTable(TilePyramid pyramid, int capacity, int slotsPerRow) {
+    if (slotsPerRow > 256 || (capacity + slotsPerRow - 1) / slotsPerRow > 256) {
+      throw new IllegalArgumentException("Too many atlas slots " + capacity);
+    }
+    this.slotsPerRow = slotsPerRow;
+    columns = pyramid.getColumns(0);
+    rows = pyramid.getRows(0);
+    entries = new byte[columns * rows * 4];
+    keys = new long[capacity];
+    slots = new int[capacity];
+    order = new int[capacity];
+  }
+
+  /** Returns the width of the table in entries. */
+  public int getWidth() {
+    return columns;
+  }
+
+  /** Returns the height of the table in entries. */
+  public int getHeight() {
+    return rows;
+  }
+
+  /** Returns the RGBA entries, row by row. The array must not be modified. */
+  public byte[] getEntries() {
+    return entries;
+  }
+
+  /** Rebuilds the table from the tiles resident in the cache. */
+  public void update(TileCache cache) {
+    Arrays.fill(entries, (byte) 0);
+    int count = cache.getResidentTiles(keys, slots);
+
+    // Paint coarse tiles first so finer ones overwrite them.
+    for (int i = 0; i < count; ++i) {
+      int level = TilePyramid.getKeyLevel(keys[i]);
+      int j = i;
+      while (j > 0 && TilePyramid.getKeyLevel(keys[order[j - 1]]) < level) {
+        order[j] = order[j - 1];
+        --j;
+      }
+      order[j] = i;
+    }
+
+    for (int i = 0; i < count; ++i) {
+      long key = keys[order[i]];
+      int slot = slots[order[i]];
+      int level = TilePyramid.getKeyLevel(key);
+      int top = TilePyramid.getKeyRow(key) << level;
+      int left = TilePyramid.getKeyColumn(key) << level;
+      int bottom = Math.min(rows, top + (1 << level));
+      int right = Math.min(columns, left + (1 << level));
+      for (int row = top; row < bottom; ++row) {
+        for (int column = left; column < right; ++column) {
+          int entry = (row * columns + column) * 4;
+          entries[entry] = (byte) (slot % slotsPerRow);
+          entries[entry + 1] = (byte) (slot / slotsPerRow);
+          entries[entry + 2] = (byte) level;
+          entries[entry + 3] = (byte) 255;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the full resolution level of a pyramid from a PNG panorama. Wrap it in a
+ * {@link PyramidBuilder.DownsamplingSource} to derive the other levels.
+ *
+ * <p>The PNG is decoded once, row by row, into an uncompressed scratch file which regions are then
+ * read from, so panoramas far larger than the heap can be cut into tiles. The scratch file takes 4
+ * bytes per pixel and is deleted when the source is closed.
+ */
+public final class PngLevelSource implements PyramidBuilder.LevelSource, Closeable {
+  private static final int BYTES_PER_PIXEL = 4;
+
+  private final File scratchFile;
+  private final RandomAccessFile pixels;
+  private final int width;
+  private final int height;
+  // Reused between reads.
+  private ByteBuffer row = ByteBuffer.allocate(0);
+
+  private PngLevelSource(File scratchFile, RandomAccessFile pixels, int width, int height) {
+    this.scratchFile = scratchFile;
+    this.pixels = pixels;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Decodes a PNG into a scratch file.
+   *
+   * @param scratchDirectory Directory for the scratch file, which needs 4 bytes per pixel.
+   * @throws IOException if the PNG can't be decoded or the scratch file can't be written.
+   */
+  public static PngLevelSource open(File png, File scratchDirectory) throws IOException {
+    File scratchFile = File.createTempFile("level0", ".argb", scratchDirectory);
+    final RandomAccessFile pixels = new RandomAccessFile(scratchFile, "rw");
+    final int[] size = new int[2];
+    InputStream input = null;
+    try {
+      input = new BufferedInputStream(new FileInputStream(png));
+      final FileChannel channel = pixels.getChannel();
+      PngTileCodec.decodeRows(input, new PngTileCodec.RowReceiver() {
+        private ByteBuffer buffer;
+
+        @Override
+        public void onHeader(int width, int height) {
+          size[0] = width;
+          size[1] = height;
+          buffer = ByteBuffer.allocate(width * BYTES_PER_PIXEL);
+        }
+
+        @Override
+        public void onRow(int y, int[] argb) throws IOException {
+          buffer.clear();
+          buffer.asIntBuffer().put(argb);
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+        }
+      });
+    } catch (IOException | RuntimeException e) {
+      pixels.close();
+      scratchFile.delete();
+      throw e;
+    } finally {
+      if (input != null) {
+        input.close();
+      }
+    }
+    return new PngLevelSource(scratchFile, pixels, size[0], size[1]);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Reads a region of the full resolution image.
+   *
+   * @throws IllegalArgumentException if the level isn't 0.
+   */
+  @Override
+  public void read(int level, int x, int y, int width, int height, int[] argb)
+      throws IOException {
+    if (level != 0) {
+      throw new IllegalArgumentException("Only level 0 is stored, not level " + level);
+    }
+    if (row.capacity() < width * BYTES_PER_PIXEL) {
+      row = ByteBuffer.allocate(width * BYTES_PER_PIXEL);
+    }
+    FileChannel channel = pixels.getChannel();
+    for (int i = 0; i < height; ++i) {
+      row.clear();
+      row.limit(width * BYTES_PER_PIXEL);
+      long position = ((long) (y + i) * this.width + x) * BYTES_PER_PIXEL;
+      while (row.hasRemaining()) {
+        if (channel.read(row, position + row.position()) < 0) {
+          throw new EOFException("Truncated scratch file " + scratchFile);
+        }
+      }
+      row.flip();
+      row.asIntBuffer().get(argb, i * width, width);
+    }
+  }
+
+  /** Deletes the scratch file. */
+  @Override
+  public void close() throws IOException {
+    try {
+      pixels.close();
+    } finally {
+      scratchFile.delete();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return width + "x" + height + " PNG in " + scratchFile;
+  }
+}
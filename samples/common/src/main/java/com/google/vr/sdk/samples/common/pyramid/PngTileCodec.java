@@ -0,0 +1,370 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Encodes tiles as 8-bit RGBA PNGs using only java.util.zip, so pyramids can be built on any JVM
+ * and decoded by Android's BitmapFactory. {@link #decode} & {@link #decodeRows} read
+ * non-interlaced 8-bit gray & RGB PNGs with or without alpha, which includes every file this codec
+ * writes and the panoramas {@link PngLevelSource} cuts into pyramids.
+ */
+public final class PngTileCodec implements PyramidBuilder.TileCodec {
+  /** Receives the pixels of a PNG as it's decoded. */
+  public interface RowReceiver {
+    /** Called once before the first row. */
+    void onHeader(int width, int height) throws IOException;
+
+    /**
+     * Called for each row from top to bottom.
+     *
+     * @param argb The row's ARGB pixels. The array is reused for the next row.
+     */
+    void onRow(int y, int[] argb) throws IOException;
+  }
+
+  private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+  private static final int COLOR_TYPE_GRAY = 0;
+  private static final int COLOR_TYPE_RGB = 2;
+  private static final int COLOR_TYPE_GRAY_ALPHA = 4;
+  private static final int COLOR_TYPE_RGBA = 6;
+  // Of the RGBA PNGs written by encode.
+  private static final int BYTES_PER_PIXEL = 4;
+  private static final int FILTER_NONE = 0;
+  private static final int FILTER_SUB = 1;
+  private static final int FILTER_UP = 2;
+  private static final int FILTER_AVERAGE = 3;
+  private static final int FILTER_PAETH = 4;
+
+  private final int compressionLevel;
+
+  /** @param compressionLevel A {@link Deflater} level. Lower levels build pyramids faster. */
+  public PngTileCodec(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+  }
+
+  @Override
+  public void encode(int[] argb, int width, int height, OutputStream outputStream)
+      throws IOException {
+    ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+    DataOutputStream headerData = new DataOutputStream(header);
+    headerData.writeInt(width);
+    headerData.writeInt(height);
+    headerData.writeByte(8);
+    headerData.writeByte(COLOR_TYPE_RGBA);
+    headerData.writeByte(0);  // Deflate.
+    headerData.writeByte(0);  // Adaptive filtering.
+    headerData.writeByte(0);  // Not interlaced.
+
+    // Each row uses the Sub filter, which compresses photographs well and is cheap.
+    ByteArrayOutputStream pixels = new ByteArrayOutputStream(width * height * BYTES_PER_PIXEL / 2);
+    Deflater deflater = new Deflater(compressionLevel);
+    DeflaterOutputStream deflaterStream = new DeflaterOutputStream(pixels, deflater);
+    byte[] row = new byte[1 + width * BYTES_PER_PIXEL];
+    row[0] = FILTER_SUB;
+    for (int y = 0; y < height; ++y) {
+      int previous = 0;
+      for (int x = 0; x < width; ++x) {
+        int pixel = argb[y * width + x];
+        int i = 1 + x * BYTES_PER_PIXEL;
+        row[i] = (byte) ((pixel >> 16) - (previous >> 16));
+        row[i + 1] = (byte) ((pixel >> 8) - (previous >> 8));
+        row[i + 2] = (byte) (pixel - previous);
+        row[i + 3] = (byte) ((pixel >>> 24) - (previous >>> 24));
+        previous = pixel;
+      }
+      deflaterStream.write(row);
+    }
+    deflaterStream.finish();
+    deflater.end();
+
+    DataOutputStream output = new DataOutputStream(outputStream);
+    output.write(SIGNATURE);
+    writeChunk(output, "IHDR", header.toByteArray());
+    writeChunk(output, "IDAT", pixels.toByteArray());
+    writeChunk(output, "IEND", new byte[0]);
+    output.flush();
+  }
+
+  private static void writeChunk(DataOutputStream output, String type, byte[] data)
+      throws IOException {
+    byte[] typeBytes = type.getBytes("US-ASCII");
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data);
+    output.writeInt(data.length);
+    output.write(typeBytes);
+    output.write(data);
+    output.writeInt((int) crc.getValue());
+  }
+
+  /**
+   * Decodes a whole PNG into memory.
+   *
+   * @param inputStream The PNG. Not closed by this method.
+   * @param size Receives the width & height.
+   * @return the ARGB pixels, row by row.
+   * @throws IOException if the stream isn't a supported PNG.
+   */
+  public static int[] decode(InputStream inputStream, final int[] size) throws IOException {
+    final int[][] pixels = new int[1][];
+    decodeRows(inputStream, new RowReceiver() {
+      @Override
+      public void onHeader(int width, int height) throws IOException {
+        if ((long) width * height > Integer.MAX_VALUE) {
+          throw new IOException(width + "x" + height + " PNG is too large to decode into memory");
+        }
+        size[0] = width;
+        size[1] = height;
+        pixels[0] = new int[width * height];
+      }
+
+      @Override
+      public void onRow(int y, int[] argb) {
+        System.arraycopy(argb, 0, pixels[0], y * argb.length, argb.length);
+      }
+    });
+    return pixels[0];
+  }
+
+  /**
+   * Decodes a PNG row by row, so images larger than the heap can be processed. Only one row of
+   * pixels is held in memory at a time.
+   *
+   * @param inputStream The PNG. Not closed by this method. It's only read up to the end of the
+   *     image data.
+   * @throws IOException if the stream isn't a supported PNG.
+   */
+  public static void decodeRows(InputStream inputStream, RowReceiver receiver)
+      throws IOException {
+    DataInputStream input = new DataInputStream(inputStream);
+    byte[] signature = new byte[SIGNATURE.length];
+    input.readFully(signature);
+    for (int i = 0; i < SIGNATURE.length; ++i) {
+      if (signature[i] != SIGNATURE[i]) {
+        throw new IOException("Not a PNG");
+      }
+    }
+
+    // Read the chunks up to the first image data chunk.
+    int width = 0;
+    int height = 0;
+    int colorType = 0;
+    int length;
+    while (true) {
+      length = input.readInt();
+      String type = readChunkType(input);
+      if (type.equals("IDAT")) {
+        break;
+      } else if (type.equals("IEND")) {
+        throw new IOException("Missing PNG image data");
+      }
+      byte[] data = new byte[length];
+      input.readFully(data);
+      input.readInt();  // CRC.
+      if (type.equals("IHDR")) {
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(data));
+        width = header.readInt();
+        height = header.readInt();
+        int bitDepth = header.readUnsignedByte();
+        colorType = header.readUnsignedByte();
+        header.readUnsignedByte();
+        header.readUnsignedByte();
+        int interlace = header.readUnsignedByte();
+        if (bitDepth != 8 || getBytesPerPixel(colorType) == 0 || interlace != 0) {
+          throw new IOException("Only 8-bit non-interlaced gray, RGB & RGBA PNGs are supported");
+        }
+      }
+    }
+    if (width <= 0 || height <= 0) {
+      throw new IOException("Missing PNG header");
+    }
+
+    int bytesPerPixel = getBytesPerPixel(colorType);
+    int stride = width * bytesPerPixel;
+    byte[] previousRow = new byte[stride];
+    byte[] row = new byte[stride];
+    int[] argb = new int[width];
+    receiver.onHeader(width, height);
+    Inflater inflater = new Inflater();
+    try {
+      InputStream pixels = new InflaterInputStream(new ImageDataStream(input, length), inflater);
+      for (int y = 0; y < height; ++y) {
+        int filter = pixels.read();
+        if (filter < 0) {
+          throw new IOException("Truncated PNG");
+        }
+        for (int offset = 0; offset < stride; ) {
+          int count = pixels.read(row, offset, stride - offset);
+          if (count < 0) {
+            throw new IOException("Truncated PNG");
+          }
+          offset += count;
+        }
+        unfilter(filter, row, previousRow, bytesPerPixel);
+        toArgb(row, colorType, argb);
+        receiver.onRow(y, argb);
+        byte[] swap = previousRow;
+        previousRow = row;
+        row = swap;
+      }
+    } catch (ZipException e) {
+      throw new IOException("Corrupt PNG", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static String readChunkType(DataInputStream input) throws IOException {
+    byte[] typeBytes = new byte[4];
+    input.readFully(typeBytes);
+    return new String(typeBytes, "US-ASCII");
+  }
+
+  /** Returns the bytes per pixel of an 8-bit color type or 0 if it isn't supported. */
+  private static int getBytesPerPixel(int colorType) {
+    switch (colorType) {
+      case COLOR_TYPE_GRAY:
+        return 1;
+      case COLOR_TYPE_GRAY_ALPHA:
+        return 2;
+      case COLOR_TYPE_RGB:
+        return 3;
+      case COLOR_TYPE_RGBA:
+        return 4;
+      default:
+        // Palette images would also need the PLTE chunk.
+        return 0;
+    }
+  }
+
+  private static void toArgb(byte[] row, int colorType, int[] argb) {
+    for (int x = 0; x < argb.length; ++x) {
+      switch (colorType) {
+        case COLOR_TYPE_GRAY:
+          argb[x] = 0xFF000000 | (row[x] & 0xFF) * 0x010101;
+          break;
+        case COLOR_TYPE_GRAY_ALPHA:
+          argb[x] = (row[2 * x + 1] & 0xFF) << 24 | (row[2 * x] & 0xFF) * 0x010101;
+          break;
+        case COLOR_TYPE_RGB:
+          argb[x] = 0xFF000000 | (row[3 * x] & 0xFF) << 16 | (row[3 * x + 1] & 0xFF) << 8
+              | (row[3 * x + 2] & 0xFF);
+          break;
+        default:
+          argb[x] = (row[4 * x + 3] & 0xFF) << 24 | (row[4 * x] & 0xFF) << 16
+              | (row[4 * x + 1] & 0xFF) << 8 | (row[4 * x + 2] & 0xFF);
+          break;
+      }
+    }
+  }
+
+  private static void unfilter(int filter, byte[] row, byte[] previousRow, int bytesPerPixel)
+      throws IOException {
+    for (int i = 0; i < row.length; ++i) {
+      int left = (i >= bytesPerPixel) ? row[i - bytesPerPixel] & 0xFF : 0;
+      int up = previousRow[i] & 0xFF;
+      int upLeft = (i >= bytesPerPixel) ? previousRow[i - bytesPerPixel] & 0xFF : 0;
+      int predictor;
+      switch (filter) {
+        case FILTER_NONE:
+          predictor = 0;
+          break;
+        case FILTER_SUB:
+          predictor = left;
+          break;
+        case FILTER_UP:
+          predictor = up;
+          break;
+        case FILTER_AVERAGE:
+          predictor = (left + up) / 2;
+          break;
+        case FILTER_PAETH:
+          predictor = paeth(left, up, upLeft);
+          break;
+        default:
+          throw new IOException("Invalid PNG filter " + filter);
+      }
+      row[i] = (byte) (row[i] + predictor);
+    }
+  }
+
+  private static int paeth(int left, int up, int upLeft) {
+    int estimate = left + up - upLeft;
+    int leftDistance = Math.abs(estimate - left);
+    int upDistance = Math.abs(estimate - up);
+    int upLeftDistance = Math.abs(estimate - upLeft);
+    if (leftDistance <= upDistance && leftDistance <= upLeftDistance) {
+      return left;
+    }
+    return upDistance <= upLeftDistance ? up : upLeft;
+  }
+
+  /** Reads the data of consecutive IDAT chunks as one stream. */
+  private static final class ImageDataStream extends InputStream {
+    private final DataInputStream input;
+    // Bytes left in the current chunk or -1 after the last image data chunk.
+    private int remaining;
+
+    /** @param input Positioned at the data of the first IDAT chunk. */
+    ImageDataStream(DataInputStream input, int firstChunkLength) {
+      this.input = input;
+      remaining = firstChunkLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] buffer = new byte[1];
+      return read(buffer, 0, 1) < 0 ? -1 : buffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      while (remaining == 0) {
+        input.readInt();  // CRC.
+        int nextLength = input.readInt();
+        remaining = readChunkType(input).equals("IDAT") ? nextLength : -1;
+      }
+      if (remaining < 0) {
+        return -1;
+      }
+      int count = input.read(buffer, offset, Math.min(length, remaining));
+      if (count < 0) {
+        throw new EOFException("Truncated PNG");
+      }
+      remaining -= count;
+      return count;
+    }
+  }
+}
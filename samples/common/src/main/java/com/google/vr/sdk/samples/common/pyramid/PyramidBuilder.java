@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Cuts a panorama into the tiles of a {@link TilePyramid} and writes them, along with the
+ * manifest, to a directory.
+ *
+ * <p>Each stored tile repeats one texel of its neighbors around its edges so the renderer can
+ * filter bilinearly inside an atlas slot without sampling the next slot. Texels outside the image
+ * are clamped to its edge. Only one tile is held in memory at a time, so pyramids can be built
+ * from images far larger than the heap by giving a {@link LevelSource} that reads from disk, such
+ * as a {@link PngLevelSource}.
+ */
+public final class PyramidBuilder {
+  /** Reads regions of each level of the panorama. */
+  public interface LevelSource {
+    /**
+     * Reads a region of a level. The region always lies within the level.
+     *
+     * @param argb Receives {@code width * height} ARGB pixels, row by row.
+     */
+    void read(int level, int x, int y, int width, int height, int[] argb) throws IOException;
+  }
+
+  /** Writes the pixels of a tile in the pyramid's format. */
+  public interface TileCodec {
+    void encode(int[] argb, int width, int height, OutputStream outputStream) throws IOException;
+  }
+
+  /**
+   * Derives every level from level 0 with a box filter. Level {@code l} texel {@code (x, y)}
+   * averages the level 0 texels in {@code [x, x + 1) * 2^l} by {@code [y, y + 1) * 2^l} that lie
+   * within the image.
+   */
+  public static final class DownsamplingSource implements LevelSource {
+    // Bounds the level 0 texels read at once when averaging coarse levels.
+    private static final int MAX_READ_TEXELS = 1 << 20;
+
+    private final TilePyramid pyramid;
+    private final LevelSource fullResolution;
+    private int[] buffer = new int[0];
+
+    /** @param fullResolution Source of level 0. Other levels are never requested from it. */
+    public DownsamplingSource(TilePyramid pyramid, LevelSource fullResolution) {
+      this.pyramid = pyramid;
+      this.fullResolution = fullResolution;
+    }
+
+    @Override
+    public void read(int level, int x, int y, int width, int height, int[] argb)
+        throws IOException {
+      if (level == 0) {
+        fullResolution.read(0, x, y, width, height, argb);
+        return;
+      }
+
+      int scale = 1 << level;
+      int sourceLeft = x * scale;
+      int sourceRight = Math.min((x + width) * scale, pyramid.getWidth());
+      long[] sums = new long[width * 4];
+      int[] counts = new int[width];
+      int chunkWidth = Math.max(scale, Math.min(sourceRight - sourceLeft,
+          MAX_READ_TEXELS / scale / scale * scale));
+      for (int row = 0; row < height; ++row) {
+        int sourceTop = (y + row) * scale;
+        int sourceHeight = Math.min(scale, pyramid.getHeight() - sourceTop);
+        Arrays.fill(sums, 0);
+        Arrays.fill(counts, 0);
+        for (int left = sourceLeft; left < sourceRight; left += chunkWidth) {
+          int readWidth = Math.min(chunkWidth, sourceRight - left);
+          if (buffer.length < readWidth * sourceHeight) {
+            buffer = new int[readWidth * sourceHeight];
+          }
+          fullResolution.read(0, left, sourceTop, readWidth, sourceHeight, buffer);
+          for (int i = 0; i < readWidth * sourceHeight; ++i) {
+            int column = (left + i % readWidth) / scale - x;
+            int pixel = buffer[i];
+            sums[column * 4] += pixel >>> 24;
+            sums[column * 4 + 1] += (pixel >> 16) & 0xFF;
+            sums[column * 4 + 2] += (pixel >> 8) & 0xFF;
+            sums[column * 4 + 3] += pixel & 0xFF;
+            ++counts[column];
+          }
+        }
+        for (int column = 0; column < width; ++column) {
+          int count = counts[column];
+          int half = count / 2;
+          argb[row * width + column] = (int) ((sums[column * 4] + half) / count) << 24
+              | (int) ((sums[column * 4 + 1] + half) / count) << 16
+              | (int) ((sums[column * 4 + 2] + half) / count) << 8
+              | (int) ((sums[column * 4 + 3] + half) / count);
+        }
+      }
+    }
+  }
+
+  /** Stored tiles are 256px square, which every GPU can fit many of in an atlas. */
+  private static final int DEFAULT_TILE_SIZE = 256 - 2 * TilePyramid.BORDER;
+
+  private final TilePyramid pyramid;
+  private final LevelSource source;
+  private final TileCodec codec;
+  private final int[] region;
+
+  public PyramidBuilder(TilePyramid pyramid, LevelSource source, TileCodec codec) {
+    this.pyramid = pyramid;
+    this.source = source;
+    this.codec = codec;
+    region = new int[pyramid.getStoredTileSize() * pyramid.getStoredTileSize()];
+  }
+
+  /**
+   * Builds a pyramid of PNG tiles from a PNG panorama. The Gradle task {@code
+   * :samples-common:buildPyramid} runs this with {@code -Pinput=<panorama.png>
+   * -Poutput=<directory>} and optionally {@code -PtileSize=<pixels>}.
+   *
+   * <p>Usage: {@code PyramidBuilder <panorama.png> <output directory> [tile size]
+   * [compression level]}
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 4) {
+      System.err.println("Usage: PyramidBuilder <panorama.png> <output directory> [tile size]"
+          + " [compression level]");
+      System.exit(1);
+    }
+    File directory = new File(args[1]);
+    int tileSize = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_TILE_SIZE;
+    int compressionLevel =
+        (args.length > 3) ? Integer.parseInt(args[3]) : Deflater.DEFAULT_COMPRESSION;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create " + directory);
+    }
+
+    long startNanos = System.nanoTime();
+    // The scratch file is as large as the decoded panorama, so it goes next to the output rather
+    // than in a temporary directory that may be in memory.
+    PngLevelSource panorama = PngLevelSource.open(new File(args[0]), directory);
+    try {
+      TilePyramid pyramid =
+          new TilePyramid(panorama.getWidth(), panorama.getHeight(), tileSize, "png");
+      new PyramidBuilder(pyramid, new DownsamplingSource(pyramid, panorama),
+          new PngTileCodec(compressionLevel)).build(directory);
+      System.out.println("Wrote " + pyramid + " to " + directory + " in "
+          + (System.nanoTime() - startNanos) / 1000000 + "ms");
+    } finally {
+      panorama.close();
+    }
+  }
+
+  /**
+   * Writes every tile of the pyramid and then the manifest, so a directory with a manifest is
+   * always complete.
+   */
+  public void build(File directory) throws IOException {
+    int storedSize = pyramid.getStoredTileSize();
+    int[] tile = new int[storedSize * storedSize];
+    for (int level = 0; level < pyramid.getLevelCount(); ++level) {
+      for (int row = 0; row < pyramid.getRows(level); ++row) {
+        for (int column = 0; column < pyramid.getColumns(level); ++column) {
+          readStoredTile(level, row, column, tile);
+          File file = new File(directory, pyramid.getTilePath(level, row, column));
+          File parent = file.getParentFile();
+          if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+          }
+          OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+          try {
+            codec.encode(tile, storedSize, storedSize, output);
+          } finally {
+            output.close();
+          }
+        }
+      }
+    }
+
+    OutputStream output = new BufferedOutputStream(
+        new FileOutputStream(new File(directory, TilePyramid.MANIFEST_NAME)));
+    try {
+      pyramid.write(output);
+    } finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Reads a tile including its border.
+   *
+   * @param tile Receives {@link TilePyramid#getStoredTileSize()} squared ARGB pixels.
+   */
+  public void readStoredTile(int level, int row, int column, int[] tile) throws IOException {
+    int tileSize = pyramid.getTileSize();
+    int storedSize = pyramid.getStoredTileSize();
+    int levelWidth = pyramid.getLevelWidth(level);
+    int levelHeight = pyramid.getLevelHeight(level);
+
+    // The stored tile covers [origin - BORDER, origin + tileSize + BORDER) of the level. Read the
+    // part that lies within the level and clamp the rest to it.
+    int left = Math.max(0, column * tileSize - TilePyramid.BORDER);
+    int top = Math.max(0, row * tileSize - TilePyramid.BORDER);
+    int right = Math.min(levelWidth, (column + 1) * tileSize + TilePyramid.BORDER);
+    int bottom = Math.min(levelHeight, (row + 1) * tileSize + TilePyramid.BORDER);
+    int width = right - left;
+    source.read(level, left, top, width, bottom - top, region);
+
+    int originX = column * tileSize - TilePyramid.BORDER;
+    int originY = row * tileSize - TilePyramid.BORDER;
+    for (int y = 0; y < storedSize; ++y) {
+      int sourceY = Math.max(top, Math.min(bottom - 1, originY + y)) - top;
+      for (int x = 0; x < storedSize; ++x) {
+        int sourceX = Math.max(left, Math.min(right - 1, originX + x)) - left;
+        tile[y * storedSize + x] = region[sourceY * width + sourceX];
+      }
+    }
+  }
+}
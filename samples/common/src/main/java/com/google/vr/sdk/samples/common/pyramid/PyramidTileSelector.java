@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import com.google.vr.sdk.samples.common.tiles.TileLayout;
+import com.google.vr.sdk.samples.common.tiles.ViewportTileSelector;
+
+/**
+ * Picks the pyramid tiles needed to draw the current view.
+ *
+ * <p>Only one level is ever streamed: the coarsest one with at least as many texels per degree as
+ * the display has pixels per degree. Finer levels would be minified away and coarser ones would be
+ * blurry. Tiles of that level in and around the viewport are returned nearest first, so when the
+ * cache or the upload budget runs short it is the periphery that falls back to coarser levels.
+ * {@link #select} doesn't allocate. Instances aren't thread safe.
+ */
+public final class PyramidTileSelector {
+  private final int level;
+  private final TileLayout layout;
+  private final float[] distances;
+  private final int[] order;
+  private float visibleRadians;
+
+  /**
+   * Builds the layout of the selected level, which takes a few milliseconds for large pyramids, so
+   * this should be called off the render thread.
+   *
+   * @param pyramid The tiles.
+   * @param pixelsPerDegree Angular resolution of the display.
+   */
+  public PyramidTileSelector(TilePyramid pyramid, float pixelsPerDegree) {
+    level = selectLevel(pyramid, pixelsPerDegree);
+    layout = pyramid.createLayout(level);
+    distances = new float[layout.getTileCount()];
+    order = new int[layout.getTileCount()];
+    setViewport(
+        ViewportTileSelector.DEFAULT_VIEWPORT_DEGREES, ViewportTileSelector.DEFAULT_MARGIN_DEGREES);
+  }
+
+  /** Returns the coarsest level whose resolution matches the display. */
+  public static int selectLevel(TilePyramid pyramid, float pixelsPerDegree) {
+    for (int level = pyramid.getLevelCount() - 1; level > 0; --level) {
+      if (pyramid.getLevelWidth(level) / 360f >= pixelsPerDegree) {
+        return level;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Sets the region whose tiles are selected.
+   *
+   * @param viewportDegrees Half angle of the cone around the view direction that is visible.
+   * @param marginDegrees Extra angle around the viewport to load ahead of head movements.
+   */
+  public void setViewport(float viewportDegrees, float marginDegrees) {
+    visibleRadians = (float) Math.toRadians(viewportDegrees + marginDegrees);
+  }
+
+  /** Returns the level whose tiles are selected. */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Selects the tiles around a view direction.
+   *
+   * @param x X component of the unit view direction in world space.
+   * @param y Y component of the direction.
+   * @param z Z component of the direction.
+   * @param keys Receives the {@link TilePyramid#getTileKey keys} of the tiles, nearest first.
+   * @return the number of keys written, at most {@code keys.length}.
+   */
+  public int select(float x, float y, float z, long[] keys) {
+    // Insertion sort is fine since only the few hundred tiles near the view are sorted.
+    int candidates = 0;
+    for (int tile = 0; tile < distances.length; ++tile) {
+      float distance = layout.getAngularDistance(tile, x, y, z);
+      if (distance > visibleRadians) {
+        continue;
+      }
+      distances[tile] = distance;
+      int i = candidates++;
+      while (i > 0 && distances[order[i - 1]] > distance) {
+        order[i] = order[i - 1];
+        --i;
+      }
+      order[i] = tile;
+    }
+
+    int count = Math.min(candidates, keys.length);
+    for (int i = 0; i < count; ++i) {
+      keys[i] = TilePyramid.getTileKey(level, layout.getRow(order[i]), layout.getColumn(order[i]));
+    }
+    return count;
+  }
+}
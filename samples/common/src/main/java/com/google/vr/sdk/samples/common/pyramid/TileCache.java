@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Assigns pyramid tiles to a fixed number of atlas slots and evicts the least recently used tile
+ * when the atlas is full.
+ *
+ * <p>Tiles used during the current frame are never evicted, so a frame that needs more tiles than
+ * there are slots draws some of them from coarser levels instead of thrashing. Pinned tiles, such
+ * as the single tile of the coarsest level, are never evicted either. Not thread safe.
+ */
+public final class TileCache {
+  private static final class Entry {
+    final int slot;
+    long lastUsedFrame;
+    boolean pinned;
+
+    Entry(int slot) {
+      this.slot = slot;
+    }
+  }
+
+  private final int capacity;
+  // Iterates from the least to the most recently used tile.
+  private final LinkedHashMap<Long, Entry> entries;
+  private final int[] freeSlots;
+  private int freeSlotCount;
+  private long frame;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /** @param capacity Number of atlas slots. */
+  public TileCache(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity);
+    }
+    this.capacity = capacity;
+    entries = new LinkedHashMap<>(capacity * 2, .75f, true);
+    freeSlots = new int[capacity];
+    for (int i = 0; i < capacity; ++i) {
+      freeSlots[i] = capacity - 1 - i;
+    }
+    freeSlotCount = capacity;
+  }
+
+  /** Starts a new frame. Tiles used in earlier frames become evictable. */
+  public void beginFrame() {
+    ++frame;
+  }
+
+  /**
+   * Marks a tile as used by the current frame.
+   *
+   * @return whether the tile is resident. Counted as a hit or a miss.
+   */
+  public boolean use(long key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      ++misses;
+      return false;
+    }
+    entry.lastUsedFrame = frame;
+    ++hits;
+    return true;
+  }
+
+  /** Returns whether a tile is resident. Doesn't affect the eviction order. */
+  public boolean contains(long key) {
+    return entries.containsKey(key);
+  }
+
+  /**
+   * Finds a slot for a tile, evicting the least recently used tile not needed by this frame.
+   *
+   * @return the slot, or -1 if every slot is pinned or used by the current frame.
+   */
+  public int allocate(long key) {
+    Entry entry = entries.get(key);
+    if (entry != null) {
+      entry.lastUsedFrame = frame;
+      return entry.slot;
+    }
+
+    int slot;
+    if (freeSlotCount > 0) {
+      slot = freeSlots[--freeSlotCount];
+    } else {
+      slot = evict();
+      if (slot < 0) {
+        return -1;
+      }
+    }
+    entry = new Entry(slot);
+    entry.lastUsedFrame = frame;
+    entries.put(key, entry);
+    return slot;
+  }
+
+  private int evict() {
+    Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next().getValue();
+      if (!entry.pinned && entry.lastUsedFrame < frame) {
+        iterator.remove();
+        ++evictions;
+        return entry.slot;
+      }
+    }
+    return -1;
+  }
+
+  /** Prevents a resident tile from being evicted. */
+  public void pin(long key) {
+    Entry entry = entries.get(key);
+    if (entry != null) {
+      entry.pinned = true;
+    }
+  }
+
+  /** Removes a tile, e.g., when its upload failed. */
+  public void remove(long key) {
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      freeSlots[freeSlotCount++] = entry.slot;
+    }
+  }
+
+  /**
+   * Copies the keys & slots of the resident tiles.
+   *
+   * @param keys Receives up to {@link #getCapacity()} keys.
+   * @param slots Receives the slot of each key.
+   * @return the number of resident tiles.
+   */
+  public int getResidentTiles(long[] keys, int[] slots) {
+    int count = 0;
+    for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+      keys[count] = entry.getKey();
+      slots[count] = entry.getValue().slot;
+      ++count;
+    }
+    return count;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getResidentCount() {
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public long getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public String toString() {
+    long lookups = hits + misses;
+    return String.format("TileCache[%d/%d slots, hit rate %.1f%%, %d evictions]",
+        entries.size(), capacity, lookups == 0 ? 0f : 100f * hits / lookups, evictions);
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import java.util.Arrays;
+
+/**
+ * A set of {@link TilePyramid#getTileKey tile keys} that doesn't box them.
+ *
+ * <p>Keys are stored in an open addressing table with linear probing. Keys are never negative, so
+ * -1 marks an empty entry. Only {@link #add} allocates, when the table grows past half full. Not
+ * thread safe.
+ */
+public final class TileKeySet {
+  private static final long EMPTY = -1;
+
+  private long[] table;
+  private int size;
+
+  /** @param expectedSize Number of keys that fit without growing the table. */
+  public TileKeySet(int expectedSize) {
+    int length = 4;
+    while (length < 2 * expectedSize) {
+      length *= 2;
+    }
+    table = new long[length];
+    Arrays.fill(table, EMPTY);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean contains(long key) {
+    return key >= 0 && table[find(table, key)] == key;
+  }
+
+  /** @return whether the key wasn't already in the set. */
+  public boolean add(long key) {
+    if (key < 0) {
+      throw new IllegalArgumentException("Invalid key " + key);
+    }
+    int index = find(table, key);
+    if (table[index] == key) {
+      return false;
+    }
+    table[index] = key;
+    if (2 * ++size > table.length) {
+      grow();
+    }
+    return true;
+  }
+
+  /** @return whether the key was in the set. */
+  public boolean remove(long key) {
+    if (key < 0) {
+      return false;
+    }
+    int mask = table.length - 1;
+    int index = find(table, key);
+    if (table[index] != key) {
+      return false;
+    }
+    // Shift later keys of the probe sequence back so that lookups don't stop at the hole.
+    int hole = index;
+    for (int i = (hole + 1) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+      int home = hash(table[i]) & mask;
+      if (((i - home) & mask) >= ((i - hole) & mask)) {
+        table[hole] = table[i];
+        hole = i;
+      }
+    }
+    table[hole] = EMPTY;
+    --size;
+    return true;
+  }
+
+  public void clear() {
+    Arrays.fill(table, EMPTY);
+    size = 0;
+  }
+
+  private void grow() {
+    long[] oldTable = table;
+    table = new long[oldTable.length * 2];
+    Arrays.fill(table, EMPTY);
+    for (long key : oldTable) {
+      if (key != EMPTY) {
+        table[find(table, key)] = key;
+      }
+    }
+  }
+
+  /** Returns the index of the key, or of the empty entry where it would be added. */
+  private static int find(long[] table, long key) {
+    int mask = table.length - 1;
+    int index = hash(key) & mask;
+    while (table[index] != key && table[index] != EMPTY) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private static int hash(long key) {
+    // Keys of neighboring tiles differ in their low bits, so mix the high bits in.
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
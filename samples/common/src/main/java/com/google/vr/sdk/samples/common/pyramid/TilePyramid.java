@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import com.google.vr.sdk.samples.common.tiles.TileLayout;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Describes a multi-resolution tile pyramid of an equirectangular panorama.
+ *
+ * <p>Level 0 is the full resolution image. Each following level is half the size of the previous
+ * one, rounded up, and the last level fits in a single tile. Every level is cut into square tiles
+ * starting at its top left corner, so the last row & column of tiles can be partial. Each tile is
+ * stored with a {@link #BORDER} of pixels copied from its neighbors, clamped at the image's edges,
+ * so that tiles can be sampled with bilinear filtering without seams. Stored tiles are always
+ * {@link #getStoredTileSize()} pixels square; the parts of partial tiles outside the image repeat
+ * the image's edge.
+ *
+ * <p>A pyramid on disk is a directory with a {@link #MANIFEST_NAME} properties file such as:
+ *
+ * <pre>
+ * width=65536
+ * height=32768
+ * tileSize=254
+ * format=png
+ * </pre>
+ *
+ * and a {@code <level>/<row>_<column>.<format>} file for each tile.
+ */
+public final class TilePyramid {
+  /** Name of the manifest file in the pyramid's directory. */
+  public static final String MANIFEST_NAME = "pyramid.properties";
+  /** Pixels copied from the neighboring tiles on each side of a stored tile. */
+  public static final int BORDER = 1;
+
+  private final int width;
+  private final int height;
+  private final int tileSize;
+  private final String format;
+  private final int levelCount;
+
+  /**
+   * @param width Width of the full resolution image.
+   * @param height Height of the full resolution image.
+   * @param tileSize Width & height of a tile without its border.
+   * @param format File extension of the tiles, e.g., "png" or "jpg".
+   */
+  public TilePyramid(int width, int height, int tileSize, String format) {
+    if (width < 1 || height < 1 || tileSize < 1 || format.isEmpty()) {
+      throw new IllegalArgumentException(
+          "Invalid pyramid " + width + "x" + height + " / " + tileSize + " " + format);
+    }
+    this.width = width;
+    this.height = height;
+    this.tileSize = tileSize;
+    this.format = format;
+    int levels = 1;
+    while (getColumns(levels - 1) > 1 || getRows(levels - 1) > 1) {
+      ++levels;
+    }
+    levelCount = levels;
+  }
+
+  /**
+   * Parses a manifest.
+   *
+   * @param inputStream The manifest's contents. Not closed by this method.
+   * @throws IOException if the manifest can't be read or is malformed.
+   */
+  public static TilePyramid read(InputStream inputStream) throws IOException {
+    Properties properties = new Properties();
+    properties.load(inputStream);
+    int width = parseInt(properties, "width");
+    int height = parseInt(properties, "height");
+    int tileSize = parseInt(properties, "tileSize");
+    String format = properties.getProperty("format", "").trim();
+    if (width < 1 || height < 1 || tileSize < 1 || format.isEmpty()) {
+      throw new IOException("Invalid pyramid manifest");
+    }
+    return new TilePyramid(width, height, tileSize, format);
+  }
+
+  private static int parseInt(Properties properties, String name) throws IOException {
+    String value = properties.getProperty(name);
+    if (value == null) {
+      throw new IOException("Missing " + name);
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid " + name + ": " + value);
+    }
+  }
+
+  /** Writes the manifest. The stream is not closed. */
+  public void write(OutputStream outputStream) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty("width", Integer.toString(width));
+    properties.setProperty("height", Integer.toString(height));
+    properties.setProperty("tileSize", Integer.toString(tileSize));
+    properties.setProperty("format", format);
+    properties.store(outputStream, null);
+  }
+
+  /** Width of the full resolution image. */
+  public int getWidth() {
+    return width;
+  }
+
+  /** Height of the full resolution image. */
+  public int getHeight() {
+    return height;
+  }
+
+  /** Width & height of a tile without its border. */
+  public int getTileSize() {
+    return tileSize;
+  }
+
+  /** Width & height of a stored tile including its border. */
+  public int getStoredTileSize() {
+    return tileSize + 2 * BORDER;
+  }
+
+  /** File extension of the tiles. */
+  public String getFormat() {
+    return format;
+  }
+
+  /** Number of levels. The last level is a single tile. */
+  public int getLevelCount() {
+    return levelCount;
+  }
+
+  /** Width of a level in pixels. */
+  public int getLevelWidth(int level) {
+    return divideRoundingUp(width, 1 << level);
+  }
+
+  /** Height of a level in pixels. */
+  public int getLevelHeight(int level) {
+    return divideRoundingUp(height, 1 << level);
+  }
+
+  /** Columns of tiles in a level. */
+  public int getColumns(int level) {
+    return divideRoundingUp(getLevelWidth(level), tileSize);
+  }
+
+  /** Rows of tiles in a level. */
+  public int getRows(int level) {
+    return divideRoundingUp(getLevelHeight(level), tileSize);
+  }
+
+  /**
+   * Returns a layout of a level's tiles for measuring their distance from a view direction. The
+   * last row & column of tiles are partial.
+   */
+  public TileLayout createLayout(int level) {
+    int columns = getColumns(level);
+    int rows = getRows(level);
+    float[] columnEdges = new float[columns + 1];
+    float[] rowEdges = new float[rows + 1];
+    for (int i = 0; i < columns; ++i) {
+      columnEdges[i] = (float) i * tileSize / getLevelWidth(level);
+    }
+    for (int i = 0; i < rows; ++i) {
+      rowEdges[i] = (float) i * tileSize / getLevelHeight(level);
+    }
+    columnEdges[columns] = 1;
+    rowEdges[rows] = 1;
+    return new TileLayout(columnEdges, rowEdges);
+  }
+
+  /** Path of a tile relative to the pyramid's directory. */
+  public String getTilePath(int level, int row, int column) {
+    return level + "/" + row + "_" + column + "." + format;
+  }
+
+  /** Packs a tile's coordinates into a single key. */
+  public static long getTileKey(int level, int row, int column) {
+    return ((long) level << 48) | ((long) row << 24) | column;
+  }
+
+  /** Level of a key from {@link #getTileKey}. */
+  public static int getKeyLevel(long key) {
+    return (int) (key >>> 48);
+  }
+
+  /** Row of a key from {@link #getTileKey}. */
+  public static int getKeyRow(long key) {
+    return (int) (key >>> 24) & 0xFFFFFF;
+  }
+
+  /** Column of a key from {@link #getTileKey}. */
+  public static int getKeyColumn(long key) {
+    return (int) key & 0xFFFFFF;
+  }
+
+  private static int divideRoundingUp(int value, int divisor) {
+    return (value + divisor - 1) / divisor;
+  }
+
+  @Override
+  public String toString() {
+    return width + "x" + height + " in " + levelCount + " levels of " + tileSize + "px tiles";
+  }
+}
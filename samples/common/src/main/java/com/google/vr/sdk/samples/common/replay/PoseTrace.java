@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.replay;
+
+import com.google.vr.sdk.samples.common.math.Quat;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A recorded sequence of timestamped head rotations.
+ *
+ * <p>Poses are recorded on a device with {@link #add} into preallocated storage, so recording can
+ * run on the GL thread, and saved with {@link #write}. {@link RenderLoopReplay} reads them back to
+ * drive a renderer off-device. Rotations are stored as quaternions and exchanged as 4x4
+ * column-major matrices in the {@code android.opengl.Matrix} format.
+ */
+public final class PoseTrace {
+  // "POSE" in ASCII.
+  private static final int MAGIC = 0x504f5345;
+  private static final int VERSION = 1;
+
+  private final long[] times;
+  private final float[] rotations;
+  private int size;
+
+  /** Creates an empty trace that can hold up to capacity poses. */
+  public PoseTrace(int capacity) {
+    times = new long[capacity];
+    rotations = new float[capacity * 4];
+  }
+
+  /** Returns the number of poses in the trace. */
+  public int size() {
+    return size;
+  }
+
+  /** Removes all poses. */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Appends a pose. Times should be increasing.
+   *
+   * @param timeNanos Time of the pose.
+   * @param rotationMatrix 4x4 rotation matrix. Any translation is ignored.
+   * @param offset Index of the first element of the matrix.
+   * @return false if the trace is full, in which case the pose is dropped
+   */
+  public boolean add(long timeNanos, float[] rotationMatrix, int offset) {
+    if (size == times.length) {
+      return false;
+    }
+    times[size] = timeNanos;
+    Quat.fromRotationMatrix(rotationMatrix, offset, rotations, size * 4);
+    ++size;
+    return true;
+  }
+
+  /** Returns the time of the pose at the given index. */
+  public long getTimeNanos(int index) {
+    checkIndex(index);
+    return times[index];
+  }
+
+  /** Writes the rotation of the pose at the given index as a 4x4 matrix. */
+  public void getRotationMatrix(int index, float[] rotationMatrix, int offset) {
+    checkIndex(index);
+    Quat.toRotationMatrix(rotations, index * 4, rotationMatrix, offset);
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Pose " + index + " of " + size);
+    }
+  }
+
+  /** Writes the trace in a compact binary format. The stream is not closed. */
+  public void write(OutputStream outputStream) throws IOException {
+    DataOutputStream output = new DataOutputStream(outputStream);
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeInt(size);
+    for (int i = 0; i < size; ++i) {
+      output.writeLong(times[i]);
+      for (int j = 0; j < 4; ++j) {
+        output.writeFloat(rotations[i * 4 + j]);
+      }
+    }
+    output.flush();
+  }
+
+  /** Reads a trace written by {@link #write}. The stream is not closed. */
+  public static PoseTrace read(InputStream inputStream) throws IOException {
+    DataInputStream input = new DataInputStream(inputStream);
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a pose trace");
+    }
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported pose trace version " + version);
+    }
+    int size = input.readInt();
+    if (size < 0) {
+      throw new IOException("Invalid pose count " + size);
+    }
+    PoseTrace trace = new PoseTrace(size);
+    for (int i = 0; i < size; ++i) {
+      trace.times[i] = input.readLong();
+      for (int j = 0; j < 4; ++j) {
+        trace.rotations[i * 4 + j] = input.readFloat();
+      }
+    }
+    trace.size = size;
+    return trace;
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.replay;
+
+/**
+ * Drives a render loop with a recorded {@link PoseTrace} and records per-frame costs.
+ *
+ * <p>Each pose in the trace becomes one frame. The {@link Target} exposes monotonically increasing
+ * counters, e.g., the number of GL calls or bytes uploaded, and the replay stores how much each
+ * counter grew during every frame. An optional {@link AllocationCounter} adds the bytes allocated
+ * by the render thread. Since the replay is deterministic, the results can be compared against a
+ * baseline to catch hot-path regressions.
+ *
+ * <p>Nothing in this class depends on Android. A target that draws through GL needs a recording
+ * stand-in for the GL bindings when run off-device.
+ */
+public final class RenderLoopReplay {
+  /** The render loop being measured. */
+  public interface Target {
+    /** Renders a frame for the given head pose. */
+    void drawFrame(long frameTimeNanos, float[] headFromWorld);
+
+    /** Returns the names of the counters reported by {@link #getCounter}. */
+    String[] getCounterNames();
+
+    /** Returns the current value of a counter. Counters must never decrease. */
+    long getCounter(int index);
+  }
+
+  /** Reports the number of bytes allocated by the current thread, e.g., using ThreadMXBean. */
+  public interface AllocationCounter {
+    long getAllocatedBytes();
+  }
+
+  /** Per-frame counter deltas of a replay. */
+  public static final class Result {
+    private final String[] names;
+    // values[counter][frame].
+    private final long[][] values;
+
+    private Result(String[] names, int frameCount) {
+      this.names = names;
+      values = new long[names.length][frameCount];
+    }
+
+    /** Returns the number of measured frames. */
+    public int getFrameCount() {
+      return values.length == 0 ? 0 : values[0].length;
+    }
+
+    /** Returns the counter names. The allocation counter, if any, is last. */
+    public String[] getCounterNames() {
+      return names.clone();
+    }
+
+    /** Returns how much the counter grew during the given frame. */
+    public long getValue(int counter, int frame) {
+      return values[counter][frame];
+    }
+
+    /** Returns the largest per-frame value of the counter. */
+    public long getMax(int counter) {
+      long max = 0;
+      for (long value : values[counter]) {
+        max = Math.max(max, value);
+      }
+      return max;
+    }
+
+    /** Returns the mean per-frame value of the counter. */
+    public double getMean(int counter) {
+      long[] frames = values[counter];
+      if (frames.length == 0) {
+        return 0;
+      }
+      long sum = 0;
+      for (long value : frames) {
+        sum += value;
+      }
+      return (double) sum / frames.length;
+    }
+
+    /** Appends the mean and maximum of every counter to the builder, one counter per line. */
+    public StringBuilder dump(StringBuilder builder) {
+      builder.append("frames=").append(getFrameCount());
+      for (int i = 0; i < names.length; ++i) {
+        builder
+            .append("\n  ")
+            .append(names[i])
+            .append(": mean=")
+            .append(getMean(i))
+            .append(" max=")
+            .append(getMax(i));
+      }
+      return builder;
+    }
+  }
+
+  private static final String ALLOCATED_BYTES = "allocatedBytes";
+
+  private final PoseTrace trace;
+  private final Target target;
+  private AllocationCounter allocationCounter;
+  private int warmupFrames;
+
+  public RenderLoopReplay(PoseTrace trace, Target target) {
+    this.trace = trace;
+    this.target = target;
+  }
+
+  /** Also records the bytes allocated per frame. */
+  public void setAllocationCounter(AllocationCounter allocationCounter) {
+    this.allocationCounter = allocationCounter;
+  }
+
+  /**
+   * Sets the number of leading poses that are rendered but not measured, e.g., to let lazy
+   * initialization and JIT compilation settle.
+   */
+  public void setWarmupFrames(int warmupFrames) {
+    this.warmupFrames = Math.max(0, warmupFrames);
+  }
+
+  /** Renders every pose in the trace and returns the measurements. */
+  public Result run() {
+    String[] targetNames = target.getCounterNames();
+    int counterCount = targetNames.length;
+    String[] names;
+    if (allocationCounter != null) {
+      names = new String[counterCount + 1];
+      System.arraycopy(targetNames, 0, names, 0, counterCount);
+      names[counterCount] = ALLOCATED_BYTES;
+    } else {
+      names = targetNames.clone();
+    }
+    int measuredFrames = Math.max(0, trace.size() - warmupFrames);
+    Result result = new Result(names, measuredFrames);
+
+    // Allocate everything before the loop so the harness doesn't show up in the allocation count.
+    long[] before = new long[names.length];
+    float[] headFromWorld = new float[16];
+    for (int frame = 0; frame < trace.size(); ++frame) {
+      trace.getRotationMatrix(frame, headFromWorld, 0);
+      for (int i = 0; i < counterCount; ++i) {
+        before[i] = target.getCounter(i);
+      }
+      if (allocationCounter != null) {
+        before[counterCount] = allocationCounter.getAllocatedBytes();
+      }
+
+      target.drawFrame(trace.getTimeNanos(frame), headFromWorld);
+
+      int measured = frame - warmupFrames;
+      if (measured < 0) {
+        continue;
+      }
+      for (int i = 0; i < counterCount; ++i) {
+        result.values[i][measured] = target.getCounter(i) - before[i];
+      }
+      if (allocationCounter != null) {
+        result.values[counterCount][measured] =
+            allocationCounter.getAllocatedBytes() - before[counterCount];
+      }
+    }
+    return result;
+  }
+}
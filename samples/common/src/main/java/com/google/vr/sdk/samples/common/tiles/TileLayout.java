@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.tiles;
+
+/**
+ * Splits an equirectangular 360 x 180 frame into a grid of tiles and measures how far each tile is
+ * from the view direction.
+ *
+ * <p>Tiles are numbered row by row starting at the top left of the frame. The grid is uniform
+ * unless explicit edges are given, e.g., for an image whose last row & column of tiles are
+ * partial. The center of the frame is straight ahead (-Z) and the top of the frame is up (+Y), as
+ * in the video360 sample's sphere. Each tile is bounded by a cone with its apex at the center of
+ * the sphere, so the angle between a view direction and the closest point of the tile is cheap to
+ * compute. Nothing is allocated after construction.
+ */
+public final class TileLayout {
+  // Samples per tile edge used to find the bounding cones.
+  private static final int EDGE_SAMPLES = 16;
+
+  private final int rows;
+  private final int columns;
+  private final float[] columnEdges;
+  private final float[] rowEdges;
+  private final float[] coneAxes;
+  private final float[] coneAngles;
+
+  /**
+   * @param rows Number of rows of tiles. Must be >= 1.
+   * @param columns Number of columns of tiles. Must be >= 1.
+   */
+  public TileLayout(int rows, int columns) {
+    this(uniformEdges(columns), uniformEdges(rows));
+  }
+
+  /**
+   * @param columnEdges Horizontal positions of the tile boundaries in [0, 1], starting with 0 and
+   *     ending with 1. There is one more edge than columns.
+   * @param rowEdges Vertical positions of the tile boundaries in [0, 1], starting with 0 at the top
+   *     and ending with 1.
+   */
+  public TileLayout(float[] columnEdges, float[] rowEdges) {
+    if (!isValidEdges(columnEdges) || !isValidEdges(rowEdges)) {
+      throw new IllegalArgumentException("Invalid tile layout " + (rowEdges.length - 1) + "x"
+          + (columnEdges.length - 1));
+    }
+    this.columnEdges = columnEdges.clone();
+    this.rowEdges = rowEdges.clone();
+    rows = rowEdges.length - 1;
+    columns = columnEdges.length - 1;
+    coneAxes = new float[rows * columns * 3];
+    coneAngles = new float[rows * columns];
+
+    float[] direction = new float[3];
+    for (int row = 0; row < rows; ++row) {
+      for (int column = 0; column < columns; ++column) {
+        int tile = getTileIndex(row, column);
+        // The axis points at the center of the tile. Tiles touching a pole are centered on it.
+        float u = (columnEdges[column] + columnEdges[column + 1]) / 2;
+        float v = (rowEdges[row] + rowEdges[row + 1]) / 2;
+        if (rows > 1 && row == 0) {
+          v = 0;
+        } else if (rows > 1 && row == rows - 1) {
+          v = 1;
+        }
+        getDirection(u, v, coneAxes, tile * 3);
+
+        // The tile's farthest point from the axis lies on its boundary.
+        double maxAngle = 0;
+        for (int i = 0; i <= EDGE_SAMPLES; ++i) {
+          float t = (float) i / EDGE_SAMPLES;
+          for (int edge = 0; edge < 4; ++edge) {
+            float edgeU =
+                (edge < 2) ? lerp(columnEdges, column, t) : columnEdges[column + edge - 2];
+            float edgeV = (edge < 2) ? rowEdges[row + edge] : lerp(rowEdges, row, t);
+            getDirection(edgeU, edgeV, direction, 0);
+            maxAngle = Math.max(maxAngle, angleTo(tile, direction[0], direction[1], direction[2]));
+          }
+        }
+        // The boundary between samples can bulge out by up to half of the sample spacing.
+        double spacing = Math.max(
+            Math.PI * (rowEdges[row + 1] - rowEdges[row]),
+            2 * Math.PI * (columnEdges[column + 1] - columnEdges[column])) / EDGE_SAMPLES;
+        coneAngles[tile] = (float) Math.min(Math.PI, maxAngle + spacing / 2);
+      }
+    }
+  }
+
+  private static float[] uniformEdges(int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("Invalid tile count " + count);
+    }
+    float[] edges = new float[count + 1];
+    for (int i = 0; i <= count; ++i) {
+      edges[i] = (float) i / count;
+    }
+    return edges;
+  }
+
+  private static boolean isValidEdges(float[] edges) {
+    if (edges.length < 2 || edges[0] != 0 || edges[edges.length - 1] != 1) {
+      return false;
+    }
+    for (int i = 1; i < edges.length; ++i) {
+      if (edges[i] <= edges[i - 1]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static float lerp(float[] edges, int index, float t) {
+    return edges[index] + t * (edges[index + 1] - edges[index]);
+  }
+
+  /** Returns the number of rows of tiles. */
+  public int getRows() {
+    return rows;
+  }
+
+  /** Returns the number of columns of tiles. */
+  public int getColumns() {
+    return columns;
+  }
+
+  /** Returns the number of tiles. */
+  public int getTileCount() {
+    return rows * columns;
+  }
+
+  /** Returns the index of the tile at the given row & column. */
+  public int getTileIndex(int row, int column) {
+    return row * columns + column;
+  }
+
+  /** Returns the row of the tile. */
+  public int getRow(int tile) {
+    return tile / columns;
+  }
+
+  /** Returns the column of the tile. */
+  public int getColumn(int tile) {
+    return tile % columns;
+  }
+
+  /** Returns the angle in radians between the tile's center and its farthest point. */
+  public float getTileRadius(int tile) {
+    return coneAngles[tile];
+  }
+
+  /**
+   * Computes the world-space direction of a point in the frame.
+   *
+   * @param u Horizontal position in [0, 1]. 0.5 is straight ahead.
+   * @param v Vertical position in [0, 1]. 0 is up.
+   * @param direction Receives the unit vector.
+   * @param offset Index of the first element of the vector.
+   */
+  public static void getDirection(float u, float v, float[] direction, int offset) {
+    double theta = 2 * Math.PI * u;
+    double phi = Math.PI * (.5 - v);
+    direction[offset] = -(float) (Math.sin(theta) * Math.cos(phi));
+    direction[offset + 1] = (float) Math.sin(phi);
+    direction[offset + 2] = (float) (Math.cos(theta) * Math.cos(phi));
+  }
+
+  /**
+   * Returns the angle in radians between a direction and the closest point of the tile, or 0 if
+   * the direction points into the tile's bounding cone.
+   *
+   * @param tile Index of the tile.
+   * @param x X component of the unit direction in world space.
+   * @param y Y component of the direction.
+   * @param z Z component of the direction.
+   */
+  public float getAngularDistance(int tile, float x, float y, float z) {
+    return (float) Math.max(0, angleTo(tile, x, y, z) - coneAngles[tile]);
+  }
+
+  /**
+   * Writes the angular distance of every tile from the view direction of a head pose.
+   *
+   * @param headFromWorld 4x4 column-major rotation from world to head space.
+   * @param distances Array of {@link #getTileCount()} elements that receives the distances.
+   */
+  public void getAngularDistances(float[] headFromWorld, float[] distances) {
+    // The head looks down -Z so its view direction in world space is minus the third row of the
+    // rotation.
+    float x = -headFromWorld[2];
+    float y = -headFromWorld[6];
+    float z = -headFromWorld[10];
+    for (int tile = 0; tile < distances.length; ++tile) {
+      distances[tile] = getAngularDistance(tile, x, y, z);
+    }
+  }
+
+  private double angleTo(int tile, float x, float y, float z) {
+    double cos = coneAxes[tile * 3] * x + coneAxes[tile * 3 + 1] * y + coneAxes[tile * 3 + 2] * z;
+    return Math.acos(Math.max(-1, Math.min(1, cos)));
+  }
+}
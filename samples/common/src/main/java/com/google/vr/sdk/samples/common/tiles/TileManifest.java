@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.tiles;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Properties;
+
+/**
+ * Describes a tiled 360 video: the tile grid, the quality levels each tile is encoded at and where
+ * each segment of each tile can be fetched from.
+ *
+ * <p>The manifest is a properties file such as:
+ *
+ * <pre>
+ * rows=4
+ * columns=8
+ * segmentDurationMs=1000
+ * segmentCount=120
+ * # Bitrate of a single tile in bits per second for each quality level, lowest first.
+ * bitrates=250000,1000000,4000000
+ * uriTemplate=q{quality}/{row}_{column}/{segment}.mp4
+ * </pre>
+ *
+ * <p>The template is resolved against the manifest's URI so the same files can be served by a CDN
+ * or by a local HTTP server.
+ */
+public final class TileManifest {
+  private static final String ROW = "{row}";
+  private static final String COLUMN = "{column}";
+  private static final String QUALITY = "{quality}";
+  private static final String SEGMENT = "{segment}";
+
+  private final URI baseUri;
+  private final TileLayout layout;
+  private final long segmentDurationMs;
+  private final int segmentCount;
+  private final long[] bitrates;
+  private final String uriTemplate;
+
+  private TileManifest(
+      URI baseUri,
+      TileLayout layout,
+      long segmentDurationMs,
+      int segmentCount,
+      long[] bitrates,
+      String uriTemplate) {
+    this.baseUri = baseUri;
+    this.layout = layout;
+    this.segmentDurationMs = segmentDurationMs;
+    this.segmentCount = segmentCount;
+    this.bitrates = bitrates;
+    this.uriTemplate = uriTemplate;
+  }
+
+  /**
+   * Parses a manifest.
+   *
+   * @param inputStream The manifest's contents. Not closed by this method.
+   * @param baseUri URI the manifest was loaded from. Segment URIs are relative to it.
+   * @throws IOException if the manifest can't be read or is malformed.
+   */
+  public static TileManifest read(InputStream inputStream, URI baseUri) throws IOException {
+    Properties properties = new Properties();
+    properties.load(inputStream);
+
+    String[] bitrateValues = getProperty(properties, "bitrates").split(",");
+    long[] bitrates = new long[bitrateValues.length];
+    for (int i = 0; i < bitrates.length; ++i) {
+      bitrates[i] = parseLong(bitrateValues[i].trim(), "bitrates");
+      if (bitrates[i] <= 0 || (i > 0 && bitrates[i] <= bitrates[i - 1])) {
+        throw new IOException("Bitrates must be positive and increasing");
+      }
+    }
+
+    int rows = (int) parseLong(getProperty(properties, "rows"), "rows");
+    int columns = (int) parseLong(getProperty(properties, "columns"), "columns");
+    long segmentDurationMs =
+        parseLong(getProperty(properties, "segmentDurationMs"), "segmentDurationMs");
+    int segmentCount = (int) parseLong(getProperty(properties, "segmentCount"), "segmentCount");
+    if (rows < 1 || columns < 1 || segmentDurationMs <= 0 || segmentCount < 1) {
+      throw new IOException("Invalid tile grid or segments");
+    }
+
+    String uriTemplate = getProperty(properties, "uriTemplate");
+    if (!uriTemplate.contains(ROW) || !uriTemplate.contains(COLUMN)
+        || !uriTemplate.contains(QUALITY) || !uriTemplate.contains(SEGMENT)) {
+      throw new IOException("uriTemplate must contain " + ROW + COLUMN + QUALITY + SEGMENT);
+    }
+    return new TileManifest(
+        baseUri,
+        new TileLayout(rows, columns),
+        segmentDurationMs,
+        segmentCount,
+        bitrates,
+        uriTemplate);
+  }
+
+  private static String getProperty(Properties properties, String name) throws IOException {
+    String value = properties.getProperty(name);
+    if (value == null) {
+      throw new IOException("Missing " + name);
+    }
+    return value.trim();
+  }
+
+  private static long parseLong(String value, String name) throws IOException {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid " + name + ": " + value);
+    }
+  }
+
+  /** Returns the tile grid. */
+  public TileLayout getLayout() {
+    return layout;
+  }
+
+  /** Returns the number of quality levels. Level 0 is the lowest. */
+  public int getQualityCount() {
+    return bitrates.length;
+  }
+
+  /** Returns the bitrate of a single tile at the given quality level in bits per second. */
+  public long getBitrate(int quality) {
+    return bitrates[quality];
+  }
+
+  /** Returns the duration of each segment. */
+  public long getSegmentDurationMs() {
+    return segmentDurationMs;
+  }
+
+  /** Returns the number of segments of each tile. */
+  public int getSegmentCount() {
+    return segmentCount;
+  }
+
+  /** Returns the segment that plays at the given position, clamped to the last segment. */
+  public int getSegmentIndex(long positionMs) {
+    return (int) Math.max(0, Math.min(segmentCount - 1, positionMs / segmentDurationMs));
+  }
+
+  /** Returns the absolute URI of a segment of a tile. */
+  public URI getSegmentUri(int tile, int quality, int segment) {
+    String path = uriTemplate
+        .replace(ROW, Integer.toString(layout.getRow(tile)))
+        .replace(COLUMN, Integer.toString(layout.getColumn(tile)))
+        .replace(QUALITY, Integer.toString(quality))
+        .replace(SEGMENT, Integer.toString(segment));
+    return baseUri.resolve(path);
+  }
+}
@@ -0,0 +1,549 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.tiles;
+
+import com.google.vr.sdk.samples.common.pose.PosePredictor;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches the segments of a tiled 360 video a few segments ahead of playback, at the qualities the
+ * viewer is predicted to need when each segment plays.
+ *
+ * <p>For each upcoming segment the head pose is extrapolated to the time the segment starts and a
+ * {@link ViewportTileSelector} picks the tile qualities for that pose. Extrapolation is only
+ * trusted for a short time, so segments further ahead use a wider margin around the viewport
+ * instead. Each tile of each segment gets a request for the lowest quality, which is what is shown
+ * if nothing better arrives, and possibly one request for an upgrade.
+ *
+ * <p>Requests are issued in order of urgency: the base layers of all upcoming segments, since these
+ * are small and missing them stalls playback, then the upgrades segment by segment, nearest to the
+ * view first. Given the bandwidth estimate, an upgrade that can't arrive before its segment starts
+ * is dropped rather than delaying the requests behind it. When the viewer turns, upgrades that are
+ * no longer wanted are canceled, including ones being downloaded. Base layer requests are only
+ * canceled once their segment is no longer needed.
+ *
+ * <p>When a segment starts playing, the tiles the viewer actually needs at high quality are
+ * compared with what was prefetched. These hits & misses measure the quality of the prediction.
+ * The segments that were already in the lookahead window when playback started or jumped aren't
+ * measured since they had less time to be prefetched.
+ *
+ * <p>{@link #addPose} and {@link #update} must be called on the same thread, which is also the
+ * thread the {@link Listener} is called on. Loads run on the given Executor. New loads are only
+ * started by update, so it should be called both at a regular rate and soon after each load
+ * completes.
+ *
+ * <p>This is library code for a player that fetches & composites tiles itself, like
+ * {@link ViewportTileSelector}; none of the samples use it. Such a player would pass its bandwidth
+ * meter's estimate & playback position, read on the player's thread, to {@link #update} and supply
+ * a {@link Loader} that uses its own data sources.
+ */
+public final class TilePrefetchScheduler {
+  /** Loads the data of a segment. Called on the Executor's threads. */
+  public interface Loader {
+    /**
+     * Returns the segment's data or null if the request was canceled while loading. Implementations
+     * should poll {@link Request#isCanceled()} regularly.
+     */
+    byte[] load(Request request) throws IOException;
+  }
+
+  /** Receives loaded segments. */
+  public interface Listener {
+    /** Called from {@link #update} for each segment that was loaded since the previous update. */
+    void onSegmentLoaded(Request request, byte[] data);
+  }
+
+  /** A segment of a tile at a quality level. */
+  public static final class Request {
+    private final int tile;
+    private final int quality;
+    private final int segment;
+    private final URI uri;
+    private volatile boolean canceled;
+
+    // Ordering, only accessed on the scheduler thread.
+    private float distance;
+
+    // Results, published to the scheduler thread through the completion queue.
+    private byte[] data;
+    private IOException error;
+
+    private Request(int tile, int quality, int segment, URI uri) {
+      this.tile = tile;
+      this.quality = quality;
+      this.segment = segment;
+      this.uri = uri;
+    }
+
+    public int getTile() {
+      return tile;
+    }
+
+    public int getQuality() {
+      return quality;
+    }
+
+    public int getSegment() {
+      return segment;
+    }
+
+    public URI getUri() {
+      return uri;
+    }
+
+    /** Returns true if the data of this request is no longer needed. */
+    public boolean isCanceled() {
+      return canceled;
+    }
+
+    @Override
+    public String toString() {
+      return "tile " + tile + " quality " + quality + " segment " + segment;
+    }
+  }
+
+  /** Default number of segments after the playing one that are prefetched. */
+  public static final int DEFAULT_LOOKAHEAD_SEGMENTS = 3;
+  /** Default number of concurrent loads. */
+  public static final int DEFAULT_MAX_LOADS = 4;
+  // Head motion is only extrapolated this far. Beyond this, constant velocity is a poor guess.
+  private static final long MAX_PREDICTION_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+  // Extra margin around the viewport for each segment ahead of the playing one.
+  private static final float MARGIN_DEGREES_PER_SEGMENT = 10;
+
+  private static final Comparator<Request> URGENCY =
+      new Comparator<Request>() {
+        @Override
+        public int compare(Request a, Request b) {
+          if ((a.quality == 0) != (b.quality == 0)) {
+            return a.quality == 0 ? -1 : 1;
+          }
+          if (a.segment != b.segment) {
+            return a.segment < b.segment ? -1 : 1;
+          }
+          return Float.compare(a.distance, b.distance);
+        }
+      };
+
+  private final TileManifest manifest;
+  private final Loader loader;
+  private final Executor executor;
+  private final Listener listener;
+  private final int tileCount;
+  private final int maxLoads;
+
+  private final PosePredictor posePredictor = new PosePredictor();
+  private final float[] pose = new float[16];
+  private final int[] qualities;
+  private final int[] playingQualities;
+  // One selector per segment ahead so the hysteresis of each doesn't interfere with the others.
+  private final ViewportTileSelector[] selectors;
+  // Finds the tiles in the viewport when a segment starts. It has no margin or hysteresis.
+  private final ViewportTileSelector viewportSelector;
+
+  // Ring of the segments from the playing one to the end of the lookahead, indexed by
+  // segment % window.
+  private final int window;
+  private final int[] slotSegments;
+  private final int[][] loadedQualities;
+  private final Request[][] baseRequests;
+  private final Request[][] upgradeRequests;
+
+  private final ArrayList<Request> pending = new ArrayList<>();
+  private final ConcurrentLinkedQueue<Request> completions = new ConcurrentLinkedQueue<>();
+  private int activeLoads;
+  private int playingSegment = -1;
+  // The prediction is only measured from this segment on. See the class comment.
+  private int firstMeasuredSegment;
+  private boolean hasPose;
+
+  // Metrics.
+  private long requestCount;
+  private long loadCount;
+  private long loadedBytes;
+  private long failureCount;
+  private long staleCancelCount;
+  private long lateDropCount;
+  private long hitCount;
+  private long missCount;
+  private long stallCount;
+
+  /**
+   * @param manifest Describes the tiled video.
+   * @param loader Loads segments.
+   * @param executor Runs loads. At most maxLoads are submitted at a time.
+   * @param listener Receives the data of loaded segments. Can be null.
+   * @param lookaheadSegments Number of segments after the playing one to prefetch.
+   * @param maxLoads Maximum number of concurrent loads.
+   */
+  public TilePrefetchScheduler(
+      TileManifest manifest,
+      Loader loader,
+      Executor executor,
+      Listener listener,
+      int lookaheadSegments,
+      int maxLoads) {
+    if (lookaheadSegments < 0 || maxLoads < 1) {
+      throw new IllegalArgumentException("Invalid lookahead or load count");
+    }
+    this.manifest = manifest;
+    this.loader = loader;
+    this.executor = executor;
+    this.listener = listener;
+    this.maxLoads = maxLoads;
+    tileCount = manifest.getLayout().getTileCount();
+    qualities = new int[tileCount];
+    playingQualities = new int[tileCount];
+    posePredictor.setModel(PosePredictor.EXTRAPOLATE_CONSTANT_VELOCITY);
+
+    window = lookaheadSegments + 1;
+    selectors = new ViewportTileSelector[window];
+    for (int k = 0; k < window; ++k) {
+      selectors[k] = ViewportTileSelector.forManifest(manifest);
+      selectors[k].setViewport(
+          ViewportTileSelector.DEFAULT_VIEWPORT_DEGREES,
+          ViewportTileSelector.DEFAULT_MARGIN_DEGREES + k * MARGIN_DEGREES_PER_SEGMENT,
+          ViewportTileSelector.DEFAULT_HYSTERESIS_DEGREES);
+    }
+    viewportSelector = ViewportTileSelector.forManifest(manifest);
+    viewportSelector.setViewport(ViewportTileSelector.DEFAULT_VIEWPORT_DEGREES, 0, 0);
+    slotSegments = new int[window];
+    loadedQualities = new int[window][tileCount];
+    baseRequests = new Request[window][tileCount];
+    upgradeRequests = new Request[window][tileCount];
+    for (int slot = 0; slot < window; ++slot) {
+      clearSlot(slot, -1);
+    }
+  }
+
+  /**
+   * Adds a measured head pose.
+   *
+   * @param timeNanos Time the pose was measured on the clock used by {@link #update}.
+   * @param headFromWorld 4x4 column-major rotation from world to head space.
+   */
+  public void addPose(long timeNanos, float[] headFromWorld) {
+    posePredictor.addPose(timeNanos, headFromWorld, 0);
+    hasPose = true;
+  }
+
+  /**
+   * Handles completed loads, updates the requests for the upcoming segments and starts loads.
+   *
+   * @param nowNanos Current time.
+   * @param positionMs Current playback position.
+   * @param bandwidthBps Bandwidth available for all tiles in bits per second, or <= 0 if unknown.
+   */
+  public void update(long nowNanos, long positionMs, long bandwidthBps) {
+    handleCompletions();
+
+    int segment = manifest.getSegmentIndex(positionMs);
+    if (segment != playingSegment) {
+      if (playingSegment < 0 || segment != playingSegment + 1) {
+        firstMeasuredSegment = segment + window;
+      }
+      playingSegment = segment;
+      recycleSlots();
+      if (segment >= firstMeasuredSegment) {
+        measurePrediction(nowNanos);
+      }
+    }
+
+    for (int k = 0; k < window && playingSegment + k < manifest.getSegmentCount(); ++k) {
+      long untilStartNanos = TimeUnit.MILLISECONDS.toNanos(
+          Math.max(0, (playingSegment + k) * manifest.getSegmentDurationMs() - positionMs));
+      predictPose(nowNanos + Math.min(untilStartNanos, MAX_PREDICTION_NANOS));
+      selectors[k].select(pose, Math.max(0, bandwidthBps), qualities);
+      if (k == 0) {
+        System.arraycopy(qualities, 0, playingQualities, 0, tileCount);
+      }
+      updateRequests(playingSegment + k, selectors[k].getLastDistances());
+    }
+
+    schedule(positionMs, bandwidthBps);
+  }
+
+  /** Copies the tile qualities selected for the playing segment by the last update. */
+  public void getSelectedQualities(int[] out) {
+    System.arraycopy(playingQualities, 0, out, 0, tileCount);
+  }
+
+  private void predictPose(long timeNanos) {
+    if (!hasPose || !posePredictor.predict(timeNanos, pose, 0)) {
+      setIdentity(pose);
+    }
+  }
+
+  /** Adds the requests the selection of a segment needs and cancels the ones it no longer needs. */
+  private void updateRequests(int segment, float[] distances) {
+    int slot = segment % window;
+    for (int tile = 0; tile < tileCount; ++tile) {
+      int wanted = qualities[tile];
+      int loaded = loadedQualities[slot][tile];
+
+      Request base = baseRequests[slot][tile];
+      if (loaded < 0 && base == null) {
+        base = addRequest(tile, 0, segment);
+        baseRequests[slot][tile] = base;
+      }
+      if (base != null) {
+        base.distance = distances[tile];
+      }
+
+      Request upgrade = upgradeRequests[slot][tile];
+      if (upgrade != null && upgrade.quality != wanted) {
+        upgrade.canceled = true;
+        ++staleCancelCount;
+        upgrade = null;
+        upgradeRequests[slot][tile] = null;
+      }
+      if (upgrade == null && wanted > 0 && loaded < wanted) {
+        upgrade = addRequest(tile, wanted, segment);
+        upgradeRequests[slot][tile] = upgrade;
+      }
+      if (upgrade != null) {
+        upgrade.distance = distances[tile];
+      }
+    }
+  }
+
+  private Request addRequest(int tile, int quality, int segment) {
+    Request request =
+        new Request(tile, quality, segment, manifest.getSegmentUri(tile, quality, segment));
+    pending.add(request);
+    ++requestCount;
+    return request;
+  }
+
+  /** Drops canceled & late requests and starts the most urgent ones. */
+  private void schedule(long positionMs, long bandwidthBps) {
+    Collections.sort(pending, URGENCY);
+    // Bits that have to be loaded before each pending request can complete. Loads that are in
+    // progress are ignored since their remaining size isn't known.
+    long queuedBits = 0;
+    for (int i = 0; i < pending.size(); ) {
+      Request request = pending.get(i);
+      if (request.canceled) {
+        pending.remove(i);
+        continue;
+      }
+      long bits = manifest.getBitrate(request.quality) * manifest.getSegmentDurationMs() / 1000;
+      if (request.quality > 0 && bandwidthBps > 0) {
+        // Upgrades of the playing segment are still worth showing for the rest of the segment.
+        int deadlineSegment =
+            (request.segment == playingSegment) ? request.segment + 1 : request.segment;
+        long arrivalMs = positionMs + (queuedBits + bits) * 1000 / bandwidthBps;
+        if (arrivalMs > deadlineSegment * manifest.getSegmentDurationMs()) {
+          cancel(request);
+          ++lateDropCount;
+          pending.remove(i);
+          // Forget the upgrade so a later update requests it again if it can still arrive in time.
+          int slot = request.segment % window;
+          if (upgradeRequests[slot][request.tile] == request) {
+            upgradeRequests[slot][request.tile] = null;
+          }
+          continue;
+        }
+      }
+      queuedBits += bits;
+      ++i;
+    }
+
+    while (!pending.isEmpty()) {
+      if (activeLoads >= maxLoads) {
+        handleCompletions();
+        if (activeLoads >= maxLoads) {
+          break;
+        }
+      }
+      final Request request = pending.remove(0);
+      ++activeLoads;
+      executor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              try {
+                request.data = loader.load(request);
+              } catch (IOException e) {
+                request.error = e;
+              }
+              completions.add(request);
+            }
+          });
+    }
+  }
+
+  private void handleCompletions() {
+    Request request;
+    while ((request = completions.poll()) != null) {
+      --activeLoads;
+      int slot = request.segment % window;
+      boolean current = slotSegments[slot] == request.segment;
+      if (current) {
+        if (baseRequests[slot][request.tile] == request) {
+          baseRequests[slot][request.tile] = null;
+        } else if (upgradeRequests[slot][request.tile] == request) {
+          upgradeRequests[slot][request.tile] = null;
+        }
+      }
+      if (request.error != null) {
+        // The request is issued again by the next update if it's still needed.
+        ++failureCount;
+        continue;
+      }
+      if (request.canceled || request.data == null || !current) {
+        continue;
+      }
+      ++loadCount;
+      loadedBytes += request.data.length;
+      if (request.quality > loadedQualities[slot][request.tile]) {
+        loadedQualities[slot][request.tile] = request.quality;
+      }
+      if (listener != null) {
+        listener.onSegmentLoaded(request, request.data);
+      }
+      request.data = null;
+    }
+  }
+
+  /** Clears the slots of segments that are no longer in the lookahead window. */
+  private void recycleSlots() {
+    for (int k = 0; k < window; ++k) {
+      int segment = playingSegment + k;
+      int slot = segment % window;
+      if (slotSegments[slot] != segment) {
+        clearSlot(slot, segment);
+      }
+    }
+  }
+
+  private void clearSlot(int slot, int segment) {
+    for (int tile = 0; tile < tileCount; ++tile) {
+      cancel(baseRequests[slot][tile]);
+      cancel(upgradeRequests[slot][tile]);
+      baseRequests[slot][tile] = null;
+      upgradeRequests[slot][tile] = null;
+      loadedQualities[slot][tile] = -1;
+    }
+    slotSegments[slot] = segment;
+  }
+
+  private static void cancel(Request request) {
+    if (request != null) {
+      request.canceled = true;
+    }
+  }
+
+  /** Compares what was prefetched for the segment that just started with what the viewer needs. */
+  private void measurePrediction(long nowNanos) {
+    predictPose(nowNanos);
+    viewportSelector.select(pose, Long.MAX_VALUE, qualities);
+    int slot = playingSegment % window;
+    for (int tile = 0; tile < tileCount; ++tile) {
+      int loaded = loadedQualities[slot][tile];
+      if (loaded < 0) {
+        ++stallCount;
+      }
+      if (qualities[tile] > 0) {
+        if (loaded > 0) {
+          ++hitCount;
+        } else {
+          ++missCount;
+        }
+      }
+    }
+  }
+
+  private static void setIdentity(float[] matrix) {
+    for (int i = 0; i < 16; ++i) {
+      matrix[i] = (i % 5 == 0) ? 1 : 0;
+    }
+  }
+
+  /** Returns the number of requests that were created. */
+  public long getRequestCount() {
+    return requestCount;
+  }
+
+  /** Returns the number of segments that were loaded and delivered. */
+  public long getLoadCount() {
+    return loadCount;
+  }
+
+  /** Returns the total size of the delivered segments. */
+  public long getLoadedBytes() {
+    return loadedBytes;
+  }
+
+  /** Returns the number of loads that failed. */
+  public long getFailureCount() {
+    return failureCount;
+  }
+
+  /** Returns the number of upgrades canceled because the predicted viewport moved. */
+  public long getStaleCancelCount() {
+    return staleCancelCount;
+  }
+
+  /**
+   * Returns the number of upgrade requests dropped because they couldn't arrive in time. An upgrade
+   * that is still wanted is requested again by the next update, so it can be dropped repeatedly.
+   */
+  public long getLateDropCount() {
+    return lateDropCount;
+  }
+
+  /**
+   * Returns the number of tiles that were needed at high quality when their segment started and
+   * had been prefetched above the lowest quality.
+   */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of tiles that were needed at high quality but weren't prefetched. */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of tiles that had no data at all when their segment started. */
+  public long getStallCount() {
+    return stallCount;
+  }
+
+  /** Appends a summary of the metrics to a StringBuilder. */
+  public StringBuilder dump(StringBuilder out) {
+    long predicted = hitCount + missCount;
+    return out.append("Prefetch: requests [").append(requestCount)
+        .append("], loads [").append(loadCount)
+        .append("], bytes [").append(loadedBytes)
+        .append("], failures [").append(failureCount)
+        .append("], stale cancels [").append(staleCancelCount)
+        .append("], late drops [").append(lateDropCount)
+        .append("], hit rate [").append(predicted > 0 ? 100 * hitCount / predicted : 0)
+        .append("%] of [").append(predicted)
+        .append("], stalled tiles [").append(stallCount)
+        .append("]");
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.tiles;
+
+/**
+ * Picks the quality level of each tile from the head pose and the available bandwidth.
+ *
+ * <p>Every tile is always fetched at the lowest quality so there is something to show wherever the
+ * user turns. The remaining bandwidth is spent on the tiles in and around the viewport, nearest
+ * first. Upgrades are granted one level at a time across all of these tiles so the viewport has a
+ * uniform quality rather than a sharp center and blurry edges. A tile that was upgraded is treated
+ * as if it were a few degrees closer than it is, both when deciding whether it is near the viewport
+ * and when ranking it for the budget, so small head movements don't make tiles flip between
+ * levels.
+ *
+ * <p>This is library code for a player that decodes & composites tiles itself. None of the samples
+ * use it: the videoplayer sample presents a single decoder's output through GVR's async
+ * reprojection surface. {@link #select} doesn't allocate. Instances aren't thread safe.
+ */
+public final class ViewportTileSelector {
+  /** Default half angle of the viewport. Covers the diagonal of a typical headset's view. */
+  public static final float DEFAULT_VIEWPORT_DEGREES = 55;
+  /** Default margin around the viewport that is fetched at high quality for head movements. */
+  public static final float DEFAULT_MARGIN_DEGREES = 15;
+  /** Default extra distance an upgraded tile can drift away before it is downgraded. */
+  public static final float DEFAULT_HYSTERESIS_DEGREES = 10;
+
+  private final TileLayout layout;
+  private final long[] bitrates;
+  private float upgradeRadians;
+  private float hysteresisRadians;
+
+  private final float[] distances;
+  // Distances minus the hysteresis for upgraded tiles. Candidates are ranked by these.
+  private final float[] priorities;
+  private final int[] order;
+  private final int[] previousQualities;
+  private long selectedBitrate;
+  private long switchCount;
+
+  /**
+   * @param layout The tile grid.
+   * @param bitrates Bitrate of a single tile at each quality level in increasing order.
+   */
+  public ViewportTileSelector(TileLayout layout, long[] bitrates) {
+    if (bitrates.length == 0) {
+      throw new IllegalArgumentException("No quality levels");
+    }
+    this.layout = layout;
+    this.bitrates = bitrates.clone();
+    int tileCount = layout.getTileCount();
+    distances = new float[tileCount];
+    priorities = new float[tileCount];
+    order = new int[tileCount];
+    previousQualities = new int[tileCount];
+    setViewport(DEFAULT_VIEWPORT_DEGREES, DEFAULT_MARGIN_DEGREES, DEFAULT_HYSTERESIS_DEGREES);
+  }
+
+  /** Creates a selector for the tiles & quality levels of a manifest. */
+  public static ViewportTileSelector forManifest(TileManifest manifest) {
+    long[] bitrates = new long[manifest.getQualityCount()];
+    for (int i = 0; i < bitrates.length; ++i) {
+      bitrates[i] = manifest.getBitrate(i);
+    }
+    return new ViewportTileSelector(manifest.getLayout(), bitrates);
+  }
+
+  /**
+   * Sets the region that is fetched at high quality.
+   *
+   * @param viewportDegrees Half angle of the cone around the view direction that is visible.
+   * @param marginDegrees Extra angle around the viewport to fetch at high quality.
+   * @param hysteresisDegrees Extra angle an upgraded tile may move away before losing its upgrade.
+   */
+  public void setViewport(float viewportDegrees, float marginDegrees, float hysteresisDegrees) {
+    upgradeRadians = (float) Math.toRadians(viewportDegrees + marginDegrees);
+    hysteresisRadians = (float) Math.toRadians(hysteresisDegrees);
+  }
+
+  /**
+   * Selects the quality level of every tile.
+   *
+   * @param headFromWorld 4x4 column-major rotation from world to head space.
+   * @param bandwidthBps Bandwidth available for all tiles in bits per second.
+   * @param qualities Array of {@link TileLayout#getTileCount()} ints that receives the levels.
+   * @return the number of tiles whose level changed since the previous call
+   */
+  public int select(float[] headFromWorld, long bandwidthBps, int[] qualities) {
+    int tileCount = layout.getTileCount();
+    layout.getAngularDistances(headFromWorld, distances);
+
+    // Tiles that are candidates for an upgrade, sorted by priority. Insertion sort is fine for the
+    // few dozen tiles of a typical grid.
+    int candidates = 0;
+    for (int tile = 0; tile < tileCount; ++tile) {
+      qualities[tile] = 0;
+      priorities[tile] = distances[tile] - (previousQualities[tile] > 0 ? hysteresisRadians : 0);
+      if (priorities[tile] > upgradeRadians) {
+        continue;
+      }
+      int i = candidates++;
+      while (i > 0 && priorities[order[i - 1]] > priorities[tile]) {
+        order[i] = order[i - 1];
+        --i;
+      }
+      order[i] = tile;
+    }
+
+    // Raise all candidates one level at a time, nearest first, until the budget runs out.
+    long total = tileCount * bitrates[0];
+    levels:
+    for (int level = 1; level < bitrates.length; ++level) {
+      long step = bitrates[level] - bitrates[level - 1];
+      for (int i = 0; i < candidates; ++i) {
+        if (total + step > bandwidthBps) {
+          break levels;
+        }
+        qualities[order[i]] = level;
+        total += step;
+      }
+    }
+
+    int changes = 0;
+    for (int tile = 0; tile < tileCount; ++tile) {
+      if (qualities[tile] != previousQualities[tile]) {
+        previousQualities[tile] = qualities[tile];
+        ++changes;
+      }
+    }
+    selectedBitrate = total;
+    switchCount += changes;
+    return changes;
+  }
+
+  /**
+   * Returns the angular distance in radians from the view of each tile as of the last call to
+   * {@link #select}. The array must not be modified.
+   */
+  public float[] getLastDistances() {
+    return distances;
+  }
+
+  /** Returns the total bitrate of the last selection. */
+  public long getSelectedBitrate() {
+    return selectedBitrate;
+  }
+
+  /** Returns the number of quality changes of all tiles since the selector was created. */
+  public long getSwitchCount() {
+    return switchCount;
+  }
+}
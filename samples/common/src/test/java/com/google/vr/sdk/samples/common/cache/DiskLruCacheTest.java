@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class DiskLruCacheTest {
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void committedEntriesAreVisible() throws IOException {
+    DiskLruCache cache = DiskLruCache.open(folder.getRoot(), 100);
+    assertNull(cache.get("a"));
+
+    DiskLruCache.Editor editor = cache.edit("a");
+    write(editor.getFile(), 10);
+    // Entries aren't visible until they're committed.
+    assertNull(cache.get("a"));
+    assertTrue(editor.commit());
+
+    File file = cache.get("a");
+    assertNotNull(file);
+    assertEquals(10, file.length());
+    assertEquals(1, cache.size());
+    assertEquals(10, cache.getBytes());
+    assertEquals(1, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void abortedEntriesAreDropped() throws IOException {
+    DiskLruCache cache = DiskLruCache.open(folder.getRoot(), 100);
+    DiskLruCache.Editor editor = cache.edit("a");
+    write(editor.getFile(), 10);
+    editor.abort();
+
+    assertNull(cache.get("a"));
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedEntries() throws IOException {
+    DiskLruCache cache = DiskLruCache.open(folder.getRoot(), 25);
+    put(cache, "a", 10);
+    put(cache, "b", 10);
+    // Using "a" makes "b" the least recently used entry.
+    assertNotNull(cache.get("a"));
+    put(cache, "c", 10);
+
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("a"));
+    assertNotNull(cache.get("c"));
+    assertEquals(20, cache.getBytes());
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void dropsEntriesLargerThanTheCache() throws IOException {
+    DiskLruCache cache = DiskLruCache.open(folder.getRoot(), 5);
+    DiskLruCache.Editor editor = cache.edit("a");
+    write(editor.getFile(), 10);
+
+    assertFalse(editor.commit());
+    assertNull(cache.get("a"));
+  }
+
+  @Test
+  public void removesEntries() throws IOException {
+    DiskLruCache cache = DiskLruCache.open(folder.getRoot(), 100);
+    put(cache, "a", 10);
+
+    assertTrue(cache.remove("a"));
+    assertFalse(cache.remove("a"));
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.getBytes());
+  }
+
+  @Test
+  public void reopenKeepsEntriesAndDeletesPartialEdits() throws IOException {
+    DiskLruCache cache = DiskLruCache.open(folder.getRoot(), 100);
+    put(cache, "a", 10);
+    // An edit that was interrupted, e.g., by a crash.
+    write(cache.edit("b").getFile(), 10);
+
+    DiskLruCache reopened = DiskLruCache.open(folder.getRoot(), 100);
+    assertNotNull(reopened.get("a"));
+    assertEquals(1, reopened.size());
+    assertEquals(1, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void reopenTrimsToTheNewSize() throws IOException {
+    DiskLruCache cache = DiskLruCache.open(folder.getRoot(), 100);
+    put(cache, "a", 10);
+    put(cache, "b", 10);
+
+    DiskLruCache reopened = DiskLruCache.open(folder.getRoot(), 15);
+    assertEquals(1, reopened.size());
+    assertEquals(10, reopened.getBytes());
+  }
+
+  private static void put(DiskLruCache cache, String key, int bytes) throws IOException {
+    DiskLruCache.Editor editor = cache.edit(key);
+    write(editor.getFile(), bytes);
+    assertTrue(editor.commit());
+  }
+
+  private static void write(File file, int bytes) throws IOException {
+    FileOutputStream output = new FileOutputStream(file);
+    try {
+      output.write(new byte[bytes]);
+    } finally {
+      output.close();
+    }
+  }
+}
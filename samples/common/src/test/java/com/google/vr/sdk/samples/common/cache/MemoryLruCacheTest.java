@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public final class MemoryLruCacheTest {
+  private MemoryLruCache<String, byte[]> cache;
+
+  @Before
+  public void setUp() {
+    cache = new MemoryLruCache<>(25, new MemoryLruCache.Weigher<byte[]>() {
+      @Override
+      public long weigh(byte[] value) {
+        return value.length;
+      }
+    });
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedValues() {
+    byte[] a = new byte[10];
+    cache.put("a", a);
+    cache.put("b", new byte[10]);
+    // Using "a" makes "b" the least recently used value.
+    assertEquals(a, cache.get("a"));
+    cache.put("c", new byte[10]);
+
+    assertNull(cache.get("b"));
+    assertEquals(a, cache.get("a"));
+    assertEquals(2, cache.size());
+    assertEquals(20, cache.getBytes());
+    assertEquals(1, cache.getEvictions());
+    assertEquals(2, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void replacingAValueUpdatesTheSize() {
+    cache.put("a", new byte[10]);
+    cache.put("a", new byte[20]);
+
+    assertEquals(1, cache.size());
+    assertEquals(20, cache.getBytes());
+    assertEquals(0, cache.getEvictions());
+  }
+
+  @Test
+  public void rejectsValuesLargerThanTheCache() {
+    cache.put("a", new byte[10]);
+
+    assertFalse(cache.put("a", new byte[30]));
+    // The previous value would be stale.
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.getBytes());
+  }
+
+  @Test
+  public void removeAndClear() {
+    byte[] a = new byte[10];
+    assertTrue(cache.put("a", a));
+    cache.put("b", new byte[10]);
+
+    assertEquals(a, cache.remove("a"));
+    assertNull(cache.remove("a"));
+    assertEquals(10, cache.getBytes());
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getBytes());
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class RawImageCacheTest {
+  private static final int WIDTH = 3;
+  private static final int HEIGHT = 5;
+  private static final int ROW_BYTES = WIDTH * RawImageFormat.BYTES_PER_PIXEL;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private DiskLruCache disk;
+  private RawImageCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    disk = DiskLruCache.open(folder.getRoot(), 1 << 20);
+    cache = new RawImageCache(disk);
+  }
+
+  @Test
+  public void readsTheRowsThatWereWritten() throws IOException {
+    RawImageCache.Writer writer = cache.edit("image", WIDTH, HEIGHT);
+    // Write the rows in uneven bands.
+    writer.writeRows(rows(0, 2));
+    writer.writeRows(rows(2, 3));
+    assertTrue(writer.commit());
+    assertEquals(RawImageFormat.getFileBytes(WIDTH, HEIGHT), disk.get("image").length());
+
+    RawImageCache.Reader reader = cache.open("image");
+    try {
+      assertEquals(WIDTH, reader.getWidth());
+      assertEquals(HEIGHT, reader.getHeight());
+      ByteBuffer band = ByteBuffer.allocate(2 * ROW_BYTES + 1);
+      assertEquals(2, reader.readRows(band));
+      assertEquals(2 * ROW_BYTES, band.position());
+      band.flip();
+      assertEquals(rows(0, 2), band);
+
+      ByteBuffer rest = ByteBuffer.allocate(10 * ROW_BYTES);
+      assertEquals(3, reader.readRows(rest));
+      assertEquals(0, reader.getRemainingRows());
+      rest.flip();
+      assertEquals(rows(2, 3), rest);
+      assertEquals(0, reader.readRows(ByteBuffer.allocate(ROW_BYTES)));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void missesReturnNull() throws IOException {
+    assertNull(cache.open("image"));
+  }
+
+  @Test
+  public void incompleteImagesAreDropped() throws IOException {
+    RawImageCache.Writer writer = cache.edit("image", WIDTH, HEIGHT);
+    writer.writeRows(rows(0, 2));
+
+    assertFalse(writer.commit());
+    assertNull(cache.open("image"));
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void abortedImagesAreDropped() throws IOException {
+    RawImageCache.Writer writer = cache.edit("image", WIDTH, HEIGHT);
+    writer.writeRows(rows(0, HEIGHT));
+    writer.abort();
+
+    assertNull(cache.open("image"));
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void rejectsPartialAndExtraRows() throws IOException {
+    RawImageCache.Writer writer = cache.edit("image", WIDTH, HEIGHT);
+    try {
+      writer.writeRows(ByteBuffer.allocate(ROW_BYTES + 1));
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      writer.writeRows(rows(0, HEIGHT + 1));
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    writer.abort();
+  }
+
+  @Test
+  public void truncatedEntriesAreRemoved() throws IOException {
+    put("image");
+    File file = disk.get("image");
+    RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+    try {
+      truncated.setLength(file.length() - 1);
+    } finally {
+      truncated.close();
+    }
+
+    try {
+      cache.open("image");
+      fail();
+    } catch (IOException expected) {
+    }
+    assertNull(disk.get("image"));
+  }
+
+  @Test
+  public void entriesFromOtherVersionsAreRemoved() throws IOException {
+    put("image");
+    File file = disk.get("image");
+    RandomAccessFile entry = new RandomAccessFile(file, "rw");
+    try {
+      // The version follows the magic number.
+      entry.seek(4);
+      entry.writeInt(1);
+    } finally {
+      entry.close();
+    }
+
+    try {
+      cache.open("image");
+      fail();
+    } catch (IOException expected) {
+    }
+    assertNull(disk.get("image"));
+  }
+
+  @Test
+  public void headerRoundTrips() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(RawImageFormat.HEADER_BYTES);
+    RawImageFormat.writeHeader(header, WIDTH, HEIGHT);
+    assertEquals(RawImageFormat.HEADER_BYTES, header.position());
+    header.flip();
+
+    int[] size = new int[2];
+    RawImageFormat.readHeader(header, RawImageFormat.getFileBytes(WIDTH, HEIGHT), size);
+    assertEquals(WIDTH, size[0]);
+    assertEquals(HEIGHT, size[1]);
+  }
+
+  @Test
+  public void variantKeysDifferFromTheirSource() {
+    File file = new File(folder.getRoot(), "image.jpg");
+    String source = CacheKeys.forFile(file);
+    assertNotEquals(source, CacheKeys.forVariant(source, "max4096"));
+    assertNotEquals(
+        CacheKeys.forVariant(source, "max2048"), CacheKeys.forVariant(source, "max4096"));
+    assertNotEquals(CacheKeys.forAsset("andes.jpg", 1), CacheKeys.forAsset("andes.jpg", 2));
+  }
+
+  private void put(String key) throws IOException {
+    RawImageCache.Writer writer = cache.edit(key, WIDTH, HEIGHT);
+    writer.writeRows(rows(0, HEIGHT));
+    assertTrue(writer.commit());
+    assertNotNull(disk.get(key));
+  }
+
+  /** Returns rows whose bytes identify their position in the image. */
+  private static ByteBuffer rows(int top, int count) {
+    ByteBuffer rows = ByteBuffer.allocate(count * ROW_BYTES);
+    for (int i = 0; i < rows.capacity(); ++i) {
+      rows.put((byte) (top * ROW_BYTES + i));
+    }
+    rows.flip();
+    return rows;
+  }
+}
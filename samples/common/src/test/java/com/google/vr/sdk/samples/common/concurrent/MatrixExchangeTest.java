@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.concurrent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public final class MatrixExchangeTest {
+  private static final float[] IDENTITY = {
+    1, 0, 0, 0,
+    0, 1, 0, 0,
+    0, 0, 1, 0,
+    0, 0, 0, 1
+  };
+
+  @Test
+  public void holdsTheIdentityUntilTheFirstPublish() {
+    MatrixExchange exchange = new MatrixExchange();
+    float[] matrix = new float[16];
+    assertFalse(exchange.read(matrix, 0));
+    assertArrayEquals(IDENTITY, matrix, 0);
+  }
+
+  @Test
+  public void readsEachPublishedMatrixOnce() {
+    MatrixExchange exchange = new MatrixExchange();
+    float[] source = new float[20];
+    for (int i = 0; i < source.length; ++i) {
+      source[i] = i;
+    }
+    exchange.publish(source, 4);
+
+    float[] matrix = new float[18];
+    assertTrue(exchange.read(matrix, 2));
+    assertArrayEquals(Arrays.copyOfRange(source, 4, 20), Arrays.copyOfRange(matrix, 2, 18), 0);
+    assertEquals(0, matrix[0], 0);
+    assertEquals(0, matrix[1], 0);
+
+    // Later reads return the same matrix but don't report an update.
+    Arrays.fill(matrix, -1);
+    assertFalse(exchange.read(matrix, 2));
+    assertArrayEquals(Arrays.copyOfRange(source, 4, 20), Arrays.copyOfRange(matrix, 2, 18), 0);
+  }
+
+  @Test
+  public void readsTheLatestOfSeveralPublishes() {
+    MatrixExchange exchange = new MatrixExchange();
+    float[] source = new float[16];
+    for (int value = 1; value <= 5; ++value) {
+      Arrays.fill(source, value);
+      exchange.publish(source, 0);
+    }
+    float[] matrix = new float[16];
+    assertTrue(exchange.read(matrix, 0));
+    assertEquals(5, matrix[0], 0);
+    assertEquals(5, matrix[15], 0);
+
+    Arrays.fill(source, 6);
+    exchange.publish(source, 0);
+    assertTrue(exchange.read(matrix, 0));
+    assertEquals(6, matrix[15], 0);
+  }
+
+  @Test
+  public void concurrentReadsAreNeverTorn() throws InterruptedException {
+    final MatrixExchange exchange = new MatrixExchange();
+    final int publishCount = 200000;
+    final AtomicBoolean done = new AtomicBoolean();
+    Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        float[] source = new float[16];
+        for (int value = 1; value <= publishCount; ++value) {
+          Arrays.fill(source, value);
+          exchange.publish(source, 0);
+        }
+        done.set(true);
+      }
+    });
+
+    // Every published matrix holds a single value, so a torn read shows up as a mix of values.
+    exchange.publish(new float[16], 0);
+    producer.start();
+    float[] matrix = new float[16];
+    float previous = 0;
+    int updates = 0;
+    boolean finished;
+    do {
+      finished = done.get();
+      if (exchange.read(matrix, 0)) {
+        ++updates;
+      }
+      for (int i = 1; i < 16; ++i) {
+        if (matrix[i] != matrix[0]) {
+          fail("Torn read: " + Arrays.toString(matrix));
+        }
+      }
+      if (matrix[0] < previous) {
+        fail("Went back from " + previous + " to " + matrix[0]);
+      }
+      previous = matrix[0];
+    } while (!finished);
+    producer.join();
+
+    // Nothing is published after done is set, so the read after it sees the last matrix.
+    exchange.read(matrix, 0);
+    assertEquals(publishCount, matrix[0], 0);
+    assertTrue(updates > 0);
+  }
+}
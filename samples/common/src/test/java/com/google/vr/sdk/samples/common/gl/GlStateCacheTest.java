@@ -0,0 +1,235 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.vr.sdk.samples.common.gl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class GlStateCacheTest {
+  private static final int GL_TEXTURE0 = 0x84C0;
+  private static final int GL_TEXTURE1 = 0x84C1;
+  private static final int GL_TEXTURE_2D = 0x0DE1;
+  private static final int GL_TEXTURE_EXTERNAL_OES = 0x8D65;
+  private static final int GL_ARRAY_BUFFER = 0x8892;
+  private static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+  private static final int GL_BLEND = 0x0BE2;
+  private static final int GL_DITHER = 0x0BD0;
+
+  private RecordingGl gl;
+  private GlStateCache cache;
+
+  @Before
+  public void setUp() {
+    gl = new RecordingGl();
+    cache = new GlStateCache(gl);
+    cache.glBeginFrame();
+  }
+
+  @Test
+  public void skipsRepeatedProgram() {
+    cache.glUseProgram(3);
+    cache.glUseProgram(3);
+    cache.glUseProgram(4);
+    assertEquals(Arrays.asList("useProgram 3", "useProgram 4"), gl.calls);
+  }
+
+  @Test
+  public void tracksTextureBindingsPerUnitAndTarget() {
+    cache.glActiveTexture(GL_TEXTURE0);
+    cache.glBindTexture(GL_TEXTURE_2D, 7);
+    cache.glBindTexture(GL_TEXTURE_EXTERNAL_OES, 7);
+    cache.glActiveTexture(GL_TEXTURE1);
+    cache.glBindTexture(GL_TEXTURE_2D, 7);
+    cache.glActiveTexture(GL_TEXTURE0);
+    cache.glBindTexture(GL_TEXTURE_2D, 7);
+    cache.glBindTexture(GL_TEXTURE_EXTERNAL_OES, 7);
+    assertEquals(
+        Arrays.asList(
+            "activeTexture " + GL_TEXTURE0,
+            "bindTexture " + GL_TEXTURE_2D + " 7",
+            "bindTexture " + GL_TEXTURE_EXTERNAL_OES + " 7",
+            "activeTexture " + GL_TEXTURE1,
+            "bindTexture " + GL_TEXTURE_2D + " 7",
+            "activeTexture " + GL_TEXTURE0),
+        gl.calls);
+  }
+
+  @Test
+  public void invalidateTextureBindingsReissuesBindings() {
+    cache.glActiveTexture(GL_TEXTURE0);
+    cache.glBindTexture(GL_TEXTURE_2D, 7);
+    cache.invalidateTextureBindings();
+    cache.glActiveTexture(GL_TEXTURE0);
+    cache.glBindTexture(GL_TEXTURE_2D, 7);
+    assertEquals(4, gl.calls.size());
+  }
+
+  @Test
+  public void onlyTracksKnownCapabilities() {
+    cache.glEnable(GL_BLEND);
+    cache.glEnable(GL_BLEND);
+    cache.glDisable(GL_BLEND);
+    cache.glEnable(GL_DITHER);
+    cache.glEnable(GL_DITHER);
+    assertEquals(
+        Arrays.asList(
+            "enable " + GL_BLEND,
+            "disable " + GL_BLEND,
+            "enable " + GL_DITHER,
+            "enable " + GL_DITHER),
+        gl.calls);
+  }
+
+  @Test
+  public void skipsRepeatedBlendFuncAndBufferBindings() {
+    cache.glBlendFunc(1, 2);
+    cache.glBlendFunc(1, 2);
+    cache.glBindBuffer(GL_ARRAY_BUFFER, 5);
+    cache.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 5);
+    cache.glBindBuffer(GL_ARRAY_BUFFER, 5);
+    assertEquals(
+        Arrays.asList(
+            "blendFunc 1 2",
+            "bindBuffer " + GL_ARRAY_BUFFER + " 5",
+            "bindBuffer " + GL_ELEMENT_ARRAY_BUFFER + " 5"),
+        gl.calls);
+  }
+
+  @Test
+  public void vertexAttribArraysOnlyChangeTheDifference() {
+    cache.glEnableVertexAttribArrays(
+        GlStateCache.attribBit(0) | GlStateCache.attribBit(1) | GlStateCache.attribBit(-1));
+    cache.glEnableVertexAttribArrays(GlStateCache.attribBit(1) | GlStateCache.attribBit(2));
+    assertEquals(
+        Arrays.asList(
+            "enableVertexAttribArray 0",
+            "enableVertexAttribArray 1",
+            "disableVertexAttribArray 0",
+            "enableVertexAttribArray 2"),
+        gl.calls);
+  }
+
+  @Test
+  public void endFrameRestoresDefaultsAndNewFrameReissuesState() {
+    cache.glUseProgram(3);
+    cache.glBindBuffer(GL_ARRAY_BUFFER, 5);
+    cache.glEnableVertexAttribArrays(GlStateCache.attribBit(1));
+    cache.glUseProgram(3);
+    cache.glEndFrame();
+    gl.calls.clear();
+
+    cache.glBeginFrame();
+    // useProgram, 2 bindBuffer, enable & disable, and the element array buffer unbind.
+    assertEquals(6, cache.getLastFrameIssuedCalls());
+    assertEquals(1, cache.getLastFrameSkippedCalls());
+    cache.glUseProgram(3);
+    assertEquals(Arrays.asList("useProgram 3"), gl.calls);
+  }
+
+  @Test
+  public void endFrameDisablesArraysAndUnbindsBuffers() {
+    cache.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 6);
+    cache.glEnableVertexAttribArrays(GlStateCache.attribBit(2));
+    gl.calls.clear();
+    cache.glEndFrame();
+    assertEquals(
+        Arrays.asList(
+            "disableVertexAttribArray 2",
+            "bindBuffer " + GL_ARRAY_BUFFER + " 0",
+            "bindBuffer " + GL_ELEMENT_ARRAY_BUFFER + " 0"),
+        gl.calls);
+  }
+
+  @Test
+  public void endFrameDisablesBlendingEnabledByTheScene() {
+    cache.glEnable(GL_BLEND);
+    gl.calls.clear();
+    cache.glEndFrame();
+    assertEquals(
+        Arrays.asList(
+            "disable " + GL_BLEND,
+            "bindBuffer " + GL_ARRAY_BUFFER + " 0",
+            "bindBuffer " + GL_ELEMENT_ARRAY_BUFFER + " 0"),
+        gl.calls);
+
+    // Blending that the scene didn't touch is left as it was.
+    cache.glBeginFrame();
+    gl.calls.clear();
+    cache.glEndFrame();
+    assertEquals(
+        Arrays.asList(
+            "bindBuffer " + GL_ARRAY_BUFFER + " 0",
+            "bindBuffer " + GL_ELEMENT_ARRAY_BUFFER + " 0"),
+        gl.calls);
+  }
+
+  /** Records the calls that reach GL. */
+  private static final class RecordingGl implements GlStateCache.Gl {
+    final List<String> calls = new ArrayList<>();
+
+    @Override
+    public void glUseProgram(int program) {
+      calls.add("useProgram " + program);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+      calls.add("activeTexture " + texture);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+      calls.add("bindTexture " + target + " " + texture);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+      calls.add("enable " + cap);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+      calls.add("disable " + cap);
+    }
+
+    @Override
+    public void glBlendFunc(int srcFactor, int dstFactor) {
+      calls.add("blendFunc " + srcFactor + " " + dstFactor);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+      calls.add("bindBuffer " + target + " " + buffer);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+      calls.add("enableVertexAttribArray " + index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+      calls.add("disableVertexAttribArray " + index);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.math;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public final class Mat4Test {
+  private static final float TOLERANCE = 1e-5f;
+
+  private final Random random = new Random(12);
+
+  @Test
+  public void setIdentity() {
+    float[] m = randomMatrix();
+    Mat4.setIdentity(m, 0);
+    assertArrayEquals(new float[] {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1}, m, 0);
+  }
+
+  @Test
+  public void multiplyMatchesDefinition() {
+    for (int i = 0; i < 100; ++i) {
+      float[] a = randomMatrix();
+      float[] b = randomMatrix();
+      float[] result = new float[16];
+      Mat4.multiply(result, 0, a, 0, b, 0);
+      assertArrayEquals(multiplyReference(a, b), result, TOLERANCE);
+    }
+  }
+
+  @Test
+  public void multiplyUsesOffsets() {
+    float[] a = randomMatrix();
+    float[] b = randomMatrix();
+    float[] packed = new float[3 + 16 + 5 + 16];
+    System.arraycopy(a, 0, packed, 3, 16);
+    System.arraycopy(b, 0, packed, 24, 16);
+    float[] result = new float[2 + 16];
+    Mat4.multiply(result, 2, packed, 3, packed, 24);
+
+    float[] expected = new float[18];
+    System.arraycopy(multiplyReference(a, b), 0, expected, 2, 16);
+    assertArrayEquals(expected, result, TOLERANCE);
+  }
+
+  @Test
+  public void multiplyThreeMatchesTwoSteps() {
+    for (int i = 0; i < 100; ++i) {
+      float[] a = randomMatrix();
+      float[] b = randomMatrix();
+      float[] c = randomMatrix();
+      float[] result = new float[16];
+      Mat4.multiply(result, 0, a, 0, b, 0, c, 0);
+      assertArrayEquals(multiplyReference(a, multiplyReference(b, c)), result, TOLERANCE);
+    }
+  }
+
+  @Test
+  public void multiplyVectorMatchesDefinition() {
+    float[] m = randomMatrix();
+    float[] v = {random.nextFloat(), random.nextFloat(), random.nextFloat(), random.nextFloat()};
+    float[] result = new float[4];
+    Mat4.multiplyVector(result, 0, m, 0, v, 0);
+    for (int row = 0; row < 4; ++row) {
+      float expected = 0;
+      for (int k = 0; k < 4; ++k) {
+        expected += m[k * 4 + row] * v[k];
+      }
+      assertEquals(expected, result[row], TOLERANCE);
+    }
+  }
+
+  @Test
+  public void transformOriginMatchesFullProduct() {
+    float[] view = randomMatrix();
+    float[] model = randomMatrix();
+    float[] result = new float[4];
+    Mat4.transformOrigin(result, 0, view, 0, model, 0);
+
+    // The origin of model's frame is the last column of view * model.
+    float[] product = multiplyReference(view, model);
+    assertArrayEquals(new float[] {product[12], product[13], product[14], product[15]}, result,
+        TOLERANCE);
+  }
+
+  private float[] randomMatrix() {
+    float[] m = new float[16];
+    for (int i = 0; i < 16; ++i) {
+      m[i] = random.nextFloat() * 2 - 1;
+    }
+    return m;
+  }
+
+  /** Column-major a * b computed straight from the definition. */
+  private static float[] multiplyReference(float[] a, float[] b) {
+    float[] result = new float[16];
+    for (int column = 0; column < 4; ++column) {
+      for (int row = 0; row < 4; ++row) {
+        double sum = 0;
+        for (int k = 0; k < 4; ++k) {
+          sum += (double) a[k * 4 + row] * b[column * 4 + k];
+        }
+        result[column * 4 + row] = (float) sum;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.math;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public final class QuatTest {
+  private static final float TOLERANCE = 1e-5f;
+
+  private final Random random = new Random(7);
+
+  @Test
+  public void rotationMatrixRoundTrip() {
+    for (int i = 0; i < 1000; ++i) {
+      float[] q = randomQuaternion();
+      float[] m = new float[16];
+      Quat.toRotationMatrix(q, 0, m, 0);
+      float[] result = new float[4];
+      Quat.fromRotationMatrix(m, 0, result, 0);
+      assertSameRotation(q, result);
+    }
+  }
+
+  @Test
+  public void fromRotationMatrixHandlesEachLargestComponent() {
+    // Half turns have w = 0 so each one takes a different branch of Shepperd's method.
+    float[][] quaternions = {
+        {0, 0, 0, 1},
+        {1, 0, 0, 0},
+        {0, 1, 0, 0},
+        {0, 0, 1, 0},
+        {0.5f, 0.5f, 0.5f, 0.5f},
+    };
+    for (float[] q : quaternions) {
+      float[] m = new float[16];
+      Quat.toRotationMatrix(q, 0, m, 0);
+      float[] result = new float[4];
+      Quat.fromRotationMatrix(m, 0, result, 0);
+      assertSameRotation(q, result);
+    }
+  }
+
+  @Test
+  public void toRotationMatrixMatchesAxisAngle() {
+    // 90 degrees around +Z takes +X to +Y.
+    float s = (float) Math.sqrt(0.5);
+    float[] m = new float[16];
+    Quat.toRotationMatrix(new float[] {0, 0, s, s}, 0, m, 0);
+    float[] result = new float[4];
+    Mat4.multiplyVector(result, 0, m, 0, new float[] {1, 0, 0, 1}, 0);
+    assertArrayEquals(new float[] {0, 1, 0, 1}, result, TOLERANCE);
+  }
+
+  @Test
+  public void multiplyMatchesMatrixProduct() {
+    for (int i = 0; i < 100; ++i) {
+      float[] a = randomQuaternion();
+      float[] b = randomQuaternion();
+      float[] ab = new float[4];
+      Quat.multiply(ab, 0, a, 0, b, 0);
+
+      float[] aMatrix = new float[16];
+      float[] bMatrix = new float[16];
+      float[] abMatrix = new float[16];
+      Quat.toRotationMatrix(a, 0, aMatrix, 0);
+      Quat.toRotationMatrix(b, 0, bMatrix, 0);
+      Quat.toRotationMatrix(ab, 0, abMatrix, 0);
+      float[] expected = new float[16];
+      Mat4.multiply(expected, 0, aMatrix, 0, bMatrix, 0);
+      assertArrayEquals(expected, abMatrix, TOLERANCE);
+    }
+  }
+
+  @Test
+  public void multiplyConjugateUndoesMultiply() {
+    float[] a = randomQuaternion();
+    float[] b = randomQuaternion();
+    float[] ab = new float[4];
+    Quat.multiply(ab, 0, a, 0, b, 0);
+    float[] result = new float[4];
+    Quat.multiplyConjugate(result, 0, ab, 0, b, 0);
+    assertSameRotation(a, result);
+  }
+
+  @Test
+  public void dotAndNegate() {
+    float[] q = randomQuaternion();
+    float[] negated = q.clone();
+    Quat.negate(negated, 0);
+    assertEquals(1, Quat.dot(q, 0, q, 0), TOLERANCE);
+    assertEquals(-1, Quat.dot(q, 0, negated, 0), TOLERANCE);
+  }
+
+  @Test
+  public void rotationVectorRoundTrip() {
+    for (int i = 0; i < 100; ++i) {
+      float[] q = randomQuaternion();
+      float[] v = new float[3];
+      Quat.toRotationVector(q, 0, v, 0);
+      // The shorter rotation is at most half a turn.
+      assertTrue(Vec3.length(v, 0) <= Math.PI + TOLERANCE);
+      float[] result = new float[4];
+      Quat.fromRotationVector(v[0], v[1], v[2], result, 0);
+      assertSameRotation(q, result);
+    }
+  }
+
+  @Test
+  public void rotationVectorOfSmallAngles() {
+    float[] q = new float[4];
+    Quat.fromRotationVector(1e-8f, 0, 0, q, 0);
+    assertArrayEquals(new float[] {5e-9f, 0, 0, 1}, q, 1e-12f);
+
+    float[] v = new float[3];
+    Quat.toRotationVector(q, 0, v, 0);
+    assertArrayEquals(new float[] {1e-8f, 0, 0}, v, 1e-12f);
+  }
+
+  private float[] randomQuaternion() {
+    float[] q = new float[4];
+    double norm = 0;
+    for (int i = 0; i < 4; ++i) {
+      q[i] = (float) random.nextGaussian();
+      norm += q[i] * q[i];
+    }
+    for (int i = 0; i < 4; ++i) {
+      q[i] /= (float) Math.sqrt(norm);
+    }
+    return q;
+  }
+
+  /** q and -q represent the same rotation. */
+  private static void assertSameRotation(float[] expected, float[] actual) {
+    float sign = Quat.dot(expected, 0, actual, 0) < 0 ? -1 : 1;
+    for (int i = 0; i < 4; ++i) {
+      assertEquals(expected[i], sign * actual[i], TOLERANCE);
+    }
+  }
+}
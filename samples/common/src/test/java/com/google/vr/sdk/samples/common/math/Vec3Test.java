@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.math;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public final class Vec3Test {
+  private static final float TOLERANCE = 1e-6f;
+
+  @Test
+  public void dotAndLength() {
+    float[] v = {0, 2, 3, 6};
+    assertEquals(7, Vec3.length(v, 1), TOLERANCE);
+    assertEquals(2 + 6 + 18, Vec3.dot(v, 1, new float[] {1, 2, 3}, 0), TOLERANCE);
+  }
+
+  @Test
+  public void crossFollowsTheRightHandRule() {
+    float[] result = new float[3];
+    Vec3.cross(result, 0, new float[] {1, 0, 0}, 0, new float[] {0, 1, 0}, 0);
+    assertArrayEquals(new float[] {0, 0, 1}, result, TOLERANCE);
+
+    float[] a = {1, 2, 3};
+    float[] b = {-4, 5, 0.5f};
+    Vec3.cross(result, 0, a, 0, b, 0);
+    // The cross product is orthogonal to both inputs.
+    assertEquals(0, Vec3.dot(result, 0, a, 0), 1e-5f);
+    assertEquals(0, Vec3.dot(result, 0, b, 0), 1e-5f);
+  }
+
+  @Test
+  public void normalize() {
+    float[] v = {3, 0, 4};
+    Vec3.normalize(v, 0);
+    assertArrayEquals(new float[] {0.6f, 0, 0.8f}, v, TOLERANCE);
+  }
+
+  @Test
+  public void normalizeLeavesZeroUnchanged() {
+    float[] v = {0, 0, 0};
+    Vec3.normalize(v, 0);
+    assertArrayEquals(new float[] {0, 0, 0}, v, 0);
+  }
+}
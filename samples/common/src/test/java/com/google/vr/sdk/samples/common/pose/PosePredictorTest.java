@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pose;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.vr.sdk.samples.common.math.Quat;
+import org.junit.Test;
+
+public final class PosePredictorTest {
+  private static final long MILLIS = 1000000L;
+  private static final float TOLERANCE = 1e-4f;
+  // Rotations are around this normalized, deliberately off-axis direction.
+  private static final float[] AXIS = {0.267261f, 0.534522f, 0.801784f};
+
+  private final PosePredictor predictor = new PosePredictor();
+
+  @Test
+  public void horizonDefaultsTo50MillisUntilFramesAreTimed() {
+    assertEquals(50 * MILLIS, predictor.getPredictionHorizonNanos());
+    predictor.onFrameStart(1000 * MILLIS);
+    predictor.onFrameSubmitted(1005 * MILLIS);
+    // One frame gives the render time but not the frame interval.
+    assertEquals(50 * MILLIS, predictor.getPredictionHorizonNanos());
+
+    predictor.setMaxHorizonNanos(20 * MILLIS);
+    assertEquals(20 * MILLIS, predictor.getPredictionHorizonNanos());
+  }
+
+  @Test
+  public void horizonIsTheRenderTimePlusThePipeline() {
+    runFrames(1000 * MILLIS, 16 * MILLIS, 5 * MILLIS, 10);
+    // 5 ms left to render & 2 frames in the compositor.
+    assertEquals(37 * MILLIS, predictor.getPredictionHorizonNanos());
+
+    predictor.setPipelineFrames(1);
+    assertEquals(21 * MILLIS, predictor.getPredictionHorizonNanos());
+    predictor.setPipelineFrames(-1);
+    assertEquals(5 * MILLIS, predictor.getPredictionHorizonNanos());
+  }
+
+  @Test
+  public void horizonSmoothsFrameTiming() {
+    long time = runFrames(1000 * MILLIS, 10 * MILLIS, 4 * MILLIS, 10);
+    assertEquals(24 * MILLIS, predictor.getPredictionHorizonNanos());
+
+    // A slow render moves the render time 10% of the way towards it: 4 + (14 - 4) / 10 = 5 ms.
+    predictor.onFrameStart(time + 10 * MILLIS);
+    predictor.onFrameSubmitted(time + 24 * MILLIS);
+    assertEquals(5 * MILLIS + 2 * 10 * MILLIS, predictor.getPredictionHorizonNanos(), 1000);
+
+    // A late frame does the same to the interval: 10 + (20 - 10) / 10 = 11 ms, while the fast
+    // render brings the render time back to 5 + (4 - 5) / 10 = 4.9 ms.
+    predictor.onFrameStart(time + 30 * MILLIS);
+    predictor.onFrameSubmitted(time + 34 * MILLIS);
+    assertEquals(
+        (long) (4.9 * MILLIS + 2 * 11 * MILLIS), predictor.getPredictionHorizonNanos(), 1000);
+  }
+
+  @Test
+  public void horizonIsClampedToTheMaximum() {
+    runFrames(1000 * MILLIS, 50 * MILLIS, 30 * MILLIS, 10);
+    assertEquals(100 * MILLIS, predictor.getPredictionHorizonNanos());
+    predictor.setMaxHorizonNanos(60 * MILLIS);
+    assertEquals(60 * MILLIS, predictor.getPredictionHorizonNanos());
+  }
+
+  @Test
+  public void resetDiscardsTimingAndPoses() {
+    runFrames(1000 * MILLIS, 10 * MILLIS, 4 * MILLIS, 10);
+    predictor.addPose(1000 * MILLIS, rotation(0.1f), 0);
+    predictor.reset();
+    assertEquals(50 * MILLIS, predictor.getPredictionHorizonNanos());
+    assertFalse(predictor.predict(1100 * MILLIS, new float[16], 0));
+  }
+
+  @Test
+  public void predictWithoutPosesLeavesTheMatrixUnchanged() {
+    predictor.setModel(PosePredictor.EXTRAPOLATE_CONSTANT_VELOCITY);
+    float[] matrix = rotation(0.5f);
+    assertFalse(predictor.predict(1000 * MILLIS, matrix, 0));
+    assertArrayEquals(rotation(0.5f), matrix, 0);
+  }
+
+  @Test
+  public void noExtrapolationReturnsTheNewestPose() {
+    predictor.addPose(1000 * MILLIS, rotation(0.1f), 0);
+    predictor.addPose(1010 * MILLIS, rotation(0.2f), 0);
+    assertPrediction(1050 * MILLIS, 0.2f);
+  }
+
+  @Test
+  public void constantVelocityIsExactForAConstantVelocity() {
+    predictor.setModel(PosePredictor.EXTRAPOLATE_CONSTANT_VELOCITY);
+    // 2 rad/s, with the poses at the matrix offset used by callers that pack several matrices.
+    float[] matrices = new float[32];
+    System.arraycopy(rotation(0.3f), 0, matrices, 16, 16);
+    predictor.addPose(1000 * MILLIS, matrices, 16);
+    predictor.addPose(1011 * MILLIS, rotation(0.3f + 2 * 0.011f), 0);
+    assertPrediction(1011 * MILLIS + 45 * MILLIS, 0.3f + 2 * 0.056f);
+    // A single pose can't be extrapolated.
+    predictor.reset();
+    predictor.addPose(1000 * MILLIS, rotation(0.3f), 0);
+    assertPrediction(1050 * MILLIS, 0.3f);
+  }
+
+  @Test
+  public void constantAccelerationIsExactForAConstantAcceleration() {
+    predictor.setModel(PosePredictor.EXTRAPOLATE_CONSTANT_ACCELERATION);
+    // Unevenly spaced poses of angle(t) = 0.1 + 1 * t + 4 * t^2.
+    long[] times = {0, 11 * MILLIS, 28 * MILLIS};
+    for (long time : times) {
+      predictor.addPose(1000 * MILLIS + time, rotation(angle(time)), 0);
+    }
+    long predicted = 28 * MILLIS + 50 * MILLIS;
+    assertPrediction(1000 * MILLIS + predicted, angle(predicted));
+  }
+
+  @Test
+  public void constantVelocityDoesNotAnticipateAcceleration() {
+    predictor.setModel(PosePredictor.EXTRAPOLATE_CONSTANT_VELOCITY);
+    long[] times = {0, 11 * MILLIS, 28 * MILLIS};
+    for (long time : times) {
+      predictor.addPose(1000 * MILLIS + time, rotation(angle(time)), 0);
+    }
+    long predicted = 28 * MILLIS + 50 * MILLIS;
+    float[] matrix = new float[16];
+    predictor.predict(1000 * MILLIS + predicted, matrix, 0);
+    assertTrue(angleBetween(rotation(angle(predicted)), matrix) > 0.005f);
+  }
+
+  @Test
+  public void extrapolatesAcrossTheQuaternionHemisphereBoundary() {
+    // Shepperd's method switches from the y to the w component at 270 degrees, which flips the
+    // sign of the quaternion it returns. The short rotation between the poses is 20 degrees.
+    predictor.setModel(PosePredictor.EXTRAPOLATE_CONSTANT_VELOCITY);
+    float[] y = {0, 1, 0};
+    predictor.addPose(1000 * MILLIS, rotation(y, (float) Math.toRadians(260)), 0);
+    predictor.addPose(1010 * MILLIS, rotation(y, (float) Math.toRadians(280)), 0);
+    float[] matrix = new float[16];
+    assertTrue(predictor.predict(1020 * MILLIS, matrix, 0));
+    assertArrayEquals(rotation(y, (float) Math.toRadians(300)), matrix, TOLERANCE);
+  }
+
+  @Test
+  public void mergesPosesCloserThanTheMinimumInterval() {
+    predictor.setModel(PosePredictor.EXTRAPOLATE_CONSTANT_VELOCITY);
+    // 2 rad/s. The pose at 10 ms is noisy, but it's replaced by the one 0.1 ms later. Otherwise
+    // the velocity over the 0.1 ms interval would be far off.
+    predictor.addPose(1000 * MILLIS, rotation(0.3f), 0);
+    predictor.addPose(1010 * MILLIS, rotation(0.3f + 2 * 0.010f + 0.01f), 0);
+    predictor.addPose(1010 * MILLIS + 100000, rotation(0.3f + 2 * 0.0101f), 0);
+    assertPrediction(1060 * MILLIS, 0.3f + 2 * 0.060f);
+  }
+
+  @Test
+  public void keepsAMergedPoseInTheHemisphereOfThePreviousPose() {
+    // The pose at 10 ms is replaced by one past the 270 degree boundary where the quaternion's sign
+    // flips. The short rotation from the first pose is still 20 degrees.
+    predictor.setModel(PosePredictor.EXTRAPOLATE_CONSTANT_VELOCITY);
+    float[] y = {0, 1, 0};
+    predictor.addPose(1000 * MILLIS, rotation(y, (float) Math.toRadians(260)), 0);
+    predictor.addPose(1010 * MILLIS, rotation(y, (float) Math.toRadians(262)), 0);
+    predictor.addPose(1010 * MILLIS + 100000, rotation(y, (float) Math.toRadians(280)), 0);
+    float[] matrix = new float[16];
+    assertTrue(predictor.predict(1020 * MILLIS + 100000, matrix, 0));
+    float expected = 280 + 20 * 10 / 10.1f;
+    assertArrayEquals(rotation(y, (float) Math.toRadians(expected)), matrix, TOLERANCE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownModels() {
+    predictor.setModel(PosePredictor.EXTRAPOLATE_CONSTANT_ACCELERATION + 1);
+  }
+
+  /** Simulates frames with a fixed interval & render time and returns the last frame's start. */
+  private long runFrames(long startNanos, long intervalNanos, long renderNanos, int count) {
+    long time = startNanos;
+    for (int i = 0; i < count; ++i) {
+      time = startNanos + i * intervalNanos;
+      predictor.onFrameStart(time);
+      predictor.onFrameSubmitted(time + renderNanos);
+    }
+    return time;
+  }
+
+  private void assertPrediction(long timeNanos, float expectedAngle) {
+    float[] matrix = new float[16];
+    assertTrue(predictor.predict(timeNanos, matrix, 0));
+    assertArrayEquals(rotation(expectedAngle), matrix, TOLERANCE);
+  }
+
+  /** Angle in radians at the given time since the first pose for a constant acceleration. */
+  private static float angle(long nanos) {
+    float seconds = nanos / 1e9f;
+    return 0.1f + seconds + 4 * seconds * seconds;
+  }
+
+  private static float[] rotation(float radians) {
+    return rotation(AXIS, radians);
+  }
+
+  /** Returns a 4x4 rotation around the normalized axis. */
+  private static float[] rotation(float[] axis, float radians) {
+    float[] q = new float[4];
+    Quat.fromRotationVector(axis[0] * radians, axis[1] * radians, axis[2] * radians, q, 0);
+    float[] matrix = new float[16];
+    Quat.toRotationMatrix(q, 0, matrix, 0);
+    return matrix;
+  }
+
+  /** Returns the angle in radians of the rotation between two rotation matrices. */
+  private static float angleBetween(float[] a, float[] b) {
+    float[] qa = new float[4];
+    float[] qb = new float[4];
+    Quat.fromRotationMatrix(a, 0, qa, 0);
+    Quat.fromRotationMatrix(b, 0, qb, 0);
+    float dot = Math.min(1, Math.abs(Quat.dot(qa, 0, qb, 0)));
+    return 2 * (float) Math.acos(dot);
+  }
+}
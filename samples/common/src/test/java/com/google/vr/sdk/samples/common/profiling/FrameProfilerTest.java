@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.vr.sdk.samples.common.profiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class FrameProfilerTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private FakeClock clock;
+  private FrameProfiler profiler;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock();
+    profiler = new FrameProfiler(clock);
+    profiler.setVsyncPeriodNanos(10 * MS);
+  }
+
+  @Test
+  public void measuresFramesAndStages() {
+    profiler.beginFrame();
+    profiler.beginStage(FrameProfiler.STAGE_ACQUIRE);
+    clock.advance(2 * MS);
+    profiler.beginStage(FrameProfiler.STAGE_DRAW);
+    clock.advance(3 * MS);
+    profiler.endStage();
+    clock.advance(1 * MS);
+    profiler.beginStage(FrameProfiler.STAGE_DRAW);
+    clock.advance(1 * MS);
+    profiler.endFrame();
+
+    assertEquals(1, profiler.getFrameCount());
+    assertEquals(7 * MS, profiler.getFrameTimeHistogram().getMaxNanos());
+    assertEquals(2 * MS, profiler.getStageHistogram(FrameProfiler.STAGE_ACQUIRE).getMaxNanos());
+    // Both draw stages are summed.
+    assertEquals(4 * MS, profiler.getStageHistogram(FrameProfiler.STAGE_DRAW).getMaxNanos());
+    assertEquals(0, profiler.getStageHistogram(FrameProfiler.STAGE_SUBMIT).getCount());
+  }
+
+  @Test
+  public void countsMissedVsyncs() {
+    profiler.beginFrame();
+    profiler.endFrame();
+    clock.advance(10 * MS);
+    profiler.beginFrame();
+    profiler.endFrame();
+    // Two periods late.
+    clock.advance(31 * MS);
+    profiler.beginFrame();
+    profiler.endFrame();
+
+    assertEquals(2, profiler.getFrameIntervalHistogram().getCount());
+    assertEquals(2, profiler.getMissedVsyncCount());
+  }
+
+  @Test
+  public void ignoresStagesOutsideOfFrames() {
+    profiler.beginStage(FrameProfiler.STAGE_DRAW);
+    clock.advance(MS);
+    profiler.endStage();
+    profiler.endFrame();
+
+    assertEquals(0, profiler.getFrameCount());
+    assertEquals(0, profiler.getStageHistogram(FrameProfiler.STAGE_DRAW).getCount());
+  }
+
+  @Test
+  public void maybeLogWritesSummaryOnceTheWindowIsOver() {
+    RecordingLogger logger = new RecordingLogger(true);
+    profiler.beginFrame();
+    profiler.endFrame();
+    assertFalse(profiler.maybeLog(logger));
+
+    clock.advance(TimeUnit.SECONDS.toNanos(10));
+    assertTrue(profiler.maybeLog(logger));
+    assertEquals(1, logger.summaries.size());
+    assertTrue(logger.summaries.get(0).startsWith("frames=1 "));
+    // The window was reset.
+    assertEquals(0, profiler.getFrameCount());
+    assertFalse(profiler.maybeLog(logger));
+  }
+
+  @Test
+  public void maybeLogResetsEvenIfNotLoggable() {
+    RecordingLogger logger = new RecordingLogger(false);
+    profiler.beginFrame();
+    profiler.endFrame();
+    clock.advance(TimeUnit.SECONDS.toNanos(10));
+
+    assertTrue(profiler.maybeLog(logger));
+    assertTrue(logger.summaries.isEmpty());
+    assertEquals(0, profiler.getFrameCount());
+  }
+
+  private static final class FakeClock implements FrameProfiler.Clock {
+    private long nanos = 1;
+
+    void advance(long deltaNanos) {
+      nanos += deltaNanos;
+    }
+
+    @Override
+    public long nanoTime() {
+      return nanos;
+    }
+  }
+
+  private static final class RecordingLogger implements FrameProfiler.Logger {
+    final List<String> summaries = new ArrayList<>();
+    private final boolean loggable;
+
+    RecordingLogger(boolean loggable) {
+      this.loggable = loggable;
+    }
+
+    @Override
+    public boolean isLoggable() {
+      return loggable;
+    }
+
+    @Override
+    public void log(String summary) {
+      summaries.add(summary);
+    }
+  }
+}
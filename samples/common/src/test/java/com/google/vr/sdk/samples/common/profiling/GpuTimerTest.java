@@ -0,0 +1,296 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.profiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class GpuTimerTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final int PASS_SCENE = 0;
+  private static final int PASS_UI = 1;
+  // Matches GpuTimer.FRAMES_IN_FLIGHT.
+  private static final int FRAMES_IN_FLIGHT = 4;
+
+  private FakeQueryProvider provider;
+  private GpuTimer timer;
+
+  @Before
+  public void setUp() {
+    provider = new FakeQueryProvider();
+    timer = new GpuTimer(provider, new String[] {"scene", "ui"}, 4);
+    timer.glInit();
+  }
+
+  @Test
+  public void readsResultsOnlyOnceAvailable() {
+    assertTrue(timer.isSupported());
+    timeFrame(3 * MS);
+    timer.glBeginFrame();
+    timer.glEndFrame();
+    // The GPU hasn't finished the first frame yet.
+    assertEquals(0, timer.getPassHistogram(PASS_SCENE).getCount());
+    assertEquals(0, provider.resultReads);
+
+    provider.finishAll();
+    timer.glBeginFrame();
+    timer.glEndFrame();
+    assertEquals(1, timer.getPassHistogram(PASS_SCENE).getCount());
+    assertEquals(3 * MS, timer.getPassHistogram(PASS_SCENE).getMaxNanos());
+    assertEquals(0, timer.getPassHistogram(PASS_UI).getCount());
+  }
+
+  @Test
+  public void collectsFramesInSubmissionOrder() {
+    timeFrame(1 * MS);
+    timeFrame(2 * MS);
+    // The second frame is done but the first isn't, so neither is read.
+    provider.finish(provider.begun.get(1));
+    timer.glBeginFrame();
+    timer.glEndFrame();
+    assertEquals(0, timer.getPassHistogram(PASS_SCENE).getCount());
+
+    provider.finish(provider.begun.get(0));
+    timer.glBeginFrame();
+    timer.glEndFrame();
+    assertEquals(2, timer.getPassHistogram(PASS_SCENE).getCount());
+    assertEquals(2 * MS, timer.getPassHistogram(PASS_SCENE).getMaxNanos());
+  }
+
+  @Test
+  public void skipsFramesWhileEverySlotIsPending() {
+    for (int i = 0; i < FRAMES_IN_FLIGHT; ++i) {
+      timeFrame(1 * MS);
+    }
+    int queriesBefore = provider.begun.size();
+    timeFrame(1 * MS);
+    timeFrame(1 * MS);
+    assertEquals(2, timer.getSkippedFrameCount());
+    // Skipped frames issue no queries & don't overwrite the pending ones.
+    assertEquals(queriesBefore, provider.begun.size());
+
+    provider.finishAll();
+    timeFrame(1 * MS);
+    assertEquals(FRAMES_IN_FLIGHT, timer.getPassHistogram(PASS_SCENE).getCount());
+    assertEquals(queriesBefore + 1, provider.begun.size());
+  }
+
+  @Test
+  public void discardsFramesInFlightDuringADisjointEvent() {
+    timeFrame(1 * MS);
+    timeFrame(1 * MS);
+    provider.disjoint = true;
+    // The disjoint event is noticed before this frame starts, so this frame is still valid.
+    timeFrame(5 * MS);
+    provider.finishAll();
+    timer.glBeginFrame();
+    timer.glEndFrame();
+
+    assertEquals(2, timer.getDisjointFrameCount());
+    assertEquals(1, timer.getPassHistogram(PASS_SCENE).getCount());
+    assertEquals(5 * MS, timer.getPassHistogram(PASS_SCENE).getMaxNanos());
+    // The results of the invalid frames aren't even read.
+    assertEquals(1, provider.resultReads);
+  }
+
+  @Test
+  public void ignoresDisjointEventsFromBeforeInit() {
+    provider.disjoint = true;
+    timer.glInit();
+    timeFrame(1 * MS);
+    provider.finishAll();
+    timer.glBeginFrame();
+    assertEquals(0, timer.getDisjointFrameCount());
+    assertEquals(1, timer.getPassHistogram(PASS_SCENE).getCount());
+  }
+
+  @Test
+  public void sumsRepeatedPassesPerFrame() {
+    timer.glBeginFrame();
+    // Left & right eye, with the UI drawn over each.
+    for (int eye = 0; eye < 2; ++eye) {
+      provider.nextResultNanos = 2 * MS;
+      timer.glBeginPass(PASS_SCENE);
+      provider.nextResultNanos = 1 * MS / 2;
+      timer.glBeginPass(PASS_UI);
+    }
+    timer.glEndFrame();
+    assertEquals(0, provider.activeQuery);
+    provider.finishAll();
+    timer.glBeginFrame();
+
+    assertEquals(1, timer.getPassHistogram(PASS_SCENE).getCount());
+    assertEquals(4 * MS, timer.getPassHistogram(PASS_SCENE).getMaxNanos());
+    assertEquals(1, timer.getPassHistogram(PASS_UI).getCount());
+    assertEquals(1 * MS, timer.getPassHistogram(PASS_UI).getMaxNanos());
+  }
+
+  @Test
+  public void ignoresPassesBeyondTheQueryLimit() {
+    timer.glBeginFrame();
+    for (int i = 0; i < 6; ++i) {
+      provider.nextResultNanos = 1 * MS;
+      timer.glBeginPass(PASS_SCENE);
+      timer.glEndPass();
+    }
+    timer.glEndFrame();
+    assertEquals(4, provider.begun.size());
+    provider.finishAll();
+    timer.glBeginFrame();
+    assertEquals(4 * MS, timer.getPassHistogram(PASS_SCENE).getMaxNanos());
+  }
+
+  @Test
+  public void framesWithoutPassesAreNotPending() {
+    for (int i = 0; i < 2 * FRAMES_IN_FLIGHT; ++i) {
+      timer.glBeginFrame();
+      timer.glEndFrame();
+    }
+    assertEquals(0, timer.getSkippedFrameCount());
+  }
+
+  @Test
+  public void doesNothingWhenUnsupported() {
+    provider = new FakeQueryProvider();
+    provider.supported = false;
+    timer = new GpuTimer(provider, new String[] {"scene", "ui"}, 4);
+    timer.glInit();
+    assertFalse(timer.isSupported());
+
+    timeFrame(1 * MS);
+    timer.glBeginFrame();
+    timer.glShutdown();
+    assertEquals(0, provider.calls);
+    assertEquals(0, timer.getPassHistogram(PASS_SCENE).getCount());
+    assertTrue(timer.dump(new StringBuilder()).toString().contains("not supported"));
+  }
+
+  @Test
+  public void shutdownDeletesTheQueries() {
+    timer.glShutdown();
+    assertEquals(provider.created, provider.deleted);
+    assertFalse(timer.isSupported());
+  }
+
+  /** Times a frame with a single scene pass. */
+  private void timeFrame(long nanos) {
+    timer.glBeginFrame();
+    provider.nextResultNanos = nanos;
+    timer.glBeginPass(PASS_SCENE);
+    timer.glEndPass();
+    timer.glEndFrame();
+  }
+
+  /** Queries complete only when the test says the GPU has finished them. */
+  private static final class FakeQueryProvider implements GpuTimer.QueryProvider {
+    boolean supported = true;
+    boolean disjoint;
+    long nextResultNanos;
+    // Counts every call other than isSupported.
+    int calls;
+    int resultReads;
+    int activeQuery;
+    int nextQuery = 1;
+    final Set<Integer> created = new HashSet<>();
+    final Set<Integer> deleted = new HashSet<>();
+    final List<Integer> begun = new ArrayList<>();
+    final Set<Integer> available = new HashSet<>();
+    final Map<Integer, Long> results = new HashMap<>();
+
+    void finish(int query) {
+      available.add(query);
+    }
+
+    void finishAll() {
+      available.addAll(begun);
+    }
+
+    @Override
+    public boolean isSupported() {
+      return supported;
+    }
+
+    @Override
+    public void createQueries(int[] queries) {
+      ++calls;
+      for (int i = 0; i < queries.length; ++i) {
+        queries[i] = nextQuery++;
+        created.add(queries[i]);
+      }
+    }
+
+    @Override
+    public void deleteQueries(int[] queries) {
+      ++calls;
+      for (int query : queries) {
+        deleted.add(query);
+      }
+    }
+
+    @Override
+    public void beginQuery(int query) {
+      ++calls;
+      assertEquals("Queries can't be nested", 0, activeQuery);
+      assertTrue(created.contains(query));
+      activeQuery = query;
+      begun.add(query);
+      // Reusing a query starts a new measurement.
+      available.remove(query);
+      results.put(query, nextResultNanos);
+    }
+
+    @Override
+    public void endQuery() {
+      ++calls;
+      assertTrue(activeQuery != 0);
+      activeQuery = 0;
+    }
+
+    @Override
+    public boolean isResultAvailable(int query) {
+      ++calls;
+      return available.contains(query);
+    }
+
+    @Override
+    public long getResultNanos(int query) {
+      ++calls;
+      ++resultReads;
+      assertTrue(available.contains(query));
+      return results.get(query);
+    }
+
+    @Override
+    public boolean checkDisjoint() {
+      ++calls;
+      boolean result = disjoint;
+      disjoint = false;
+      return result;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public final class IndirectionTableTest {
+  // Level 0 has 16x8 tiles & level 4 is a single tile.
+  private static final TilePyramid PYRAMID = new TilePyramid(2048, 1024, 128, "png");
+  private static final long TOP = TilePyramid.getTileKey(4, 0, 0);
+  // Covers the level 0 entries of rows 0 to 3 & columns 4 to 7.
+  private static final long LEVEL_2 = TilePyramid.getTileKey(2, 0, 1);
+  private static final long LEVEL_0 = TilePyramid.getTileKey(0, 1, 5);
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAtlasesTooWideToAddress() {
+    new IndirectionTable(PYRAMID, 257, 257);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAtlasesTooTallToAddress() {
+    new IndirectionTable(PYRAMID, 2 * 257, 2);
+  }
+
+  @Test
+  public void hasOneEntryPerFinestTile() {
+    IndirectionTable table = new IndirectionTable(PYRAMID, 4, 2);
+
+    assertEquals(16, table.getWidth());
+    assertEquals(8, table.getHeight());
+    assertEquals(16 * 8 * 4, table.getEntries().length);
+  }
+
+  @Test
+  public void entriesWithoutResidentAncestorsAreTransparent() {
+    IndirectionTable table = new IndirectionTable(PYRAMID, 4, 2);
+    TileCache cache = new TileCache(4);
+    cache.beginFrame();
+    cache.allocate(LEVEL_2);
+
+    table.update(cache);
+
+    assertEntry(table, 0, 4, 0, 0, 2);
+    assertEquals(0, alpha(table, 0, 3));
+    assertEquals(0, alpha(table, 4, 4));
+  }
+
+  @Test
+  public void resolvesEachEntryToItsFinestResidentAncestor() {
+    IndirectionTable table = new IndirectionTable(PYRAMID, 4, 2);
+    TileCache cache = new TileCache(4);
+    cache.beginFrame();
+    // Finer tiles are resident before coarser ones so painting has to sort them by level.
+    assertEquals(0, cache.allocate(LEVEL_0));
+    assertEquals(1, cache.allocate(LEVEL_2));
+    assertEquals(2, cache.allocate(TOP));
+
+    table.update(cache);
+
+    // Slots 0, 1 & 2 are at columns 0, 1 & 0 & rows 0, 0 & 1 of the atlas.
+    assertEntry(table, 1, 5, 0, 0, 0);
+    assertEntry(table, 0, 4, 1, 0, 2);
+    assertEntry(table, 3, 7, 1, 0, 2);
+    assertEntry(table, 1, 6, 1, 0, 2);
+    assertEntry(table, 0, 0, 0, 1, 4);
+    assertEntry(table, 4, 4, 0, 1, 4);
+    assertEntry(table, 7, 15, 0, 1, 4);
+  }
+
+  @Test
+  public void updateForgetsTilesThatAreNoLongerResident() {
+    IndirectionTable table = new IndirectionTable(PYRAMID, 4, 2);
+    TileCache cache = new TileCache(4);
+    cache.beginFrame();
+    cache.allocate(TOP);
+    cache.allocate(LEVEL_2);
+    table.update(cache);
+
+    cache.remove(LEVEL_2);
+    table.update(cache);
+
+    assertEntry(table, 0, 4, 0, 0, 4);
+  }
+
+  private static void assertEntry(
+      IndirectionTable table, int row, int column, int slotColumn, int slotRow, int level) {
+    byte[] entries = table.getEntries();
+    int entry = (row * table.getWidth() + column) * 4;
+    assertEquals(slotColumn, entries[entry] & 0xFF);
+    assertEquals(slotRow, entries[entry + 1] & 0xFF);
+    assertEquals(level, entries[entry + 2] & 0xFF);
+    assertEquals(255, entries[entry + 3] & 0xFF);
+  }
+
+  private static int alpha(IndirectionTable table, int row, int column) {
+    return table.getEntries()[(row * table.getWidth() + column) * 4 + 3] & 0xFF;
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+
+public final class PngTileCodecTest {
+  private static final int WIDTH = 37;
+  private static final int HEIGHT = 23;
+
+  @Test
+  public void decodesEncodedTiles() throws IOException {
+    int[] argb = randomPixels(0xFFFFFFFF);
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    new PngTileCodec(Deflater.BEST_SPEED).encode(argb, WIDTH, HEIGHT, png);
+
+    assertArrayEquals(argb, decode(png.toByteArray()));
+  }
+
+  @Test
+  public void encodedTilesAreReadableByOtherDecoders() throws IOException {
+    int[] argb = randomPixels(0xFFFFFFFF);
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    new PngTileCodec(Deflater.DEFAULT_COMPRESSION).encode(argb, WIDTH, HEIGHT, png);
+
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+    assertArrayEquals(argb, image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+  }
+
+  // ImageIO chooses a filter for each row, so its PNGs exercise more than the Sub filter.
+
+  @Test
+  public void decodesRgba() throws IOException {
+    assertDecodesImageIoPng(BufferedImage.TYPE_INT_ARGB, 0xFFFFFFFF);
+  }
+
+  @Test
+  public void decodesRgb() throws IOException {
+    assertDecodesImageIoPng(BufferedImage.TYPE_3BYTE_BGR, 0x00FFFFFF);
+  }
+
+  @Test
+  public void decodesGray() throws IOException {
+    assertDecodesImageIoPng(BufferedImage.TYPE_BYTE_GRAY, 0x000000FF);
+  }
+
+  @Test
+  public void decodesRowByRow() throws IOException {
+    int[] argb = randomPixels(0xFFFFFFFF);
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    new PngTileCodec(Deflater.BEST_SPEED).encode(argb, WIDTH, HEIGHT, png);
+
+    final int[] rows = new int[1];
+    final int[] decoded = new int[WIDTH * HEIGHT];
+    PngTileCodec.decodeRows(new ByteArrayInputStream(png.toByteArray()),
+        new PngTileCodec.RowReceiver() {
+          @Override
+          public void onHeader(int width, int height) {
+            assertEquals(WIDTH, width);
+            assertEquals(HEIGHT, height);
+          }
+
+          @Override
+          public void onRow(int y, int[] row) {
+            assertEquals(rows[0]++, y);
+            System.arraycopy(row, 0, decoded, y * WIDTH, WIDTH);
+          }
+        });
+    assertEquals(HEIGHT, rows[0]);
+    assertArrayEquals(argb, decoded);
+  }
+
+  @Test
+  public void rejectsTruncatedPngs() throws IOException {
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    new PngTileCodec(Deflater.BEST_SPEED).encode(randomPixels(0xFFFFFFFF), WIDTH, HEIGHT, png);
+    byte[] truncated = Arrays.copyOf(png.toByteArray(), png.size() / 2);
+
+    try {
+      decode(truncated);
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test
+  public void rejectsOtherFiles() {
+    try {
+      decode("GIF89a not a PNG".getBytes());
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  /** Encodes random pixels with ImageIO in a BufferedImage type & checks that they decode. */
+  private static void assertDecodesImageIoPng(int type, int mask) throws IOException {
+    int[] argb = randomPixels(mask);
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+    if (type == BufferedImage.TYPE_BYTE_GRAY) {
+      for (int i = 0; i < argb.length; ++i) {
+        argb[i] = 0xFF000000 | argb[i] * 0x010101;
+        image.getRaster().setSample(i % WIDTH, i / WIDTH, 0, argb[i] & 0xFF);
+      }
+    } else {
+      for (int i = 0; i < argb.length; ++i) {
+        argb[i] |= ~mask;
+      }
+      image.setRGB(0, 0, WIDTH, HEIGHT, argb, 0, WIDTH);
+    }
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", png);
+
+    assertArrayEquals(argb, decode(png.toByteArray()));
+  }
+
+  private static int[] decode(byte[] png) throws IOException {
+    int[] size = new int[2];
+    int[] argb = PngTileCodec.decode(new ByteArrayInputStream(png), size);
+    assertEquals(WIDTH, size[0]);
+    assertEquals(HEIGHT, size[1]);
+    return argb;
+  }
+
+  /** Returns pixels with gradients, which are filtered, and noise. */
+  private static int[] randomPixels(int mask) {
+    Random random = new Random(1);
+    int[] argb = new int[WIDTH * HEIGHT];
+    for (int i = 0; i < argb.length; ++i) {
+      int gradient = (i % WIDTH) * 0x01020304 + (i / WIDTH) * 0x04030201;
+      argb[i] = (random.nextInt(8) == 0 ? random.nextInt() : gradient) & mask;
+    }
+    return argb;
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class PyramidBuilderTest {
+  private static final int WIDTH = 20;
+  private static final int HEIGHT = 10;
+  private static final int TILE_SIZE = 6;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void storedTilesRepeatTheirNeighborsAndClampToTheEdges() throws IOException {
+    TilePyramid pyramid = new TilePyramid(WIDTH, HEIGHT, TILE_SIZE, "png");
+    PyramidBuilder builder = new PyramidBuilder(pyramid, new ArraySource(pixels()), null);
+    int storedSize = pyramid.getStoredTileSize();
+    int[] tile = new int[storedSize * storedSize];
+
+    builder.readStoredTile(0, 0, 1, tile);
+    // The border's top row is clamped to the image's top row.
+    assertEquals(pixel(TILE_SIZE - 1, 0), tile[0]);
+    assertEquals(pixel(TILE_SIZE - 1, 0), tile[storedSize]);
+    assertEquals(pixel(TILE_SIZE, 0), tile[storedSize + 1]);
+    assertEquals(pixel(2 * TILE_SIZE, TILE_SIZE), tile[storedSize * storedSize - 1]);
+
+    // The last column of tiles is partial & repeats the image's right edge.
+    builder.readStoredTile(0, 1, 3, tile);
+    assertEquals(pixel(WIDTH - 1, HEIGHT - 1), tile[storedSize * storedSize - 1]);
+  }
+
+  @Test
+  public void downsamplingAveragesTheTexelsWithinTheImage() throws IOException {
+    TilePyramid pyramid = new TilePyramid(5, 3, TILE_SIZE, "png");
+    int[] image = new int[5 * 3];
+    for (int i = 0; i < image.length; ++i) {
+      image[i] = 0xFF000000 | (i * 10);
+    }
+    PyramidBuilder.DownsamplingSource source =
+        new PyramidBuilder.DownsamplingSource(pyramid, new ArraySource(image, 5));
+
+    int[] level1 = new int[3 * 2];
+    source.read(1, 0, 0, 3, 2, level1);
+    assertEquals(0xFF000000 | (0 + 10 + 50 + 60 + 2) / 4, level1[0]);
+    // The last column & row only cover the image's edge.
+    assertEquals(0xFF000000 | (40 + 90 + 1) / 2, level1[2]);
+    assertEquals(0xFF000000 | 140, level1[5]);
+  }
+
+  @Test
+  public void pngLevelSourceReadsRegions() throws IOException {
+    File png = writePng(pixels());
+    PngLevelSource source = PngLevelSource.open(png, folder.getRoot());
+    try {
+      assertEquals(WIDTH, source.getWidth());
+      assertEquals(HEIGHT, source.getHeight());
+      int[] region = new int[3 * 2];
+      source.read(0, 4, 5, 3, 2, region);
+      assertArrayEquals(new int[] {
+          pixel(4, 5), pixel(5, 5), pixel(6, 5), pixel(4, 6), pixel(5, 6), pixel(6, 6)}, region);
+      try {
+        source.read(1, 0, 0, 1, 1, region);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+    } finally {
+      source.close();
+    }
+    // Only the PNG is left once the scratch file is deleted.
+    assertEquals(1, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void mainBuildsAPyramidFromAPng() throws IOException {
+    File png = writePng(pixels());
+    File output = new File(folder.getRoot(), "pyramid");
+    PyramidBuilder.main(new String[] {
+        png.getPath(), output.getPath(), Integer.toString(TILE_SIZE),
+        Integer.toString(Deflater.BEST_SPEED)});
+
+    TilePyramid pyramid;
+    InputStream manifest = new FileInputStream(new File(output, TilePyramid.MANIFEST_NAME));
+    try {
+      pyramid = TilePyramid.read(manifest);
+    } finally {
+      manifest.close();
+    }
+    assertEquals(WIDTH, pyramid.getWidth());
+    assertEquals(HEIGHT, pyramid.getHeight());
+    assertEquals(TILE_SIZE, pyramid.getTileSize());
+
+    // Every tile is written & level 0 tiles hold the image's pixels.
+    for (int level = 0; level < pyramid.getLevelCount(); ++level) {
+      for (int row = 0; row < pyramid.getRows(level); ++row) {
+        for (int column = 0; column < pyramid.getColumns(level); ++column) {
+          assertTrue(new File(output, pyramid.getTilePath(level, row, column)).isFile());
+        }
+      }
+    }
+    int[] size = new int[2];
+    int[] tile;
+    InputStream input = new FileInputStream(new File(output, pyramid.getTilePath(0, 1, 2)));
+    try {
+      tile = PngTileCodec.decode(input, size);
+    } finally {
+      input.close();
+    }
+    assertEquals(pyramid.getStoredTileSize(), size[0]);
+    assertEquals(pixel(2 * TILE_SIZE, TILE_SIZE), tile[pyramid.getStoredTileSize() + 1]);
+    // The scratch file is deleted, leaving a directory per level & the manifest.
+    assertEquals(pyramid.getLevelCount() + 1, output.list().length);
+  }
+
+  private File writePng(int[] argb) throws IOException {
+    File file = folder.newFile("panorama.png");
+    OutputStream output = new FileOutputStream(file);
+    try {
+      new PngTileCodec(Deflater.BEST_SPEED).encode(argb, WIDTH, HEIGHT, output);
+    } finally {
+      output.close();
+    }
+    return file;
+  }
+
+  private static int[] pixels() {
+    int[] argb = new int[WIDTH * HEIGHT];
+    for (int i = 0; i < argb.length; ++i) {
+      argb[i] = pixel(i % WIDTH, i / WIDTH);
+    }
+    return argb;
+  }
+
+  private static int pixel(int x, int y) {
+    return 0xFF000000 | x << 8 | y;
+  }
+
+  /** Level 0 in memory. */
+  private static final class ArraySource implements PyramidBuilder.LevelSource {
+    private final int[] image;
+    private final int width;
+
+    ArraySource(int[] image) {
+      this(image, WIDTH);
+    }
+
+    ArraySource(int[] image, int width) {
+      this.image = image;
+      this.width = width;
+    }
+
+    @Override
+    public void read(int level, int x, int y, int width, int height, int[] argb) {
+      assertEquals(0, level);
+      for (int row = 0; row < height; ++row) {
+        System.arraycopy(image, (y + row) * this.width + x, argb, row * width, width);
+      }
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.vr.sdk.samples.common.tiles.TileLayout;
+import org.junit.Test;
+
+public final class PyramidTileSelectorTest {
+  // Levels 0 to 4 have 16x8, 8x4, 4x2, 2x1 & 1x1 tiles and 5.7, 2.8, 1.4, .7 & .36 texels per
+  // degree.
+  private static final TilePyramid PYRAMID = new TilePyramid(2048, 1024, 128, "png");
+
+  @Test
+  public void selectsTheCoarsestLevelThatMatchesTheDisplay() {
+    assertEquals(5, PYRAMID.getLevelCount());
+    assertEquals(1, PyramidTileSelector.selectLevel(PYRAMID, 2));
+    assertEquals(1, PyramidTileSelector.selectLevel(PYRAMID, 2048 / 2 / 360f));
+    assertEquals(2, PyramidTileSelector.selectLevel(PYRAMID, 1.4f));
+    assertEquals(4, PyramidTileSelector.selectLevel(PYRAMID, .3f));
+  }
+
+  @Test
+  public void fallsBackToFullResolutionForSharperDisplays() {
+    assertEquals(0, PyramidTileSelector.selectLevel(PYRAMID, 10));
+  }
+
+  @Test
+  public void selectsTilesOfTheChosenLevelNearestFirst() {
+    PyramidTileSelector selector = new PyramidTileSelector(PYRAMID, 2);
+    TileLayout layout = PYRAMID.createLayout(1);
+    float[] direction = tileCenter(1, 3);
+    long[] keys = new long[32];
+
+    int count = selector.select(direction[0], direction[1], direction[2], keys);
+
+    assertEquals(1, selector.getLevel());
+    assertTrue(count > 1);
+    assertEquals(TilePyramid.getTileKey(1, 1, 3), keys[0]);
+    float previous = 0;
+    for (int i = 0; i < count; ++i) {
+      assertEquals(1, TilePyramid.getKeyLevel(keys[i]));
+      float distance = layout.getAngularDistance(
+          layout.getTileIndex(TilePyramid.getKeyRow(keys[i]), TilePyramid.getKeyColumn(keys[i])),
+          direction[0], direction[1], direction[2]);
+      assertTrue(distance >= previous);
+      assertTrue(distance <= Math.toRadians(55 + 15));
+      previous = distance;
+    }
+    assertFalse(contains(keys, count, TilePyramid.getTileKey(1, 2, 7)));
+  }
+
+  @Test
+  public void keepsTheNearestTilesWhenTheArrayIsShort() {
+    PyramidTileSelector selector = new PyramidTileSelector(PYRAMID, 2);
+    float[] direction = tileCenter(1, 3);
+    long[] allKeys = new long[32];
+    long[] keys = new long[3];
+
+    selector.select(direction[0], direction[1], direction[2], allKeys);
+    assertEquals(3, selector.select(direction[0], direction[1], direction[2], keys));
+
+    for (int i = 0; i < keys.length; ++i) {
+      assertEquals(allKeys[i], keys[i]);
+    }
+  }
+
+  @Test
+  public void narrowerViewportsSelectFewerTiles() {
+    PyramidTileSelector selector = new PyramidTileSelector(PYRAMID, 2);
+    float[] direction = tileCenter(1, 3);
+    long[] keys = new long[32];
+    int defaultCount = selector.select(direction[0], direction[1], direction[2], keys);
+
+    selector.setViewport(0, 0);
+
+    assertEquals(1, selector.select(direction[0], direction[1], direction[2], keys));
+    assertEquals(TilePyramid.getTileKey(1, 1, 3), keys[0]);
+    assertTrue(defaultCount > 1);
+  }
+
+  /** Returns the direction of the center of a level 1 tile. */
+  private static float[] tileCenter(int row, int column) {
+    float[] direction = new float[3];
+    TileLayout.getDirection((column + .5f) / 8, (row + .5f) / 4, direction, 0);
+    return direction;
+  }
+
+  private static boolean contains(long[] keys, int count, long key) {
+    for (int i = 0; i < count; ++i) {
+      if (keys[i] == key) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public final class TileCacheTest {
+  private static final long A = TilePyramid.getTileKey(0, 0, 0);
+  private static final long B = TilePyramid.getTileKey(0, 0, 1);
+  private static final long C = TilePyramid.getTileKey(1, 0, 0);
+  private static final long D = TilePyramid.getTileKey(1, 1, 0);
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyCache() {
+    new TileCache(0);
+  }
+
+  @Test
+  public void allocatesFreeSlotsInOrder() {
+    TileCache cache = new TileCache(3);
+    cache.beginFrame();
+
+    assertEquals(0, cache.allocate(A));
+    assertEquals(1, cache.allocate(B));
+    assertEquals(1, cache.allocate(B));
+    assertEquals(2, cache.getResidentCount());
+    assertTrue(cache.contains(A));
+    assertFalse(cache.contains(C));
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedTile() {
+    TileCache cache = new TileCache(2);
+    cache.beginFrame();
+    int slotA = cache.allocate(A);
+    int slotB = cache.allocate(B);
+    cache.beginFrame();
+    cache.use(A);
+    cache.beginFrame();
+
+    assertEquals(slotB, cache.allocate(C));
+    assertTrue(cache.contains(A));
+    assertFalse(cache.contains(B));
+    assertEquals(1, cache.getEvictions());
+
+    // A was used before C was allocated so it goes next.
+    cache.beginFrame();
+    assertEquals(slotA, cache.allocate(D));
+    assertFalse(cache.contains(A));
+    assertEquals(2, cache.getEvictions());
+  }
+
+  @Test
+  public void containsDoesNotAffectTheEvictionOrder() {
+    TileCache cache = new TileCache(2);
+    cache.beginFrame();
+    cache.allocate(A);
+    cache.allocate(B);
+    cache.beginFrame();
+
+    assertTrue(cache.contains(A));
+    cache.allocate(C);
+
+    assertFalse(cache.contains(A));
+    assertTrue(cache.contains(B));
+  }
+
+  @Test
+  public void neverEvictsTilesUsedInTheCurrentFrame() {
+    TileCache cache = new TileCache(2);
+    cache.beginFrame();
+    cache.allocate(A);
+    cache.allocate(B);
+
+    assertEquals(-1, cache.allocate(C));
+    assertFalse(cache.contains(C));
+
+    cache.beginFrame();
+    cache.use(B);
+    cache.use(A);
+    assertEquals(-1, cache.allocate(C));
+
+    cache.beginFrame();
+    cache.use(A);
+    cache.allocate(C);
+    assertTrue(cache.contains(A));
+    assertFalse(cache.contains(B));
+  }
+
+  @Test
+  public void neverEvictsPinnedTiles() {
+    TileCache cache = new TileCache(2);
+    cache.beginFrame();
+    cache.allocate(A);
+    cache.pin(A);
+    int slotB = cache.allocate(B);
+    cache.beginFrame();
+    cache.use(B);
+    cache.beginFrame();
+
+    // A is the least recently used tile but is pinned.
+    assertEquals(slotB, cache.allocate(C));
+    assertTrue(cache.contains(A));
+    assertFalse(cache.contains(B));
+
+    cache.pin(C);
+    cache.beginFrame();
+    assertEquals(-1, cache.allocate(D));
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void pinningAMissingTileDoesNothing() {
+    TileCache cache = new TileCache(1);
+    cache.beginFrame();
+    cache.pin(A);
+    cache.allocate(B);
+    cache.beginFrame();
+
+    assertEquals(0, cache.allocate(A));
+    assertFalse(cache.contains(B));
+  }
+
+  @Test
+  public void removeFreesTheSlotWithoutEvicting() {
+    TileCache cache = new TileCache(2);
+    cache.beginFrame();
+    int slotA = cache.allocate(A);
+    cache.allocate(B);
+
+    cache.remove(A);
+    cache.remove(C);
+
+    assertFalse(cache.contains(A));
+    assertEquals(1, cache.getResidentCount());
+    assertEquals(slotA, cache.allocate(C));
+    assertEquals(0, cache.getEvictions());
+  }
+
+  @Test
+  public void countsHitsAndMisses() {
+    TileCache cache = new TileCache(2);
+    cache.beginFrame();
+    assertFalse(cache.use(A));
+    cache.allocate(A);
+    assertTrue(cache.use(A));
+    assertTrue(cache.use(A));
+    assertFalse(cache.use(B));
+
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void listsResidentTilesFromLeastRecentlyUsed() {
+    TileCache cache = new TileCache(3);
+    cache.beginFrame();
+    cache.allocate(A);
+    cache.allocate(B);
+    cache.allocate(C);
+    cache.use(A);
+    long[] keys = new long[3];
+    int[] slots = new int[3];
+
+    assertEquals(3, cache.getResidentTiles(keys, slots));
+    assertArrayEquals(new long[] {B, C, A}, keys);
+    assertArrayEquals(new int[] {1, 2, 0}, slots);
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.pyramid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import org.junit.Test;
+
+public final class TileKeySetTest {
+  @Test
+  public void addsContainsAndRemovesKeys() {
+    TileKeySet set = new TileKeySet(2);
+    long key = TilePyramid.getTileKey(0, 0, 0);
+
+    assertFalse(set.contains(key));
+    assertTrue(set.add(key));
+    assertFalse(set.add(key));
+    assertTrue(set.contains(key));
+    assertEquals(1, set.size());
+
+    assertTrue(set.remove(key));
+    assertFalse(set.remove(key));
+    assertFalse(set.contains(key));
+    assertEquals(0, set.size());
+  }
+
+  @Test
+  public void negativeKeysAreNeverContained() {
+    TileKeySet set = new TileKeySet(2);
+
+    assertFalse(set.contains(-1));
+    assertFalse(set.remove(-1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeKeys() {
+    new TileKeySet(2).add(-1);
+  }
+
+  @Test
+  public void growsPastTheExpectedSize() {
+    TileKeySet set = new TileKeySet(2);
+    for (int column = 0; column < 100; ++column) {
+      set.add(TilePyramid.getTileKey(1, 2, column));
+    }
+
+    assertEquals(100, set.size());
+    for (int column = 0; column < 100; ++column) {
+      assertTrue(set.contains(TilePyramid.getTileKey(1, 2, column)));
+    }
+    assertFalse(set.contains(TilePyramid.getTileKey(1, 2, 100)));
+  }
+
+  @Test
+  public void clearRemovesEverything() {
+    TileKeySet set = new TileKeySet(4);
+    set.add(1);
+    set.add(2);
+
+    set.clear();
+
+    assertEquals(0, set.size());
+    assertFalse(set.contains(1));
+    assertFalse(set.contains(2));
+  }
+
+  @Test
+  public void matchesHashSetUnderRandomAddsAndRemoves() {
+    // Few distinct keys in a small table force long probe sequences, so removals have to shift
+    // colliding keys back.
+    Random random = new Random(1);
+    TileKeySet set = new TileKeySet(8);
+    HashSet<Long> expected = new HashSet<>();
+    for (int i = 0; i < 10000; ++i) {
+      long key = TilePyramid.getTileKey(random.nextInt(2), random.nextInt(4), random.nextInt(4));
+      if (random.nextBoolean()) {
+        assertEquals(expected.add(key), set.add(key));
+      } else {
+        assertEquals(expected.remove(key), set.remove(key));
+      }
+      assertEquals(expected.size(), set.size());
+    }
+    for (int level = 0; level < 2; ++level) {
+      for (int row = 0; row < 4; ++row) {
+        for (int column = 0; column < 4; ++column) {
+          long key = TilePyramid.getTileKey(level, row, column);
+          assertEquals(expected.contains(key), set.contains(key));
+        }
+      }
+    }
+  }
+}
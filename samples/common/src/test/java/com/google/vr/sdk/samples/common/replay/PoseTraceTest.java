@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.replay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.vr.sdk.samples.common.math.Quat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+public final class PoseTraceTest {
+  private static final float TOLERANCE = 1e-5f;
+
+  private final Random random = new Random(7);
+
+  @Test
+  public void storesPosesUpToItsCapacity() {
+    PoseTrace trace = new PoseTrace(2);
+    float[] first = randomRotation();
+    float[] second = randomRotation();
+    assertTrue(trace.add(100, first, 0));
+    // The matrix can be at an offset.
+    float[] matrices = new float[32];
+    System.arraycopy(second, 0, matrices, 16, 16);
+    assertTrue(trace.add(200, matrices, 16));
+    assertFalse(trace.add(300, randomRotation(), 0));
+
+    assertEquals(2, trace.size());
+    assertEquals(100, trace.getTimeNanos(0));
+    assertEquals(200, trace.getTimeNanos(1));
+    float[] matrix = new float[16];
+    trace.getRotationMatrix(0, matrix, 0);
+    assertArrayEquals(first, matrix, TOLERANCE);
+    trace.getRotationMatrix(1, matrices, 16);
+    System.arraycopy(matrices, 16, matrix, 0, 16);
+    assertArrayEquals(second, matrix, TOLERANCE);
+
+    trace.clear();
+    assertEquals(0, trace.size());
+    assertTrue(trace.add(400, first, 0));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void rejectsIndicesPastTheSize() {
+    PoseTrace trace = new PoseTrace(2);
+    trace.add(100, randomRotation(), 0);
+    trace.getTimeNanos(1);
+  }
+
+  @Test
+  public void roundTripsThroughTheBinaryFormat() throws IOException {
+    PoseTrace trace = new PoseTrace(10);
+    for (int i = 0; i < 10; ++i) {
+      trace.add(1000000000L * i + 7, randomRotation(), 0);
+    }
+    PoseTrace copy = PoseTrace.read(new ByteArrayInputStream(write(trace)));
+
+    assertEquals(trace.size(), copy.size());
+    float[] expected = new float[16];
+    float[] actual = new float[16];
+    for (int i = 0; i < trace.size(); ++i) {
+      assertEquals(trace.getTimeNanos(i), copy.getTimeNanos(i));
+      trace.getRotationMatrix(i, expected, 0);
+      copy.getRotationMatrix(i, actual, 0);
+      assertArrayEquals(expected, actual, 0);
+    }
+  }
+
+  @Test
+  public void writesOnlyTheRecordedPoses() throws IOException {
+    PoseTrace trace = new PoseTrace(100);
+    trace.add(1, randomRotation(), 0);
+    // Header, then a time & a quaternion per pose.
+    assertEquals(3 * 4 + 8 + 4 * 4, write(trace).length);
+  }
+
+  @Test
+  public void rejectsOtherFiles() {
+    assertReadFails(new byte[] {'P', 'N', 'G', ' ', 0, 0, 0, 1, 0, 0, 0, 0});
+    // Version 2.
+    assertReadFails(new byte[] {'P', 'O', 'S', 'E', 0, 0, 0, 2, 0, 0, 0, 0});
+    // A negative pose count.
+    assertReadFails(new byte[] {'P', 'O', 'S', 'E', 0, 0, 0, 1, -1, -1, -1, -1});
+    // Truncated.
+    assertReadFails(new byte[] {'P', 'O', 'S', 'E', 0, 0, 0, 1, 0, 0, 0, 1, 0, 0});
+  }
+
+  private static byte[] write(PoseTrace trace) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    trace.write(output);
+    return output.toByteArray();
+  }
+
+  private static void assertReadFails(byte[] data) {
+    try {
+      PoseTrace.read(new ByteArrayInputStream(data));
+      fail();
+    } catch (IOException expected) {
+      // Expected.
+    }
+  }
+
+  private float[] randomRotation() {
+    float[] q = new float[4];
+    Quat.fromRotationVector(
+        random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, q, 0);
+    float[] matrix = new float[16];
+    Quat.toRotationMatrix(q, 0, matrix, 0);
+    return matrix;
+  }
+}
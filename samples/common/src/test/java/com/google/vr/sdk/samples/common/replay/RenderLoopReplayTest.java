@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.replay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public final class RenderLoopReplayTest {
+  private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+  @Test
+  public void reportsPerFrameCounterDeltas() {
+    FakeTarget target = new FakeTarget();
+    RenderLoopReplay.Result result = new RenderLoopReplay(trace(4), target).run();
+
+    assertEquals(4, result.getFrameCount());
+    assertArrayEquals(new String[] {"calls", "draws"}, result.getCounterNames());
+    // Frame i makes i + 1 calls & one draw.
+    for (int frame = 0; frame < 4; ++frame) {
+      assertEquals(frame + 1, result.getValue(0, frame));
+      assertEquals(1, result.getValue(1, frame));
+    }
+    assertEquals(4, result.getMax(0));
+    assertEquals(2.5, result.getMean(0), 0);
+    assertEquals(1.0, result.getMean(1), 0);
+  }
+
+  @Test
+  public void drawsEveryPoseAtItsTime() {
+    FakeTarget target = new FakeTarget();
+    new RenderLoopReplay(trace(3), target).run();
+    assertEquals(3, target.frameTimes.size());
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(1000L * i, (long) target.frameTimes.get(i));
+    }
+    assertArrayEquals(IDENTITY, target.lastHeadFromWorld, 1e-6f);
+  }
+
+  @Test
+  public void warmupFramesAreDrawnButNotMeasured() {
+    FakeTarget target = new FakeTarget();
+    RenderLoopReplay replay = new RenderLoopReplay(trace(5), target);
+    replay.setWarmupFrames(2);
+    RenderLoopReplay.Result result = replay.run();
+
+    assertEquals(5, target.frameTimes.size());
+    assertEquals(3, result.getFrameCount());
+    assertEquals(3, result.getValue(0, 0));
+
+    replay.setWarmupFrames(10);
+    assertEquals(0, replay.run().getFrameCount());
+  }
+
+  @Test
+  public void appendsTheAllocationCounter() {
+    final FakeTarget target = new FakeTarget();
+    RenderLoopReplay replay = new RenderLoopReplay(trace(3), target);
+    // Pretend every call allocates 16 bytes.
+    replay.setAllocationCounter(
+        new RenderLoopReplay.AllocationCounter() {
+          @Override
+          public long getAllocatedBytes() {
+            return 16 * target.calls;
+          }
+        });
+    RenderLoopReplay.Result result = replay.run();
+
+    assertArrayEquals(new String[] {"calls", "draws", "allocatedBytes"}, result.getCounterNames());
+    assertEquals(16, result.getValue(2, 0));
+    assertEquals(48, result.getValue(2, 2));
+    assertEquals(
+        "frames=3\n  calls: mean=2.0 max=3\n  draws: mean=1.0 max=1\n"
+            + "  allocatedBytes: mean=32.0 max=48",
+        result.dump(new StringBuilder()).toString());
+  }
+
+  private static PoseTrace trace(int size) {
+    PoseTrace trace = new PoseTrace(size);
+    for (int i = 0; i < size; ++i) {
+      trace.add(1000L * i, IDENTITY, 0);
+    }
+    return trace;
+  }
+
+  /** Makes one more call in each frame than in the previous one. */
+  private static final class FakeTarget implements RenderLoopReplay.Target {
+    final List<Long> frameTimes = new ArrayList<>();
+    float[] lastHeadFromWorld;
+    long calls;
+    long draws;
+
+    @Override
+    public void drawFrame(long frameTimeNanos, float[] headFromWorld) {
+      frameTimes.add(frameTimeNanos);
+      lastHeadFromWorld = headFromWorld.clone();
+      calls += frameTimes.size();
+      ++draws;
+    }
+
+    @Override
+    public String[] getCounterNames() {
+      return new String[] {"calls", "draws"};
+    }
+
+    @Override
+    public long getCounter(int index) {
+      return index == 0 ? calls : draws;
+    }
+  }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.common.tiles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class TilePrefetchSchedulerTest {
+  private static final String MANIFEST =
+      "rows=4\n"
+          + "columns=8\n"
+          + "segmentDurationMs=1000\n"
+          + "segmentCount=10\n"
+          + "bitrates=100000,400000\n"
+          + "uriTemplate=q{quality}/{row}_{column}/{segment}.mp4\n";
+  private static final int TILES = 32;
+  private static final long UNLIMITED_BPS = 100000000;
+  // Matches the selectors' defaults: the viewport & the margin of the playing segment, plus 10
+  // degrees for each segment further ahead.
+  private static final float VIEWPORT_RADIANS = (float) Math.toRadians(55);
+  private static final float UPGRADE_RADIANS = (float) Math.toRadians(55 + 15);
+  private static final float[] FRONT = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+  // Turned around the Y axis by 180 degrees.
+  private static final float[] BACK = {-1, 0, 0, 0, 0, 1, 0, 0, 0, 0, -1, 0, 0, 0, 0, 1};
+
+  private TileManifest manifest;
+  private FakeLoader loader;
+  private QueuedExecutor queuedExecutor;
+  private long nowNanos = TimeUnit.SECONDS.toNanos(100);
+  private final float[] frontDistances = new float[TILES];
+  private final float[] backDistances = new float[TILES];
+
+  @Before
+  public void setUp() throws IOException {
+    manifest = TileManifest.read(
+        new ByteArrayInputStream(MANIFEST.getBytes("UTF-8")),
+        URI.create("http://localhost/video/manifest.properties"));
+    loader = new FakeLoader();
+    queuedExecutor = new QueuedExecutor();
+    manifest.getLayout().getAngularDistances(FRONT, frontDistances);
+    manifest.getLayout().getAngularDistances(BACK, backDistances);
+  }
+
+  @Test
+  public void loadsBaseLayersFirstThenUpgradesNearestFirst() {
+    TilePrefetchScheduler scheduler = createScheduler(DIRECT_EXECUTOR, 2, 4);
+    scheduler.addPose(nowNanos, FRONT);
+    update(scheduler, 0, UNLIMITED_BPS);
+
+    List<TilePrefetchScheduler.Request> loads = loader.requests;
+    for (int i = 0; i < loads.size(); ++i) {
+      TilePrefetchScheduler.Request request = loads.get(i);
+      // The base layers of all 3 segments come before any upgrade.
+      assertEquals(request.toString(), i >= 3 * TILES, request.getQuality() > 0);
+      if (i == 0 || i == 3 * TILES) {
+        continue;
+      }
+      TilePrefetchScheduler.Request previous = loads.get(i - 1);
+      assertTrue(request.toString(), previous.getSegment() <= request.getSegment());
+      if (previous.getSegment() == request.getSegment()) {
+        assertTrue(
+            request.toString(),
+            frontDistances[previous.getTile()] <= frontDistances[request.getTile()]);
+      }
+    }
+
+    // The playing segment upgrades exactly the tiles in the viewport & its margin.
+    int[] qualities = new int[TILES];
+    scheduler.getSelectedQualities(qualities);
+    int upgrades = 0;
+    for (int tile = 0; tile < TILES; ++tile) {
+      assertEquals("tile " + tile, frontDistances[tile] <= UPGRADE_RADIANS, qualities[tile] == 1);
+      boolean loaded = false;
+      for (TilePrefetchScheduler.Request request : loads) {
+        if (request.getSegment() == 0 && request.getTile() == tile && request.getQuality() == 1) {
+          loaded = true;
+          ++upgrades;
+        }
+      }
+      assertEquals("tile " + tile, qualities[tile] == 1, loaded);
+    }
+    assertTrue(upgrades > 0 && upgrades < TILES);
+
+    TileLayout layout = manifest.getLayout();
+    int first = loads.get(0).getTile();
+    assertEquals(
+        URI.create(
+            "http://localhost/video/q0/" + layout.getRow(first) + "_" + layout.getColumn(first)
+                + "/0.mp4"),
+        loads.get(0).getUri());
+    // The last completions are delivered by the next update.
+    update(scheduler, 0, UNLIMITED_BPS);
+    assertEquals(loads.size(), scheduler.getRequestCount());
+    assertEquals(loads.size(), scheduler.getLoadCount());
+    assertEquals(loader.bytes, scheduler.getLoadedBytes());
+    // Everything needed is loaded, so nothing is requested again.
+    assertEquals(loads.size(), loader.requests.size());
+  }
+
+  @Test
+  public void loadsOnlyBaseLayersWithoutABandwidthEstimate() {
+    TilePrefetchScheduler scheduler = createScheduler(DIRECT_EXECUTOR, 2, 4);
+    scheduler.addPose(nowNanos, FRONT);
+    update(scheduler, 0, 0);
+    assertEquals(3 * TILES, loader.requests.size());
+    for (TilePrefetchScheduler.Request request : loader.requests) {
+      assertEquals(0, request.getQuality());
+    }
+  }
+
+  @Test
+  public void cancelsUpgradesTheViewerTurnedAwayFrom() {
+    TilePrefetchScheduler scheduler = createScheduler(queuedExecutor, 1, 1);
+    scheduler.addPose(nowNanos, FRONT);
+    // One load at a time: the base layers of both segments, then the first upgrade starts.
+    for (int i = 0; i < 2 * TILES; ++i) {
+      update(scheduler, 0, UNLIMITED_BPS);
+      queuedExecutor.runAll();
+    }
+    update(scheduler, 0, UNLIMITED_BPS);
+    assertEquals(1, queuedExecutor.size());
+    assertEquals(0, scheduler.getStaleCancelCount());
+
+    turnToTheBack(scheduler);
+    update(scheduler, 0, UNLIMITED_BPS);
+    // Every upgrade of the front view is canceled, including the one being loaded.
+    assertTrue(scheduler.getStaleCancelCount() > 0);
+    queuedExecutor.runAll();
+    assertEquals(1, loader.canceledLoads);
+
+    for (int i = 0; i < 2 * TILES; ++i) {
+      update(scheduler, 0, UNLIMITED_BPS);
+      queuedExecutor.runAll();
+    }
+    assertEquals(0, queuedExecutor.size());
+    assertEquals(1, loader.canceledLoads);
+    int upgrades = 0;
+    for (TilePrefetchScheduler.Request request : loader.requests) {
+      if (request.getQuality() > 0 && !request.isCanceled()) {
+        assertTrue(request.toString(), backDistances[request.getTile()] < Math.PI / 2);
+        ++upgrades;
+      }
+    }
+    assertTrue(upgrades > 0);
+    // The canceled load isn't delivered.
+    assertEquals(loader.requests.size() - 1, scheduler.getLoadCount());
+  }
+
+  @Test
+  public void requestsLateUpgradesAgainOnceTheyCanArriveInTime() {
+    TilePrefetchScheduler scheduler = createScheduler(DIRECT_EXECUTOR, 2, 4);
+    scheduler.addPose(nowNanos, FRONT);
+    // 5 Mbps: the 9.6 Mbit of base layers take almost 2 s, which is past the end of the playing
+    // segment, so only the third segment's first upgrade arrives in time.
+    update(scheduler, 0, 5000000);
+    assertTrue(scheduler.getLateDropCount() >= 12);
+    for (TilePrefetchScheduler.Request request : loader.requests) {
+      assertTrue(request.toString(), request.getQuality() == 0 || request.getSegment() == 2);
+    }
+
+    update(scheduler, 0, UNLIMITED_BPS);
+    int[] qualities = new int[TILES];
+    scheduler.getSelectedQualities(qualities);
+    for (int tile = 0; tile < TILES; ++tile) {
+      if (qualities[tile] == 0) {
+        continue;
+      }
+      boolean loaded = false;
+      for (TilePrefetchScheduler.Request request : loader.requests) {
+        loaded |= request.getSegment() == 0 && request.getTile() == tile
+            && request.getQuality() == 1;
+      }
+      assertTrue("tile " + tile, loaded);
+    }
+  }
+
+  @Test
+  public void measuresHitsAndMissesOnceAWholeWindowWasPrefetched() {
+    TilePrefetchScheduler scheduler = createScheduler(DIRECT_EXECUTOR, 1, 4);
+    scheduler.addPose(nowNanos, FRONT);
+    update(scheduler, 0, UNLIMITED_BPS);
+    // Segment 1 was already in the window when playback started.
+    update(scheduler, 1000, UNLIMITED_BPS);
+    assertMetrics(scheduler, 0, 0, 0);
+
+    // Segment 2 was prefetched for the viewport it's watched in.
+    update(scheduler, 2000, UNLIMITED_BPS);
+    int viewportTiles = 0;
+    for (int tile = 0; tile < TILES; ++tile) {
+      if (frontDistances[tile] <= VIEWPORT_RADIANS) {
+        ++viewportTiles;
+      }
+    }
+    assertMetrics(scheduler, viewportTiles, 0, 0);
+
+    // Segment 3 was prefetched while looking at the front, with 10 degrees of extra margin since it
+    // was a segment ahead, but it's watched facing the back.
+    turnToTheBack(scheduler);
+    update(scheduler, 3000, UNLIMITED_BPS);
+    int hits = 0;
+    int misses = 0;
+    for (int tile = 0; tile < TILES; ++tile) {
+      if (backDistances[tile] <= VIEWPORT_RADIANS) {
+        if (frontDistances[tile] <= UPGRADE_RADIANS + Math.toRadians(10)) {
+          ++hits;
+        } else {
+          ++misses;
+        }
+      }
+    }
+    assertTrue(misses > 0);
+    assertMetrics(scheduler, viewportTiles + hits, misses, 0);
+
+    // Seeking restarts the window.
+    update(scheduler, 7000, UNLIMITED_BPS);
+    update(scheduler, 8000, UNLIMITED_BPS);
+    assertMetrics(scheduler, viewportTiles + hits, misses, 0);
+    update(scheduler, 9000, UNLIMITED_BPS);
+    assertTrue(scheduler.getHitCount() > viewportTiles + hits);
+  }
+
+  @Test
+  public void countsStallsForTilesWithoutData() {
+    TilePrefetchScheduler scheduler = createScheduler(queuedExecutor, 1, 4);
+    scheduler.addPose(nowNanos, FRONT);
+    // Nothing ever finishes loading.
+    update(scheduler, 0, UNLIMITED_BPS);
+    update(scheduler, 1000, UNLIMITED_BPS);
+    update(scheduler, 2000, UNLIMITED_BPS);
+    assertEquals(0, scheduler.getHitCount());
+    assertTrue(scheduler.getMissCount() > 0);
+    assertEquals(TILES, scheduler.getStallCount());
+  }
+
+  @Test
+  public void requestsFailedLoadsAgain() {
+    TilePrefetchScheduler scheduler = createScheduler(DIRECT_EXECUTOR, 0, 4);
+    scheduler.addPose(nowNanos, FRONT);
+    loader.fail = true;
+    update(scheduler, 0, 0);
+    loader.fail = false;
+    // The failures are handled by the next update, which requests the segments again.
+    update(scheduler, 0, 0);
+    assertEquals(TILES, scheduler.getFailureCount());
+    update(scheduler, 0, 0);
+    assertEquals(TILES, scheduler.getLoadCount());
+    assertEquals(2 * TILES, scheduler.getRequestCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsZeroLoads() {
+    createScheduler(DIRECT_EXECUTOR, 1, 0);
+  }
+
+  private TilePrefetchScheduler createScheduler(
+      Executor executor, int lookaheadSegments, int maxLoads) {
+    return new TilePrefetchScheduler(
+        manifest, loader, executor, null, lookaheadSegments, maxLoads);
+  }
+
+  private void update(TilePrefetchScheduler scheduler, long positionMs, long bandwidthBps) {
+    nowNanos += TimeUnit.MILLISECONDS.toNanos(100);
+    scheduler.update(nowNanos, positionMs, bandwidthBps);
+  }
+
+  /** Turns without any velocity left for the extrapolation. */
+  private void turnToTheBack(TilePrefetchScheduler scheduler) {
+    scheduler.addPose(nowNanos, BACK);
+    scheduler.addPose(nowNanos + TimeUnit.MILLISECONDS.toNanos(10), BACK);
+    nowNanos += TimeUnit.MILLISECONDS.toNanos(10);
+  }
+
+  private static void assertMetrics(
+      TilePrefetchScheduler scheduler, long hits, long misses, long stalls) {
+    assertEquals(hits, scheduler.getHitCount());
+    assertEquals(misses, scheduler.getMissCount());
+    assertEquals(stalls, scheduler.getStallCount());
+  }
+
+  private static final Executor DIRECT_EXECUTOR =
+      new Executor() {
+        @Override
+        public void execute(Runnable command) {
+          command.run();
+        }
+      };
+
+  /** Runs loads only when the test says so. */
+  private static final class QueuedExecutor implements Executor {
+    private final List<Runnable> queue = new ArrayList<>();
+
+    @Override
+    public void execute(Runnable command) {
+      queue.add(command);
+    }
+
+    int size() {
+      return queue.size();
+    }
+
+    void runAll() {
+      while (!queue.isEmpty()) {
+        queue.remove(0).run();
+      }
+    }
+  }
+
+  private static final class FakeLoader implements TilePrefetchScheduler.Loader {
+    final List<TilePrefetchScheduler.Request> requests = new ArrayList<>();
+    boolean fail;
+    int canceledLoads;
+    long bytes;
+
+    @Override
+    public byte[] load(TilePrefetchScheduler.Request request) throws IOException {
+      if (fail) {
+        throw new IOException("Unavailable");
+      }
+      requests.add(request);
+      if (request.isCanceled()) {
+        ++canceledLoads;
+        return null;
+      }
+      byte[] data = new byte[100 * (request.getQuality() + 1)];
+      bytes += data.length;
+      return data;
+    }
+  }
+}
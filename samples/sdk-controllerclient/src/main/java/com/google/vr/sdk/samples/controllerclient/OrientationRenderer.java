@@ -0,0 +1,268 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.controllerclient;
+
+import android.opengl.GLES20;
+import android.opengl.GLException;
+import android.opengl.GLSurfaceView;
+import android.opengl.Matrix;
+import android.text.TextUtils;
+import com.google.vr.sdk.controller.Controller;
+import com.google.vr.sdk.samples.common.concurrent.MatrixExchange;
+import com.google.vr.sdk.samples.common.math.Mat4;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Renders the RGB box of {@link OrientationView} with the orientation of the Daydream Controller,
+ * viewed by a camera that follows the phone's orientation. It only depends on GL & the transforms
+ * it's handed, so it can also be driven without a View.
+ */
+/* package */ final class OrientationRenderer implements GLSurfaceView.Renderer {
+  // Size of the 3D space where the box is rendered.
+  private static final float VIEW_SIZE = 6;
+
+  // Passes the phone's orientation from the sensor thread to the GL thread.
+  private final MatrixExchange phoneInWorldSpaceExchange;
+  // Tracks the orientation of the physical controller in its properly centered Start Space.
+  private volatile Controller controller;
+  /** See {@link OrientationView#resetYaw} */
+  private volatile float[] startFromSensorTransformation;
+  private final float[] controllerInStartSpaceMatrix = new float[16];
+
+  // Basic shaders to render colored lines.
+  private final String vertexShaderCode =  TextUtils.join("\n",  new String[] {
+      "uniform mat4 uMvpMatrix;",
+      "attribute vec4 aPosition;",
+      "attribute vec4 aColor;",
+      "varying vec4 vColor;",
+
+      "void main() {",
+      "  gl_Position = uMvpMatrix * aPosition;",
+      "  vColor = aColor;",
+      "}"
+  });
+
+  private final String fragmentShaderCode = TextUtils.join("\n",  new String[] {
+      "precision mediump float;",
+      "varying vec4 vColor;",
+
+      "void main() {",
+      "  gl_FragColor = vColor;",
+      "}",
+  });
+
+  private int program;
+  // Shader variable locations. These are looked up once after the program is linked.
+  private int mvpMatrixHandle;
+  private int positionHandle;
+  private int colorHandle;
+
+  // Camera projection matrix.
+  private final float[] projectionMatrix = new float[16];
+  // Final model-view-projection matrix passed to the shader.
+  private final float[] mvpMatrix = new float[16];
+
+  // The box is a cube with XYZ lines colored RGB, respectively. Lines get brighter in the
+  // positive direction. It has a green arrow to represent the trackpad at the front and top of
+  // the controller
+  private final int vertexCount = 2 * (12 + 4); // 2 points * (12 cube edges * 4 diamond edges)
+  private FloatBuffer boxVertices;
+  private FloatBuffer boxColors;
+
+  /** @param phoneInWorldSpaceExchange receives the phone's orientation from the sensor thread. */
+  public OrientationRenderer(MatrixExchange phoneInWorldSpaceExchange) {
+    this.phoneInWorldSpaceExchange = phoneInWorldSpaceExchange;
+  }
+
+  /** Binds the controller whose orientation is drawn. Can be called on any thread. */
+  public void setController(Controller controller) {
+    this.controller = controller;
+  }
+
+  /**
+   * Returns the [yaw, pitch, roll] in degrees of the phone when tracking started, or null after
+   * {@link OrientationView#resetYaw} until the next sensor event. Can be called on any thread.
+   */
+  public float[] getStartFromSensorTransformation() {
+    return startFromSensorTransformation;
+  }
+
+  /** Sets the value returned by {@link #getStartFromSensorTransformation}. */
+  public void setStartFromSensorTransformation(float[] startFromSensorTransformation) {
+    this.startFromSensorTransformation = startFromSensorTransformation;
+  }
+
+  // Initialize shaders and geometry.
+  @Override
+  public final void onSurfaceCreated(GL10 unused, EGLConfig config) {
+    // Set up shaders
+    int vertexShader = GLES20.glCreateShader(GLES20.GL_VERTEX_SHADER);
+    GLES20.glShaderSource(vertexShader, vertexShaderCode);
+    GLES20.glCompileShader(vertexShader);
+
+    int fragmentShader = GLES20.glCreateShader(GLES20.GL_FRAGMENT_SHADER);
+    GLES20.glShaderSource(fragmentShader, fragmentShaderCode);
+    GLES20.glCompileShader(fragmentShader);
+
+    program = GLES20.glCreateProgram();
+    GLES20.glAttachShader(program, vertexShader);
+    GLES20.glAttachShader(program, fragmentShader);
+    GLES20.glLinkProgram(program);
+
+    int[] linkStatus = new int[1];
+    GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+    if (linkStatus[0] != GLES20.GL_TRUE) {
+      throw new GLException(linkStatus[0],
+          "Unable to create shader program: " + GLES20.glGetProgramInfoLog(program));
+    }
+    mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMvpMatrix");
+    positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+    colorHandle = GLES20.glGetAttribLocation(program, "aColor");
+
+    // Set up geometry
+    // 16 lines * 2 points * XYZ
+    float[] boxVertexData = {
+        // X-aligned lines of length 4
+        -2, -1, -3,  2, -1, -3,
+        -2, -1,  3,  2, -1,  3,
+        -2,  1, -3,  2,  1, -3,
+        -2,  1,  3,  2,  1,  3,
+        // Y-aligned lines of length 2
+        -2, -1, -3, -2,  1, -3,
+        -2, -1,  3, -2,  1,  3,
+         2, -1, -3,  2,  1, -3,
+         2, -1,  3,  2,  1,  3,
+        // Z-aligned lines of length 6
+        -2, -1, -3, -2, -1,  3,
+        -2,  1, -3, -2,  1,  3,
+         2, -1, -3,  2, -1,  3,
+         2,  1, -3,  2,  1,  3,
+        // Trackpad diamond
+        -1,  1, -1,  0,  1,  0,
+         0,  1,  0,  1,  1, -1,
+         1,  1, -1,  0,  1, -3,
+         0,  1, -3, -1,  1, -1,
+    };
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(boxVertexData.length * 4);
+    buffer.order(ByteOrder.nativeOrder());
+    boxVertices = buffer.asFloatBuffer();
+    boxVertices.put(boxVertexData);
+    boxVertices.position(0);
+
+    // The XYZ lines are RGB in the positive direction and black in the negative direction.
+    // 16 lines * 2 points * RGBA
+    float[] boxColorData = {
+        // X-aligned lines
+        0, 0, 0, 1, 1, 0, 0, 1,
+        0, 0, 0, 1, 1, 0, 0, 1,
+        0, 0, 0, 1, 1, 0, 0, 1,
+        0, 0, 0, 1, 1, 0, 0, 1,
+        // Y-aligned lines
+        0, 0, 0, 1, 0, 1, 0, 1,
+        0, 0, 0, 1, 0, 1, 0, 1,
+        0, 0, 0, 1, 0, 1, 0, 1,
+        0, 0, 0, 1, 0, 1, 0, 1,
+        // Z-aligned lines
+        0, 0, 0, 1, 0, 0, 1, 1,
+        0, 0, 0, 1, 0, 0, 1, 1,
+        0, 0, 0, 1, 0, 0, 1, 1,
+        0, 0, 0, 1, 0, 0, 1, 1,
+        // Trackpad
+        0, 1, 0, 1, 0, 1, 0, 1,
+        0, 1, 0, 1, 0, 1, 0, 1,
+        0, 1, 0, 1, 0, 1, 0, 1,
+        0, 1, 0, 1, 0, 1, 0, 1,
+    };
+    buffer = ByteBuffer.allocateDirect(boxColorData.length * 4);
+    buffer.order(ByteOrder.nativeOrder());
+    boxColors = buffer.asFloatBuffer();
+    boxColors.put(boxColorData);
+    boxColors.position(0);
+  }
+
+  // Set up GL environment.
+  @Override
+  public final void onSurfaceChanged(GL10 gl, int width, int height) {
+    // Camera.
+    GLES20.glViewport(0, 0, width, height);
+    Matrix.perspectiveM(projectionMatrix, 0, 90, (float) (width) / height, 1, 2 * VIEW_SIZE);
+
+    // Styles.
+    GLES20.glClearColor(1, 1, 1, 1);
+    GLES20.glLineWidth(10);
+
+    GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+  }
+
+  // The Matrix class requires preallocated arrays for calculations. To avoid allocating new
+  // variables per-frame, these are temp arrays used during calculation in onDrawFrame.
+  private final float[] tmpMatrix1 = new float[16];
+  private final float[] tmpMatrix2 = new float[16];
+  // Consistent copy of the phone's latest orientation.
+  private final float[] phoneInWorldSpaceMatrix = new float[16];
+
+  @Override
+  public final void onDrawFrame(GL10 unused) {
+    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    GLES20.glUseProgram(program);
+
+    // Set up camera.
+    Matrix.setIdentityM(tmpMatrix1, 0);
+
+    // Convert world space to head space.
+    phoneInWorldSpaceExchange.read(phoneInWorldSpaceMatrix, 0);
+    Matrix.translateM(tmpMatrix1, 0, 0, 0, -VIEW_SIZE);
+    Mat4.multiply(tmpMatrix2, 0, tmpMatrix1, 0, phoneInWorldSpaceMatrix, 0);
+
+    // Phone's Z faces up. We need it to face toward the user.
+    Matrix.rotateM(tmpMatrix2, 0, 90, 1, 0, 0);
+
+    float[] startFromSensor = startFromSensorTransformation;
+    if (startFromSensor != null) {
+      // Compensate for the yaw by rotating in the other direction.
+      Matrix.rotateM(tmpMatrix2, 0, -startFromSensor[0], 0, 1, 0);
+    } // Else we're in a transient state between a resetYaw call and an onSensorChanged call.
+
+    // Convert object space to world space.
+    Controller controller = this.controller;
+    if (controller != null) {
+      controller.update();
+      controller.orientation.toRotationMatrix(controllerInStartSpaceMatrix);
+    }
+
+    // Set mvpMatrix = projection * view * model in one pass.
+    Mat4.multiply(
+        mvpMatrix, 0, projectionMatrix, 0, tmpMatrix2, 0, controllerInStartSpaceMatrix, 0);
+    GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+
+    // Draw.
+    GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 0, boxVertices);
+    GLES20.glEnableVertexAttribArray(positionHandle);
+
+    GLES20.glVertexAttribPointer(colorHandle, 4, GLES20.GL_FLOAT, false, 0, boxColors);
+    GLES20.glEnableVertexAttribArray(colorHandle);
+
+    GLES20.glDrawArrays(GLES20.GL_LINES, 0, vertexCount);
+    GLES20.glDisableVertexAttribArray(positionHandle);
+    GLES20.glDisableVertexAttribArray(colorHandle);
+  }
+}
@@ -18,8 +18,11 @@ package com.google.vr.sdk.samples.simplepanowidget;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.content.res.AssetManager;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -29,6 +32,9 @@ import android.util.Log;
 import android.util.Pair;
 import android.widget.TextView;
 import android.widget.Toast;
+import com.google.vr.sdk.samples.common.android.BitmapCache;
+import com.google.vr.sdk.samples.common.cache.CacheKeys;
+import com.google.vr.sdk.samples.common.pyramid.TilePyramid;
 import com.google.vr.sdk.widgets.pano.VrPanoramaEventListener;
 import com.google.vr.sdk.widgets.pano.VrPanoramaView;
 import com.google.vr.sdk.widgets.pano.VrPanoramaView.Options;
@@ -46,9 +52,31 @@ import java.io.InputStream;
  *
  * To load stereo images, "--ei inputType 2" can be used to pass in an integer extra which will set
  * VrPanoramaView.Options.inputType.
+ *
+ * Images are displayed at their full size by default. "--ei maxWidth 4096" downsamples them by
+ * powers of two until they are at most that wide, which saves memory on low-end devices.
+ *
+ * The path can also be the manifest of a {@link TilePyramid}. The widget needs the whole panorama
+ * in one bitmap, so the finest level that is at most {@link #MAX_PYRAMID_WIDTH} wide, or maxWidth
+ * if it's smaller, is stitched together. Use the video360 sample to view every level of a pyramid.
+ *
+ * Decoded panoramas are kept in a {@link BitmapCache}, so showing the same image again, e.g.,
+ * after a rotation, doesn't decode it again.
  */
 public class SimpleVrPanoramaActivity extends Activity {
   private static final String TAG = SimpleVrPanoramaActivity.class.getSimpleName();
+  /** Pyramids are stitched from the finest level that is at most this wide. */
+  private static final int MAX_PYRAMID_WIDTH = 4096;
+  /** Optional integer extra that limits the width of the displayed image. */
+  private static final String MAX_WIDTH_KEY = "maxWidth";
+  /** Decoded panoramas are cached in this subdirectory of the app's cache directory. */
+  private static final String CACHE_DIRECTORY_NAME = "panoramas";
+  /** A 4k x 4k stereo panorama takes 64 MiB. */
+  private static final long MAX_CACHE_DISK_BYTES = 512L << 20;
+  /** Cached panoramas take at most this fraction of the heap limit. */
+  private static final int CACHE_MEMORY_HEAP_DIVISOR = 4;
+  /** Displayed when the Activity isn't given an image. */
+  private static final String DEFAULT_PANORAMA = "andes.jpg";
   /** Actual panorama widget. **/
   private VrPanoramaView panoWidgetView;
   /**
@@ -61,6 +89,8 @@ public class SimpleVrPanoramaActivity extends Activity {
   private Uri fileUri;
   /** Configuration information for the panorama. **/
   private Options panoOptions = new Options();
+  /** Maximum width of the displayed image or 0 to display it at its full size. **/
+  private int maxWidth;
   private ImageLoaderTask backgroundImageLoaderTask;
 
   /**
@@ -115,10 +145,12 @@ public class SimpleVrPanoramaActivity extends Activity {
 
       panoOptions.inputType = intent.getIntExtra("inputType", Options.TYPE_MONO);
       Log.i(TAG, "Options.inputType = " + panoOptions.inputType);
+      maxWidth = intent.getIntExtra(MAX_WIDTH_KEY, 0);
     } else {
       Log.i(TAG, "Intent is not ACTION_VIEW. Using default pano image.");
       fileUri = null;
       panoOptions.inputType = Options.TYPE_MONO;
+      maxWidth = 0;
     }
 
     // Load the bitmap in a background thread to avoid blocking the UI thread. This operation can
@@ -127,7 +159,7 @@ public class SimpleVrPanoramaActivity extends Activity {
       // Cancel any task from a previous intent sent to this activity.
       backgroundImageLoaderTask.cancel(true);
     }
-    backgroundImageLoaderTask = new ImageLoaderTask();
+    backgroundImageLoaderTask = new ImageLoaderTask(maxWidth);
     backgroundImageLoaderTask.execute(Pair.create(fileUri, panoOptions));
   }
 
@@ -160,43 +192,157 @@ public class SimpleVrPanoramaActivity extends Activity {
    * Helper class to manage threading.
    */
   class ImageLoaderTask extends AsyncTask<Pair<Uri, Options>, Void, Boolean> {
+    /** Maximum width of the decoded image or 0 for its full size. */
+    private final int maxWidth;
+
+    ImageLoaderTask(int maxWidth) {
+      this.maxWidth = maxWidth;
+    }
 
     /**
-     * Reads the bitmap from disk in the background and waits until it's loaded by pano widget.
+     * Reads the bitmap from the cache or from disk in the background and waits until it's loaded
+     * by pano widget.
      */
     @Override
     protected Boolean doInBackground(Pair<Uri, Options>... fileInformation) {
       Options panoOptions = null;  // It's safe to use null VrPanoramaView.Options.
-      InputStream istr = null;
+      File file = null;
+      String key;
       if (fileInformation == null || fileInformation.length < 1
           || fileInformation[0] == null || fileInformation[0].first == null) {
-        AssetManager assetManager = getAssets();
-        try {
-          istr = assetManager.open("andes.jpg");
-          panoOptions = new Options();
-          panoOptions.inputType = Options.TYPE_STEREO_OVER_UNDER;
-        } catch (IOException e) {
-          Log.e(TAG, "Could not decode default bitmap: " + e);
-          return false;
-        }
+        key = CacheKeys.forAsset(DEFAULT_PANORAMA, getAppVersion());
+        panoOptions = new Options();
+        panoOptions.inputType = Options.TYPE_STEREO_OVER_UNDER;
       } else {
+        file = new File(fileInformation[0].first.getPath());
+        key = CacheKeys.forFile(file);
+        panoOptions = fileInformation[0].second;
+      }
+      boolean isPyramid = file != null && file.getName().equals(TilePyramid.MANIFEST_NAME);
+      int decodeWidth = maxWidth;
+      if (isPyramid) {
+        decodeWidth = (maxWidth > 0) ? Math.min(maxWidth, MAX_PYRAMID_WIDTH) : MAX_PYRAMID_WIDTH;
+      }
+      if (decodeWidth > 0) {
+        key = CacheKeys.forVariant(key, "max" + decodeWidth);
+      }
+
+      BitmapCache cache = BitmapCache.get(SimpleVrPanoramaActivity.this, CACHE_DIRECTORY_NAME,
+          Runtime.getRuntime().maxMemory() / CACHE_MEMORY_HEAP_DIVISOR, MAX_CACHE_DISK_BYTES);
+      Bitmap bitmap = cache.get(key);
+      if (bitmap == null) {
         try {
-          istr = new FileInputStream(new File(fileInformation[0].first.getPath()));
-          panoOptions = fileInformation[0].second;
+          if (isPyramid) {
+            bitmap = stitchPyramid(file, decodeWidth);
+          } else {
+            bitmap = decodeImage(file, decodeWidth);
+          }
         } catch (IOException e) {
-          Log.e(TAG, "Could not load file: " + e);
+          Log.e(TAG, "Could not load panorama: " + e);
           return false;
         }
+        cache.put(key, bitmap);
       }
+      Log.i(TAG, "Panorama cache: " + cache);
+
+      panoWidgetView.loadImageFromBitmap(bitmap, panoOptions);
+      return true;
+    }
 
-      panoWidgetView.loadImageFromBitmap(BitmapFactory.decodeStream(istr), panoOptions);
+    /** Returns a value that changes whenever the app, including its assets, is updated. */
+    private long getAppVersion() {
       try {
+        return getPackageManager().getPackageInfo(getPackageName(), 0).lastUpdateTime;
+      } catch (PackageManager.NameNotFoundException e) {
+        return 0;
+      }
+    }
+
+    /**
+     * Decodes an image, downsampled by powers of two if it's wider than maxWidth.
+     *
+     * @param file Image or null for the default panorama.
+     * @param maxWidth Maximum width of the result or 0 for the image's full size.
+     */
+    private Bitmap decodeImage(File file, int maxWidth) throws IOException {
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inJustDecodeBounds = true;
+      InputStream istr = openImage(file);
+      try {
+        BitmapFactory.decodeStream(istr, null, options);
+      } finally {
         istr.close();
-      } catch (IOException e) {
-        Log.e(TAG, "Could not close input stream: " + e);
+      }
+      if (options.outWidth <= 0) {
+        throw new IOException("Could not decode " + (file == null ? DEFAULT_PANORAMA : file));
       }
 
-      return true;
+      options.inJustDecodeBounds = false;
+      options.inSampleSize = 1;
+      while (maxWidth > 0 && options.outWidth / options.inSampleSize > maxWidth) {
+        options.inSampleSize *= 2;
+      }
+      istr = openImage(file);
+      Bitmap bitmap;
+      try {
+        bitmap = BitmapFactory.decodeStream(istr, null, options);
+      } finally {
+        istr.close();
+      }
+      if (bitmap == null) {
+        throw new IOException("Could not decode " + (file == null ? DEFAULT_PANORAMA : file));
+      }
+      return bitmap;
+    }
+
+    private InputStream openImage(File file) throws IOException {
+      return (file == null) ? getAssets().open(DEFAULT_PANORAMA) : new FileInputStream(file);
+    }
+
+    /**
+     * Draws the tiles of one level of a pyramid into a single bitmap.
+     *
+     * @param maxWidth The finest level that is at most this wide is used.
+     */
+    private Bitmap stitchPyramid(File manifest, int maxWidth) throws IOException {
+      TilePyramid pyramid;
+      InputStream manifestStream = new FileInputStream(manifest);
+      try {
+        pyramid = TilePyramid.read(manifestStream);
+      } finally {
+        manifestStream.close();
+      }
+
+      int level = 0;
+      while (level < pyramid.getLevelCount() - 1 && pyramid.getLevelWidth(level) > maxWidth) {
+        ++level;
+      }
+      int width = pyramid.getLevelWidth(level);
+      int height = pyramid.getLevelHeight(level);
+      Log.i(TAG, "Stitching level " + level + " of " + pyramid);
+      Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+      Canvas canvas = new Canvas(bitmap);
+      int tileSize = pyramid.getTileSize();
+      for (int row = 0; row < pyramid.getRows(level); ++row) {
+        for (int column = 0; column < pyramid.getColumns(level); ++column) {
+          File file = new File(manifest.getParentFile(), pyramid.getTilePath(level, row, column));
+          Bitmap tile = BitmapFactory.decodeFile(file.getPath());
+          if (tile == null) {
+            bitmap.recycle();
+            throw new IOException("Could not decode " + file);
+          }
+          // Skip the border that each tile shares with its neighbors.
+          int left = column * tileSize;
+          int top = row * tileSize;
+          Rect source = new Rect(TilePyramid.BORDER, TilePyramid.BORDER,
+              TilePyramid.BORDER + Math.min(tileSize, width - left),
+              TilePyramid.BORDER + Math.min(tileSize, height - top));
+          Rect destination = new Rect(left, top, left + source.width(), top + source.height());
+          canvas.drawBitmap(tile, source, destination, null);
+          tile.recycle();
+        }
+      }
+      return bitmap;
     }
   }
 
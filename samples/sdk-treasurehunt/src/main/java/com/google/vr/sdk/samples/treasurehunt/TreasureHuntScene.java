@@ -0,0 +1,440 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.treasurehunt;
+
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+import android.util.Log;
+import com.google.vr.sdk.samples.common.android.GlesStateGl;
+import com.google.vr.sdk.samples.common.gl.GlStateCache;
+import com.google.vr.sdk.samples.common.math.Mat4;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Renders the TreasureHunt scene: a planar ground grid and a floating "treasure" cube that turns
+ * gold while the user looks at it.
+ *
+ * <p>This class only depends on GL, so the same rendering code runs in TreasureHuntActivity and in
+ * off-device replays of recorded head poses. The gl* & draw* methods must be called on the GL
+ * thread.
+ */
+public class TreasureHuntScene {
+  private static final String TAG = "TreasureHuntScene";
+
+  private static final float CAMERA_Z = 0.01f;
+  private static final float TIME_DELTA = 0.3f;
+
+  private static final float YAW_LIMIT = 0.12f;
+  private static final float PITCH_LIMIT = 0.12f;
+
+  private static final int COORDS_PER_VERTEX = 3;
+
+  // We keep the light always position just above the user.
+  private static final float[] LIGHT_POS_IN_WORLD_SPACE = new float[] {0.0f, 2.0f, 0.0f, 1.0f};
+
+  private static final float MIN_MODEL_DISTANCE = 3.0f;
+  private static final float MAX_MODEL_DISTANCE = 7.0f;
+
+  protected final float[] modelCube = new float[16];
+  // Model first appears directly in front of user.
+  protected final float[] modelPosition = new float[] {0.0f, 0.0f, -MAX_MODEL_DISTANCE / 2.0f};
+
+  private final float[] lightPosInEyeSpace = new float[4];
+
+  // GL buffer objects holding the static geometry. These are uploaded once in glInit so the driver
+  // doesn't need to copy client-side arrays for every eye of every frame.
+  private int floorVertices;
+  private int floorColors;
+  private int floorNormals;
+
+  private int cubeVertices;
+  private int cubeColors;
+  private int cubeFoundColors;
+  private int cubeNormals;
+
+  private int cubeProgram;
+  private int floorProgram;
+
+  private int cubePositionParam;
+  private int cubeNormalParam;
+  private int cubeColorParam;
+  private int cubeModelParam;
+  private int cubeModelViewParam;
+  private int cubeModelViewProjectionParam;
+  private int cubeLightPosParam;
+
+  private int floorPositionParam;
+  private int floorNormalParam;
+  private int floorColorParam;
+  private int floorModelParam;
+  private int floorModelViewParam;
+  private int floorModelViewProjectionParam;
+  private int floorLightPosParam;
+
+  private final float[] camera = new float[16];
+  private final float[] view = new float[16];
+  private final float[] headView = new float[16];
+  private final float[] modelViewProjection = new float[16];
+  private final float[] modelView = new float[16];
+  private final float[] modelFloor = new float[16];
+
+  private final float[] tempPosition = new float[4];
+
+  private float objectDistance = MAX_MODEL_DISTANCE / 2.0f;
+  private float floorDepth = 20f;
+
+  // Skips the redundant state changes between drawCube() and drawFloor(). GvrView may change GL
+  // state between the eyes, so the cache is only trusted within a single glDrawEye() call.
+  private final GlStateCache glState = GlesStateGl.createCache();
+
+  /**
+   * Converts shader source code into an OpenGL ES shader.
+   *
+   * @param type The type of shader we will be creating.
+   * @param code The source code of the shader.
+   * @return The shader object handler.
+   */
+  private static int loadGLShader(int type, String code) {
+    int shader = GLES20.glCreateShader(type);
+    GLES20.glShaderSource(shader, code);
+    GLES20.glCompileShader(shader);
+
+    // Get the compilation status.
+    final int[] compileStatus = new int[1];
+    GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+
+    // If the compilation failed, delete the shader.
+    if (compileStatus[0] == 0) {
+      Log.e(TAG, "Error compiling shader: " + GLES20.glGetShaderInfoLog(shader));
+      GLES20.glDeleteShader(shader);
+      shader = 0;
+    }
+
+    if (shader == 0) {
+      throw new RuntimeException("Error creating shader.");
+    }
+
+    return shader;
+  }
+
+  /**
+   * Checks if we've had an error inside of OpenGL ES, and if so what that error is.
+   *
+   * @param label Label to report in case of error.
+   */
+  /* package */ static void checkGLError(String label) {
+    int error;
+    while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
+      Log.e(TAG, label + ": glError " + error);
+      throw new RuntimeException(label + ": glError " + error);
+    }
+  }
+
+  /**
+   * Creates the buffers and programs we use to draw the 3D world.
+   *
+   * @param lightVertexShader Source of the vertex shader shared by the cube & the floor.
+   * @param gridFragmentShader Source of the floor's fragment shader.
+   * @param passthroughFragmentShader Source of the cube's fragment shader.
+   */
+  public void glInit(
+      String lightVertexShader, String gridFragmentShader, String passthroughFragmentShader) {
+    GLES20.glClearColor(0.1f, 0.1f, 0.1f, 0.5f); // Dark background so text shows up well.
+
+    cubeVertices = createVertexBufferObject(WorldLayoutData.CUBE_COORDS);
+    cubeColors = createVertexBufferObject(WorldLayoutData.CUBE_COLORS);
+    cubeFoundColors = createVertexBufferObject(WorldLayoutData.CUBE_FOUND_COLORS);
+    cubeNormals = createVertexBufferObject(WorldLayoutData.CUBE_NORMALS);
+
+    // make a floor
+    floorVertices = createVertexBufferObject(WorldLayoutData.FLOOR_COORDS);
+    floorNormals = createVertexBufferObject(WorldLayoutData.FLOOR_NORMALS);
+    floorColors = createVertexBufferObject(WorldLayoutData.FLOOR_COLORS);
+
+    checkGLError("Vertex buffers");
+
+    int vertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, lightVertexShader);
+    int gridShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, gridFragmentShader);
+    int passthroughShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, passthroughFragmentShader);
+
+    cubeProgram = GLES20.glCreateProgram();
+    GLES20.glAttachShader(cubeProgram, vertexShader);
+    GLES20.glAttachShader(cubeProgram, passthroughShader);
+    GLES20.glLinkProgram(cubeProgram);
+    GLES20.glUseProgram(cubeProgram);
+
+    checkGLError("Cube program");
+
+    cubePositionParam = GLES20.glGetAttribLocation(cubeProgram, "a_Position");
+    cubeNormalParam = GLES20.glGetAttribLocation(cubeProgram, "a_Normal");
+    cubeColorParam = GLES20.glGetAttribLocation(cubeProgram, "a_Color");
+
+    cubeModelParam = GLES20.glGetUniformLocation(cubeProgram, "u_Model");
+    cubeModelViewParam = GLES20.glGetUniformLocation(cubeProgram, "u_MVMatrix");
+    cubeModelViewProjectionParam = GLES20.glGetUniformLocation(cubeProgram, "u_MVP");
+    cubeLightPosParam = GLES20.glGetUniformLocation(cubeProgram, "u_LightPos");
+
+    checkGLError("Cube program params");
+
+    floorProgram = GLES20.glCreateProgram();
+    GLES20.glAttachShader(floorProgram, vertexShader);
+    GLES20.glAttachShader(floorProgram, gridShader);
+    GLES20.glLinkProgram(floorProgram);
+    GLES20.glUseProgram(floorProgram);
+
+    checkGLError("Floor program");
+
+    floorModelParam = GLES20.glGetUniformLocation(floorProgram, "u_Model");
+    floorModelViewParam = GLES20.glGetUniformLocation(floorProgram, "u_MVMatrix");
+    floorModelViewProjectionParam = GLES20.glGetUniformLocation(floorProgram, "u_MVP");
+    floorLightPosParam = GLES20.glGetUniformLocation(floorProgram, "u_LightPos");
+
+    floorPositionParam = GLES20.glGetAttribLocation(floorProgram, "a_Position");
+    floorNormalParam = GLES20.glGetAttribLocation(floorProgram, "a_Normal");
+    floorColorParam = GLES20.glGetAttribLocation(floorProgram, "a_Color");
+
+    checkGLError("Floor program params");
+
+    Matrix.setIdentityM(modelFloor, 0);
+    Matrix.translateM(modelFloor, 0, 0, -floorDepth, 0); // Floor appears below user.
+
+    updateModelPosition();
+
+    checkGLError("glInit");
+  }
+
+  /** Deletes the GL buffer objects. */
+  public void glShutdown() {
+    int[] buffers = {
+      floorVertices, floorColors, floorNormals,
+      cubeVertices, cubeColors, cubeFoundColors, cubeNormals
+    };
+    GLES20.glDeleteBuffers(buffers.length, buffers, 0);
+  }
+
+  /**
+   * Uploads static vertex data into a new GL buffer object.
+   *
+   * @param data The vertex data to upload.
+   * @return The name of the GL buffer object.
+   */
+  private static int createVertexBufferObject(float[] data) {
+    ByteBuffer bb = ByteBuffer.allocateDirect(data.length * 4);
+    bb.order(ByteOrder.nativeOrder());
+    FloatBuffer buffer = bb.asFloatBuffer();
+    buffer.put(data);
+    buffer.position(0);
+
+    int[] bufferIds = new int[1];
+    GLES20.glGenBuffers(1, bufferIds, 0);
+    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bufferIds[0]);
+    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, data.length * 4, buffer, GLES20.GL_STATIC_DRAW);
+    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    return bufferIds[0];
+  }
+
+  /**
+   * Returns the position of the cube in world space. The array is updated in place by
+   * {@link #hideObject()}.
+   */
+  public float[] getModelPosition() {
+    return modelPosition;
+  }
+
+  /**
+   * Updates the cube model position.
+   */
+  protected void updateModelPosition() {
+    Matrix.setIdentityM(modelCube, 0);
+    Matrix.translateM(modelCube, 0, modelPosition[0], modelPosition[1], modelPosition[2]);
+    checkGLError("updateCubePosition");
+  }
+
+  /**
+   * Prepares the scene before we draw a frame.
+   *
+   * @param newHeadView The head rotation in the new frame.
+   * @param offset Index of the first element of newHeadView.
+   */
+  public void onNewFrame(float[] newHeadView, int offset) {
+    setCubeRotation();
+
+    // Build the camera matrix and apply it to the ModelView.
+    Matrix.setLookAtM(camera, 0, 0.0f, 0.0f, CAMERA_Z, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+
+    System.arraycopy(newHeadView, offset, headView, 0, 16);
+  }
+
+  protected void setCubeRotation() {
+    Matrix.rotateM(modelCube, 0, TIME_DELTA, 0.5f, 0.5f, 1.0f);
+  }
+
+  /**
+   * Draws a frame for an eye.
+   *
+   * @param eyeView The transform from head to eye space.
+   * @param perspective The projection matrix of the eye.
+   */
+  public void glDrawEye(float[] eyeView, float[] perspective) {
+    glState.glBeginFrame();
+    glState.glEnable(GLES20.GL_DEPTH_TEST);
+    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+    checkGLError("colorParam");
+
+    // Apply the eye transformation to the camera.
+    Mat4.multiply(view, 0, eyeView, 0, camera, 0);
+
+    // Set the position of the light
+    Mat4.multiplyVector(lightPosInEyeSpace, 0, view, 0, LIGHT_POS_IN_WORLD_SPACE, 0);
+
+    // Build the ModelView and ModelViewProjection matrices
+    // for calculating cube position and light.
+    Mat4.multiply(modelView, 0, view, 0, modelCube, 0);
+    Mat4.multiply(modelViewProjection, 0, perspective, 0, modelView, 0);
+    drawCube();
+
+    // Set modelView for the floor, so we draw floor in the correct location
+    Mat4.multiply(modelView, 0, view, 0, modelFloor, 0);
+    Mat4.multiply(modelViewProjection, 0, perspective, 0, modelView, 0);
+    drawFloor();
+    glState.glEndFrame();
+  }
+
+  /**
+   * Draw the cube.
+   *
+   * <p>We've set all of our transformation matrices. Now we simply pass them into the shader.
+   */
+  public void drawCube() {
+    glState.glUseProgram(cubeProgram);
+
+    GLES20.glUniform3fv(cubeLightPosParam, 1, lightPosInEyeSpace, 0);
+
+    // Set the Model in the shader, used to calculate lighting
+    GLES20.glUniformMatrix4fv(cubeModelParam, 1, false, modelCube, 0);
+
+    // Set the ModelView in the shader, used to calculate lighting
+    GLES20.glUniformMatrix4fv(cubeModelViewParam, 1, false, modelView, 0);
+
+    // Set the position of the cube
+    glState.glBindBuffer(GLES20.GL_ARRAY_BUFFER, cubeVertices);
+    GLES20.glVertexAttribPointer(
+        cubePositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, 0);
+
+    // Set the ModelViewProjection matrix in the shader.
+    GLES20.glUniformMatrix4fv(cubeModelViewProjectionParam, 1, false, modelViewProjection, 0);
+
+    // Set the normal positions of the cube, again for shading
+    glState.glBindBuffer(GLES20.GL_ARRAY_BUFFER, cubeNormals);
+    GLES20.glVertexAttribPointer(cubeNormalParam, 3, GLES20.GL_FLOAT, false, 0, 0);
+    glState.glBindBuffer(
+        GLES20.GL_ARRAY_BUFFER, isLookingAtObject() ? cubeFoundColors : cubeColors);
+    GLES20.glVertexAttribPointer(cubeColorParam, 4, GLES20.GL_FLOAT, false, 0, 0);
+
+    // Enable vertex arrays. They stay enabled until the next draw call or the end of the eye.
+    glState.glEnableVertexAttribArrays(
+        GlStateCache.attribBit(cubePositionParam)
+            | GlStateCache.attribBit(cubeNormalParam)
+            | GlStateCache.attribBit(cubeColorParam));
+
+    GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);
+
+    checkGLError("Drawing cube");
+  }
+
+  /**
+   * Draw the floor.
+   *
+   * <p>This feeds in data for the floor into the shader. Note that this doesn't feed in data about
+   * position of the light, so if we rewrite our code to draw the floor first, the lighting might
+   * look strange.
+   */
+  public void drawFloor() {
+    glState.glUseProgram(floorProgram);
+
+    // Set ModelView, MVP, position, normals, and color.
+    GLES20.glUniform3fv(floorLightPosParam, 1, lightPosInEyeSpace, 0);
+    GLES20.glUniformMatrix4fv(floorModelParam, 1, false, modelFloor, 0);
+    GLES20.glUniformMatrix4fv(floorModelViewParam, 1, false, modelView, 0);
+    GLES20.glUniformMatrix4fv(floorModelViewProjectionParam, 1, false, modelViewProjection, 0);
+    glState.glBindBuffer(GLES20.GL_ARRAY_BUFFER, floorVertices);
+    GLES20.glVertexAttribPointer(
+        floorPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, 0);
+    glState.glBindBuffer(GLES20.GL_ARRAY_BUFFER, floorNormals);
+    GLES20.glVertexAttribPointer(floorNormalParam, 3, GLES20.GL_FLOAT, false, 0, 0);
+    glState.glBindBuffer(GLES20.GL_ARRAY_BUFFER, floorColors);
+    GLES20.glVertexAttribPointer(floorColorParam, 4, GLES20.GL_FLOAT, false, 0, 0);
+
+    glState.glEnableVertexAttribArrays(
+        GlStateCache.attribBit(floorPositionParam)
+            | GlStateCache.attribBit(floorNormalParam)
+            | GlStateCache.attribBit(floorColorParam));
+
+    GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 24);
+
+    checkGLError("drawing floor");
+  }
+
+  /**
+   * Find a new random position for the object.
+   *
+   * <p>We'll rotate it around the Y-axis so it's out of sight, and then up or down by a little bit.
+   */
+  public void hideObject() {
+    float[] rotationMatrix = new float[16];
+    float[] posVec = new float[4];
+
+    // First rotate in XZ plane, between 90 and 270 deg away, and scale so that we vary
+    // the object's distance from the user.
+    float angleXZ = (float) Math.random() * 180 + 90;
+    Matrix.setRotateM(rotationMatrix, 0, angleXZ, 0f, 1f, 0f);
+    float oldObjectDistance = objectDistance;
+    objectDistance =
+        (float) Math.random() * (MAX_MODEL_DISTANCE - MIN_MODEL_DISTANCE) + MIN_MODEL_DISTANCE;
+    float objectScalingFactor = objectDistance / oldObjectDistance;
+    Matrix.scaleM(rotationMatrix, 0, objectScalingFactor, objectScalingFactor, objectScalingFactor);
+    Matrix.multiplyMV(posVec, 0, rotationMatrix, 0, modelCube, 12);
+
+    float angleY = (float) Math.random() * 80 - 40; // Angle in Y plane, between -40 and 40.
+    angleY = (float) Math.toRadians(angleY);
+    float newY = (float) Math.tan(angleY) * objectDistance;
+
+    modelPosition[0] = posVec[0];
+    modelPosition[1] = newY;
+    modelPosition[2] = posVec[2];
+
+    updateModelPosition();
+  }
+
+  /**
+   * Check if user is looking at object by calculating where the object is in eye-space.
+   *
+   * @return true if the user is looking at the object.
+   */
+  public boolean isLookingAtObject() {
+    // Convert the object's origin to camera space. Use the headView from onNewFrame.
+    Mat4.transformOrigin(tempPosition, 0, headView, 0, modelCube, 0);
+
+    float pitch = (float) Math.atan2(tempPosition[1], -tempPosition[2]);
+    float yaw = (float) Math.atan2(tempPosition[0], -tempPosition[2]);
+
+    return Math.abs(pitch) < PITCH_LIMIT && Math.abs(yaw) < YAW_LIMIT;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360;
+
+import android.graphics.Bitmap;
+import java.util.ArrayList;
+
+/**
+ * Keeps mutable ARGB_8888 Bitmaps around so that decoding a series of images, or the strips of a
+ * large image, reuses their memory via {@code inBitmap} instead of allocating new pixels each time.
+ * Any pooled Bitmap whose allocation is large enough can be reconfigured to the requested size.
+ *
+ * <p>This is thread-safe.
+ */
+/* package */ final class BitmapPool {
+  private final long maxBytes;
+  private final ArrayList<Bitmap> bitmaps = new ArrayList<>();
+  private long pooledBytes;
+
+  /** @param maxBytes Bitmaps are recycled rather than pooled beyond this total size. */
+  public BitmapPool(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns a mutable Bitmap of the given size. Its contents are undefined. Pass it to
+   * {@link #release} once it is no longer used.
+   */
+  public Bitmap acquire(int width, int height) {
+    long bytes = (long) width * height * ImageDecodePlan.BYTES_PER_PIXEL;
+    synchronized (this) {
+      // Use the smallest Bitmap that is large enough.
+      int best = -1;
+      for (int i = 0; i < bitmaps.size(); ++i) {
+        int allocation = bitmaps.get(i).getAllocationByteCount();
+        if (allocation >= bytes
+            && (best < 0 || allocation < bitmaps.get(best).getAllocationByteCount())) {
+          best = i;
+        }
+      }
+      if (best >= 0) {
+        Bitmap bitmap = bitmaps.remove(best);
+        pooledBytes -= bitmap.getAllocationByteCount();
+        bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        return bitmap;
+      }
+    }
+    return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+  }
+
+  /** Returns a Bitmap to the pool. It must not be used afterwards. */
+  public void release(Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled()) {
+      return;
+    }
+    int bytes = bitmap.getAllocationByteCount();
+    if (!bitmap.isMutable() || bytes > maxBytes) {
+      bitmap.recycle();
+      return;
+    }
+    synchronized (this) {
+      // Evict the oldest Bitmaps to make room.
+      while (pooledBytes + bytes > maxBytes) {
+        Bitmap evicted = bitmaps.remove(0);
+        pooledBytes -= evicted.getAllocationByteCount();
+        evicted.recycle();
+      }
+      bitmaps.add(bitmap);
+      pooledBytes += bytes;
+    }
+  }
+
+  /** Recycles all pooled Bitmaps. */
+  public synchronized void clear() {
+    for (Bitmap bitmap : bitmaps) {
+      bitmap.recycle();
+    }
+    bitmaps.clear();
+    pooledBytes = 0;
+  }
+}
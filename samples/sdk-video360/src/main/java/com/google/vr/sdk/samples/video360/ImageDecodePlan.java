@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360;
+
+/**
+ * Decides how an image is decoded so that it fits in the display texture and in memory.
+ *
+ * <p>The image is downsampled by the smallest power of two, i.e., {@code inSampleSize}, that keeps
+ * both sides within the GL texture size limit and the whole texture within a byte limit. If the
+ * downsampled image still doesn't fit in the heap budget, it is decoded in horizontal strips with
+ * a region decoder so only one strip is in memory at a time. Strips start on multiples of the
+ * sample size so their downsampled rows line up.
+ */
+/* package */ final class ImageDecodePlan {
+  /** Decoded images use ARGB_8888. */
+  public static final int BYTES_PER_PIXEL = 4;
+  // Strips shorter than this would need too many decode calls. The sample size is increased
+  // instead.
+  private static final int MIN_STRIP_ROWS = 16;
+
+  private final int width;
+  private final int height;
+  private final int sampleSize;
+  private final int stripSourceRows;
+
+  private ImageDecodePlan(int width, int height, int sampleSize, int stripSourceRows) {
+    this.width = width;
+    this.height = height;
+    this.sampleSize = sampleSize;
+    this.stripSourceRows = stripSourceRows;
+  }
+
+  /**
+   * Plans the decode of an image.
+   *
+   * @param width Width of the encoded image.
+   * @param height Height of the encoded image.
+   * @param maxTextureSize GL_MAX_TEXTURE_SIZE of the display.
+   * @param maxTextureBytes Maximum size of the decoded image.
+   * @param heapBudgetBytes Maximum size of the decoded pixels held in memory at once.
+   * @param allowRegions False if the image must be decoded in one piece, e.g., because its format
+   *     isn't supported by the region decoder. The whole image then has to fit in the heap budget.
+   */
+  public static ImageDecodePlan create(
+      int width,
+      int height,
+      int maxTextureSize,
+      long maxTextureBytes,
+      long heapBudgetBytes,
+      boolean allowRegions) {
+    if (width <= 0 || height <= 0 || maxTextureSize <= 0 || maxTextureBytes <= 0
+        || heapBudgetBytes <= 0) {
+      throw new IllegalArgumentException("Invalid decode parameters");
+    }
+    int sampleSize = 1;
+    while (sampleSize < Math.max(width, height)
+        && (divideRoundingUp(width, sampleSize) > maxTextureSize
+            || divideRoundingUp(height, sampleSize) > maxTextureSize
+            || outputBytes(width, height, sampleSize) > maxTextureBytes
+            || (allowRegions
+                ? outputBytes(width, MIN_STRIP_ROWS * sampleSize, sampleSize) > heapBudgetBytes
+                : outputBytes(width, height, sampleSize) > heapBudgetBytes))) {
+      sampleSize *= 2;
+    }
+
+    int stripSourceRows = height;
+    if (outputBytes(width, height, sampleSize) > heapBudgetBytes) {
+      long rowBytes = (long) divideRoundingUp(width, sampleSize) * BYTES_PER_PIXEL;
+      int stripRows = (int) Math.max(MIN_STRIP_ROWS, heapBudgetBytes / rowBytes);
+      stripSourceRows = stripRows * sampleSize;
+    }
+    return new ImageDecodePlan(width, height, sampleSize, stripSourceRows);
+  }
+
+  /**
+   * Returns a plan with the same sample size whose strips hold at most maxStripBytes of decoded
+   * pixels, or at least {@link #MIN_STRIP_ROWS} rows. This is used to decode an image in bands that
+   * are small enough to upload within a frame.
+   */
+  public ImageDecodePlan withMaxStripBytes(long maxStripBytes) {
+    long rowBytes = (long) getOutputWidth() * BYTES_PER_PIXEL;
+    int stripRows = (int) Math.min(Integer.MAX_VALUE / sampleSize,
+        Math.max(MIN_STRIP_ROWS, maxStripBytes / rowBytes));
+    return new ImageDecodePlan(
+        width, height, sampleSize, Math.min(stripSourceRows, stripRows * sampleSize));
+  }
+
+  private static int divideRoundingUp(int value, int divisor) {
+    return (value + divisor - 1) / divisor;
+  }
+
+  private static long outputBytes(int width, int height, int sampleSize) {
+    return (long) divideRoundingUp(width, sampleSize) * divideRoundingUp(height, sampleSize)
+        * BYTES_PER_PIXEL;
+  }
+
+  /** The inSampleSize to decode with. */
+  public int getSampleSize() {
+    return sampleSize;
+  }
+
+  /** Width of the decoded image and the display texture. */
+  public int getOutputWidth() {
+    return divideRoundingUp(width, sampleSize);
+  }
+
+  /** Height of the decoded image and the display texture. */
+  public int getOutputHeight() {
+    return divideRoundingUp(height, sampleSize);
+  }
+
+  /** True if the image is decoded in strips with a region decoder. */
+  public boolean usesRegions() {
+    return stripSourceRows < height;
+  }
+
+  /** Number of strips. 1 if the image is decoded in one piece. */
+  public int getStripCount() {
+    return divideRoundingUp(height, stripSourceRows);
+  }
+
+  /** First row of the encoded image in the strip. */
+  public int getStripTop(int strip) {
+    return strip * stripSourceRows;
+  }
+
+  /** Row of the encoded image after the last row of the strip. */
+  public int getStripBottom(int strip) {
+    return Math.min(height, (strip + 1) * stripSourceRows);
+  }
+
+  /** First row of the strip in the decoded image. */
+  public int getStripOutputTop(int strip) {
+    // Strips start on multiples of the sample size.
+    return getStripTop(strip) / sampleSize;
+  }
+
+  /** Rows of the decoded strip. */
+  public int getStripOutputHeight(int strip) {
+    return divideRoundingUp(getStripBottom(strip) - getStripTop(strip), sampleSize);
+  }
+
+  /** Height of the largest decoded strip. */
+  public int getMaxStripOutputHeight() {
+    return divideRoundingUp(Math.min(height, stripSourceRows), sampleSize);
+  }
+
+  /** Bytes of decoded pixels held in memory at once. */
+  public long getPeakHeapBytes() {
+    return (long) getOutputWidth() * getMaxStripOutputHeight() * BYTES_PER_PIXEL;
+  }
+
+  @Override
+  public String toString() {
+    return width + "x" + height + " / " + sampleSize + " in " + getStripCount() + " strips";
+  }
+}
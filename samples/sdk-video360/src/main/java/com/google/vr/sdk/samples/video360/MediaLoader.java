@@ -28,14 +28,27 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.support.annotation.AnyThread;
 import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import android.util.Log;
 import android.view.Surface;
+import com.google.vr.sdk.samples.common.android.BitmapCache;
+import com.google.vr.sdk.samples.common.cache.CacheKeys;
+import com.google.vr.sdk.samples.common.cache.RawImageCache;
+import com.google.vr.sdk.samples.common.cache.RawImageFormat;
+import com.google.vr.sdk.samples.common.pyramid.TilePyramid;
 import com.google.vr.sdk.samples.video360.rendering.Mesh;
 import com.google.vr.sdk.samples.video360.rendering.SceneRenderer;
+import com.google.vr.sdk.samples.video360.rendering.SphereTessellation;
+import com.google.vr.sdk.samples.video360.rendering.StreamingImageTexture;
+import com.google.vr.sdk.samples.video360.rendering.VirtualTexture;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.security.InvalidParameterException;
 
 /**
@@ -51,7 +64,15 @@ import java.security.InvalidParameterException;
  * <p>The Intent used to launch {@link VideoActivity} or {@link VrVideoActivity} is parsed by this
  * class and the extra & data fields are extracted. The data field should have a URI useable by
  * {@link MediaPlayer} or {@link BitmapFactory}. There should also be an integer extra matching one
- * of the MEDIA_* types in {@link Mesh}.
+ * of the MEDIA_* types in {@link Mesh}. VR180 & cropped panoramas are rendered on a partial sphere
+ * when the file has GPano XMP or Spherical Video V2 metadata. Images are downsampled to fit the GL
+ * texture size limit and decoded within a heap budget which can be set in MiB with the
+ * {@link #DECODE_BUDGET_KEY} extra. JPEG, PNG & WebP images are streamed into a mipmapped texture
+ * band by band while a low resolution proxy is displayed. Other images are uploaded in one piece.
+ * Decoded images & proxies are kept in a {@link BitmapCache}, so an image that is shown again is
+ * streamed from the cache instead of being decoded.
+ * Panoramas too large for a texture can be cut into a {@link TilePyramid} and loaded by passing
+ * the URI of the pyramid's manifest. Only the tiles around the view are then kept in GPU memory.
  *
  * <p>Example intents compatible with adb are:
  *   <ul>
@@ -64,6 +85,22 @@ import java.security.InvalidParameterException;
  *       </b>
  *     </li>
  *     <li>
+ *       A large monoscopic image decoded with at most 64 MiB of pixels in memory.
+ *       <b>adb shell am start -a android.intent.action.VIEW  \
+ *          -n com.google.vr.sdk.samples.video360/.VrVideoActivity \
+ *          -d "file:///sdcard/IMAGE.JPG" \
+ *          --ei stereoFormat 0 --ei decodeBudgetMb 64
+ *       </b>
+ *     </li>
+ *     <li>
+ *       A monoscopic tile pyramid in the VR Activity.
+ *       <b>adb shell am start -a android.intent.action.VIEW  \
+ *          -n com.google.vr.sdk.samples.video360/.VrVideoActivity \
+ *          -d "file:///sdcard/PYRAMID/pyramid.properties" \
+ *          --ei stereoFormat 0
+ *       </b>
+ *     </li>
+ *     <li>
  *       A monoscopic video in the 2D Activity.
  *       <b>adb shell am start -a android.intent.action.VIEW  \
  *          -n com.google.vr.sdk.samples.video360/.VideoActivity \
@@ -71,6 +108,14 @@ import java.security.InvalidParameterException;
  *          --ei stereoFormat 0
  *       </b>
  *     </li>
+ *     <li>
+ *       A left-right stereo equi-angular cubemap video in the VR Activity.
+ *       <b>adb shell am start -a android.intent.action.VIEW  \
+ *          -n com.google.vr.sdk.samples.video360/.VrVideoActivity \
+ *          -d "file:///sdcard/VIDEO.MP4" \
+ *          --ei stereoFormat 7
+ *       </b>
+ *     </li>
  *   </ul>
  *
  * <p>This sample does not validiate that a given file is readable by the Android media decoders.
@@ -81,12 +126,84 @@ public class MediaLoader {
   private static final String TAG = "MediaLoader";
 
   public static final String MEDIA_FORMAT_KEY = "stereoFormat";
+  public static final String DECODE_BUDGET_KEY = "decodeBudgetMb";
   private static final int DEFAULT_SURFACE_HEIGHT_PX = 2048;
 
+  /**
+   * Images are downsampled until they fit in this many bytes, i.e., 8k x 4k. Larger display
+   * textures use a lot of GPU memory without a visible improvement on a phone.
+   */
+  private static final long MAX_IMAGE_TEXTURE_BYTES =
+      8192L * 4096 * ImageDecodePlan.BYTES_PER_PIXEL;
+
+  /** Streamed images are decoded & uploaded in bands of about this size. */
+  private static final long UPLOAD_BAND_BYTES = 1 << 20;
+  /** Streamed images hold at most this many bands in memory, within the heap budget. */
+  private static final int MAX_UPLOAD_BANDS = 4;
+  /** Maximum width of the proxy displayed while an image is streamed. */
+  private static final int PROXY_MAX_WIDTH = 1024;
+
+  /** The default heap budget for decoded pixels is this fraction of the heap limit. */
+  private static final int DEFAULT_DECODE_BUDGET_HEAP_DIVISOR = 4;
+
+  /**
+   * Bitmaps used to decode images. This is shared by all MediaLoaders so that Activities showing
+   * one image after another reuse the same memory.
+   */
+  private static final BitmapPool BITMAP_POOL =
+      new BitmapPool(Runtime.getRuntime().maxMemory() / DEFAULT_DECODE_BUDGET_HEAP_DIVISOR);
+
+  /** Returns the images displayed by SceneRenderer to BITMAP_POOL once they are uploaded. */
+  private static final SceneRenderer.ImageReleaser BITMAP_POOL_RELEASER =
+      new SceneRenderer.ImageReleaser() {
+        @Override
+        public void release(Bitmap image) {
+          BITMAP_POOL.release(image);
+        }
+      };
+
+  /**
+   * Writes a displayed image to the disk cache on a background thread & then returns it to
+   * BITMAP_POOL.
+   */
+  private static final class CachingReleaser implements SceneRenderer.ImageReleaser {
+    private final Context context;
+    private final String imageKey;
+
+    CachingReleaser(Context context, String imageKey) {
+      this.context = context.getApplicationContext();
+      this.imageKey = imageKey;
+    }
+
+    @Override
+    public void release(final Bitmap image) {
+      AsyncTask.THREAD_POOL_EXECUTOR.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              BitmapCache.RawImageWriter writer = getCache(context)
+                  .startRawImage(imageKey, image.getWidth(), image.getHeight());
+              if (writer != null) {
+                writer.writeRows(image);
+                writer.commit();
+              }
+              BITMAP_POOL.release(image);
+            }
+          });
+    }
+  }
+
+  /** Decoded panoramas & proxies are cached in this subdirectory of the app's cache directory. */
+  private static final String CACHE_DIRECTORY_NAME = "panoramas";
+  /** An 8k x 4k image takes 128 MiB. Android clears the cache directory when storage runs low. */
+  private static final long MAX_CACHE_DISK_BYTES = 1L << 30;
+  /** Cached proxies take at most this fraction of the heap limit. */
+  private static final int CACHE_MEMORY_HEAP_DIVISOR = 16;
+
   /** A spherical mesh for video should be large enough that there are no stereo artifacts. */
   private static final int SPHERE_RADIUS_METERS = 50;
 
-  /** These should be configured based on the video type. But this sample assumes 360 video. */
+  /** The FOV of media without panorama metadata. See {@link PanoramaMetadata}. */
   private static final int DEFAULT_SPHERE_VERTICAL_DEGREES = 180;
   private static final int DEFAULT_SPHERE_HORIZONTAL_DEGREES = 360;
 
@@ -94,14 +211,26 @@ public class MediaLoader {
   private static final int DEFAULT_SPHERE_ROWS = 12;
   private static final int DEFAULT_SPHERE_COLUMNS = 24;
 
+  /**
+   * Approximate angular resolution of a Daydream phone's eye buffer. Meshes for media with more
+   * detail than this are only tessellated finely enough for the display.
+   */
+  private static final float DISPLAY_PIXELS_PER_DEGREE = 15;
+
   private final Context context;
   // This can be replaced by any media player that renders to a Surface. In a real app, this
   // media player would be separated from the rendering code. It is left in this class for
   // simplicity.
   // This should be set or cleared in a synchronized manner.
   MediaPlayer mediaPlayer;
-  // This sample also supports loading images.
-  Bitmap mediaImage;
+  // This sample also supports loading images. mediaBitmap is either the whole image or the proxy
+  // displayed while mediaTexture is streamed by the background thread.
+  Bitmap mediaBitmap;
+  // Takes back mediaBitmap once it's uploaded.
+  SceneRenderer.ImageReleaser mediaBitmapReleaser;
+  StreamingImageTexture mediaTexture;
+  // Tile pyramids are paged in by the GL thread instead.
+  VirtualTexture mediaVirtualTexture;
   // If the video or image fails to load, a placeholder panorama is rendered with error text.
   String errorText;
 
@@ -114,8 +243,10 @@ public class MediaLoader {
   Mesh mesh;
   // The sceneRenderer is set after GL initialization is complete.
   private SceneRenderer sceneRenderer;
-  // The displaySurface is configured after both GL initialization and media loading.
+  // The displaySurface is configured after both GL initialization and media loading. Images are
+  // uploaded to a texture instead.
   private Surface displaySurface;
+  private boolean isImageDisplayed;
 
   // The actual work of loading media happens on a background thread.
   private MediaLoaderTask mediaLoaderTask;
@@ -139,10 +270,31 @@ public class MediaLoader {
 
   /** Notifies MediaLoader that GL components have initialized. */
   public void onGlSceneReady(SceneRenderer sceneRenderer) {
-    this.sceneRenderer = sceneRenderer;
+    synchronized (this) {
+      this.sceneRenderer = sceneRenderer;
+      // Wake up a MediaLoaderTask waiting for the texture size limit.
+      notifyAll();
+    }
     displayWhenReady();
   }
 
+  /**
+   * Blocks until GL is initialized and returns GL_MAX_TEXTURE_SIZE, or returns 0 if MediaLoader is
+   * destroyed first.
+   */
+  @WorkerThread
+  private synchronized int waitForMaxTextureSize() {
+    while (sceneRenderer == null && !isDestroyed) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return 0;
+      }
+    }
+    return isDestroyed ? 0 : sceneRenderer.getMaxTextureSize();
+  }
+
   /**
    * Helper class to media loading. This accesses the disk and decodes images so it needs to run in
    * the background.
@@ -163,38 +315,135 @@ public class MediaLoader {
         return null;
       }
 
-      // Extract the stereoFormat from the Intent's extras.
+      // Extract the stereoFormat from the Intent's extras. This also selects the projection.
       int stereoFormat = intent[0].getIntExtra(MEDIA_FORMAT_KEY, Mesh.MEDIA_MONOSCOPIC);
-      if (stereoFormat != Mesh.MEDIA_STEREO_LEFT_RIGHT
-          && stereoFormat != Mesh.MEDIA_STEREO_TOP_BOTTOM) {
+      if (!Mesh.isValidMediaFormat(stereoFormat)) {
         stereoFormat = Mesh.MEDIA_MONOSCOPIC;
       }
 
-      mesh = Mesh.createUvSphere(
-          SPHERE_RADIUS_METERS, DEFAULT_SPHERE_ROWS, DEFAULT_SPHERE_COLUMNS,
-          DEFAULT_SPHERE_VERTICAL_DEGREES, DEFAULT_SPHERE_HORIZONTAL_DEGREES,
-          stereoFormat);
+      long decodeBudgetBytes =
+          Runtime.getRuntime().maxMemory() / DEFAULT_DECODE_BUDGET_HEAP_DIVISOR;
+      int decodeBudgetMb = intent[0].getIntExtra(DECODE_BUDGET_KEY, 0);
+      if (decodeBudgetMb > 0) {
+        decodeBudgetBytes = (long) decodeBudgetMb << 20;
+      }
 
       // Based on the Intent's data, load the appropriate media from disk.
       Uri uri = intent[0].getData();
+      PanoramaImageDecoder image = null;
+      SceneRenderer.ImageReleaser releaser = BITMAP_POOL_RELEASER;
+      ImageDecodePlan imagePlan = null;
+      RawImageCache.Reader cachedImage = null;
+      String imageKey = null;
+      Bitmap bitmap = null;
+      StreamingImageTexture texture = null;
+      VirtualTexture virtualTexture = null;
+      MediaPlayer mp = null;
+      float verticalFovDegrees = DEFAULT_SPHERE_VERTICAL_DEGREES;
+      float horizontalFovDegrees = DEFAULT_SPHERE_HORIZONTAL_DEGREES;
       try {
         File file = new File(uri.getPath());
         if (!file.exists()) {
           throw new FileNotFoundException();
         }
 
+        // VR180 & cropped panoramas only cover part of the sphere. Cubemaps always cover all of it.
+        PanoramaMetadata metadata =
+            Mesh.isCubemap(stereoFormat) ? null : PanoramaMetadata.read(file);
+        if (metadata != null) {
+          verticalFovDegrees = metadata.getVerticalFovDegrees();
+          horizontalFovDegrees = metadata.getHorizontalFovDegrees();
+          Log.i(TAG, "Media covers " + horizontalFovDegrees + "x" + verticalFovDegrees + "deg");
+        }
+
         String type = URLConnection.guessContentTypeFromName(uri.getPath());
-        if (type == null) {
+        if (file.getName().equals(TilePyramid.MANIFEST_NAME)) {
+          // Pyramids are equirectangular panoramas that are too large to have stereo variants.
+          if (stereoFormat != Mesh.MEDIA_MONOSCOPIC) {
+            Log.w(TAG, "Tile pyramids are monoscopic. Ignoring stereoFormat " + stereoFormat);
+            stereoFormat = Mesh.MEDIA_MONOSCOPIC;
+          }
+          TilePyramid pyramid;
+          InputStream manifest = new FileInputStream(file);
+          try {
+            pyramid = TilePyramid.read(manifest);
+          } finally {
+            manifest.close();
+          }
+          int maxTextureSize = waitForMaxTextureSize();
+          if (maxTextureSize <= 0) {
+            return null;
+          }
+          // This loads the coarsest level so there is something to display immediately.
+          virtualTexture = new VirtualTexture(
+              file.getParentFile(), pyramid, maxTextureSize, DISPLAY_PIXELS_PER_DEGREE);
+          Log.i(TAG, "Loaded " + virtualTexture);
+        } else if (type == null) {
           throw new InvalidParameterException("Unknown file type: " + uri);
         } else if (type.startsWith("image")) {
-          // Decoding a large image can take 100+ ms.
-          mediaImage = BitmapFactory.decodeFile(uri.getPath());
-        } else if (type.startsWith("video")) {
-          MediaPlayer mp = MediaPlayer.create(context, uri);
-          synchronized (MediaLoader.this) {
-            // This needs to be synchronized with the methods that could clear mediaPlayer.
-            mediaPlayer = mp;
+          // Only the bounds are read here. The pixels are decoded into the display Surface, which
+          // needs GL to be initialized, and the decode size depends on GL's texture size limit.
+          image = PanoramaImageDecoder.open(uri.getPath());
+          int maxTextureSize = waitForMaxTextureSize();
+          if (maxTextureSize <= 0) {
+            return null;
           }
+          imagePlan = ImageDecodePlan.create(
+              image.getWidth(), image.getHeight(), maxTextureSize, MAX_IMAGE_TEXTURE_BYTES,
+              decodeBudgetBytes, image.supportsRegions());
+
+          // Decoded images are cached by their source & their decoded size, which depends on the
+          // device.
+          BitmapCache cache = getCache(context);
+          String sourceKey = CacheKeys.forFile(file);
+          imageKey = CacheKeys.forVariant(
+              sourceKey, imagePlan.getOutputWidth() + "x" + imagePlan.getOutputHeight());
+          cachedImage = cache.openRawImage(imageKey);
+          if (cachedImage != null || image.supportsRegions()) {
+            // Stream the image in bands that can each be uploaded well within a frame.
+            int width;
+            int height;
+            int bandHeight;
+            long bandBytes;
+            if (cachedImage != null) {
+              width = cachedImage.getWidth();
+              height = cachedImage.getHeight();
+              long rowBytes = (long) width * ImageDecodePlan.BYTES_PER_PIXEL;
+              bandHeight = (int) Math.max(1, Math.min(height, UPLOAD_BAND_BYTES / rowBytes));
+              bandBytes = bandHeight * rowBytes;
+            } else {
+              imagePlan = imagePlan.withMaxStripBytes(UPLOAD_BAND_BYTES);
+              width = imagePlan.getOutputWidth();
+              height = imagePlan.getOutputHeight();
+              bandHeight = imagePlan.getMaxStripOutputHeight();
+              bandBytes = imagePlan.getPeakHeapBytes();
+            }
+            int bands =
+                (int) Math.max(1, Math.min(MAX_UPLOAD_BANDS, decodeBudgetBytes / bandBytes));
+            texture = new StreamingImageTexture(width, height, bandHeight, bands);
+
+            String proxyKey = CacheKeys.forVariant(sourceKey, "proxy" + PROXY_MAX_WIDTH);
+            Bitmap proxy = cache.get(proxyKey);
+            if (proxy == null) {
+              bitmap = image.decodeProxy(PROXY_MAX_WIDTH);
+              if (bitmap == null) {
+                throw new IOException("Unable to decode image " + uri.getPath());
+              }
+              cache.put(proxyKey, bitmap.copy(Bitmap.Config.ARGB_8888, false));
+            } else {
+              // The cached proxy is shared while the displayed one is returned to BITMAP_POOL.
+              bitmap = proxy.copy(Bitmap.Config.ARGB_8888, true);
+            }
+          } else {
+            // Decoding a large image can take 100+ ms. The next time, it is streamed from the
+            // cache instead. The image is written to the cache after it's uploaded so the write
+            // doesn't delay the first frame.
+            bitmap = image.decode(imagePlan, BITMAP_POOL);
+            releaser = new CachingReleaser(context, imageKey);
+          }
+          Log.i(TAG, "Panorama cache: " + cache);
+        } else if (type.startsWith("video")) {
+          mp = MediaPlayer.create(context, uri);
         } else {
           throw new InvalidParameterException("Unsupported MIME type: " + type);
         }
@@ -202,9 +451,62 @@ public class MediaLoader {
       } catch (IOException | InvalidParameterException e) {
         errorText = String.format("Error loading file [%s]: %s", uri.getPath(), e);
         Log.e(TAG, errorText);
+        // Display the error rather than a partially loaded image.
+        if (bitmap != null) {
+          BITMAP_POOL.release(bitmap);
+          bitmap = null;
+        }
+        texture = null;
+        if (virtualTexture != null) {
+          virtualTexture.cancel();
+          virtualTexture = null;
+        }
+      }
+
+      Mesh sphere;
+      if (Mesh.isCubemap(stereoFormat)) {
+        sphere = Mesh.createCubemap(SPHERE_RADIUS_METERS, stereoFormat);
+      } else {
+        // Now that the media's resolution is known, use the coarsest mesh that doesn't distort it.
+        int mediaWidth = 0;
+        int mediaHeight = 0;
+        if (imagePlan != null) {
+          mediaWidth = imagePlan.getOutputWidth();
+          mediaHeight = imagePlan.getOutputHeight();
+        } else if (virtualTexture != null) {
+          mediaWidth = virtualTexture.getWidth();
+          mediaHeight = virtualTexture.getHeight();
+        } else if (mp != null) {
+          mediaWidth = mp.getVideoWidth();
+          mediaHeight = mp.getVideoHeight();
+        }
+        SphereTessellation tessellation = SphereTessellation.forMedia(
+            mediaWidth, mediaHeight, stereoFormat, verticalFovDegrees, horizontalFovDegrees,
+            DISPLAY_PIXELS_PER_DEGREE, SphereTessellation.DEFAULT_MAX_ERROR_PIXELS);
+        Log.i(TAG, "Using a " + tessellation + " sphere for " + mediaWidth + "x" + mediaHeight);
+        sphere = Mesh.createIndexedUvSphere(
+            SPHERE_RADIUS_METERS, tessellation,
+            verticalFovDegrees, horizontalFovDegrees, stereoFormat);
+      }
+
+      synchronized (MediaLoader.this) {
+        // The mesh must be set before the media since the GL thread displays the media as soon as
+        // it's set. This also needs to be synchronized with the methods that could clear
+        // mediaPlayer.
+        mesh = sphere;
+        mediaBitmap = bitmap;
+        mediaBitmapReleaser = releaser;
+        mediaTexture = texture;
+        mediaVirtualTexture = virtualTexture;
+        mediaPlayer = mp;
       }
 
       displayWhenReady();
+      if (texture != null) {
+        streamImage(image, imagePlan, texture, cachedImage, imageKey);
+      } else if (cachedImage != null) {
+        closeQuietly(cachedImage);
+      }
       return null;
     }
 
@@ -229,16 +531,19 @@ public class MediaLoader {
         mediaPlayer.release();
         mediaPlayer = null;
       }
+      releaseImage();
       return;
     }
 
-    if (displaySurface != null) {
+    if (displaySurface != null || isImageDisplayed) {
       // Avoid double initialization caused by sceneRenderer & mediaPlayer being initialized before
       // displayWhenReady is executed.
       return;
     }
 
-    if ((errorText == null && mediaImage == null && mediaPlayer == null) || sceneRenderer == null) {
+    if ((errorText == null && mediaBitmap == null && mediaVirtualTexture == null
+            && mediaPlayer == null)
+        || sceneRenderer == null) {
       // Wait for everything to be initialized.
       return;
     }
@@ -253,20 +558,27 @@ public class MediaLoader {
       // Start playback.
       mediaPlayer.setLooping(true);
       mediaPlayer.start();
-    } else if (mediaImage != null) {
-      // For images, acquire the displaySurface and draw the bitmap to it. Since our Mesh class uses
-      // an GL_TEXTURE_EXTERNAL_OES texture, it's possible to perform this decoding and rendering of
-      // a bitmap in the background without stalling the GL thread. If the Mesh used a standard
-      // GL_TEXTURE_2D, then it's possible to stall the GL thread for 100+ ms during the
-      // glTexImage2D call when loading 4k x 4k panoramas and copying the bitmap's data.
-      displaySurface = sceneRenderer.createDisplay(
-          mediaImage.getWidth(), mediaImage.getHeight(), mesh);
-      Canvas c = displaySurface.lockCanvas(null);
-      c.drawBitmap(mediaImage, 0, 0, null);
-      displaySurface.unlockCanvasAndPost(c);
+    } else if (mediaBitmap != null) {
+      // For images, upload the bitmap to a mipmapped GL_TEXTURE_2D. This avoids copying it through
+      // a software Canvas and the mipmaps stop fine detail from shimmering. When the image is
+      // streamed, the bitmap is a proxy which is displayed until mediaTexture is complete.
+      // sceneRenderer owns the bitmap from now on and passes it to its releaser after the upload.
+      if (mediaTexture != null) {
+        sceneRenderer.setStreamingDisplayImage(
+            mediaBitmap, BITMAP_POOL_RELEASER, mediaTexture, mesh);
+      } else {
+        sceneRenderer.setDisplayImage(mediaBitmap, mediaBitmapReleaser, mesh);
+      }
+      mediaBitmap = null;
+      isImageDisplayed = true;
+    } else if (mediaVirtualTexture != null) {
+      // sceneRenderer owns the pyramid's textures & loading thread from now on.
+      sceneRenderer.setVirtualDisplay(mediaVirtualTexture, mesh);
+      mediaVirtualTexture = null;
+      isImageDisplayed = true;
     } else {
       // Handle the error case by creating a placeholder panorama.
-      mesh = Mesh.createUvSphere(
+      mesh = Mesh.createIndexedUvSphere(
           SPHERE_RADIUS_METERS, DEFAULT_SPHERE_ROWS, DEFAULT_SPHERE_COLUMNS,
           DEFAULT_SPHERE_VERTICAL_DEGREES, DEFAULT_SPHERE_HORIZONTAL_DEGREES,
           Mesh.MEDIA_MONOSCOPIC);
@@ -281,6 +593,112 @@ public class MediaLoader {
     }
   }
 
+  /**
+   * Reads the bands of a streamed image from the cache or decodes them and adds them to the cache.
+   * This runs on the MediaLoaderTask's thread.
+   */
+  @WorkerThread
+  private void streamImage(
+      PanoramaImageDecoder image,
+      ImageDecodePlan plan,
+      StreamingImageTexture texture,
+      @Nullable RawImageCache.Reader cachedImage,
+      String imageKey) {
+    BitmapCache.RawImageWriter writer = null;
+    try {
+      if (cachedImage != null) {
+        readBands(cachedImage, texture);
+      } else {
+        writer = getCache(context)
+            .startRawImage(imageKey, plan.getOutputWidth(), plan.getOutputHeight());
+        image.decodeBands(plan, texture, writer);
+        if (writer != null) {
+          // This drops the entry if decoding was canceled.
+          writer.commit();
+          writer = null;
+        }
+      }
+    } catch (IOException e) {
+      // The proxy remains visible.
+      Log.e(TAG, "Error decoding image", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (writer != null) {
+        writer.abort();
+      }
+      if (cachedImage != null) {
+        closeQuietly(cachedImage);
+      }
+    }
+  }
+
+  /**
+   * Reads a cached image band by band into a texture. This blocks until every band is queued for
+   * upload or the texture is canceled.
+   */
+  @WorkerThread
+  private static void readBands(RawImageCache.Reader cachedImage, StreamingImageTexture texture)
+      throws IOException, InterruptedException {
+    int width = cachedImage.getWidth();
+    int height = cachedImage.getHeight();
+    if (texture.getWidth() != width || texture.getHeight() != height) {
+      throw new IllegalArgumentException("Texture doesn't match " + cachedImage);
+    }
+    long startNanos = System.nanoTime();
+    int bandHeight = texture.getBandHeight();
+    ByteBuffer pixels =
+        ByteBuffer.allocateDirect(width * bandHeight * RawImageFormat.BYTES_PER_PIXEL);
+    for (int top = 0; top < height; top += bandHeight) {
+      Bitmap band = texture.acquireBuffer();
+      if (band == null) {
+        // Canceled.
+        return;
+      }
+      band.reconfigure(width, Math.min(bandHeight, height - top), Bitmap.Config.ARGB_8888);
+      try {
+        BitmapCache.readRows(cachedImage, band, pixels);
+      } catch (IOException e) {
+        band.recycle();
+        throw e;
+      }
+      texture.submitBand(top, band);
+    }
+    Log.i(TAG,
+        "Read " + cachedImage + " in " + (System.nanoTime() - startNanos) / 1000000 + "ms");
+  }
+
+  /** Returns the process-wide cache of decoded panoramas & proxies. */
+  @WorkerThread
+  private static BitmapCache getCache(Context context) {
+    return BitmapCache.get(context, CACHE_DIRECTORY_NAME,
+        Runtime.getRuntime().maxMemory() / CACHE_MEMORY_HEAP_DIVISOR, MAX_CACHE_DISK_BYTES);
+  }
+
+  private static void closeQuietly(RawImageCache.Reader cachedImage) {
+    try {
+      cachedImage.close();
+    } catch (IOException e) {
+      // Only read from.
+    }
+  }
+
+  /** Frees an image that was never passed to sceneRenderer & stops streaming. */
+  private synchronized void releaseImage() {
+    if (mediaBitmap != null) {
+      BITMAP_POOL.release(mediaBitmap);
+      mediaBitmap = null;
+    }
+    if (mediaTexture != null) {
+      mediaTexture.cancel();
+      mediaTexture = null;
+    }
+    if (mediaVirtualTexture != null) {
+      mediaVirtualTexture.cancel();
+      mediaVirtualTexture = null;
+    }
+  }
+
   /**
    * Renders a placeholder grid with optional error text.
    */
@@ -350,6 +768,8 @@ public class MediaLoader {
       mediaPlayer.release();
       mediaPlayer = null;
     }
+    releaseImage();
     isDestroyed = true;
+    notifyAll();
   }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import com.google.vr.sdk.samples.common.android.BitmapCache;
+import com.google.vr.sdk.samples.video360.rendering.StreamingImageTexture;
+import java.io.IOException;
+
+/**
+ * Decodes a panorama image for display without ever holding more decoded pixels than an
+ * {@link ImageDecodePlan} allows.
+ *
+ * <p>Only the image's bounds are read when it is opened. Once the display's texture size limit is
+ * known, {@link #decodeBands} decodes the downsampled image band by band with a
+ * {@link BitmapRegionDecoder} into a {@link StreamingImageTexture}, so the full image only ever
+ * exists in the texture. Formats the region decoder doesn't support are decoded in one piece by
+ * {@link #decode}, using a Bitmap from a {@link BitmapPool}.
+ */
+/* package */ final class PanoramaImageDecoder {
+  private static final String TAG = "PanoramaImageDecoder";
+
+  private final String path;
+  private final int width;
+  private final int height;
+  private final String mimeType;
+
+  private PanoramaImageDecoder(String path, int width, int height, String mimeType) {
+    this.path = path;
+    this.width = width;
+    this.height = height;
+    this.mimeType = mimeType;
+  }
+
+  /**
+   * Reads the size of an image file.
+   *
+   * @throws IOException if the file isn't an image that BitmapFactory can decode.
+   */
+  @WorkerThread
+  public static PanoramaImageDecoder open(String path) throws IOException {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(path, options);
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      throw new IOException("Unable to decode image " + path);
+    }
+    return new PanoramaImageDecoder(path, options.outWidth, options.outHeight, options.outMimeType);
+  }
+
+  /** Width of the encoded image. */
+  public int getWidth() {
+    return width;
+  }
+
+  /** Height of the encoded image. */
+  public int getHeight() {
+    return height;
+  }
+
+  /** Returns true if the image can be decoded in bands. */
+  public boolean supportsRegions() {
+    // These are the formats BitmapRegionDecoder supports on API 24.
+    return "image/jpeg".equals(mimeType)
+        || "image/png".equals(mimeType)
+        || "image/webp".equals(mimeType);
+  }
+
+  /**
+   * Decodes the whole downsampled image.
+   *
+   * @param plan Plan created for this image's size. It must not use regions.
+   * @param pool Source of the Bitmap to decode into.
+   * @return a mutable Bitmap which is about the plan's output size. The decoder can round the
+   *     downsampled size differently.
+   * @throws IOException if the image can't be decoded.
+   */
+  @WorkerThread
+  public Bitmap decode(ImageDecodePlan plan, BitmapPool pool) throws IOException {
+    if (plan.usesRegions()) {
+      throw new IllegalArgumentException("The image doesn't fit in memory: " + plan);
+    }
+    long startNanos = System.nanoTime();
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = plan.getSampleSize();
+    options.inMutable = true;
+    options.inBitmap = pool.acquire(plan.getOutputWidth(), plan.getOutputHeight());
+    Bitmap bitmap;
+    try {
+      bitmap = BitmapFactory.decodeFile(path, options);
+    } catch (IllegalArgumentException e) {
+      // The decoder couldn't reuse the pooled Bitmap.
+      pool.release(options.inBitmap);
+      options.inBitmap = null;
+      bitmap = BitmapFactory.decodeFile(path, options);
+    }
+    if (bitmap != options.inBitmap) {
+      pool.release(options.inBitmap);
+    }
+    if (bitmap == null) {
+      throw new IOException("Unable to decode image " + path);
+    }
+    Log.i(TAG, "Decoded " + plan + " in " + (System.nanoTime() - startNanos) / 1000000 + "ms");
+    return bitmap;
+  }
+
+  /**
+   * Quickly decodes a small version of the image to display while the full image is streamed.
+   *
+   * @param maxWidth The proxy is downsampled by a power of two until it's at most this wide.
+   * @return a Bitmap or null if the image can't be decoded.
+   */
+  @WorkerThread
+  @Nullable
+  public Bitmap decodeProxy(int maxWidth) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = 1;
+    while (width / options.inSampleSize > maxWidth) {
+      options.inSampleSize *= 2;
+    }
+    return BitmapFactory.decodeFile(path, options);
+  }
+
+  /**
+   * Decodes the image band by band into a texture. This blocks until every band is queued for
+   * upload or the texture is canceled.
+   *
+   * @param plan Plan created for this image's size. Each of its strips is a band.
+   * @param texture Destination. Its size must match the plan's output size.
+   * @param copy Optionally receives a copy of each band, e.g., for a {@link BitmapCache}.
+   * @throws IOException if the image can't be decoded.
+   */
+  @WorkerThread
+  public void decodeBands(
+      ImageDecodePlan plan,
+      StreamingImageTexture texture,
+      @Nullable BitmapCache.RawImageWriter copy)
+      throws IOException, InterruptedException {
+    long startNanos = System.nanoTime();
+    BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(path, false);
+    try {
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inSampleSize = plan.getSampleSize();
+      options.inMutable = true;
+      Rect region = new Rect();
+      for (int i = 0; i < plan.getStripCount(); ++i) {
+        Bitmap band = texture.acquireBuffer();
+        if (band == null) {
+          // Canceled.
+          return;
+        }
+        // The region decoder fills inBitmap so it needs to be the strip's size.
+        band.reconfigure(
+            plan.getOutputWidth(), plan.getStripOutputHeight(i), Bitmap.Config.ARGB_8888);
+        region.set(0, plan.getStripTop(i), width, plan.getStripBottom(i));
+        options.inBitmap = band;
+        Bitmap decoded = decoder.decodeRegion(region, options);
+        if (decoded != band) {
+          band.recycle();
+          if (decoded != null) {
+            decoded.recycle();
+          }
+          throw new IOException("Unable to decode rows " + region.top + "-" + region.bottom);
+        }
+        if (copy != null) {
+          copy.writeRows(band);
+        }
+        texture.submitBand(plan.getStripOutputTop(i), band);
+      }
+    } finally {
+      decoder.recycle();
+    }
+    Log.i(TAG, "Decoded " + plan + " in " + (System.nanoTime() - startNanos) / 1000000 + "ms");
+  }
+}
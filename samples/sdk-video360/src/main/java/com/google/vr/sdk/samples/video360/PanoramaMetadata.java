@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the field of view of partial panoramas, e.g., VR180 media or cropped photo spheres.
+ *
+ * <p>Images are described by the GPano XMP properties in a JPEG's APP1 segment. Videos are
+ * described by the projection bounds in the equirectangular projection box of the Spherical Video
+ * V2 metadata in an MP4 file. Only the size of the covered area is used. Offsets are ignored since
+ * the sample's Mesh always centers the media in front of the viewer.
+ *
+ * <p>Files without metadata or with malformed metadata are treated as full 360 x 180 panoramas.
+ */
+/* package */ final class PanoramaMetadata {
+  private static final String XMP_HEADER = "http://ns.adobe.com/xap/1.0/\0";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int JPEG_SOI = 0xFFD8;
+  private static final int JPEG_APP1 = 0xFFE1;
+  private static final int JPEG_SOS = 0xFFDA;
+  // The size of the fields between a visual sample entry's header and its child boxes.
+  private static final int VISUAL_SAMPLE_ENTRY_SIZE = 78;
+  // The version & flags and entry count of an stsd box.
+  private static final int STSD_HEADER_SIZE = 8;
+  // Malformed files could otherwise nest boxes arbitrarily deep.
+  private static final int MAX_BOX_DEPTH = 10;
+
+  private final float verticalFovDegrees;
+  private final float horizontalFovDegrees;
+
+  private PanoramaMetadata(float verticalFovDegrees, float horizontalFovDegrees) {
+    this.verticalFovDegrees = verticalFovDegrees;
+    this.horizontalFovDegrees = horizontalFovDegrees;
+  }
+
+  /** Latitudinal degrees covered by the media in (0, 180]. */
+  public float getVerticalFovDegrees() {
+    return verticalFovDegrees;
+  }
+
+  /** Longitudinal degrees covered by the media in (0, 360]. */
+  public float getHorizontalFovDegrees() {
+    return horizontalFovDegrees;
+  }
+
+  /**
+   * Returns the metadata of a file or null if it has none. The file can be a JPEG image or an MP4
+   * video. Other types of files are ignored.
+   */
+  public static PanoramaMetadata read(File file) throws IOException {
+    RandomAccessFile input = new RandomAccessFile(file, "r");
+    try {
+      if (input.length() >= 2 && input.readUnsignedShort() == JPEG_SOI) {
+        return readJpeg(input);
+      }
+      return readMp4(input, 0, input.length(), 0, false);
+    } finally {
+      input.close();
+    }
+  }
+
+  private static PanoramaMetadata create(float verticalFovDegrees, float horizontalFovDegrees) {
+    if (!(verticalFovDegrees > 0 && verticalFovDegrees <= 180)
+        || !(horizontalFovDegrees > 0 && horizontalFovDegrees <= 360)) {
+      return null;
+    }
+    return new PanoramaMetadata(verticalFovDegrees, horizontalFovDegrees);
+  }
+
+  /** Scans the JPEG's segments up to the image data for an XMP packet. */
+  private static PanoramaMetadata readJpeg(RandomAccessFile input) throws IOException {
+    while (input.getFilePointer() + 4 <= input.length()) {
+      int marker = input.readUnsignedShort();
+      if (marker == JPEG_SOS || (marker & 0xFF00) != 0xFF00) {
+        // Metadata always precedes the image data.
+        return null;
+      }
+      int length = input.readUnsignedShort() - 2;
+      if (length < 0) {
+        return null;
+      }
+      long next = input.getFilePointer() + length;
+      if (marker == JPEG_APP1 && length > XMP_HEADER.length()) {
+        byte[] segment = new byte[length];
+        input.readFully(segment);
+        String text = new String(segment, UTF_8);
+        if (text.startsWith(XMP_HEADER)) {
+          PanoramaMetadata metadata = parseGPano(text);
+          if (metadata != null) {
+            return metadata;
+          }
+        }
+      }
+      input.seek(next);
+    }
+    return null;
+  }
+
+  /** Parses the GPano properties of an XMP packet. */
+  /* package */ static PanoramaMetadata parseGPano(String xmp) {
+    float croppedWidth = readXmpProperty(xmp, "CroppedAreaImageWidthPixels");
+    float croppedHeight = readXmpProperty(xmp, "CroppedAreaImageHeightPixels");
+    float fullWidth = readXmpProperty(xmp, "FullPanoWidthPixels");
+    float fullHeight = readXmpProperty(xmp, "FullPanoHeightPixels");
+    if (!(croppedWidth > 0 && croppedHeight > 0 && fullWidth > 0 && fullHeight > 0)) {
+      return null;
+    }
+    return create(180 * croppedHeight / fullHeight, 360 * croppedWidth / fullWidth);
+  }
+
+  /**
+   * Returns the value of a GPano property written either as an attribute or as an element, or NaN
+   * if it's missing.
+   */
+  private static float readXmpProperty(String xmp, String name) {
+    Matcher matcher =
+        Pattern.compile("GPano:" + name + "\\s*(?:=\\s*[\"']|>)\\s*([0-9.]+)").matcher(xmp);
+    if (!matcher.find()) {
+      return Float.NaN;
+    }
+    try {
+      return Float.parseFloat(matcher.group(1));
+    } catch (NumberFormatException e) {
+      return Float.NaN;
+    }
+  }
+
+  /**
+   * Searches the boxes in [start, end) for the equirectangular projection box, i.e.,
+   * moov/trak/mdia/minf/stbl/stsd/[sample entry]/sv3d/proj/equi.
+   *
+   * @param depth Nesting depth of the boxes.
+   * @param sampleEntries True if the boxes are the sample entries of an stsd box. Their fixed
+   *     fields are skipped.
+   */
+  private static PanoramaMetadata readMp4(
+      RandomAccessFile input, long start, long end, int depth, boolean sampleEntries)
+      throws IOException {
+    if (depth > MAX_BOX_DEPTH) {
+      return null;
+    }
+    long position = start;
+    while (position + 8 <= end) {
+      input.seek(position);
+      long size = input.readInt() & 0xFFFFFFFFL;
+      int type = input.readInt();
+      long payload = position + 8;
+      if (size == 1) {
+        // 64-bit size.
+        size = input.readLong();
+        payload += 8;
+      } else if (size == 0) {
+        // The box extends to the end of its parent.
+        size = end - position;
+      }
+      if (size < payload - position || position + size > end) {
+        // Not an MP4 file or a truncated box.
+        return null;
+      }
+      long boxEnd = position + size;
+
+      PanoramaMetadata metadata = null;
+      if (sampleEntries) {
+        metadata = readMp4(input, payload + VISUAL_SAMPLE_ENTRY_SIZE, boxEnd, depth + 1, false);
+      } else if (type == fourCc("moov") || type == fourCc("trak") || type == fourCc("mdia")
+          || type == fourCc("minf") || type == fourCc("stbl") || type == fourCc("sv3d")
+          || type == fourCc("proj")) {
+        metadata = readMp4(input, payload, boxEnd, depth + 1, false);
+      } else if (type == fourCc("stsd")) {
+        metadata = readMp4(input, payload + STSD_HEADER_SIZE, boxEnd, depth + 1, true);
+      } else if (type == fourCc("equi") && boxEnd - payload >= 20) {
+        // Version & flags followed by the 0.32 fixed point bounds: top, bottom, left & right.
+        input.seek(payload + 4);
+        double top = fixedPoint(input.readInt());
+        double bottom = fixedPoint(input.readInt());
+        double left = fixedPoint(input.readInt());
+        double right = fixedPoint(input.readInt());
+        metadata = create(
+            (float) (180 * (1 - top - bottom)), (float) (360 * (1 - left - right)));
+      }
+      if (metadata != null) {
+        return metadata;
+      }
+      position = boxEnd;
+    }
+    return null;
+  }
+
+  private static double fixedPoint(int value) {
+    return (value & 0xFFFFFFFFL) / 4294967296.0;
+  }
+
+  private static int fourCc(String type) {
+    return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+  }
+}
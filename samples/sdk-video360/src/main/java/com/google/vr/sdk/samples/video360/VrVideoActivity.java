@@ -25,7 +25,6 @@ import android.os.Bundle;
 import android.support.annotation.MainThread;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
-import android.util.Pair;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.ViewGroup;
@@ -38,7 +37,9 @@ import com.google.vr.sdk.base.HeadTransform;
 import com.google.vr.sdk.base.Viewport;
 import com.google.vr.sdk.controller.Controller;
 import com.google.vr.sdk.controller.ControllerManager;
+import com.google.vr.sdk.samples.video360.rendering.CanvasQuad;
 import com.google.vr.sdk.samples.video360.rendering.SceneRenderer;
+import java.util.concurrent.TimeUnit;
 import javax.microedition.khronos.egl.EGLConfig;
 
 /**
@@ -85,6 +86,12 @@ public class VrVideoActivity extends GvrActivity {
 
     // Standard GvrView configuration
     renderer = new Renderer(gvrView);
+    // The GL thread hasn't started yet so the profiler can be configured here.
+    float refreshRate = getWindowManager().getDefaultDisplay().getRefreshRate();
+    if (refreshRate > 0) {
+      renderer.scene.getFrameProfiler().setVsyncPeriodNanos(
+          (long) (TimeUnit.SECONDS.toNanos(1) / refreshRate));
+    }
     gvrView.setEGLConfigChooser(
         8, 8, 8, 8,  // RGBA bits.
         16,  // Depth bits.
@@ -216,8 +223,11 @@ public class VrVideoActivity extends GvrActivity {
 
   /**
    * Standard GVR renderer. Most of the real work is done by {@link SceneRenderer}.
+   *
+   * <p>This implements {@link GvrView.Renderer} rather than {@link GvrView.StereoRenderer} so that
+   * the per-frame work in SceneRenderer runs once for both eyes.
    */
-  private class Renderer implements GvrView.StereoRenderer {
+  private class Renderer implements GvrView.Renderer {
     private static final float Z_NEAR = .1f;
     private static final float Z_FAR = 100;
 
@@ -234,10 +244,9 @@ public class VrVideoActivity extends GvrActivity {
      */
     @MainThread
     public Renderer(ViewGroup parent) {
-      Pair<SceneRenderer, VideoUiView> pair
-          = SceneRenderer.createForVR(VrVideoActivity.this, parent);
-      scene = pair.first;
-      uiView = pair.second;
+      CanvasQuad canvasQuad = new CanvasQuad();
+      uiView = VideoUiView.createForOpenGl(VrVideoActivity.this, parent, canvasQuad);
+      scene = SceneRenderer.createForVR(canvasQuad, uiView, uiView.getFrameListener());
       uiView.setVrIconClickListener(
           new OnClickListener() {
             @Override
@@ -251,13 +260,23 @@ public class VrVideoActivity extends GvrActivity {
     }
 
     @Override
-    public void onNewFrame(HeadTransform headTransform) {}
+    public void onDrawFrame(HeadTransform headTransform, Eye leftEye, Eye rightEye) {
+      if (!scene.glBeginFrame()) {
+        return;
+      }
+      drawEye(leftEye);
+      // rightEye is null when VR mode is disabled.
+      if (rightEye != null) {
+        drawEye(rightEye);
+      }
+      scene.glEndFrame();
+    }
 
-    @Override
-    public void onDrawEye(Eye eye) {
+    private void drawEye(Eye eye) {
+      eye.getViewport().setGLViewport();
       Matrix.multiplyMM(
           viewProjectionMatrix, 0, eye.getPerspective(Z_NEAR, Z_FAR), 0, eye.getEyeView(), 0);
-      scene.glDrawFrame(viewProjectionMatrix, eye.getType());
+      scene.glDrawEye(viewProjectionMatrix, eye.getType());
     }
 
     @Override
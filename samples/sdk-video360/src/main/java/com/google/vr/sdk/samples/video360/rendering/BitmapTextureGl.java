@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import static com.google.vr.sdk.samples.video360.rendering.Utils.checkGlError;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.support.annotation.Nullable;
+
+/**
+ * Uploads a Bitmap for {@link ImageTexture}. GLUtils reads the Bitmap's pixels directly so no
+ * intermediate copy is made on the CPU. Without a Bitmap, level 0 is allocated but left undefined
+ * so it can be filled in with glTexSubImage2D. All methods must be called on the GL thread.
+ */
+/* package */ final class BitmapTextureGl implements ImageTexture.Gl {
+  private static final String NPOT_EXTENSION = "GL_OES_texture_npot";
+
+  @Nullable private final Bitmap bitmap;
+  private final int width;
+  private final int height;
+
+  /** Uploads the given Bitmap. */
+  public BitmapTextureGl(Bitmap bitmap) {
+    this.bitmap = bitmap;
+    width = bitmap.getWidth();
+    height = bitmap.getHeight();
+  }
+
+  /** Allocates a GL_RGBA texture of the given size. */
+  public BitmapTextureGl(int width, int height) {
+    bitmap = null;
+    this.width = width;
+    this.height = height;
+  }
+
+  @Override
+  public boolean supportsNpotMipmaps() {
+    // OpenGL ES 3 supports them without the extension.
+    String version = GLES20.glGetString(GLES20.GL_VERSION);
+    String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+    return (version != null && version.startsWith("OpenGL ES 3"))
+        || (extensions != null && extensions.contains(NPOT_EXTENSION));
+  }
+
+  @Override
+  public int glGenTexture() {
+    int[] texture = new int[1];
+    GLES20.glGenTextures(1, texture, 0);
+    return texture[0];
+  }
+
+  @Override
+  public void glBindTexture(int texture) {
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+  }
+
+  @Override
+  public void glTexParameteri(int name, int value) {
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, name, value);
+  }
+
+  @Override
+  public void glTexImage2D() {
+    if (bitmap != null) {
+      GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+    } else {
+      // This matches the format GLUtils uses for ARGB_8888 Bitmaps.
+      GLES20.glTexImage2D(
+          GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+          GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+    }
+    checkGlError();
+  }
+
+  @Override
+  public void glGenerateMipmap() {
+    GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+    checkGlError();
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import static com.google.vr.sdk.samples.video360.rendering.Utils.checkGlError;
+
+import android.opengl.GLES20;
+import com.google.vr.sdk.samples.common.gl.GlStateCache;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Static geometry stored in a GL buffer object.
+ *
+ * <p>Passing client-side buffers to glVertexAttribPointer forces the driver to copy the vertex data
+ * on every draw call. This class uploads the data once in {@link #glInit()} so draw calls only need
+ * to bind the buffer and reference the data by byte offset.
+ *
+ * <p>A BufferObject can be created on any thread, but the gl* methods must be called on the GL
+ * thread.
+ */
+/* package */ final class BufferObject {
+  // GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER.
+  private final int target;
+  // Client-side copy of the data. This is kept so the buffer can be recreated with a new context.
+  private final Buffer data;
+  private final int sizeBytes;
+
+  // Only valid after glInit() & before glShutdown().
+  private int bufferId;
+
+  private BufferObject(int target, Buffer data, int sizeBytes) {
+    this.target = target;
+    this.data = data;
+    this.sizeBytes = sizeBytes;
+  }
+
+  /** Creates a GL_ARRAY_BUFFER for the given vertex data. */
+  public static BufferObject createVertexBuffer(FloatBuffer vertices) {
+    return new BufferObject(
+        GLES20.GL_ARRAY_BUFFER, vertices, vertices.capacity() * Utils.BYTES_PER_FLOAT);
+  }
+
+  /**
+   * Creates a GL_ELEMENT_ARRAY_BUFFER for the given index data.
+   *
+   * @param indices a ShortBuffer or IntBuffer
+   * @param bytesPerIndex size of each element in indices
+   */
+  public static BufferObject createIndexBuffer(Buffer indices, int bytesPerIndex) {
+    return new BufferObject(
+        GLES20.GL_ELEMENT_ARRAY_BUFFER, indices, indices.capacity() * bytesPerIndex);
+  }
+
+  /** Uploads the data to the GPU. Repeated calls are ignored until glShutdown() is called. */
+  public void glInit() {
+    if (bufferId != 0) {
+      return;
+    }
+
+    int[] ids = new int[1];
+    GLES20.glGenBuffers(1, ids, 0);
+    bufferId = ids[0];
+
+    GLES20.glBindBuffer(target, bufferId);
+    data.position(0);
+    GLES20.glBufferData(target, sizeBytes, data, GLES20.GL_STATIC_DRAW);
+    GLES20.glBindBuffer(target, 0);
+    checkGlError();
+  }
+
+  /**
+   * Binds the buffer so that subsequent calls can reference it by offset. The binding is restored
+   * to 0 by {@link GlStateCache#glEndFrame()}.
+   */
+  public void glBind(GlStateCache glState) {
+    glState.glBindBuffer(target, bufferId);
+  }
+
+  /** Frees the GPU copy of the data. */
+  public void glShutdown() {
+    if (bufferId != 0) {
+      GLES20.glDeleteBuffers(1, new int[] {bufferId}, 0);
+      bufferId = 0;
+    }
+  }
+}
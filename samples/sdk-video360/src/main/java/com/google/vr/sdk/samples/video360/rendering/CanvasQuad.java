@@ -27,6 +27,7 @@ import android.opengl.GLES20;
 import android.view.Surface;
 import android.widget.FrameLayout;
 import com.google.vr.sdk.controller.Orientation;
+import com.google.vr.sdk.samples.common.gl.GlStateCache;
 import java.nio.FloatBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -121,9 +122,11 @@ public class CanvasQuad {
     1, 0
   };
   private static final FloatBuffer vertexBuffer = Utils.createBuffer(vertexData);
+  // GPU copy of vertexData. This is only valid after glInit().
+  private final BufferObject vertexBufferObject = BufferObject.createVertexBuffer(vertexBuffer);
 
-  /** Only SceneRenderer can create a CanvasQuad. */
-  /* package */ CanvasQuad() { }
+  /** The quad only draws a View once it is passed to {@link SceneRenderer#createForVR}. */
+  public CanvasQuad() { }
 
   /** Gets LayoutParams used by Android to properly layout VideoUiView. */
   public static FrameLayout.LayoutParams getLayoutParams() {
@@ -170,6 +173,8 @@ public class CanvasQuad {
     alphaHandle = GLES20.glGetUniformLocation(program, "uAlpha");
     checkGlError();
 
+    vertexBufferObject.glInit();
+
     // Create the underlying SurfaceTexture with the appropriate size.
     displaySurfaceTexture = new SurfaceTexture(textureId);
     displaySurfaceTexture.setDefaultBufferSize(
@@ -183,46 +188,45 @@ public class CanvasQuad {
    * @param viewProjectionMatrix Array of floats containing the quad's 4x4 perspective matrix in the
    *     {@link android.opengl.Matrix} format.
    * @param alpha Specifies the opacity of this quad.
+   * @param glState Tracks the GL state shared with the rest of the scene.
    */
-  /* package */ void glDraw(float[] viewProjectionMatrix, float alpha) {
+  /* package */ void glDraw(float[] viewProjectionMatrix, float alpha, GlStateCache glState) {
     // Configure shader.
-    GLES20.glUseProgram(program);
+    glState.glUseProgram(program);
     checkGlError();
 
-    GLES20.glEnableVertexAttribArray(positionHandle);
-    GLES20.glEnableVertexAttribArray(textureCoordsHandle);
+    glState.glEnableVertexAttribArrays(
+        GlStateCache.attribBit(positionHandle) | GlStateCache.attribBit(textureCoordsHandle));
     checkGlError();
 
     GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, viewProjectionMatrix, 0);
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+    glState.glActiveTexture(GLES20.GL_TEXTURE0);
+    glState.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
     GLES20.glUniform1i(textureHandle, 0);
     GLES20.glUniform1f(alphaHandle, alpha);
     checkGlError();
 
     // Load position data.
-    vertexBuffer.position(0);
+    vertexBufferObject.glBind(glState);
     GLES20.glVertexAttribPointer(positionHandle, POSITION_COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-                                 false, VERTEX_STRIDE_BYTES, vertexBuffer);
+                                 false, VERTEX_STRIDE_BYTES, 0);
     checkGlError();
 
     // Load texture data.
-    vertexBuffer.position(POSITION_COORDS_PER_VERTEX);
     GLES20.glVertexAttribPointer(textureCoordsHandle, TEXTURE_COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-                                 false, VERTEX_STRIDE_BYTES, vertexBuffer);
+                                 false, VERTEX_STRIDE_BYTES,
+                                 POSITION_COORDS_PER_VERTEX * BYTES_PER_COORD);
     checkGlError();
 
     if (surfaceDirty.compareAndSet(true, false)) {
       // If the Surface has been written to, get the new data onto the SurfaceTexture.
       displaySurfaceTexture.updateTexImage();
+      glState.invalidateTextureBindings();
     }
 
     // Render.
     GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, vertexData.length / COORDS_PER_VERTEX);
     checkGlError();
-
-    GLES20.glDisableVertexAttribArray(positionHandle);
-    GLES20.glDisableVertexAttribArray(textureCoordsHandle);
   }
 
   /** Frees GL resources. */
@@ -231,6 +235,7 @@ public class CanvasQuad {
       GLES20.glDeleteProgram(program);
       GLES20.glDeleteTextures(1, new int[]{textureId}, 0);
     }
+    vertexBufferObject.glShutdown();
 
     if (displaySurfaceTexture != null) {
       displaySurfaceTexture.release();
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import com.google.vr.sdk.samples.common.profiling.FrameProfiler;
+
+/**
+ * Spreads incremental work, e.g., texture uploads, across frames so that each frame spends about
+ * a fixed amount of time on it.
+ *
+ * <p>Each frame runs units of work until the next unit is predicted to exceed the budget. The
+ * prediction is a moving average of the measured unit times. At least one unit runs per frame so
+ * the work always finishes even if a single unit is over budget.
+ *
+ * <p>This isn't thread-safe; it's normally only used on the GL thread.
+ */
+/* package */ final class FrameUploadBudget {
+  /** Incremental work. Units are run on the GL thread. */
+  interface Work {
+    /**
+     * Runs the next unit of work.
+     *
+     * @return false if no unit was ready.
+     */
+    boolean glRunNextUnit();
+  }
+
+  // Weight of the newest measurement in the moving average.
+  private static final float ESTIMATE_WEIGHT = 0.25f;
+
+  private final long budgetNanos;
+  private final FrameProfiler.Clock clock;
+
+  // Predicted time of the next unit. 0 until a unit has been measured.
+  private long estimatedUnitNanos;
+  private int units;
+  private int frames;
+  private long totalNanos;
+  private long maxFrameNanos;
+
+  /**
+   * @param budgetNanos Time each frame should spend on the work.
+   * @param clock Source of timestamps.
+   */
+  public FrameUploadBudget(long budgetNanos, FrameProfiler.Clock clock) {
+    this.budgetNanos = budgetNanos;
+    this.clock = clock;
+  }
+
+  /**
+   * Runs as many units of work as fit in this frame's budget.
+   *
+   * @return the number of units that ran.
+   */
+  public int glRunFrame(Work work) {
+    long frameStartNanos = clock.nanoTime();
+    long elapsedNanos = 0;
+    int frameUnits = 0;
+    while (frameUnits == 0 || elapsedNanos + estimatedUnitNanos <= budgetNanos) {
+      long unitStartNanos = clock.nanoTime();
+      if (!work.glRunNextUnit()) {
+        break;
+      }
+      long now = clock.nanoTime();
+      long unitNanos = now - unitStartNanos;
+      estimatedUnitNanos = (units == 0)
+          ? unitNanos
+          : (long) (estimatedUnitNanos + ESTIMATE_WEIGHT * (unitNanos - estimatedUnitNanos));
+      elapsedNanos = now - frameStartNanos;
+      ++frameUnits;
+      ++units;
+    }
+    if (frameUnits > 0) {
+      ++frames;
+      totalNanos += elapsedNanos;
+      maxFrameNanos = Math.max(maxFrameNanos, elapsedNanos);
+    }
+    return frameUnits;
+  }
+
+  /** Clears the statistics and the estimate, e.g., before different work starts. */
+  public void reset() {
+    estimatedUnitNanos = 0;
+    units = 0;
+    frames = 0;
+    totalNanos = 0;
+    maxFrameNanos = 0;
+  }
+
+  /** Predicted time of the next unit. */
+  public long getEstimatedUnitNanos() {
+    return estimatedUnitNanos;
+  }
+
+  /** Units run since the last reset. */
+  public int getUnitCount() {
+    return units;
+  }
+
+  /** Frames that ran at least one unit since the last reset. */
+  public int getFrameCount() {
+    return frames;
+  }
+
+  /** Time spent on all units since the last reset. */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /** Longest time a single frame spent on the work since the last reset. */
+  public long getMaxFrameNanos() {
+    return maxFrameNanos;
+  }
+
+  @Override
+  public String toString() {
+    return units + " units in " + frames + " frames, " + totalNanos / 1000000 + "ms total, "
+        + maxFrameNanos / 1000 + "us max per frame";
+  }
+}
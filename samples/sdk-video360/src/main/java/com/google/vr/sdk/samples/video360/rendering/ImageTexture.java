@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import android.opengl.GLES20;
+
+/**
+ * Uploads a still image to a mipmapped GL_TEXTURE_2D.
+ *
+ * <p>Unlike the GL_TEXTURE_EXTERNAL_OES used for video, a GL_TEXTURE_2D can have mipmaps. When the
+ * panorama is minified, sampling a smaller level removes the shimmering of fine detail and reads
+ * less texture memory per pixel. OpenGL ES 2 only supports mipmaps for non-power-of-two textures
+ * with GL_OES_texture_npot. Without it, such textures fall back to GL_LINEAR filtering.
+ *
+ * <p>The GL calls go through {@link Gl} so the upload sequence can be checked with a fake GL. Only
+ * compile-time GLES20 constants are used here.
+ */
+/* package */ final class ImageTexture {
+  /** The GL operations used to upload an image. All methods are called on the GL thread. */
+  interface Gl {
+    /** Returns true if non-power-of-two textures can have mipmaps. */
+    boolean supportsNpotMipmaps();
+
+    /** Creates a texture name. */
+    int glGenTexture();
+
+    /** Binds a texture to GL_TEXTURE_2D. */
+    void glBindTexture(int texture);
+
+    /** Sets a parameter of the texture bound to GL_TEXTURE_2D. */
+    void glTexParameteri(int name, int value);
+
+    /** Uploads the image to level 0 of the texture bound to GL_TEXTURE_2D. */
+    void glTexImage2D();
+
+    /** Generates the remaining levels from level 0 of the texture bound to GL_TEXTURE_2D. */
+    void glGenerateMipmap();
+  }
+
+  private final int width;
+  private final int height;
+  // Set by glCreate().
+  private boolean hasMipmaps;
+
+  /** @param width & height of the image that is uploaded. */
+  public ImageTexture(int width, int height) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+    }
+    this.width = width;
+    this.height = height;
+  }
+
+  /** Returns true if value is a positive power of two. */
+  public static boolean isPowerOfTwo(int value) {
+    return value > 0 && (value & (value - 1)) == 0;
+  }
+
+  /** Returns true if the texture has mipmaps on a GL with the given NPOT support. */
+  public boolean usesMipmaps(boolean npotMipmapsSupported) {
+    return npotMipmapsSupported || (isPowerOfTwo(width) && isPowerOfTwo(height));
+  }
+
+  /**
+   * Creates the texture and uploads the image. The sampling parameters are set before the upload
+   * and the mipmaps are generated after it. The texture is left bound to GL_TEXTURE_2D.
+   *
+   * @return the texture's name. The caller owns it.
+   */
+  public int glUpload(Gl gl) {
+    int texture = glCreate(gl);
+    if (hasMipmaps) {
+      gl.glGenerateMipmap();
+    }
+    return texture;
+  }
+
+  /**
+   * Creates the texture and sets its sampling parameters without generating mipmaps. This is used
+   * when level 0 is filled in later. Call {@link #glGenerateMipmaps} once it's complete.
+   *
+   * @return the texture's name. The caller owns it.
+   */
+  public int glCreate(Gl gl) {
+    hasMipmaps = usesMipmaps(gl.supportsNpotMipmaps());
+    int texture = gl.glGenTexture();
+    gl.glBindTexture(texture);
+    gl.glTexParameteri(
+        GLES20.GL_TEXTURE_MIN_FILTER,
+        hasMipmaps ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+    gl.glTexParameteri(GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    // OpenGL ES 2 requires GL_CLAMP_TO_EDGE for non-power-of-two textures.
+    gl.glTexParameteri(GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexImage2D();
+    return texture;
+  }
+
+  /**
+   * Generates the mipmaps of a texture from {@link #glCreate} if it uses them.
+   *
+   * @return true if mipmaps were generated.
+   */
+  public boolean glGenerateMipmaps(Gl gl, int texture) {
+    if (!hasMipmaps) {
+      return false;
+    }
+    gl.glBindTexture(texture);
+    gl.glGenerateMipmap();
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return width + "x" + height;
+  }
+}
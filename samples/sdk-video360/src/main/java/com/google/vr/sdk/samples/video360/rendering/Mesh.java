@@ -21,7 +21,18 @@ import static com.google.vr.sdk.samples.video360.rendering.Utils.checkGlError;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
 import com.google.vr.sdk.base.Eye;
+import com.google.vr.sdk.samples.common.gl.GlStateCache;
+import com.google.vr.sdk.samples.common.pyramid.TilePyramid;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Utility class to generate & render spherical meshes for video or images. Use the static creation
@@ -41,6 +52,28 @@ public final class Mesh {
    * respectively. If the stereo media is rendered in a non-VR display, only the top half is used.
    */
   public static final int MEDIA_STEREO_TOP_BOTTOM = 2;
+  /**
+   * Cubemap media with 6 faces in a 3x2 grid. The top row has the right, left & up faces and the
+   * bottom row has the down, front & back faces, as in the Spherical Video V2 default layout.
+   */
+  public static final int MEDIA_CUBEMAP_MONOSCOPIC = 3;
+  /** Cubemap media with a 3x2 grid for each eye in the left & right halves of the frame. */
+  public static final int MEDIA_CUBEMAP_STEREO_LEFT_RIGHT = 4;
+  /** Cubemap media with a 3x2 grid for each eye in the top & bottom halves of the frame. */
+  public static final int MEDIA_CUBEMAP_STEREO_TOP_BOTTOM = 5;
+  /**
+   * Equi-angular cubemap (EAC) media with 6 faces in a 3x2 grid. The texture coordinates of each
+   * face are linear in the viewing angle rather than in the position on the face, which spreads
+   * the pixels evenly across the sphere. The top row has the left, front & right faces and the
+   * bottom row has the down, back & up faces rotated by a quarter turn, as in YouTube's layout.
+   */
+  public static final int MEDIA_EAC_MONOSCOPIC = 6;
+  /** EAC media with a 3x2 grid for each eye in the left & right halves of the frame. */
+  public static final int MEDIA_EAC_STEREO_LEFT_RIGHT = 7;
+  /** EAC media with a 3x2 grid for each eye in the top & bottom halves of the frame. */
+  public static final int MEDIA_EAC_STEREO_TOP_BOTTOM = 8;
+  // Each MEDIA_* value is a projection * STEREO_LAYOUTS + one of the first 3 MEDIA_* values.
+  private static final int STEREO_LAYOUTS = 3;
 
   // Basic vertex & fragment shaders to render a mesh with 3D position & 2D texture data.
   private static final String[] VERTEX_SHADER_CODE =
@@ -69,6 +102,43 @@ public final class Mesh {
         "  gl_FragColor = texture2D(uTexture, vTexCoords);",
         "}"
       };
+  // Still images are uploaded to a mipmapped GL_TEXTURE_2D. See ImageTexture.
+  private static final String[] FRAGMENT_SHADER_CODE_2D =
+      new String[] {
+        "precision mediump float;",
+        "uniform sampler2D uTexture;",
+        "varying vec2 vTexCoords;",
+        "void main() {",
+        "  gl_FragColor = texture2D(uTexture, vTexCoords);",
+        "}"
+      };
+  // Tile pyramids are sampled through an indirection texture. See VirtualTexture. Texel
+  // coordinates of a full resolution panorama need more precision than mediump.
+  private static final String[] FRAGMENT_SHADER_CODE_VIRTUAL =
+      new String[] {
+        "#ifdef GL_FRAGMENT_PRECISION_HIGH",
+        "precision highp float;",
+        "#else",
+        "precision mediump float;",
+        "#endif",
+        "uniform sampler2D uTexture;",
+        "uniform sampler2D uIndirection;",
+        // Level 0 size in texels, the part of the indirection texture covered by it, the tile size
+        // without & with borders and 1 / atlas size.
+        "uniform vec2 uImageSize;",
+        "uniform vec2 uIndirectionScale;",
+        "uniform vec3 uTileSize;",
+        "varying vec2 vTexCoords;",
+        "void main() {",
+        // The entry holds the atlas slot & level of the best resident tile.
+        "  vec4 entry = texture2D(uIndirection, vTexCoords * uIndirectionScale);",
+        "  entry = floor(entry * 255.0 + .5);",
+        "  vec2 texel = vTexCoords * uImageSize / exp2(entry.b);",
+        "  vec2 inTile = texel - floor(texel / uTileSize.x) * uTileSize.x;",
+        "  vec2 atlas = (entry.rg * uTileSize.y + 1.0 + inTile) * uTileSize.z;",
+        "  gl_FragColor = entry.a > 0.0 ? texture2D(uTexture, atlas) : vec4(0.0, 0.0, 0.0, 1.0);",
+        "}"
+      };
 
   // Constants related to vertex data.
   private static final int POSITION_COORDS_PER_VERTEX = 3; // X, Y, Z.
@@ -83,9 +153,74 @@ public final class Mesh {
   // Data is tightly packed. Each vertex is [x, y, z, u_left, v_left, u_right, v_right].
   private static final int VERTEX_STRIDE_BYTES = CPV * Utils.BYTES_PER_FLOAT;
 
+  // Cube faces. Each face is given by its center, the direction of its +u axis & the direction of
+  // its +v axis, i.e., right & down in the media, as seen from inside a cube with -Z forward & +Y
+  // up.
+  private static final int CUBE_RIGHT = 0;
+  private static final int CUBE_LEFT = 1;
+  private static final int CUBE_UP = 2;
+  private static final int CUBE_DOWN = 3;
+  private static final int CUBE_FRONT = 4;
+  private static final int CUBE_BACK = 5;
+  private static final float[][] CUBE_FACE_AXES = {
+    {1, 0, 0, 0, 0, 1, 0, -1, 0},
+    {-1, 0, 0, 0, 0, -1, 0, -1, 0},
+    {0, 1, 0, 1, 0, 0, 0, 0, -1},
+    {0, -1, 0, 1, 0, 0, 0, 0, 1},
+    {0, 0, -1, 1, 0, 0, 0, -1, 0},
+    {0, 0, 1, -1, 0, 0, 0, -1, 0}
+  };
+  // The face in each cell of the 3x2 media grid, row by row, and the number of clockwise quarter
+  // turns it's rotated by in the media.
+  private static final int[] CUBEMAP_FACES =
+      {CUBE_RIGHT, CUBE_LEFT, CUBE_UP, CUBE_DOWN, CUBE_FRONT, CUBE_BACK};
+  private static final int[] CUBEMAP_ROTATIONS = {0, 0, 0, 0, 0, 0};
+  private static final int[] EAC_FACES =
+      {CUBE_LEFT, CUBE_FRONT, CUBE_RIGHT, CUBE_DOWN, CUBE_BACK, CUBE_UP};
+  private static final int[] EAC_ROTATIONS = {0, 0, 0, 3, 1, 3};
+  // Cube faces are split into this many rows & columns of quads. Texture coordinates are exact at
+  // the vertices. For EAC, the 11.25 degree quads keep the interpolation error well below a texel.
+  // Cubemap faces are flat so they only need to be split for culling. Both must be even since
+  // each quarter of a face is culled separately.
+  private static final int CUBEMAP_FACE_SUBDIVISIONS = 2;
+  private static final int EAC_FACE_SUBDIVISIONS = 8;
+
+  // Indexed meshes use 16-bit indices when possible. Larger meshes require 32-bit indices which
+  // are only available on devices that support GL_OES_element_index_uint.
+  private static final int MAX_SHORT_INDEXED_VERTICES = 1 << 16;
+  // Indexed spheres with at least this many vertices are generated on multiple threads. Each
+  // parallel task fills roughly PARALLEL_SPHERE_VERTICES_PER_TASK vertices.
+  private static final int PARALLEL_SPHERE_VERTICES = 16 * 1024;
+  private static final int PARALLEL_SPHERE_VERTICES_PER_TASK = 4 * 1024;
+
+  // The number of distinct sphere geometries kept in memory by createIndexedUvSphere. Only a
+  // handful of mesh configurations are used by a typical app so this can be small.
+  private static final int MAX_CACHED_SPHERES = 4;
+  // Process-wide cache of indexed sphere geometry. Access must be synchronized on the map.
+  private static final Map<SphereKey, SphereGeometry> sphereCache =
+      new LinkedHashMap<SphereKey, SphereGeometry>(MAX_CACHED_SPHERES, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SphereKey, SphereGeometry> eldest) {
+          return size() > MAX_CACHED_SPHERES;
+        }
+      };
+
   // Vertices for the mesh with 3D position + left 2D texture UV + right 2D texture UV.
-  public final float[] vertices;
   private final FloatBuffer vertexBuffer;
+  private final int vertexCount;
+  // Optional index data. If this is null, the vertices are rendered as a triangle strip.
+  private final Buffer indexBuffer;
+  private final int indexCount;
+  private final int indexType;
+  // GPU copies of the vertex & index data. These are only valid after glInit().
+  private final BufferObject vertexBufferObject;
+  private final BufferObject indexBufferObject;
+  // Optional patch layout of the index data. If this is non-null, only the parts of the mesh inside
+  // the view frustum are drawn.
+  private final SpherePatches patches;
+  // Scratch data used to cull patches. These are only used on the GL thread.
+  private final float[] frustumPlanes = new float[SpherePatches.FRUSTUM_PLANES_SIZE];
+  private final int[] drawRanges;
 
   // Program related GL items. These are only valid if program != 0.
   private int program;
@@ -93,7 +228,14 @@ public final class Mesh {
   private int positionHandle;
   private int texCoordsHandle;
   private int textureHandle;
+  private int textureTarget;
   private int textureId;
+  // Only set for tile pyramids. The mesh doesn't own its textures.
+  private VirtualTexture virtualTexture;
+  private int indirectionHandle;
+  private int imageSizeHandle;
+  private int indirectionScaleHandle;
+  private int tileSizeHandle;
 
   /**
    * Generates a 3D UV sphere for rendering monoscopic or stereoscopic video.
@@ -193,13 +335,314 @@ public final class Mesh {
       // Move on to the next triangle strip.
     }
 
-    return new Mesh(vertexData);
+    return new Mesh(Utils.createBuffer(vertexData), null, 0, 0, null);
+  }
+
+  /**
+   * Generates an indexed 3D UV sphere for rendering monoscopic or stereoscopic video.
+   *
+   * <p>This produces the same surface as {@link #createUvSphere} but vertices are shared between
+   * adjacent latitude bands and the mesh is rendered as indexed triangles. The geometry is cached
+   * so repeated calls with the same parameters don't regenerate it. Each returned {@link Mesh} has
+   * its own GL state so it can be used by any number of scenes.
+   *
+   * <p>The indices are grouped into patches of nearby quads and only the patches that intersect the
+   * view frustum are drawn. For a typical FOV, this skips more than half of the sphere.
+   *
+   * <p>This can be called on any thread. The returned {@link Mesh} isn't valid until
+   * {@link #glInit(int)} is called. Spheres with more than 65536 vertices require 32-bit indices
+   * which depend on GL_OES_element_index_uint.
+   *
+   * @param radius Size of the sphere. Must be > 0.
+   * @param latitudes Number of rows that make up the sphere. Must be >= 1.
+   * @param longitudes Number of columns that make up the sphere. Must be >= 1.
+   * @param verticalFovDegrees Total latitudinal degrees that are covered by the sphere. Must be in
+   *    (0, 180].
+   * @param horizontalFovDegrees Total longitudinal degrees that are covered by the sphere.Must be
+   *    in (0, 360].
+   * @param mediaFormat A MEDIA_* value.
+   * @return Unintialized Mesh.
+   */
+  public static Mesh createIndexedUvSphere(
+      float radius,
+      int latitudes,
+      int longitudes,
+      float verticalFovDegrees,
+      float horizontalFovDegrees,
+      int mediaFormat) {
+    SphereKey key = new SphereKey(
+        radius, latitudes, longitudes, verticalFovDegrees, horizontalFovDegrees, mediaFormat);
+    SphereGeometry geometry;
+    synchronized (sphereCache) {
+      geometry = sphereCache.get(key);
+    }
+
+    if (geometry == null) {
+      // Generation happens outside of the lock. Two threads could race to build the same sphere,
+      // but the result is identical so the last one to finish wins.
+      geometry = buildIndexedUvSphere(
+          radius, latitudes, longitudes, verticalFovDegrees, horizontalFovDegrees, mediaFormat);
+      synchronized (sphereCache) {
+        sphereCache.put(key, geometry);
+      }
+    }
+
+    // Duplicate the buffers so that each Mesh has its own position & limit.
+    return new Mesh(
+        geometry.vertices.duplicate(),
+        geometry.indexType == GLES20.GL_UNSIGNED_SHORT
+            ? ((ShortBuffer) geometry.indices).duplicate()
+            : ((IntBuffer) geometry.indices).duplicate(),
+        geometry.indices.capacity(),
+        geometry.indexType,
+        geometry.patches);
+  }
+
+  /**
+   * Generates an indexed 3D UV sphere with the rows & columns picked by a
+   * {@link SphereTessellation}, e.g., one that matches the resolution of the media. See
+   * {@link #createIndexedUvSphere(float, int, int, float, float, int)} for the other parameters.
+   */
+  public static Mesh createIndexedUvSphere(
+      float radius,
+      SphereTessellation tessellation,
+      float verticalFovDegrees,
+      float horizontalFovDegrees,
+      int mediaFormat) {
+    return createIndexedUvSphere(
+        radius, tessellation.getRows(), tessellation.getColumns(),
+        verticalFovDegrees, horizontalFovDegrees, mediaFormat);
+  }
+
+  /**
+   * Generates the vertex and index data for {@link #createIndexedUvSphere}.
+   *
+   * <p>The trig values only depend on the row or the column of a vertex so they are computed once
+   * per row & column rather than once per vertex. Large spheres are filled in parallel, one group
+   * of latitude bands per task. The data is written directly into direct buffers that can be
+   * handed to GL.
+   */
+  /* package */ static SphereGeometry buildIndexedUvSphere(
+      float radius,
+      int latitudes,
+      int longitudes,
+      float verticalFovDegrees,
+      float horizontalFovDegrees,
+      int mediaFormat) {
+    if (radius <= 0
+        || latitudes < 1 || longitudes < 1
+        || verticalFovDegrees <= 0 || verticalFovDegrees > 180
+        || horizontalFovDegrees <= 0 || horizontalFovDegrees > 360) {
+      throw new IllegalArgumentException("Invalid parameters for sphere.");
+    }
+
+    // Compute angular size in radians of each UV quad.
+    double verticalFovRads = Math.toRadians(verticalFovDegrees);
+    double horizontalFovRads = Math.toRadians(horizontalFovDegrees);
+    double quadHeightRads = verticalFovRads / latitudes;
+    double quadWidthRads = horizontalFovRads / longitudes;
+
+    // The vertices form a (latitudes + 1) x (longitudes + 1) grid. Row j lies on the j-th line of
+    // latitude and column i lies on the i-th line of longitude.
+    SphereTables tables = new SphereTables(latitudes + 1, longitudes + 1);
+    for (int j = 0; j < latitudes + 1; ++j) {
+      double phi = quadHeightRads * j - verticalFovRads / 2;
+      tables.sinPhi[j] = (float) Math.sin(phi);
+      tables.cosPhi[j] = (float) Math.cos(phi);
+      tables.v[j] = (float) j / latitudes;
+    }
+    for (int i = 0; i < longitudes + 1; ++i) {
+      double theta = quadWidthRads * i + Math.PI - horizontalFovRads / 2;
+      tables.sinTheta[i] = (float) Math.sin(theta);
+      tables.cosTheta[i] = (float) Math.cos(theta);
+      tables.u[i] = (float) i / longitudes;
+    }
+
+    int vertexCount = (latitudes + 1) * (longitudes + 1);
+    FloatBuffer vertices = ByteBuffer.allocateDirect(vertexCount * CPV * Utils.BYTES_PER_FLOAT)
+        .order(ByteOrder.nativeOrder())
+        .asFloatBuffer();
+    int indexCount = latitudes * longitudes * 6;
+    boolean shortIndices = vertexCount <= MAX_SHORT_INDEXED_VERTICES;
+    ByteBuffer indices = ByteBuffer.allocateDirect(
+            indexCount * (shortIndices ? Utils.BYTES_PER_SHORT : Utils.BYTES_PER_INT))
+        .order(ByteOrder.nativeOrder());
+    SpherePatches patches = SpherePatches.createGrid(
+        radius, latitudes, longitudes, verticalFovDegrees, horizontalFovDegrees);
+    SphereBandTask task = new SphereBandTask(
+        tables, patches, radius, mediaFormat, vertices,
+        shortIndices ? indices.asShortBuffer() : null,
+        shortIndices ? null : indices.asIntBuffer(),
+        0, latitudes + 1);
+
+    if (vertexCount < PARALLEL_SPHERE_VERTICES) {
+      // Small spheres aren't worth the overhead of the thread pool.
+      task.compute();
+    } else {
+      ForkJoinPool.commonPool().invoke(task);
+    }
+    Buffer indexBuffer = shortIndices ? indices.asShortBuffer() : indices.asIntBuffer();
+    patches.computeCones(vertices, CPV, indexBuffer);
+
+    return new SphereGeometry(
+        vertices,
+        indexBuffer,
+        shortIndices ? GLES20.GL_UNSIGNED_SHORT : GLES20.GL_UNSIGNED_INT,
+        patches);
+  }
+
+  /**
+   * Generates a cube for rendering cubemap or equi-angular cubemap media.
+   *
+   * <p>The vertices are projected onto a sphere so the mesh can be culled like the patches of
+   * {@link #createIndexedUvSphere}, one quarter of a face at a time. The vertices of a cubemap face
+   * still lie on a plane, so GL interpolates its texture coordinates exactly. The texture
+   * coordinates of EAC faces aren't linear in the position so these faces are subdivided further.
+   *
+   * <p>This can be called on any thread. The returned {@link Mesh} isn't valid until
+   * {@link #glInit(int)} is called.
+   *
+   * @param radius Distance from the center to the vertices. Must be > 0.
+   * @param mediaFormat One of the MEDIA_CUBEMAP_* or MEDIA_EAC_* values.
+   * @return Unintialized Mesh.
+   */
+  public static Mesh createCubemap(float radius, int mediaFormat) {
+    if (radius <= 0 || !isCubemap(mediaFormat) || !isValidMediaFormat(mediaFormat)) {
+      throw new IllegalArgumentException("Invalid parameters for cubemap.");
+    }
+    boolean equiAngular = mediaFormat >= MEDIA_EAC_MONOSCOPIC;
+    int[] faces = equiAngular ? EAC_FACES : CUBEMAP_FACES;
+    int[] rotations = equiAngular ? EAC_ROTATIONS : CUBEMAP_ROTATIONS;
+    int stereoLayout = getStereoLayout(mediaFormat);
+    int subdivisions = equiAngular ? EAC_FACE_SUBDIVISIONS : CUBEMAP_FACE_SUBDIVISIONS;
+
+    int verticesPerFace = (subdivisions + 1) * (subdivisions + 1);
+    int indicesPerFace = subdivisions * subdivisions * 6;
+    float[] vertexData = new float[faces.length * verticesPerFace * CPV];
+    short[] indexData = new short[faces.length * indicesPerFace];
+    int v = 0;
+    int n = 0;
+    for (int cell = 0; cell < faces.length; ++cell) {
+      float[] axes = CUBE_FACE_AXES[faces[cell]];
+      int firstVertex = v;
+      for (int j = 0; j < subdivisions + 1; ++j) {
+        for (int i = 0; i < subdivisions + 1; ++i) {
+          // Position in [-1, 1] within the cell of the media, undone by the cell's rotation.
+          float faceU = 2f * i / subdivisions - 1;
+          float faceV = 2f * j / subdivisions - 1;
+          for (int r = 0; r < rotations[cell]; ++r) {
+            float rotatedU = faceV;
+            faceV = -faceU;
+            faceU = rotatedU;
+          }
+          if (equiAngular) {
+            // EAC texture coordinates are linear in the angle from the center of the face.
+            faceU = (float) Math.tan(Math.PI / 4 * faceU);
+            faceV = (float) Math.tan(Math.PI / 4 * faceV);
+          }
+
+          float x = axes[0] + faceU * axes[3] + faceV * axes[6];
+          float y = axes[1] + faceU * axes[4] + faceV * axes[7];
+          float z = axes[2] + faceU * axes[5] + faceV * axes[8];
+          float scale = radius / (float) Math.sqrt(x * x + y * y + z * z);
+          vertexData[CPV * v] = x * scale;
+          vertexData[CPV * v + 1] = y * scale;
+          vertexData[CPV * v + 2] = z * scale;
+
+          // Texture coordinates within the 3x2 grid. These are already in Canvas coords.
+          float u = (cell % 3 + (float) i / subdivisions) / 3;
+          float t = (cell / 3 + (float) j / subdivisions) / 2;
+          if (stereoLayout == MEDIA_STEREO_LEFT_RIGHT) {
+            vertexData[CPV * v + 3] = u / 2;
+            vertexData[CPV * v + 5] = u / 2 + .5f;
+          } else {
+            vertexData[CPV * v + 3] = u;
+            vertexData[CPV * v + 5] = u;
+          }
+          if (stereoLayout == MEDIA_STEREO_TOP_BOTTOM) {
+            vertexData[CPV * v + 4] = t / 2;
+            vertexData[CPV * v + 6] = t / 2 + .5f;
+          } else {
+            vertexData[CPV * v + 4] = t;
+            vertexData[CPV * v + 6] = t;
+          }
+          v++;
+        }
+      }
+
+      // Split each quad into 2 triangles. The indices of each quarter of the face are contiguous so
+      // it can be culled.
+      int half = subdivisions / 2;
+      for (int quarter = 0; quarter < 4; ++quarter) {
+        int rowStart = (quarter / 2) * half;
+        int columnStart = (quarter % 2) * half;
+        for (int quad = 0; quad < half * half; ++quad) {
+          int j = rowStart + quad / half;
+          int i = columnStart + quad % half;
+          int highLeft = firstVertex + j * (subdivisions + 1) + i;
+          int lowLeft = highLeft + subdivisions + 1;
+          indexData[n++] = (short) lowLeft;
+          indexData[n++] = (short) highLeft;
+          indexData[n++] = (short) (lowLeft + 1);
+          indexData[n++] = (short) (lowLeft + 1);
+          indexData[n++] = (short) highLeft;
+          indexData[n++] = (short) (highLeft + 1);
+        }
+      }
+    }
+
+    FloatBuffer vertices = Utils.createBuffer(vertexData);
+    ShortBuffer indices = ByteBuffer.allocateDirect(indexData.length * Utils.BYTES_PER_SHORT)
+        .order(ByteOrder.nativeOrder())
+        .asShortBuffer();
+    indices.put(indexData).position(0);
+    SpherePatches patches =
+        SpherePatches.createUniform(radius, faces.length * 4, indicesPerFace / 4);
+    patches.computeCones(vertices, CPV, indices);
+    return new Mesh(vertices, indices, indexData.length, GLES20.GL_UNSIGNED_SHORT, patches);
+  }
+
+  /** Returns true if mediaFormat is one of the MEDIA_* values. */
+  public static boolean isValidMediaFormat(int mediaFormat) {
+    return mediaFormat >= MEDIA_MONOSCOPIC && mediaFormat <= MEDIA_EAC_STEREO_TOP_BOTTOM;
+  }
+
+  /** Returns true if mediaFormat requires a mesh from {@link #createCubemap}. */
+  public static boolean isCubemap(int mediaFormat) {
+    return mediaFormat >= MEDIA_CUBEMAP_MONOSCOPIC;
+  }
+
+  /**
+   * Returns how the frame of the given MEDIA_* format is split between the eyes: MEDIA_MONOSCOPIC,
+   * MEDIA_STEREO_LEFT_RIGHT or MEDIA_STEREO_TOP_BOTTOM.
+   */
+  public static int getStereoLayout(int mediaFormat) {
+    return mediaFormat % STEREO_LAYOUTS;
   }
 
   /** Used by static constructors. */
-  private Mesh(float[] vertexData) {
-    vertices = vertexData;
-    vertexBuffer = Utils.createBuffer(vertices);
+  private Mesh(
+      FloatBuffer vertexBuffer,
+      Buffer indexBuffer,
+      int indexCount,
+      int indexType,
+      SpherePatches patches) {
+    this.vertexBuffer = vertexBuffer;
+    this.vertexCount = vertexBuffer.capacity() / CPV;
+    this.indexBuffer = indexBuffer;
+    this.indexCount = indexCount;
+    this.indexType = indexType;
+    this.patches = patches;
+    drawRanges = (patches != null) ? new int[patches.getPatchCount() * 2] : null;
+
+    vertexBufferObject = BufferObject.createVertexBuffer(vertexBuffer);
+    if (indexBuffer != null) {
+      indexBufferObject = BufferObject.createIndexBuffer(
+          indexBuffer,
+          indexType == GLES20.GL_UNSIGNED_SHORT ? Utils.BYTES_PER_SHORT : Utils.BYTES_PER_INT);
+    } else {
+      indexBufferObject = null;
+    }
   }
 
   /**
@@ -208,14 +651,66 @@ public final class Mesh {
    * @param textureId GL_TEXTURE_EXTERNAL_OES used for this mesh.
    */
   /* package */ void glInit(int textureId) {
+    glInit(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+  }
+
+  /**
+   * Finishes initialization of the GL components.
+   *
+   * @param textureTarget GL_TEXTURE_EXTERNAL_OES for video or GL_TEXTURE_2D for still images.
+   * @param textureId texture used for this mesh. The mesh deletes it in {@link #glShutdown()}.
+   */
+  /* package */ void glInit(int textureTarget, int textureId) {
+    this.textureTarget = textureTarget;
     this.textureId = textureId;
 
-    program = Utils.compileProgram(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE);
+    program = Utils.compileProgram(
+        VERTEX_SHADER_CODE,
+        textureTarget == GLES20.GL_TEXTURE_2D ? FRAGMENT_SHADER_CODE_2D : FRAGMENT_SHADER_CODE);
 
     mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMvpMatrix");
     positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
     texCoordsHandle = GLES20.glGetAttribLocation(program, "aTexCoords");
     textureHandle = GLES20.glGetUniformLocation(program, "uTexture");
+
+    glInitGeometry();
+  }
+
+  /**
+   * Finishes initialization of the GL components for a tile pyramid. The caller owns the
+   * {@link VirtualTexture}, initializes it & shuts it down.
+   */
+  /* package */ void glInit(VirtualTexture virtualTexture) {
+    this.virtualTexture = virtualTexture;
+    textureTarget = GLES20.GL_TEXTURE_2D;
+    program = Utils.compileProgram(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE_VIRTUAL);
+
+    mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMvpMatrix");
+    positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+    texCoordsHandle = GLES20.glGetAttribLocation(program, "aTexCoords");
+    textureHandle = GLES20.glGetUniformLocation(program, "uTexture");
+    indirectionHandle = GLES20.glGetUniformLocation(program, "uIndirection");
+    imageSizeHandle = GLES20.glGetUniformLocation(program, "uImageSize");
+    indirectionScaleHandle = GLES20.glGetUniformLocation(program, "uIndirectionScale");
+    tileSizeHandle = GLES20.glGetUniformLocation(program, "uTileSize");
+    glInitGeometry();
+  }
+
+  private void glInitGeometry() {
+    // Upload the static geometry once rather than on every draw call.
+    vertexBufferObject.glInit();
+    if (indexBufferObject != null) {
+      indexBufferObject.glInit();
+    }
+  }
+
+  /**
+   * Replaces the mesh's texture with another one of the same target, e.g., when a streamed image
+   * is complete. The previous texture is deleted.
+   */
+  /* package */ void glReplaceTexture(int textureId) {
+    GLES20.glDeleteTextures(1, new int[]{this.textureId}, 0);
+    this.textureId = textureId;
   }
 
   /**
@@ -223,52 +718,93 @@ public final class Mesh {
    *
    * @param mvpMatrix The Model View Projection matrix.
    * @param eyeType An {@link Eye.Type} value.
+   * @param glState Tracks the GL state shared with the rest of the scene.
    */
-  /* package */ void glDraw(float[] mvpMatrix, int eyeType) {
+  /* package */ void glDraw(float[] mvpMatrix, int eyeType, GlStateCache glState) {
     // Configure shader.
-    GLES20.glUseProgram(program);
+    glState.glUseProgram(program);
     checkGlError();
 
-    GLES20.glEnableVertexAttribArray(positionHandle);
-    GLES20.glEnableVertexAttribArray(texCoordsHandle);
+    glState.glEnableVertexAttribArrays(
+        GlStateCache.attribBit(positionHandle) | GlStateCache.attribBit(texCoordsHandle));
     checkGlError();
 
     GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
-    GLES20.glUniform1i(textureHandle, 0);
+    if (virtualTexture != null) {
+      glBindVirtualTexture(glState);
+    } else {
+      glState.glActiveTexture(GLES20.GL_TEXTURE0);
+      glState.glBindTexture(textureTarget, textureId);
+      GLES20.glUniform1i(textureHandle, 0);
+    }
     checkGlError();
 
-    // Load position data.
-    vertexBuffer.position(0);
+    // Load position data from the buffer object.
+    vertexBufferObject.glBind(glState);
     GLES20.glVertexAttribPointer(
         positionHandle,
         POSITION_COORDS_PER_VERTEX,
         GLES20.GL_FLOAT,
         false,
         VERTEX_STRIDE_BYTES,
-        vertexBuffer);
+        0);
     checkGlError();
 
     // Load texture data. Eye.Type.RIGHT uses the left eye's data.
     int textureOffset =
         (eyeType == Eye.Type.RIGHT) ? POSITION_COORDS_PER_VERTEX + 2 : POSITION_COORDS_PER_VERTEX;
-    vertexBuffer.position(textureOffset);
     GLES20.glVertexAttribPointer(
         texCoordsHandle,
         TEXTURE_COORDS_PER_VERTEX,
         GLES20.GL_FLOAT,
         false,
         VERTEX_STRIDE_BYTES,
-        vertexBuffer);
+        textureOffset * Utils.BYTES_PER_FLOAT);
     checkGlError();
 
     // Render.
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, vertices.length / CPV);
+    if (patches != null) {
+      // Only draw the patches that can be visible. The planes are extracted in the mesh's space so
+      // no matrix inversion is needed.
+      indexBufferObject.glBind(glState);
+      SpherePatches.extractFrustumPlanes(mvpMatrix, frustumPlanes);
+      int rangeCount = patches.cull(frustumPlanes, drawRanges);
+      int bytesPerIndex =
+          (indexType == GLES20.GL_UNSIGNED_SHORT) ? Utils.BYTES_PER_SHORT : Utils.BYTES_PER_INT;
+      for (int i = 0; i < rangeCount; ++i) {
+        GLES20.glDrawElements(
+            GLES20.GL_TRIANGLES,
+            drawRanges[i * 2 + 1],
+            indexType,
+            drawRanges[i * 2] * bytesPerIndex);
+      }
+    } else if (indexBufferObject != null) {
+      indexBufferObject.glBind(glState);
+      GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCount, indexType, 0);
+    } else {
+      GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, vertexCount);
+    }
     checkGlError();
+  }
+
+  private void glBindVirtualTexture(GlStateCache glState) {
+    TilePyramid pyramid = virtualTexture.getPyramid();
+    glState.glActiveTexture(GLES20.GL_TEXTURE0);
+    glState.glBindTexture(GLES20.GL_TEXTURE_2D, virtualTexture.getAtlasTextureId());
+    glState.glActiveTexture(GLES20.GL_TEXTURE1);
+    glState.glBindTexture(GLES20.GL_TEXTURE_2D, virtualTexture.getIndirectionTextureId());
+    GLES20.glUniform1i(textureHandle, 0);
+    GLES20.glUniform1i(indirectionHandle, 1);
 
-    GLES20.glDisableVertexAttribArray(positionHandle);
-    GLES20.glDisableVertexAttribArray(texCoordsHandle);
+    // The indirection texture has an entry per level 0 tile. The last row & column of tiles are
+    // usually partial so the image only covers part of it.
+    int tileSize = pyramid.getTileSize();
+    GLES20.glUniform2f(imageSizeHandle, pyramid.getWidth(), pyramid.getHeight());
+    GLES20.glUniform2f(indirectionScaleHandle,
+        (float) pyramid.getWidth() / (tileSize * pyramid.getColumns(0)),
+        (float) pyramid.getHeight() / (tileSize * pyramid.getRows(0)));
+    GLES20.glUniform3f(tileSizeHandle,
+        tileSize, pyramid.getStoredTileSize(), 1f / virtualTexture.getAtlasSize());
   }
 
   /** Cleans up the GL resources. */
@@ -277,5 +813,239 @@ public final class Mesh {
       GLES20.glDeleteProgram(program);
       GLES20.glDeleteTextures(1, new int[]{textureId}, 0);
     }
+    vertexBufferObject.glShutdown();
+    if (indexBufferObject != null) {
+      indexBufferObject.glShutdown();
+    }
+  }
+
+  /** Returns 3D position + left 2D texture UV + right 2D texture UV for each vertex. */
+  /* package */ FloatBuffer getVertexBuffer() {
+    return vertexBuffer;
+  }
+
+  /** Returns a ShortBuffer or IntBuffer of triangle indices, or null if the mesh isn't indexed. */
+  /* package */ Buffer getIndexBuffer() {
+    return indexBuffer;
+  }
+
+  /** Returns the patches used for culling, or null if the whole mesh is always drawn. */
+  /* package */ SpherePatches getPatches() {
+    return patches;
+  }
+
+  /** Identifies a sphere configuration in the cache used by createIndexedUvSphere. */
+  private static final class SphereKey {
+    private final float radius;
+    private final int latitudes;
+    private final int longitudes;
+    private final float verticalFovDegrees;
+    private final float horizontalFovDegrees;
+    private final int mediaFormat;
+
+    SphereKey(
+        float radius,
+        int latitudes,
+        int longitudes,
+        float verticalFovDegrees,
+        float horizontalFovDegrees,
+        int mediaFormat) {
+      this.radius = radius;
+      this.latitudes = latitudes;
+      this.longitudes = longitudes;
+      this.verticalFovDegrees = verticalFovDegrees;
+      this.horizontalFovDegrees = horizontalFovDegrees;
+      this.mediaFormat = mediaFormat;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof SphereKey)) {
+        return false;
+      }
+      SphereKey other = (SphereKey) o;
+      return Float.compare(radius, other.radius) == 0
+          && latitudes == other.latitudes
+          && longitudes == other.longitudes
+          && Float.compare(verticalFovDegrees, other.verticalFovDegrees) == 0
+          && Float.compare(horizontalFovDegrees, other.horizontalFovDegrees) == 0
+          && mediaFormat == other.mediaFormat;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = Float.floatToIntBits(radius);
+      result = 31 * result + latitudes;
+      result = 31 * result + longitudes;
+      result = 31 * result + Float.floatToIntBits(verticalFovDegrees);
+      result = 31 * result + Float.floatToIntBits(horizontalFovDegrees);
+      result = 31 * result + mediaFormat;
+      return result;
+    }
+  }
+
+  /** Immutable vertex & index data shared by all Meshes created from the same SphereKey. */
+  /* package */ static final class SphereGeometry {
+    final FloatBuffer vertices;
+    final Buffer indices;
+    final int indexType;
+    final SpherePatches patches;
+
+    SphereGeometry(FloatBuffer vertices, Buffer indices, int indexType, SpherePatches patches) {
+      this.vertices = vertices;
+      this.indices = indices;
+      this.indexType = indexType;
+      this.patches = patches;
+    }
+  }
+
+  /** Per-row & per-column values used to generate the vertices of an indexed sphere. */
+  private static final class SphereTables {
+    final float[] sinPhi;
+    final float[] cosPhi;
+    // Fraction of the vertical FOV covered by each row.
+    final float[] v;
+    final float[] sinTheta;
+    final float[] cosTheta;
+    // Fraction of the horizontal FOV covered by each column.
+    final float[] u;
+
+    SphereTables(int rows, int columns) {
+      sinPhi = new float[rows];
+      cosPhi = new float[rows];
+      v = new float[rows];
+      sinTheta = new float[columns];
+      cosTheta = new float[columns];
+      u = new float[columns];
+    }
+
+    int rows() {
+      return v.length;
+    }
+
+    int columns() {
+      return u.length;
+    }
+  }
+
+  /**
+   * Fills the vertices in rows [rowStart, rowEnd) and the indices of the bands between them.
+   *
+   * <p>Each task writes to a disjoint range of the buffers using absolute puts, so tasks can run
+   * concurrently without synchronization.
+   */
+  private static final class SphereBandTask extends RecursiveAction {
+    private final SphereTables tables;
+    private final SpherePatches patches;
+    private final float radius;
+    private final int mediaFormat;
+    private final FloatBuffer vertices;
+    // Exactly one of these is non-null.
+    private final ShortBuffer shortIndices;
+    private final IntBuffer intIndices;
+    private final int rowStart;
+    private final int rowEnd;
+
+    SphereBandTask(
+        SphereTables tables,
+        SpherePatches patches,
+        float radius,
+        int mediaFormat,
+        FloatBuffer vertices,
+        ShortBuffer shortIndices,
+        IntBuffer intIndices,
+        int rowStart,
+        int rowEnd) {
+      this.tables = tables;
+      this.patches = patches;
+      this.radius = radius;
+      this.mediaFormat = mediaFormat;
+      this.vertices = vertices;
+      this.shortIndices = shortIndices;
+      this.intIndices = intIndices;
+      this.rowStart = rowStart;
+      this.rowEnd = rowEnd;
+    }
+
+    @Override
+    protected void compute() {
+      if ((rowEnd - rowStart) * tables.columns() > PARALLEL_SPHERE_VERTICES_PER_TASK
+          && rowEnd - rowStart > 1) {
+        int rowMiddle = (rowStart + rowEnd) >>> 1;
+        invokeAll(
+            new SphereBandTask(tables, patches, radius, mediaFormat, vertices, shortIndices,
+                intIndices, rowStart, rowMiddle),
+            new SphereBandTask(tables, patches, radius, mediaFormat, vertices, shortIndices,
+                intIndices, rowMiddle, rowEnd));
+        return;
+      }
+
+      int columns = tables.columns();
+      for (int j = rowStart; j < rowEnd; ++j) {
+        float y = radius * tables.sinPhi[j];
+        float horizontalRadius = radius * tables.cosPhi[j];
+        // The "1 - ..." is due to Canvas vs GL coords.
+        float v = 1 - tables.v[j];
+
+        int offset = CPV * j * columns;
+        for (int i = 0; i < columns; ++i) {
+          // Set vertex position data as Cartesian coordinates.
+          vertices.put(offset, -horizontalRadius * tables.sinTheta[i]);
+          vertices.put(offset + 1, y);
+          vertices.put(offset + 2, horizontalRadius * tables.cosTheta[i]);
+
+          // Texture coordinates match the ones generated by createUvSphere.
+          float u = tables.u[i];
+          if (mediaFormat == MEDIA_STEREO_LEFT_RIGHT) {
+            vertices.put(offset + 3, u / 2);
+            vertices.put(offset + 5, u / 2 + .5f);
+          } else {
+            vertices.put(offset + 3, u);
+            vertices.put(offset + 5, u);
+          }
+
+          if (mediaFormat == MEDIA_STEREO_TOP_BOTTOM) {
+            vertices.put(offset + 4, v / 2);
+            vertices.put(offset + 6, v / 2 + .5f);
+          } else {
+            vertices.put(offset + 4, v);
+            vertices.put(offset + 6, v);
+          }
+          offset += CPV;
+        }
+
+        // Row j is the bottom edge of band j. The top row doesn't start a band.
+        if (j < tables.rows() - 1) {
+          fillBandIndices(j);
+        }
+      }
+    }
+
+    /**
+     * Splits each quad in the band into 2 triangles with the winding used by createUvSphere. Each
+     * quad's indices are placed in its patch.
+     */
+    private void fillBandIndices(int band) {
+      int columns = tables.columns();
+      for (int i = 0; i < columns - 1; ++i) {
+        int n = patches.getIndexPosition(band, i);
+        int lowLeft = band * columns + i;
+        int highLeft = lowLeft + columns;
+        putIndex(n++, lowLeft);
+        putIndex(n++, highLeft);
+        putIndex(n++, lowLeft + 1);
+        putIndex(n++, lowLeft + 1);
+        putIndex(n++, highLeft);
+        putIndex(n++, highLeft + 1);
+      }
+    }
+
+    private void putIndex(int position, int index) {
+      if (shortIndices != null) {
+        shortIndices.put(position, (short) index);
+      } else {
+        intIndices.put(position, index);
+      }
+    }
   }
 }
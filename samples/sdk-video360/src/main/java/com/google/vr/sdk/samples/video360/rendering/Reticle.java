@@ -21,6 +21,7 @@ import static com.google.vr.sdk.samples.video360.rendering.Utils.checkGlError;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 import com.google.vr.sdk.controller.Orientation;
+import com.google.vr.sdk.samples.common.gl.GlStateCache;
 import java.nio.FloatBuffer;
 
 /**
@@ -81,6 +82,8 @@ final class Reticle {
       SIZE,  SIZE, -DISTANCE,
   };
   private static final FloatBuffer vertexBuffer = Utils.createBuffer(vertexData);
+  // GPU copy of vertexData. This is only valid after glInit().
+  private final BufferObject vertexBufferObject = BufferObject.createVertexBuffer(vertexBuffer);
 
   // The reticle doesn't have a real modelMatrix. Its distance is baked into the mesh and it
   // uses a rotation matrix when rendered.
@@ -96,6 +99,8 @@ final class Reticle {
     mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMvpMatrix");
     positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
     checkGlError();
+
+    vertexBufferObject.glInit();
   }
 
   /**
@@ -103,10 +108,11 @@ final class Reticle {
    *
    * @param viewProjectionMatrix Scene's view projection matrix.
    * @param orientation Rotation matrix derived from {@link Orientation#toRotationMatrix(float[])}.
+   * @param glState Tracks the GL state shared with the rest of the scene.
    */
-  public void glDraw(float[] viewProjectionMatrix, float[] orientation) {
+  public void glDraw(float[] viewProjectionMatrix, float[] orientation, GlStateCache glState) {
     // Configure shader.
-    GLES20.glUseProgram(program);
+    glState.glUseProgram(program);
     checkGlError();
 
     Matrix.multiplyMM(modelViewProjectionMatrix, 0, viewProjectionMatrix, 0, orientation, 0);
@@ -114,23 +120,21 @@ final class Reticle {
     checkGlError();
 
     // Render quad.
-    GLES20.glEnableVertexAttribArray(positionHandle);
+    glState.glEnableVertexAttribArrays(GlStateCache.attribBit(positionHandle));
     checkGlError();
 
-    vertexBuffer.position(0);
+    vertexBufferObject.glBind(glState);
     GLES20.glVertexAttribPointer(
         positionHandle,
         COORDS_PER_VERTEX,
         GLES20.GL_FLOAT,
         false,
         0,
-        vertexBuffer);
+        0);
     checkGlError();
 
     GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, vertexData.length / COORDS_PER_VERTEX);
     checkGlError();
-
-    GLES20.glDisableVertexAttribArray(positionHandle);
   }
 
   /** Frees GL resources. */
@@ -138,5 +142,6 @@ final class Reticle {
     if (program != 0) {
       GLES20.glDeleteProgram(program);
     }
+    vertexBufferObject.glShutdown();
   }
 }
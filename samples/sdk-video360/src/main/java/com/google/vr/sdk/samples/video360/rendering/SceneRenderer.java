@@ -18,10 +18,10 @@ package com.google.vr.sdk.samples.video360.rendering;
 
 import static com.google.vr.sdk.samples.video360.rendering.Utils.checkGlError;
 
-import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.PointF;
-import android.graphics.SurfaceTexture;
 import android.graphics.SurfaceTexture.OnFrameAvailableListener;
+import android.graphics.SurfaceTexture;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 import android.os.Handler;
@@ -32,66 +32,112 @@ import android.support.annotation.BinderThread;
 import android.support.annotation.MainThread;
 import android.support.annotation.Nullable;
 import android.util.Log;
-import android.util.Pair;
 import android.view.InputDevice;
 import android.view.MotionEvent;
 import android.view.Surface;
-import android.view.ViewGroup;
+import android.view.View;
+import com.google.vr.sdk.base.Eye;
 import com.google.vr.sdk.controller.Orientation;
-import com.google.vr.sdk.samples.video360.VideoUiView;
+import com.google.vr.sdk.samples.common.android.GlTimerQueryProvider;
+import com.google.vr.sdk.samples.common.android.GlesStateGl;
+import com.google.vr.sdk.samples.common.android.LogcatProfileLogger;
+import com.google.vr.sdk.samples.common.concurrent.MatrixExchange;
+import com.google.vr.sdk.samples.common.gl.GlStateCache;
+import com.google.vr.sdk.samples.common.profiling.FrameProfiler;
+import com.google.vr.sdk.samples.common.profiling.GpuTimer;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Controls and renders the GL Scene.
  *
  * <p>This class is shared between MonoscopicView & VrVideoActivity. It renders the display mesh, UI
  * and controller reticle as required. It also has basic Controller input which allows the user to
- * interact with {@link VideoUiView} while in VR.
+ * interact with the UI View while in VR.
  */
 public final class SceneRenderer {
   private static final String TAG = "SceneRenderer";
-
-  // This is the primary interface between the Media Player and the GL Scene.
-  private SurfaceTexture displayTexture;
+  // GPU passes timed by gpuTimer.
+  private static final int GPU_PASS_MESH = 0;
+  private static final int GPU_PASS_UI = 1;
+  private static final int GPU_PASS_RETICLE = 2;
+  private static final String[] GPU_PASS_NAMES = {"mesh", "ui", "reticle"};
+  // Time each frame spends uploading a streamed image. This leaves most of a 60 Hz vsync period for
+  // rendering. Larger budgets load images sooner.
+  private static final long UPLOAD_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(3);
+
+  // The GL thread never takes a lock that other threads hold. Each value written by another thread
+  // is published through an atomic or volatile field with a single writer.
+
+  // This is the primary interface between the Media Player and the GL Scene. It is created on the
+  // GL thread and read by createDisplay().
+  private volatile SurfaceTexture displayTexture;
   private final AtomicBoolean frameAvailable = new AtomicBoolean();
-  // Used to notify clients that displayTexture has a new frame. This requires synchronized access.
+  // Used to notify clients that displayTexture has a new frame.
   @Nullable
-  private OnFrameAvailableListener externalFrameListener;
+  private volatile OnFrameAvailableListener externalFrameListener;
 
   // GL components for the mesh that display the media. displayMesh should only be accessed on the
-  // GL Thread, but requestedDisplayMesh needs synchronization.
+  // GL Thread. requestedDisplay is set by createDisplay() or setDisplayImage() and consumed by the
+  // GL thread.
   @Nullable
   private Mesh displayMesh;
-  @Nullable
-  private Mesh requestedDisplayMesh;
+  private final AtomicReference<DisplayRequest> requestedDisplay = new AtomicReference<>();
   private int displayTexId;
+  // A still image that is being uploaded while its proxy is displayed. Only used on the GL thread.
+  @Nullable
+  private StreamingImageTexture streamingImage;
+  // A tile pyramid whose tiles are paged in around viewDirection. Only used on the GL thread.
+  @Nullable
+  private VirtualTexture virtualTexture;
+  // View direction of the previous frame's first eye in world space.
+  private final float[] viewDirection = {0, 0, -1};
+  private final FrameUploadBudget uploadBudget =
+      new FrameUploadBudget(UPLOAD_BUDGET_NANOS, FrameProfiler.SYSTEM_CLOCK);
+  // GL_MAX_TEXTURE_SIZE. Set by glInit() and read by createDisplay()'s callers.
+  private volatile int maxTextureSize;
 
   // These are only valid if createForVR() has been called. In the 2D Activity, these are null
   // since the UI is rendered in the standard Android layout.
   @Nullable
   private final CanvasQuad canvasQuad;
   @Nullable
-  private final VideoUiView videoUiView;
+  private final View uiView;
   @Nullable
   private final Handler uiHandler;
 
   // Controller components.
   private final Reticle reticle = new Reticle();
   @Nullable
-  private Orientation controllerOrientation;
-  // This is accessed on the binder & GL Threads.
+  private volatile Orientation controllerOrientation;
+  // Latest controller rotation published by the binder thread.
+  private final MatrixExchange controllerMatrixExchange = new MatrixExchange();
+  // Scratch matrix for the binder thread.
+  private final float[] pendingControllerMatrix = new float[16];
+  // Consistent copy of the controller rotation used by the GL thread for the current frame.
   private final float[] controllerOrientationMatrix = new float[16];
 
+  // Skips redundant GL state changes made by the scene's components. Only used on the GL thread.
+  private final GlStateCache glState = GlesStateGl.createCache();
+  // Only accessed on the GL thread.
+  private final FrameProfiler frameProfiler = new FrameProfiler();
+  private final FrameProfiler.Logger profileLogger = new LogcatProfileLogger(TAG);
+  // Each pass runs once per eye.
+  private final GpuTimer gpuTimer =
+      new GpuTimer(new GlTimerQueryProvider(), GPU_PASS_NAMES, 2 * GPU_PASS_NAMES.length);
+
   /**
    * Constructs the SceneRenderer with the given values.
    */
   /* package */ SceneRenderer(
-      CanvasQuad canvasQuad, VideoUiView videoUiView, Handler uiHandler,
+      CanvasQuad canvasQuad, View uiView, Handler uiHandler,
       SurfaceTexture.OnFrameAvailableListener externalFrameListener) {
     this.canvasQuad = canvasQuad;
-    this.videoUiView = videoUiView;
+    this.uiView = uiView;
     this.uiHandler = uiHandler;
     this.externalFrameListener = externalFrameListener;
+    frameProfiler.setGpuTimer(gpuTimer);
   }
 
   /**
@@ -106,24 +152,20 @@ public final class SceneRenderer {
    * Creates a SceneRenderer for VR but does not initialize it. {@link #glInit()} is used to finish
    * initializing the object on the GL thread.
    *
-   * <p>The also creates a {@link VideoUiView} that is bound to the VR scene. The View is backed by
-   * a {@link CanvasQuad} and is meant to be rendered in a VR scene.
+   * <p>The View is rendered on the {@link CanvasQuad}, which the caller must already have bound to
+   * it, e.g., with VideoUiView.createForOpenGl. Controller clicks on the quad are dispatched to the
+   * View as touch events.
    *
-   * @param context the {@link Context} used to initialize the {@link VideoUiView}
-   * @param parent the new view is attached to the parent in order to properly handle Android
-   *     events
-   * @return a SceneRender configured for VR and a bound {@link VideoUiView} that can be treated
-   *     similar to a View returned from findViewById.
+   * @param canvasQuad the quad that draws uiView in the VR scene
+   * @param uiView the View that is drawn on canvasQuad
+   * @param frameListener optionally notified when the display has a new video frame, e.g., to
+   *     update the View's seek bar
    */
   @MainThread
-  public static Pair<SceneRenderer, VideoUiView> createForVR(Context context, ViewGroup parent) {
-    CanvasQuad canvasQuad = new CanvasQuad();
-    VideoUiView videoUiView = VideoUiView.createForOpenGl(context, parent, canvasQuad);
-    OnFrameAvailableListener externalFrameListener = videoUiView.getFrameListener();
-
-    SceneRenderer scene = new SceneRenderer(
-        canvasQuad, videoUiView, new Handler(Looper.getMainLooper()), externalFrameListener);
-    return Pair.create(scene, videoUiView);
+  public static SceneRenderer createForVR(
+      CanvasQuad canvasQuad, View uiView, @Nullable OnFrameAvailableListener frameListener) {
+    return new SceneRenderer(
+        canvasQuad, uiView, new Handler(Looper.getMainLooper()), frameListener);
   }
 
   /**
@@ -138,6 +180,10 @@ public final class SceneRenderer {
     GLES20.glClearColor(0.5f, 0.5f, 0.5f, 1.0f);
     checkGlError();
 
+    int[] maxSize = new int[1];
+    GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, maxSize, 0);
+    maxTextureSize = maxSize[0];
+
     // Create the texture used to render each frame of video.
     displayTexId = Utils.glCreateExternalTexture();
     displayTexture = new SurfaceTexture(displayTexId);
@@ -150,10 +196,9 @@ public final class SceneRenderer {
           public void onFrameAvailable(SurfaceTexture surfaceTexture) {
             frameAvailable.set(true);
 
-            synchronized (SceneRenderer.this) {
-              if (externalFrameListener != null) {
-                externalFrameListener.onFrameAvailable(surfaceTexture);
-              }
+            OnFrameAvailableListener listener = externalFrameListener;
+            if (listener != null) {
+              listener.onFrameAvailable(surfaceTexture);
             }
           }
         });
@@ -162,6 +207,16 @@ public final class SceneRenderer {
       canvasQuad.glInit();
     }
     reticle.glInit();
+    gpuTimer.glInit();
+  }
+
+  /**
+   * Returns the largest width & height of a display created by {@link #createDisplay}, or 0 before
+   * {@link #glInit()} completes.
+   */
+  @AnyThread
+  public int getMaxTextureSize() {
+    return maxTextureSize;
   }
 
   /**
@@ -173,18 +228,77 @@ public final class SceneRenderer {
    * @return a Surface that can be passed to {@link android.media.MediaPlayer#setSurface(Surface)}
    */
   @AnyThread
-  public synchronized @Nullable Surface createDisplay(int width, int height, Mesh mesh) {
+  public @Nullable Surface createDisplay(int width, int height, Mesh mesh) {
+    SurfaceTexture displayTexture = this.displayTexture;
     if (displayTexture == null) {
       Log.e(TAG, ".createDisplay called before GL Initialization completed.");
       return null;
     }
 
-    requestedDisplayMesh = mesh;
+    requestDisplay(new DisplayRequest(mesh, null, null, null, null));
 
     displayTexture.setDefaultBufferSize(width, height);
     return new Surface(displayTexture);
   }
 
+  /**
+   * Displays a still image on the given Mesh. Unlike {@link #createDisplay}, the image is uploaded
+   * to a mipmapped GL_TEXTURE_2D on the GL thread. This avoids a software copy into a Surface and
+   * the shimmering of an unfiltered GL_TEXTURE_EXTERNAL_OES, but the upload blocks the GL thread.
+   *
+   * @param image decoded image. It is passed to the releaser after the upload.
+   * @param releaser takes back the image once SceneRenderer no longer needs it
+   * @param mesh {@link Mesh} used to display the image
+   */
+  @AnyThread
+  public void setDisplayImage(Bitmap image, ImageReleaser releaser, Mesh mesh) {
+    requestDisplay(new DisplayRequest(mesh, image, releaser, null, null));
+  }
+
+  /**
+   * Displays a low resolution proxy image on the given Mesh while a full resolution image is
+   * streamed into a texture. The GL thread uploads the streamed image's bands within a small
+   * per-frame budget and switches to it once it's complete.
+   *
+   * @param proxy decoded proxy image. It is passed to the releaser after the upload.
+   * @param releaser takes back the proxy once SceneRenderer no longer needs it
+   * @param image texture which the caller fills in on a background thread
+   * @param mesh {@link Mesh} used to display the image
+   */
+  @AnyThread
+  public void setStreamingDisplayImage(
+      Bitmap proxy, ImageReleaser releaser, StreamingImageTexture image, Mesh mesh) {
+    requestDisplay(new DisplayRequest(mesh, proxy, releaser, image, null));
+  }
+
+  /**
+   * Displays a tile pyramid on the given Mesh. Only the tiles around the view are kept in GPU
+   * memory. They are loaded in the background and uploaded within the same per-frame budget as
+   * streamed images.
+   *
+   * @param texture pyramid whose coarsest level is loaded. SceneRenderer shuts it down.
+   * @param mesh monoscopic {@link Mesh} used to display the pyramid
+   */
+  @AnyThread
+  public void setVirtualDisplay(VirtualTexture texture, Mesh mesh) {
+    requestDisplay(new DisplayRequest(mesh, null, null, null, texture));
+  }
+
+  private void requestDisplay(DisplayRequest request) {
+    // If a previous request hasn't been consumed yet, it is replaced. That Mesh was never
+    // initialized so it doesn't own any GL resources.
+    DisplayRequest previous = requestedDisplay.getAndSet(request);
+    if (previous != null) {
+      previous.releaseImage();
+      if (previous.streamingImage != null) {
+        previous.streamingImage.cancel();
+      }
+      if (previous.virtualTexture != null) {
+        previous.virtualTexture.cancel();
+      }
+    }
+  }
+
   /**
    * Configures any late-initialized components.
    *
@@ -194,15 +308,12 @@ public final class SceneRenderer {
    *
    * @return true if the scene is ready to be drawn
    */
-  private synchronized boolean glConfigureScene() {
-    if (displayMesh == null && requestedDisplayMesh == null) {
-      // The scene isn't ready and we don't have enough information to configure it.
-      return false;
-    }
-
-    // The scene is ready and we don't need to change it so we can glDraw it.
-    if (requestedDisplayMesh == null) {
-      return true;
+  private boolean glConfigureScene() {
+    DisplayRequest request = requestedDisplay.getAndSet(null);
+    if (request == null) {
+      // If displayMesh is null, the scene isn't ready and we don't have enough information to
+      // configure it. Otherwise, the scene is ready and we don't need to change it.
+      return displayMesh != null;
     }
 
     // Configure or reconfigure the scene.
@@ -210,25 +321,102 @@ public final class SceneRenderer {
       // Reconfiguration.
       displayMesh.glShutdown();
     }
+    if (streamingImage != null) {
+      streamingImage.glShutdown();
+      streamingImage = null;
+    }
+    if (virtualTexture != null) {
+      virtualTexture.glShutdown();
+      virtualTexture = null;
+    }
 
-    displayMesh = requestedDisplayMesh;
-    requestedDisplayMesh = null;
-    displayMesh.glInit(displayTexId);
+    displayMesh = request.mesh;
+    if (request.virtualTexture != null) {
+      virtualTexture = request.virtualTexture;
+      virtualTexture.glInit();
+      displayMesh.glInit(virtualTexture);
+      uploadBudget.reset();
+    } else if (request.image != null) {
+      long startNanos = System.nanoTime();
+      ImageTexture texture =
+          new ImageTexture(request.image.getWidth(), request.image.getHeight());
+      BitmapTextureGl textureGl = new BitmapTextureGl(request.image);
+      int textureId = texture.glUpload(textureGl);
+      request.releaseImage();
+      displayMesh.glInit(GLES20.GL_TEXTURE_2D, textureId);
+      Log.i(TAG, "Uploaded " + texture + " image in "
+          + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms");
+    } else {
+      displayMesh.glInit(displayTexId);
+    }
+    if (request.streamingImage != null) {
+      streamingImage = request.streamingImage;
+      streamingImage.glInit();
+      uploadBudget.reset();
+    }
 
     return true;
   }
 
+  /** Uploads part of the streamed image and displays it once it's complete. */
+  private void glUpdateStreamingImage() {
+    if (streamingImage == null) {
+      return;
+    }
+    uploadBudget.glRunFrame(streamingImage);
+    if (streamingImage.isComplete()) {
+      displayMesh.glReplaceTexture(streamingImage.glReleaseTexture());
+      Log.i(TAG, "Streamed " + streamingImage + ": " + uploadBudget);
+      streamingImage.glShutdown();
+      streamingImage = null;
+    }
+  }
+
+  /** Pages in the tiles of the virtual texture around the previous frame's view direction. */
+  private void glUpdateVirtualTexture() {
+    if (virtualTexture == null) {
+      return;
+    }
+    virtualTexture.glUpdate(viewDirection[0], viewDirection[1], viewDirection[2], uploadBudget);
+  }
+
   /**
-   * Draws the scene with a given eye pose and type.
+   * Draws the scene with a given eye pose and type. This is a convenience for clients that render a
+   * single view per frame. Stereo clients should use {@link #glBeginFrame()} so the per-frame work
+   * is only done once for both eyes.
    *
    * @param viewProjectionMatrix 16 element GL matrix.
    * @param eyeType an {@link com.google.vr.sdk.base.Eye.Type} value
    */
   public void glDrawFrame(float[] viewProjectionMatrix, int eyeType) {
-    if (!glConfigureScene()) {
-      // displayMesh isn't ready.
+    if (!glBeginFrame()) {
       return;
     }
+    glDrawEye(viewProjectionMatrix, eyeType);
+    glEndFrame();
+  }
+
+  /**
+   * Prepares the scene for a new frame. This configures the scene, clears the framebuffer, updates
+   * the video texture and sets up the state shared by all eyes. If this returns true, the caller
+   * must call {@link #glDrawEye} for each eye followed by {@link #glEndFrame()}.
+   *
+   * @return false if the scene isn't ready to be drawn
+   */
+  public boolean glBeginFrame() {
+    if (!glConfigureScene()) {
+      // displayMesh isn't ready. glEndFrame() won't be called, so the frame isn't measured.
+      return false;
+    }
+    frameProfiler.beginFrame();
+    frameProfiler.beginStage(FrameProfiler.STAGE_DRAW);
+    // These bind textures so they run before the GL state cache is reset for the frame.
+    glUpdateStreamingImage();
+    glUpdateVirtualTexture();
+
+    // The GVR SDK can modify GL state between frames, so state is only cached within a frame.
+    glState.glBeginFrame();
+    gpuTimer.glBeginFrame();
 
     // glClear isn't strictly necessary when rendering fully spherical panoramas, but it can improve
     // performance on tiled renderers by causing the GPU to discard previous data.
@@ -236,20 +424,82 @@ public final class SceneRenderer {
     checkGlError();
 
     // The uiQuad uses alpha.
-    GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-    GLES20.glEnable(GLES20.GL_BLEND);
+    glState.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    glState.glEnable(GLES20.GL_BLEND);
 
     if (frameAvailable.compareAndSet(true, false)) {
       displayTexture.updateTexImage();
+      glState.invalidateTextureBindings();
       checkGlError();
     }
 
-    displayMesh.glDraw(viewProjectionMatrix, eyeType);
-    if (videoUiView != null) {
-      canvasQuad.glDraw(viewProjectionMatrix, videoUiView.getAlpha());
+    // Both eyes use the same controller pose.
+    controllerMatrixExchange.read(controllerOrientationMatrix, 0);
+    return true;
+  }
+
+  /**
+   * Draws the scene for one eye. This must be called between {@link #glBeginFrame()} and
+   * {@link #glEndFrame()}. The caller is responsible for setting the viewport.
+   *
+   * @param viewProjectionMatrix 16 element GL matrix.
+   * @param eyeType an {@link com.google.vr.sdk.base.Eye.Type} value
+   */
+  public void glDrawEye(float[] viewProjectionMatrix, int eyeType) {
+    if (virtualTexture != null && eyeType != Eye.Type.RIGHT) {
+      // The clip space w of a perspective projection is the distance along the view direction, so
+      // the last row of the matrix is the view direction in world space.
+      float x = viewProjectionMatrix[3];
+      float y = viewProjectionMatrix[7];
+      float z = viewProjectionMatrix[11];
+      float length = Matrix.length(x, y, z);
+      if (length > 0) {
+        viewDirection[0] = x / length;
+        viewDirection[1] = y / length;
+        viewDirection[2] = z / length;
+      }
+    }
+
+    gpuTimer.glBeginPass(GPU_PASS_MESH);
+    displayMesh.glDraw(viewProjectionMatrix, eyeType, glState);
+    if (uiView != null) {
+      gpuTimer.glBeginPass(GPU_PASS_UI);
+      canvasQuad.glDraw(viewProjectionMatrix, uiView.getAlpha(), glState);
     }
 
-    reticle.glDraw(viewProjectionMatrix, controllerOrientationMatrix);
+    gpuTimer.glBeginPass(GPU_PASS_RETICLE);
+    reticle.glDraw(viewProjectionMatrix, controllerOrientationMatrix, glState);
+    gpuTimer.glEndPass();
+  }
+
+  /** Restores the GL state expected by other renderers after all eyes have been drawn. */
+  public void glEndFrame() {
+    gpuTimer.glEndFrame();
+    glState.glEndFrame();
+    checkGlError();
+    frameProfiler.endFrame();
+    frameProfiler.maybeLog(profileLogger);
+  }
+
+  /**
+   * Returns the CPU timing of the frames drawn by this renderer. The profiler is not thread-safe,
+   * so it should only be queried on the GL thread or configured before the GL thread starts.
+   */
+  public FrameProfiler getFrameProfiler() {
+    return frameProfiler;
+  }
+
+  /**
+   * Returns the number of GL state changes that were issued by the previous frame. This is used for
+   * debugging the renderer's overhead.
+   */
+  public int glGetLastFrameStateChanges() {
+    return glState.getLastFrameIssuedCalls();
+  }
+
+  /** Returns the number of redundant GL state changes skipped by the previous frame. */
+  public int glGetLastFrameSkippedStateChanges() {
+    return glState.getLastFrameSkippedCalls();
   }
 
   /** Cleans up the GL resources. */
@@ -257,22 +507,69 @@ public final class SceneRenderer {
     if (displayMesh != null) {
       displayMesh.glShutdown();
     }
+    if (streamingImage != null) {
+      streamingImage.glShutdown();
+      streamingImage = null;
+    }
+    if (virtualTexture != null) {
+      virtualTexture.glShutdown();
+      virtualTexture = null;
+    }
     if (canvasQuad != null) {
       canvasQuad.glShutdown();
     }
     reticle.glShutdown();
+    gpuTimer.glShutdown();
+  }
+
+  /**
+   * Takes back the still images passed to {@link #setDisplayImage} and {@link
+   * #setStreamingDisplayImage}, e.g., to reuse their memory for the next decode.
+   */
+  public interface ImageReleaser {
+    /** Called on the GL thread after the upload or on any thread if the image is replaced. */
+    void release(Bitmap image);
+  }
+
+  /** A Mesh and the optional still images or tile pyramid displayed on it. */
+  private static final class DisplayRequest {
+    final Mesh mesh;
+    @Nullable final Bitmap image;
+    @Nullable final ImageReleaser imageReleaser;
+    @Nullable final StreamingImageTexture streamingImage;
+    @Nullable final VirtualTexture virtualTexture;
+
+    DisplayRequest(
+        Mesh mesh,
+        @Nullable Bitmap image,
+        @Nullable ImageReleaser imageReleaser,
+        @Nullable StreamingImageTexture streamingImage,
+        @Nullable VirtualTexture virtualTexture) {
+      this.mesh = mesh;
+      this.image = image;
+      this.imageReleaser = imageReleaser;
+      this.streamingImage = streamingImage;
+      this.virtualTexture = virtualTexture;
+    }
+
+    void releaseImage() {
+      if (image != null) {
+        imageReleaser.release(image);
+      }
+    }
   }
 
   /** Updates the Reticle's position with the latest Controller pose. */
   @BinderThread
-  public synchronized void setControllerOrientation(Orientation currentOrientation) {
+  public void setControllerOrientation(Orientation currentOrientation) {
     this.controllerOrientation = currentOrientation;
-    controllerOrientation.toRotationMatrix(controllerOrientationMatrix);
+    currentOrientation.toRotationMatrix(pendingControllerMatrix);
+    controllerMatrixExchange.publish(pendingControllerMatrix, 0);
   }
 
   /**
-   * Processes Daydream Controller clicks and dispatches the event to {@link VideoUiView} as a
-   * synthetic {@link MotionEvent}.
+   * Processes Daydream Controller clicks and dispatches the event to the UI View as a synthetic
+   * {@link MotionEvent}.
    *
    * <p>This is a minimal input system that works because CanvasQuad is a simple rectangle with a
    * hardcoded location. If the quad had a transformation matrix, then those transformations would
@@ -280,7 +577,7 @@ public final class SceneRenderer {
    */
   @MainThread
   public void handleClick() {
-    if (videoUiView.getAlpha() == 0) {
+    if (uiView.getAlpha() == 0) {
       // When the UI is hidden, clicking anywhere will make it visible.
       toggleUi();
       return;
@@ -311,12 +608,12 @@ public final class SceneRenderer {
                 MotionEvent.ACTION_DOWN, clickTarget.x, clickTarget.y,  // The important parts.
                 1, 1, 0, 1, 1, 0, 0);  // Unused config data.
             down.setSource(InputDevice.SOURCE_GAMEPAD);
-            videoUiView.dispatchTouchEvent(down);
+            uiView.dispatchTouchEvent(down);
 
             // Clone the down event but change action.
             MotionEvent up = MotionEvent.obtain(down);
             up.setAction(MotionEvent.ACTION_UP);
-            videoUiView.dispatchTouchEvent(up);
+            uiView.dispatchTouchEvent(up);
           }
         });
   }
@@ -329,10 +626,10 @@ public final class SceneRenderer {
         new Runnable() {
           @Override
           public void run() {
-            if (videoUiView.getAlpha() == 0) {
-              videoUiView.animate().alpha(1).start();
+            if (uiView.getAlpha() == 0) {
+              uiView.animate().alpha(1).start();
             } else {
-              videoUiView.animate().alpha(0).start();
+              uiView.animate().alpha(0).start();
             }
           }
         });
@@ -343,7 +640,7 @@ public final class SceneRenderer {
    * This is used by MonoscopicView to update the video position slider each frame.
    */
   @AnyThread
-  public synchronized void setVideoFrameListener(OnFrameAvailableListener videoFrameListener) {
+  public void setVideoFrameListener(OnFrameAvailableListener videoFrameListener) {
     externalFrameListener = videoFrameListener;
   }
 }
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Splits the index data of a mesh around the viewer into patches and culls them against the view
+ * frustum.
+ *
+ * <p>The indices of each patch are stored contiguously so any set of patches can be drawn with one
+ * glDrawElements call per run of adjacent visible patches. Each patch has a bounding cone with its
+ * apex at the center of the mesh that contains all of its vertices. Since the triangles are flat,
+ * the cone also contains every point of the patch. All vertices must be at the same distance from
+ * the center.
+ *
+ * <p>Instances are immutable once {@link #computeCones} returns and can be shared by several
+ * Meshes.
+ */
+/* package */ final class SpherePatches {
+  // Patches of UV spheres don't span more than this. Larger patches are culled less often while
+  // smaller ones require more draw calls.
+  private static final float MAX_PATCH_DEGREES = 30;
+  private static final int INDICES_PER_QUAD = 6;
+  // The planes of the frustum used for culling: left, right, bottom & top. The near & far planes
+  // are ignored since the mesh is always around the camera.
+  private static final int PLANE_COUNT = 4;
+  /** Size of the array used by {@link #extractFrustumPlanes}. */
+  public static final int FRUSTUM_PLANES_SIZE = PLANE_COUNT * 4;
+
+  private final float radius;
+  // Only set for UV spheres.
+  private final Grid grid;
+  // Per patch data.
+  private final int[] firstIndices;
+  private final int[] indexCounts;
+  private final float[] coneAxes;
+  private final float[] coneCos;
+  private final float[] coneSin;
+  // False for patches whose bounding cone is 90 degrees or wider. These are never culled.
+  private final boolean[] cullable;
+
+  private SpherePatches(float radius, int[] indexCounts, Grid grid) {
+    this.radius = radius;
+    this.indexCounts = indexCounts;
+    this.grid = grid;
+    int patchCount = indexCounts.length;
+    firstIndices = new int[patchCount];
+    for (int p = 1; p < patchCount; ++p) {
+      firstIndices[p] = firstIndices[p - 1] + indexCounts[p - 1];
+    }
+    coneAxes = new float[patchCount * 3];
+    coneCos = new float[patchCount];
+    coneSin = new float[patchCount];
+    cullable = new boolean[patchCount];
+  }
+
+  /**
+   * Creates the patch layout of a sphere generated by {@link Mesh#createIndexedUvSphere}. Patches
+   * are rectangles of quads stored patch row by patch row. Use {@link #getIndexPosition} to place
+   * the indices of each quad.
+   */
+  static SpherePatches createGrid(
+      float radius,
+      int latitudes,
+      int longitudes,
+      float verticalFovDegrees,
+      float horizontalFovDegrees) {
+    Grid grid = new Grid(
+        latitudes,
+        longitudes,
+        Math.min(latitudes, (int) Math.ceil(verticalFovDegrees / MAX_PATCH_DEGREES)),
+        Math.min(longitudes, (int) Math.ceil(horizontalFovDegrees / MAX_PATCH_DEGREES)));
+    int patchRows = grid.firstRows.length - 1;
+    int[] indexCounts = new int[patchRows * grid.patchColumns];
+    for (int p = 0; p < indexCounts.length; ++p) {
+      int row = p / grid.patchColumns;
+      int column = p % grid.patchColumns;
+      indexCounts[p] = (grid.firstRows[row + 1] - grid.firstRows[row])
+          * (grid.firstColumns[column + 1] - grid.firstColumns[column])
+          * INDICES_PER_QUAD;
+    }
+    return new SpherePatches(radius, indexCounts, grid);
+  }
+
+  /** Creates a layout of consecutive patches with the same number of indices, e.g., cube faces. */
+  static SpherePatches createUniform(float radius, int patchCount, int indicesPerPatch) {
+    int[] indexCounts = new int[patchCount];
+    for (int p = 0; p < patchCount; ++p) {
+      indexCounts[p] = indicesPerPatch;
+    }
+    return new SpherePatches(radius, indexCounts, null);
+  }
+
+  /** Returns the number of patches. */
+  public int getPatchCount() {
+    return indexCounts.length;
+  }
+
+  /** Returns the position in the index buffer of the first index of the patch. */
+  /* package */ int getFirstIndex(int patch) {
+    return firstIndices[patch];
+  }
+
+  /** Returns the number of indices of the patch. */
+  /* package */ int getIndexCount(int patch) {
+    return indexCounts[patch];
+  }
+
+  /**
+   * Returns the position in the index buffer of the first index of the given quad of a UV sphere.
+   */
+  public int getIndexPosition(int row, int column) {
+    if (grid == null) {
+      throw new IllegalStateException("Not a UV sphere");
+    }
+    int patchRow = grid.rowPatches[row];
+    int patchColumn = grid.columnPatches[column];
+    int width = grid.firstColumns[patchColumn + 1] - grid.firstColumns[patchColumn];
+    return firstIndices[patchRow * grid.patchColumns + patchColumn]
+        + ((row - grid.firstRows[patchRow]) * width + column - grid.firstColumns[patchColumn])
+            * INDICES_PER_QUAD;
+  }
+
+  /**
+   * Computes the bounding cone of each patch from the vertices it references.
+   *
+   * @param vertices Vertex data. Each vertex starts with its position.
+   * @param stride Number of floats per vertex.
+   * @param indices The mesh's ShortBuffer or IntBuffer of indices.
+   */
+  void computeCones(FloatBuffer vertices, int stride, Buffer indices) {
+    for (int p = 0; p < getPatchCount(); ++p) {
+      int first = firstIndices[p];
+      int last = first + indexCounts[p];
+
+      // The axis points at the average direction of the patch's vertices. Shared vertices are
+      // counted more than once which only shifts the axis slightly.
+      float x = 0;
+      float y = 0;
+      float z = 0;
+      for (int n = first; n < last; ++n) {
+        int offset = getIndex(indices, n) * stride;
+        x += vertices.get(offset);
+        y += vertices.get(offset + 1);
+        z += vertices.get(offset + 2);
+      }
+      float length = (float) Math.sqrt(x * x + y * y + z * z);
+      if (length < 1e-6f * radius) {
+        // The vertices surround the center so no cone with an angle below 90 degrees fits.
+        cullable[p] = false;
+        continue;
+      }
+      x /= length;
+      y /= length;
+      z /= length;
+
+      // The cone's half angle is the largest angle between the axis and a vertex.
+      float minCos = 1;
+      for (int n = first; n < last; ++n) {
+        int offset = getIndex(indices, n) * stride;
+        float cos = (x * vertices.get(offset)
+            + y * vertices.get(offset + 1)
+            + z * vertices.get(offset + 2)) / radius;
+        minCos = Math.min(minCos, cos);
+      }
+      coneAxes[p * 3] = x;
+      coneAxes[p * 3 + 1] = y;
+      coneAxes[p * 3 + 2] = z;
+      // Widen the cone slightly to account for rounding in the vertex data.
+      double angle = Math.acos(Math.max(-1, Math.min(1, minCos))) + 1e-4;
+      cullable[p] = angle < Math.PI / 2;
+      coneCos[p] = (float) Math.cos(angle);
+      coneSin[p] = (float) Math.sin(angle);
+    }
+  }
+
+  private static int getIndex(Buffer indices, int position) {
+    if (indices instanceof ShortBuffer) {
+      return ((ShortBuffer) indices).get(position) & 0xFFFF;
+    }
+    return ((IntBuffer) indices).get(position);
+  }
+
+  /**
+   * Extracts the side planes of the frustum defined by a Model View Projection matrix. A point p is
+   * inside plane k if {@code dot(planes[4k..4k+2], p) + planes[4k+3] >= 0}.
+   *
+   * @param mvpMatrix 4x4 column-major matrix.
+   * @param planes Array of {@link #FRUSTUM_PLANES_SIZE} floats that receives the planes.
+   */
+  public static void extractFrustumPlanes(float[] mvpMatrix, float[] planes) {
+    for (int k = 0; k < PLANE_COUNT; ++k) {
+      // Left & right planes combine the w & x rows of the matrix. Bottom & top use the w & y rows.
+      int row = k / 2;
+      float sign = (k % 2 == 0) ? 1 : -1;
+      for (int c = 0; c < 4; ++c) {
+        planes[k * 4 + c] = mvpMatrix[c * 4 + 3] + sign * mvpMatrix[c * 4 + row];
+      }
+    }
+  }
+
+  /** Returns true if any part of the patch can be inside the frustum. */
+  public boolean isPatchVisible(int patch, float[] planes) {
+    if (!cullable[patch]) {
+      return true;
+    }
+    float axisX = coneAxes[patch * 3];
+    float axisY = coneAxes[patch * 3 + 1];
+    float axisZ = coneAxes[patch * 3 + 2];
+    for (int k = 0; k < PLANE_COUNT; ++k) {
+      float nx = planes[k * 4];
+      float ny = planes[k * 4 + 1];
+      float nz = planes[k * 4 + 2];
+      float normalLength = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+      if (normalLength == 0) {
+        continue;
+      }
+      // The point of the cone closest to the plane's normal is at the smaller of the angle between
+      // the axis & normal minus the cone's half angle, or 0 if the normal is inside the cone.
+      float cos = (nx * axisX + ny * axisY + nz * axisZ) / normalLength;
+      float maxCos;
+      if (cos >= coneCos[patch]) {
+        maxCos = 1;
+      } else {
+        float sin = (float) Math.sqrt(Math.max(0, 1 - cos * cos));
+        maxCos = cos * coneCos[patch] + sin * coneSin[patch];
+      }
+      if (normalLength * radius * maxCos + planes[k * 4 + 3] < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Finds the ranges of the index buffer that are visible in the frustum. Adjacent visible patches
+   * are merged into a single range.
+   *
+   * @param planes Planes from {@link #extractFrustumPlanes}.
+   * @param ranges Array of at least 2 * {@link #getPatchCount()} ints that receives pairs of
+   *     (first index, index count).
+   * @return the number of ranges
+   */
+  public int cull(float[] planes, int[] ranges) {
+    int rangeCount = 0;
+    int end = -1;
+    for (int p = 0; p < getPatchCount(); ++p) {
+      if (!isPatchVisible(p, planes)) {
+        continue;
+      }
+      if (firstIndices[p] == end) {
+        ranges[rangeCount * 2 - 1] += indexCounts[p];
+      } else {
+        ranges[rangeCount * 2] = firstIndices[p];
+        ranges[rangeCount * 2 + 1] = indexCounts[p];
+        ++rangeCount;
+      }
+      end = firstIndices[p] + indexCounts[p];
+    }
+    return rangeCount;
+  }
+
+  /** The split of a UV sphere's quads into rows & columns of patches. */
+  private static final class Grid {
+    final int patchColumns;
+    // The first quad row of each patch row followed by latitudes. Same for columns.
+    final int[] firstRows;
+    final int[] firstColumns;
+    // The patch row of each quad row and the patch column of each quad column.
+    final int[] rowPatches;
+    final int[] columnPatches;
+
+    Grid(int latitudes, int longitudes, int patchRows, int patchColumns) {
+      this.patchColumns = patchColumns;
+      firstRows = split(latitudes, patchRows);
+      firstColumns = split(longitudes, patchColumns);
+      rowPatches = invert(firstRows);
+      columnPatches = invert(firstColumns);
+    }
+
+    /** Returns count + 1 evenly spaced boundaries in [0, total]. */
+    private static int[] split(int total, int count) {
+      int[] boundaries = new int[count + 1];
+      for (int i = 0; i <= count; ++i) {
+        boundaries[i] = i * total / count;
+      }
+      return boundaries;
+    }
+
+    /** Maps each element of [0, boundaries[last]) to the part that contains it. */
+    private static int[] invert(int[] boundaries) {
+      int[] parts = new int[boundaries[boundaries.length - 1]];
+      for (int part = 0; part < boundaries.length - 1; ++part) {
+        for (int i = boundaries[part]; i < boundaries[part + 1]; ++i) {
+          parts[i] = part;
+        }
+      }
+      return parts;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+/**
+ * Picks the number of rows & columns of a UV sphere so that the mesh is just fine enough for the
+ * media and display it is used with.
+ *
+ * <p>The sphere is approximated by flat triangles and the texture coordinates are interpolated
+ * linearly across them. Seen from the center of the sphere, a pixel in the middle of a triangle
+ * therefore appears slightly away from where it belongs. This error grows with the cube of the
+ * angle each triangle spans. It only matters once it exceeds the size of a pixel, which is the
+ * larger of a media texel and a pixel of the eye buffer. This class picks the coarsest mesh whose
+ * error stays below a fraction of that pixel size.
+ */
+public final class SphereTessellation {
+  /** Default maximum error in pixels. Errors below half a pixel aren't noticeable. */
+  public static final float DEFAULT_MAX_ERROR_PIXELS = .5f;
+
+  // Limits of the generated mesh. Very coarse meshes look faceted when the media is blurry and very
+  // fine meshes exceed the 16-bit index range.
+  private static final int MIN_ROWS = 4;
+  private static final int MIN_COLUMNS = 8;
+  private static final int MAX_ROWS = 120;
+  private static final int MAX_COLUMNS = 240;
+  // Samples used to find the worst error across a segment.
+  private static final int ERROR_SAMPLES = 32;
+  // Iterations of the bisection that inverts the error function. 2^-30 of a quarter turn is far
+  // below any pixel size.
+  private static final int BISECTION_STEPS = 30;
+
+  private final int rows;
+  private final int columns;
+
+  private SphereTessellation(int rows, int columns) {
+    this.rows = rows;
+    this.columns = columns;
+  }
+
+  /** Returns a tessellation with a fixed number of rows & columns. */
+  public static SphereTessellation of(int rows, int columns) {
+    if (rows < 1 || columns < 1) {
+      throw new IllegalArgumentException("Invalid tessellation " + rows + "x" + columns);
+    }
+    return new SphereTessellation(rows, columns);
+  }
+
+  /**
+   * Returns the coarsest tessellation whose interpolation error is below maxErrorPixels.
+   *
+   * @param mediaWidth Width of the full media frame in pixels, or 0 if unknown.
+   * @param mediaHeight Height of the full media frame in pixels, or 0 if unknown.
+   * @param mediaFormat A Mesh.MEDIA_* value. Stereo formats only use half of the frame per eye.
+   * @param verticalFovDegrees Latitudinal degrees covered by the sphere.
+   * @param horizontalFovDegrees Longitudinal degrees covered by the sphere.
+   * @param displayPixelsPerDegree Angular resolution of the eye buffer.
+   * @param maxErrorPixels Maximum allowed error, e.g., {@link #DEFAULT_MAX_ERROR_PIXELS}.
+   */
+  public static SphereTessellation forMedia(
+      int mediaWidth,
+      int mediaHeight,
+      int mediaFormat,
+      float verticalFovDegrees,
+      float horizontalFovDegrees,
+      float displayPixelsPerDegree,
+      float maxErrorPixels) {
+    if (verticalFovDegrees <= 0 || horizontalFovDegrees <= 0
+        || displayPixelsPerDegree <= 0 || maxErrorPixels <= 0) {
+      throw new IllegalArgumentException("Invalid tessellation parameters");
+    }
+
+    // Each eye only sees half of a stereo frame.
+    float eyeWidth = mediaWidth;
+    float eyeHeight = mediaHeight;
+    int stereoLayout = Mesh.getStereoLayout(mediaFormat);
+    if (stereoLayout == Mesh.MEDIA_STEREO_LEFT_RIGHT) {
+      eyeWidth /= 2;
+    } else if (stereoLayout == Mesh.MEDIA_STEREO_TOP_BOTTOM) {
+      eyeHeight /= 2;
+    }
+
+    // Errors smaller than a media texel or a display pixel, whichever is larger, aren't visible.
+    float pixelsPerDegree = displayPixelsPerDegree;
+    if (eyeWidth > 0 && eyeHeight > 0) {
+      pixelsPerDegree = Math.min(
+          pixelsPerDegree,
+          Math.max(eyeWidth / horizontalFovDegrees, eyeHeight / verticalFovDegrees));
+    }
+    double maxErrorRadians = Math.toRadians(maxErrorPixels / pixelsPerDegree);
+    // Each quad is split along its diagonal which spans up to sqrt(2) times the angle of its sides.
+    double segmentDegrees = Math.toDegrees(maxSegmentRadians(maxErrorRadians)) / Math.sqrt(2);
+
+    int rows = (int) Math.ceil(verticalFovDegrees / segmentDegrees);
+    int columns = (int) Math.ceil(horizontalFovDegrees / segmentDegrees);
+    return new SphereTessellation(
+        Math.max(MIN_ROWS, Math.min(MAX_ROWS, rows)),
+        Math.max(MIN_COLUMNS, Math.min(MAX_COLUMNS, columns)));
+  }
+
+  /** Number of latitude bands. */
+  public int getRows() {
+    return rows;
+  }
+
+  /** Number of longitude bands. */
+  public int getColumns() {
+    return columns;
+  }
+
+  /**
+   * Returns the largest angle, as seen from the center of the sphere, between the direction of a
+   * texel and the direction it is rendered in when a flat segment spans segmentRadians of the
+   * sphere.
+   *
+   * <p>A view ray at angle phi from the start of the segment hits the chord at
+   * {@code t = sin(phi) / (sin(phi) + sin(segment - phi))}, but the texture coordinate there is
+   * {@code t * segment} rather than phi.
+   */
+  public static double maxInterpolationError(double segmentRadians) {
+    double maxError = 0;
+    if (segmentRadians <= 0) {
+      // A degenerate segment has no interior, and the formula below would divide 0 by 0.
+      return maxError;
+    }
+    for (int i = 1; i < ERROR_SAMPLES; ++i) {
+      // The error is symmetric around the middle of the segment.
+      double phi = segmentRadians / 2 * i / ERROR_SAMPLES;
+      double sinPhi = Math.sin(phi);
+      double t = sinPhi / (sinPhi + Math.sin(segmentRadians - phi));
+      maxError = Math.max(maxError, Math.abs(t * segmentRadians - phi));
+    }
+    return maxError;
+  }
+
+  /** Inverts {@link #maxInterpolationError} which increases monotonically with the segment. */
+  private static double maxSegmentRadians(double maxErrorRadians) {
+    double low = 0;
+    double high = Math.PI / 2;
+    if (maxInterpolationError(high) <= maxErrorRadians) {
+      return high;
+    }
+    for (int i = 0; i < BISECTION_STEPS; ++i) {
+      double middle = (low + high) / 2;
+      if (maxInterpolationError(middle) <= maxErrorRadians) {
+        low = middle;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  public String toString() {
+    return rows + "x" + columns;
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import static com.google.vr.sdk.samples.video360.rendering.Utils.checkGlError;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.support.annotation.AnyThread;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A GL_TEXTURE_2D that is filled in band by band while it's displayed.
+ *
+ * <p>A background thread decodes horizontal bands of the image into buffers from
+ * {@link #acquireBuffer} and passes them to {@link #submitBand}. The GL thread uploads the bands
+ * with glTexSubImage2D as part of a {@link FrameUploadBudget}, so a large panorama never stalls a
+ * frame, and returns the buffers for reuse. The mipmaps are generated once every row is uploaded.
+ * Only a few bands are held in memory at once.
+ */
+public final class StreamingImageTexture implements FrameUploadBudget.Work {
+  // How often a blocked acquireBuffer() checks for cancellation.
+  private static final long ACQUIRE_POLL_MS = 100;
+
+  private final int width;
+  private final int height;
+  private final int bandHeight;
+  private final int maxBuffers;
+  private final ImageTexture image;
+
+  // Buffers are created lazily by the decoding thread and recycled by the GL thread.
+  private final LinkedBlockingQueue<Bitmap> freeBuffers = new LinkedBlockingQueue<>();
+  private final ConcurrentLinkedQueue<Band> bands = new ConcurrentLinkedQueue<>();
+  // Only accessed by the decoding thread.
+  private int createdBuffers;
+  private volatile boolean isCanceled;
+
+  // Only accessed on the GL thread.
+  private BitmapTextureGl textureGl;
+  private int textureId;
+  private int uploadedRows;
+  private boolean isComplete;
+
+  /**
+   * @param width & height of the texture.
+   * @param bandHeight Maximum rows in a band.
+   * @param maxBuffers Maximum bands held in memory at once.
+   */
+  public StreamingImageTexture(int width, int height, int bandHeight, int maxBuffers) {
+    if (width <= 0 || height <= 0 || bandHeight <= 0 || maxBuffers <= 0) {
+      throw new IllegalArgumentException("Invalid streaming texture parameters");
+    }
+    this.width = width;
+    this.height = height;
+    this.bandHeight = bandHeight;
+    this.maxBuffers = maxBuffers;
+    image = new ImageTexture(width, height);
+  }
+
+  /** Width of the texture. */
+  public int getWidth() {
+    return width;
+  }
+
+  /** Height of the texture. */
+  public int getHeight() {
+    return height;
+  }
+
+  /** Maximum rows in a band. */
+  public int getBandHeight() {
+    return bandHeight;
+  }
+
+  /**
+   * Returns a mutable ARGB_8888 Bitmap of width x bandHeight to decode a band into. It can be
+   * reconfigured to fewer rows. This blocks while all buffers are waiting to be uploaded.
+   *
+   * @return a buffer or null if the texture was canceled.
+   */
+  @WorkerThread
+  @Nullable
+  public Bitmap acquireBuffer() throws InterruptedException {
+    Bitmap buffer = freeBuffers.poll();
+    if (buffer == null && createdBuffers < maxBuffers) {
+      ++createdBuffers;
+      buffer = Bitmap.createBitmap(width, bandHeight, Bitmap.Config.ARGB_8888);
+    }
+    while (buffer == null && !isCanceled) {
+      buffer = freeBuffers.poll(ACQUIRE_POLL_MS, TimeUnit.MILLISECONDS);
+    }
+    if (isCanceled) {
+      recycle(buffer);
+      return null;
+    }
+    return buffer;
+  }
+
+  /**
+   * Queues a band for upload.
+   *
+   * @param top First row of the band in the texture.
+   * @param band Buffer from {@link #acquireBuffer} holding the band's rows. It must not be used
+   *     afterwards.
+   */
+  @WorkerThread
+  public void submitBand(int top, Bitmap band) {
+    if (top < 0 || top + band.getHeight() > height || band.getWidth() != width) {
+      throw new IllegalArgumentException("Band " + top + "+" + band.getHeight() + " is outside "
+          + width + "x" + height);
+    }
+    if (isCanceled) {
+      band.recycle();
+      return;
+    }
+    bands.add(new Band(top, band));
+  }
+
+  /** Stops the decoding thread. Queued bands are dropped by {@link #glShutdown()}. */
+  @AnyThread
+  public void cancel() {
+    isCanceled = true;
+  }
+
+  /** Creates the texture. Its contents are undefined until it's complete. */
+  /* package */ void glInit() {
+    textureGl = new BitmapTextureGl(width, height);
+    textureId = image.glCreate(textureGl);
+    checkGlError();
+  }
+
+  /** Uploads the next queued band or, after the last one, generates the mipmaps. */
+  @Override
+  public boolean glRunNextUnit() {
+    if (isComplete) {
+      return false;
+    }
+    if (uploadedRows >= height) {
+      image.glGenerateMipmaps(textureGl, textureId);
+      isComplete = true;
+      // The decoding thread is done with the buffers.
+      Bitmap buffer;
+      while ((buffer = freeBuffers.poll()) != null) {
+        buffer.recycle();
+      }
+      return true;
+    }
+    Band band = bands.poll();
+    if (band == null) {
+      return false;
+    }
+    textureGl.glBindTexture(textureId);
+    GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, band.top, band.bitmap);
+    checkGlError();
+    uploadedRows += band.bitmap.getHeight();
+    freeBuffers.add(band.bitmap);
+    return true;
+  }
+
+  /** Returns true once every row is uploaded and the mipmaps are generated. */
+  /* package */ boolean isComplete() {
+    return isComplete;
+  }
+
+  /** Fraction of the rows that are uploaded. */
+  /* package */ float getProgress() {
+    return (float) uploadedRows / height;
+  }
+
+  /**
+   * Transfers ownership of the texture to the caller. {@link #glShutdown()} won't delete it
+   * afterwards.
+   */
+  /* package */ int glReleaseTexture() {
+    int texture = textureId;
+    textureId = 0;
+    return texture;
+  }
+
+  /** Cancels decoding and frees the queued bands and, unless it was released, the texture. */
+  /* package */ void glShutdown() {
+    cancel();
+    if (textureId != 0) {
+      GLES20.glDeleteTextures(1, new int[] {textureId}, 0);
+      textureId = 0;
+    }
+    Band band;
+    while ((band = bands.poll()) != null) {
+      band.bitmap.recycle();
+    }
+    Bitmap buffer;
+    while ((buffer = freeBuffers.poll()) != null) {
+      buffer.recycle();
+    }
+  }
+
+  private static void recycle(@Nullable Bitmap bitmap) {
+    if (bitmap != null) {
+      bitmap.recycle();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return width + "x" + height + " in " + bandHeight + " row bands";
+  }
+
+  /** Rows decoded by the background thread. */
+  private static final class Band {
+    final int top;
+    final Bitmap bitmap;
+
+    Band(int top, Bitmap bitmap) {
+      this.top = top;
+      this.bitmap = bitmap;
+    }
+  }
+}
@@ -32,6 +32,8 @@ public class Utils {
   private static final String TAG = "Video360.Utils";
 
   public static final int BYTES_PER_FLOAT = 4;
+  public static final int BYTES_PER_SHORT = 2;
+  public static final int BYTES_PER_INT = 4;
 
   /** Debug builds should fail quickly. Release versions of the app should have this disabled. */
   private static final boolean HALT_ON_GL_ERROR = true;
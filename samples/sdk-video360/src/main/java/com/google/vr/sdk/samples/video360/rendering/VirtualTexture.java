@@ -0,0 +1,353 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import static com.google.vr.sdk.samples.video360.rendering.Utils.checkGlError;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.support.annotation.AnyThread;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import com.google.vr.sdk.samples.common.gl.GlStateCache;
+import com.google.vr.sdk.samples.common.pyramid.IndirectionTable;
+import com.google.vr.sdk.samples.common.pyramid.PyramidTileSelector;
+import com.google.vr.sdk.samples.common.pyramid.TileCache;
+import com.google.vr.sdk.samples.common.pyramid.TileKeySet;
+import com.google.vr.sdk.samples.common.pyramid.TilePyramid;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Displays a {@link TilePyramid} that is far larger than GPU memory by keeping only the tiles
+ * around the view in a texture atlas.
+ *
+ * <p>Each frame, the tiles near the view direction are requested from a background thread that
+ * decodes them from disk. The GL thread uploads decoded tiles to free or least recently used atlas
+ * slots as part of a {@link FrameUploadBudget}, then rewrites an indirection texture that maps
+ * each part of the panorama to the slot of its best resident tile. The coarsest level is a single
+ * tile that is always resident, so every part of the panorama can be drawn from the first frame
+ * and missing tiles show up blurry rather than black. The atlas isn't mipmapped since the streamed
+ * level already matches the display's resolution.
+ */
+public final class VirtualTexture implements FrameUploadBudget.Work {
+  private static final String TAG = "VirtualTexture";
+  // Larger atlases hold more tiles at the cost of GPU memory. 4k x 4k RGBA is 64 MiB.
+  private static final int MAX_ATLAS_SIZE = 4096;
+  // Tiles requested from the loading thread but not yet uploaded. This bounds the memory used by
+  // decoded tiles and the work wasted when the view moves on before they are loaded.
+  private static final int MAX_PENDING_TILES = 8;
+
+  private final File directory;
+  private final TilePyramid pyramid;
+  private final int storedTileSize;
+  private final int atlasSize;
+  private final int slotsPerRow;
+  private final PyramidTileSelector selector;
+  private final TileCache cache;
+  private final IndirectionTable indirection;
+  private final ByteBuffer indirectionBuffer;
+  private final long topTileKey;
+
+  private final ExecutorService loader = Executors.newSingleThreadExecutor();
+  private final ConcurrentLinkedQueue<LoadedTile> loadedTiles = new ConcurrentLinkedQueue<>();
+  // Tile bitmaps that the loading thread decodes into. Recycled by the GL thread after uploads.
+  private final LinkedBlockingQueue<Bitmap> freeBitmaps = new LinkedBlockingQueue<>();
+  private volatile boolean isCanceled;
+
+  // Only accessed on the GL thread after construction.
+  @Nullable
+  private Bitmap topTile;
+  private final long[] selectedKeys;
+  private final TileKeySet pendingKeys = new TileKeySet(MAX_PENDING_TILES);
+  private final TileKeySet failedKeys = new TileKeySet(MAX_PENDING_TILES);
+  private int atlasTextureId;
+  private int indirectionTextureId;
+  private boolean isIndirectionDirty;
+
+  /**
+   * Loads the coarsest level & prepares the tile selection. This reads from disk.
+   *
+   * @param directory Directory holding the pyramid's tiles.
+   * @param pyramid The pyramid's manifest.
+   * @param maxTextureSize GL_MAX_TEXTURE_SIZE, which limits the atlas.
+   * @param pixelsPerDegree Angular resolution of the display, which selects the streamed level.
+   */
+  @WorkerThread
+  public VirtualTexture(
+      File directory, TilePyramid pyramid, int maxTextureSize, float pixelsPerDegree)
+      throws IOException {
+    this.directory = directory;
+    this.pyramid = pyramid;
+    storedTileSize = pyramid.getStoredTileSize();
+    atlasSize = Math.min(maxTextureSize, MAX_ATLAS_SIZE);
+    slotsPerRow = Math.min(256, atlasSize / storedTileSize);
+    if (slotsPerRow < 2) {
+      throw new IOException("Tiles of " + pyramid + " don't fit in a " + atlasSize + " atlas");
+    }
+    int capacity = slotsPerRow * slotsPerRow;
+    selector = new PyramidTileSelector(pyramid, pixelsPerDegree);
+    cache = new TileCache(capacity);
+    indirection = new IndirectionTable(pyramid, capacity, slotsPerRow);
+    indirectionBuffer = ByteBuffer.allocateDirect(indirection.getEntries().length);
+    // One slot is pinned by the coarsest level. The rest can hold every selected tile.
+    selectedKeys = new long[capacity - 1];
+
+    int topLevel = pyramid.getLevelCount() - 1;
+    topTileKey = TilePyramid.getTileKey(topLevel, 0, 0);
+    topTile = decodeTile(topTileKey, null);
+    if (topTile == null) {
+      throw new IOException("Unable to decode " + pyramid.getTilePath(topLevel, 0, 0));
+    }
+  }
+
+  /** Width of level 0. */
+  public int getWidth() {
+    return pyramid.getWidth();
+  }
+
+  /** Height of level 0. */
+  public int getHeight() {
+    return pyramid.getHeight();
+  }
+
+  /** Stops loading tiles. Tiles that were already loaded are dropped by {@link #glShutdown()}. */
+  @AnyThread
+  public void cancel() {
+    isCanceled = true;
+    loader.shutdownNow();
+  }
+
+  /** Creates the atlas & indirection textures and uploads the coarsest level. */
+  /* package */ void glInit() {
+    int[] textures = new int[2];
+    GLES20.glGenTextures(2, textures, 0);
+    atlasTextureId = textures[0];
+    indirectionTextureId = textures[1];
+
+    // Tiles carry their own borders so the atlas can be filtered without mipmaps.
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, atlasTextureId);
+    glSetParameters(GLES20.GL_LINEAR);
+    GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, atlasSize, atlasSize, 0,
+        GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+
+    // Entries hold slot coordinates so they must not be interpolated.
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, indirectionTextureId);
+    glSetParameters(GLES20.GL_NEAREST);
+    GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA,
+        indirection.getWidth(), indirection.getHeight(), 0,
+        GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+    checkGlError();
+
+    glUploadTile(topTileKey, topTile);
+    cache.pin(topTileKey);
+    topTile = null;
+    glUpdateIndirection();
+  }
+
+  private static void glSetParameters(int filter) {
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, filter);
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, filter);
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+  }
+
+  /**
+   * Requests the tiles around the view direction, uploads loaded tiles within the budget and
+   * updates the indirection texture. This binds textures without going through a
+   * {@link GlStateCache}.
+   *
+   * @param x X component of the unit view direction in world space.
+   * @param y Y component of the direction.
+   * @param z Z component of the direction.
+   */
+  /* package */ void glUpdate(float x, float y, float z, FrameUploadBudget uploadBudget) {
+    cache.beginFrame();
+    int count = selector.select(x, y, z, selectedKeys);
+    for (int i = 0; i < count && !isCanceled; ++i) {
+      long key = selectedKeys[i];
+      if (cache.use(key) || pendingKeys.contains(key) || failedKeys.contains(key)) {
+        continue;
+      }
+      if (pendingKeys.size() >= MAX_PENDING_TILES) {
+        // Nearer tiles were requested first. The rest are requested in later frames.
+        break;
+      }
+      pendingKeys.add(key);
+      loader.execute(new TileLoader(key));
+    }
+
+    uploadBudget.glRunFrame(this);
+    if (isIndirectionDirty) {
+      glUpdateIndirection();
+    }
+  }
+
+  /** Uploads the next loaded tile. */
+  @Override
+  public boolean glRunNextUnit() {
+    LoadedTile tile = loadedTiles.poll();
+    if (tile == null) {
+      return false;
+    }
+    pendingKeys.remove(tile.key);
+    if (tile.bitmap == null) {
+      failedKeys.add(tile.key);
+    } else {
+      glUploadTile(tile.key, tile.bitmap);
+      freeBitmaps.add(tile.bitmap);
+    }
+    return true;
+  }
+
+  private void glUploadTile(long key, Bitmap bitmap) {
+    // If every slot is in use by the current frame, the tile is dropped and requested again once
+    // the view moves.
+    int slot = cache.allocate(key);
+    if (slot < 0) {
+      return;
+    }
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, atlasTextureId);
+    GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0,
+        (slot % slotsPerRow) * storedTileSize, (slot / slotsPerRow) * storedTileSize, bitmap);
+    checkGlError();
+    isIndirectionDirty = true;
+  }
+
+  private void glUpdateIndirection() {
+    indirection.update(cache);
+    indirectionBuffer.clear();
+    indirectionBuffer.put(indirection.getEntries()).flip();
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, indirectionTextureId);
+    GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0,
+        indirection.getWidth(), indirection.getHeight(),
+        GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, indirectionBuffer);
+    checkGlError();
+    isIndirectionDirty = false;
+  }
+
+  /* package */ int getAtlasTextureId() {
+    return atlasTextureId;
+  }
+
+  /* package */ int getIndirectionTextureId() {
+    return indirectionTextureId;
+  }
+
+  /* package */ TilePyramid getPyramid() {
+    return pyramid;
+  }
+
+  /* package */ int getAtlasSize() {
+    return atlasSize;
+  }
+
+  /** Stops loading and frees the textures & the loaded tiles. */
+  /* package */ void glShutdown() {
+    cancel();
+    GLES20.glDeleteTextures(2, new int[] {atlasTextureId, indirectionTextureId}, 0);
+    atlasTextureId = 0;
+    indirectionTextureId = 0;
+    Log.i(TAG, "Shut down " + this);
+    LoadedTile tile;
+    while ((tile = loadedTiles.poll()) != null) {
+      recycle(tile.bitmap);
+    }
+    Bitmap bitmap;
+    while ((bitmap = freeBitmaps.poll()) != null) {
+      bitmap.recycle();
+    }
+    recycle(topTile);
+    topTile = null;
+  }
+
+  @WorkerThread
+  @Nullable
+  private Bitmap decodeTile(long key, @Nullable Bitmap reuse) {
+    String path = pyramid.getTilePath(
+        TilePyramid.getKeyLevel(key), TilePyramid.getKeyRow(key), TilePyramid.getKeyColumn(key));
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+    options.inMutable = true;
+    options.inBitmap = reuse;
+    Bitmap bitmap = BitmapFactory.decodeFile(new File(directory, path).getPath(), options);
+    if (bitmap != reuse) {
+      recycle(reuse);
+    }
+    if (bitmap != null
+        && (bitmap.getWidth() != storedTileSize || bitmap.getHeight() != storedTileSize)) {
+      Log.e(TAG, path + " is " + bitmap.getWidth() + "x" + bitmap.getHeight() + " instead of "
+          + storedTileSize);
+      bitmap.recycle();
+      return null;
+    }
+    return bitmap;
+  }
+
+  private static void recycle(@Nullable Bitmap bitmap) {
+    if (bitmap != null) {
+      bitmap.recycle();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return pyramid + " streaming level " + selector.getLevel() + " into a " + atlasSize
+        + " atlas, " + cache;
+  }
+
+  /** Decodes a tile on the loading thread. */
+  private final class TileLoader implements Runnable {
+    private final long key;
+
+    TileLoader(long key) {
+      this.key = key;
+    }
+
+    @Override
+    public void run() {
+      if (isCanceled) {
+        return;
+      }
+      Bitmap bitmap = decodeTile(key, freeBitmaps.poll());
+      if (isCanceled) {
+        recycle(bitmap);
+        return;
+      }
+      loadedTiles.add(new LoadedTile(key, bitmap));
+    }
+  }
+
+  /** A decoded tile or a null bitmap if it couldn't be decoded. */
+  private static final class LoadedTile {
+    final long key;
+    @Nullable final Bitmap bitmap;
+
+    LoadedTile(long key, @Nullable Bitmap bitmap) {
+      this.key = key;
+      this.bitmap = bitmap;
+    }
+  }
+}
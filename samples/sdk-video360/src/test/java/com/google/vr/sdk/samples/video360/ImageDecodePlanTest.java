@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public final class ImageDecodePlanTest {
+  private static final long MB = 1024 * 1024;
+  private static final long UNLIMITED = Long.MAX_VALUE;
+
+  @Test
+  public void decodesSmallImagesWholeAtFullSize() {
+    ImageDecodePlan plan = ImageDecodePlan.create(4096, 2048, 4096, UNLIMITED, UNLIMITED, true);
+    assertEquals(1, plan.getSampleSize());
+    assertEquals(4096, plan.getOutputWidth());
+    assertEquals(2048, plan.getOutputHeight());
+    assertFalse(plan.usesRegions());
+    assertEquals(1, plan.getStripCount());
+    assertEquals(4096L * 2048 * 4, plan.getPeakHeapBytes());
+    assertStripsCoverTheImage(plan);
+  }
+
+  @Test
+  public void downsamplesToTheTextureSize() {
+    assertEquals(2, create(8192, 4096, 4096, UNLIMITED, UNLIMITED).getSampleSize());
+    assertEquals(4, create(16384, 8192, 4096, UNLIMITED, UNLIMITED).getSampleSize());
+    // Tall images are limited by their height.
+    assertEquals(4, create(2048, 16384, 4096, UNLIMITED, UNLIMITED).getSampleSize());
+    // 8193 / 2 rounds up to 4097 which doesn't fit.
+    ImageDecodePlan odd = create(8193, 4097, 4096, UNLIMITED, UNLIMITED);
+    assertEquals(4, odd.getSampleSize());
+    assertEquals(2049, odd.getOutputWidth());
+    assertEquals(1025, odd.getOutputHeight());
+  }
+
+  @Test
+  public void downsamplesToTheTextureByteLimit() {
+    // 8192 x 4096 x 4 is 128 MB.
+    assertEquals(1, create(8192, 4096, 16384, 128 * MB, UNLIMITED).getSampleSize());
+    assertEquals(2, create(8192, 4096, 16384, 128 * MB - 1, UNLIMITED).getSampleSize());
+    assertEquals(4, create(8192, 4096, 16384, 8 * MB, UNLIMITED).getSampleSize());
+  }
+
+  @Test
+  public void downsamplesWholeImagesToTheHeapBudget() {
+    // 2048 x 1024 x 4 is 8 MB.
+    ImageDecodePlan plan = ImageDecodePlan.create(4096, 2048, 4096, UNLIMITED, 8 * MB, false);
+    assertEquals(2, plan.getSampleSize());
+    assertFalse(plan.usesRegions());
+    assertEquals(8 * MB, plan.getPeakHeapBytes());
+  }
+
+  @Test
+  public void decodesInStripsWithinTheHeapBudget() {
+    ImageDecodePlan plan = create(4096, 2048, 4096, UNLIMITED, 8 * MB);
+    // Strips keep the full resolution: 8 MB holds 512 rows of 16 KB.
+    assertEquals(1, plan.getSampleSize());
+    assertTrue(plan.usesRegions());
+    assertEquals(4, plan.getStripCount());
+    assertEquals(512, plan.getMaxStripOutputHeight());
+    assertEquals(8 * MB, plan.getPeakHeapBytes());
+    assertStripsCoverTheImage(plan);
+  }
+
+  @Test
+  public void downsamplesWhenStripsWouldBeTooShort() {
+    // 16 rows of 4096 pixels are needed at full size.
+    long minStripBytes = 16 * 4096 * 4;
+    assertEquals(1, create(4096, 2048, 4096, UNLIMITED, minStripBytes).getSampleSize());
+    ImageDecodePlan plan = create(4096, 2048, 4096, UNLIMITED, minStripBytes - 1);
+    assertEquals(2, plan.getSampleSize());
+    assertTrue(plan.getPeakHeapBytes() < minStripBytes);
+    assertStripsCoverTheImage(plan);
+  }
+
+  @Test
+  public void alignsStripsToTheSampleSize() {
+    // Odd sizes & a budget that isn't a whole number of rows.
+    ImageDecodePlan plan = create(8191, 4095, 4096, UNLIMITED, 3 * MB + 12345);
+    assertEquals(2, plan.getSampleSize());
+    assertTrue(plan.usesRegions());
+    assertTrue(plan.getPeakHeapBytes() <= 3 * MB + 12345);
+    for (int strip = 0; strip < plan.getStripCount(); ++strip) {
+      assertEquals("strip " + strip, 0, plan.getStripTop(strip) % plan.getSampleSize());
+    }
+    assertStripsCoverTheImage(plan);
+  }
+
+  @Test
+  public void limitsStripsToMaxStripBytes() {
+    ImageDecodePlan whole = create(4096, 2048, 4096, UNLIMITED, UNLIMITED);
+    // 1 MB holds 64 rows of 16 KB.
+    ImageDecodePlan plan = whole.withMaxStripBytes(MB);
+    assertEquals(1, plan.getSampleSize());
+    assertEquals(32, plan.getStripCount());
+    assertEquals(64, plan.getMaxStripOutputHeight());
+    assertStripsCoverTheImage(plan);
+
+    // At least 16 rows.
+    assertEquals(16, whole.withMaxStripBytes(1).getMaxStripOutputHeight());
+    // Strips never grow.
+    ImageDecodePlan strips = create(4096, 2048, 4096, UNLIMITED, 8 * MB);
+    assertEquals(4, strips.withMaxStripBytes(UNLIMITED).getStripCount());
+    assertEquals(1, whole.withMaxStripBytes(UNLIMITED).getStripCount());
+  }
+
+  @Test
+  public void maxStripBytesKeepsTheSampleSizeAlignment() {
+    ImageDecodePlan plan = create(8191, 4095, 4096, UNLIMITED, UNLIMITED).withMaxStripBytes(MB);
+    assertEquals(2, plan.getSampleSize());
+    // 1 MB holds 64 rows of 4096 pixels, i.e., 128 source rows.
+    assertEquals(128, plan.getStripTop(1));
+    assertStripsCoverTheImage(plan);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyImages() {
+    create(0, 2048, 4096, UNLIMITED, UNLIMITED);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyBudgets() {
+    create(4096, 2048, 4096, UNLIMITED, 0);
+  }
+
+  private static ImageDecodePlan create(
+      int width, int height, int maxTextureSize, long maxTextureBytes, long heapBudgetBytes) {
+    return ImageDecodePlan.create(
+        width, height, maxTextureSize, maxTextureBytes, heapBudgetBytes, true);
+  }
+
+  /** Checks that the strips tile the source & decoded images without gaps or overlaps. */
+  private static void assertStripsCoverTheImage(ImageDecodePlan plan) {
+    int sourceRow = 0;
+    int outputRow = 0;
+    int maxOutputHeight = 0;
+    for (int strip = 0; strip < plan.getStripCount(); ++strip) {
+      String message = plan + " strip " + strip;
+      assertEquals(message, sourceRow, plan.getStripTop(strip));
+      assertEquals(message, outputRow, plan.getStripOutputTop(strip));
+      assertTrue(message, plan.getStripBottom(strip) > sourceRow);
+      sourceRow = plan.getStripBottom(strip);
+      outputRow += plan.getStripOutputHeight(strip);
+      maxOutputHeight = Math.max(maxOutputHeight, plan.getStripOutputHeight(strip));
+    }
+    assertEquals(plan.getOutputHeight(), outputRow);
+    assertEquals(maxOutputHeight, plan.getMaxStripOutputHeight());
+    assertEquals(
+        (long) plan.getOutputWidth() * maxOutputHeight * ImageDecodePlan.BYTES_PER_PIXEL,
+        plan.getPeakHeapBytes());
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class PanoramaMetadataTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final String XMP_HEADER = "http://ns.adobe.com/xap/1.0/\0";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void parsesGPanoAttributes() {
+    PanoramaMetadata metadata =
+        PanoramaMetadata.parseGPano(gPanoAttributes(4000, 1000, 8000, 4000));
+    assertEquals(45, metadata.getVerticalFovDegrees(), 1e-4f);
+    assertEquals(180, metadata.getHorizontalFovDegrees(), 1e-4f);
+  }
+
+  @Test
+  public void parsesGPanoElements() {
+    String xmp = "<rdf:Description>"
+        + "<GPano:CroppedAreaImageWidthPixels>3000</GPano:CroppedAreaImageWidthPixels>"
+        + "<GPano:CroppedAreaImageHeightPixels>1500</GPano:CroppedAreaImageHeightPixels>"
+        + "<GPano:FullPanoWidthPixels>6000</GPano:FullPanoWidthPixels>"
+        + "<GPano:FullPanoHeightPixels>3000</GPano:FullPanoHeightPixels>"
+        + "</rdf:Description>";
+    PanoramaMetadata metadata = PanoramaMetadata.parseGPano(xmp);
+    assertEquals(90, metadata.getVerticalFovDegrees(), 1e-4f);
+    assertEquals(180, metadata.getHorizontalFovDegrees(), 1e-4f);
+  }
+
+  @Test
+  public void ignoresIncompleteOrInvalidGPano() {
+    assertNull(PanoramaMetadata.parseGPano("<x:xmpmeta GPano:FullPanoWidthPixels=\"8000\"/>"));
+    // The cropped area can't be larger than the full panorama.
+    assertNull(PanoramaMetadata.parseGPano(gPanoAttributes(9000, 1000, 8000, 4000)));
+    assertNull(PanoramaMetadata.parseGPano(gPanoAttributes(0, 1000, 8000, 4000)));
+  }
+
+  @Test
+  public void readsXmpFromJpeg() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    output.writeShort(0xFFD8);
+    // An unrelated APP0 segment precedes the XMP packet.
+    writeJpegSegment(output, 0xFFE0, new byte[14]);
+    writeJpegSegment(
+        output, 0xFFE1, (XMP_HEADER + gPanoAttributes(2000, 2000, 4000, 2000)).getBytes(UTF_8));
+    writeJpegSegment(output, 0xFFDA, new byte[10]);
+
+    PanoramaMetadata metadata = PanoramaMetadata.read(write("photo.jpg", bytes.toByteArray()));
+    assertEquals(180, metadata.getVerticalFovDegrees(), 1e-4f);
+    assertEquals(180, metadata.getHorizontalFovDegrees(), 1e-4f);
+  }
+
+  @Test
+  public void ignoresJpegWithoutXmp() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    output.writeShort(0xFFD8);
+    writeJpegSegment(output, 0xFFE0, new byte[14]);
+    writeJpegSegment(output, 0xFFDA, new byte[10]);
+    // XMP after the image data is ignored.
+    writeJpegSegment(
+        output, 0xFFE1, (XMP_HEADER + gPanoAttributes(2000, 2000, 4000, 2000)).getBytes(UTF_8));
+
+    assertNull(PanoramaMetadata.read(write("photo.jpg", bytes.toByteArray())));
+  }
+
+  @Test
+  public void readsEquirectangularBoundsFromMp4() throws IOException {
+    // VR180 video: a quarter of the width is cropped on either side.
+    byte[] file = concat(box("ftyp", new byte[8]), moov(equi(0, 0, 1 << 30, 1 << 30)));
+    PanoramaMetadata metadata = PanoramaMetadata.read(write("video.mp4", file));
+    assertEquals(180, metadata.getVerticalFovDegrees(), 1e-3f);
+    assertEquals(180, metadata.getHorizontalFovDegrees(), 1e-3f);
+  }
+
+  @Test
+  public void ignoresMp4WithoutSphericalMetadata() throws IOException {
+    byte[] file = concat(box("ftyp", new byte[8]), moov(box("free", new byte[20])));
+    assertNull(PanoramaMetadata.read(write("video.mp4", file)));
+  }
+
+  @Test
+  public void ignoresTruncatedMp4() throws IOException {
+    byte[] complete = concat(box("ftyp", new byte[8]), moov(equi(0, 0, 1 << 30, 1 << 30)));
+    byte[] truncated = new byte[complete.length - 8];
+    System.arraycopy(complete, 0, truncated, 0, truncated.length);
+    assertNull(PanoramaMetadata.read(write("video.mp4", truncated)));
+  }
+
+  @Test
+  public void ignoresOtherFiles() throws IOException {
+    assertNull(PanoramaMetadata.read(write("empty", new byte[0])));
+    assertNull(PanoramaMetadata.read(write("text.txt", "Not a panorama".getBytes(UTF_8))));
+  }
+
+  private static String gPanoAttributes(
+      int croppedWidth, int croppedHeight, int fullWidth, int fullHeight) {
+    return "<x:xmpmeta><rdf:Description"
+        + " GPano:CroppedAreaImageWidthPixels=\"" + croppedWidth + "\""
+        + " GPano:CroppedAreaImageHeightPixels='" + croppedHeight + "'"
+        + " GPano:FullPanoWidthPixels=\"" + fullWidth + "\""
+        + " GPano:FullPanoHeightPixels=\"" + fullHeight + "\"/></x:xmpmeta>";
+  }
+
+  private static void writeJpegSegment(DataOutputStream output, int marker, byte[] payload)
+      throws IOException {
+    output.writeShort(marker);
+    output.writeShort(payload.length + 2);
+    output.write(payload);
+  }
+
+  /** Returns an equi box with the given 0.32 fixed point bounds. */
+  private static byte[] equi(int top, int bottom, int left, int right) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    // Version & flags.
+    output.writeInt(0);
+    output.writeInt(top);
+    output.writeInt(bottom);
+    output.writeInt(left);
+    output.writeInt(right);
+    return box("equi", bytes.toByteArray());
+  }
+
+  /** Returns a moov box with a single video track whose sample entry contains child. */
+  private static byte[] moov(byte[] child) throws IOException {
+    byte[] sampleEntry = box("avc1", concat(new byte[78], box("sv3d", box("proj", child))));
+    // Version & flags followed by the entry count.
+    byte[] stsd = box("stsd", concat(new byte[] {0, 0, 0, 0, 0, 0, 0, 1}, sampleEntry));
+    return box("moov", box("trak", box("mdia", box("minf", box("stbl", stsd)))));
+  }
+
+  private static byte[] box(String type, byte[] payload) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    output.writeInt(payload.length + 8);
+    output.write(type.getBytes(UTF_8));
+    output.write(payload);
+    return bytes.toByteArray();
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    byte[] result = new byte[first.length + second.length];
+    System.arraycopy(first, 0, result, 0, first.length);
+    System.arraycopy(second, 0, result, first.length, second.length);
+    return result;
+  }
+
+  private File write(String name, byte[] data) throws IOException {
+    File file = folder.newFile(name);
+    FileOutputStream output = new FileOutputStream(file);
+    try {
+      output.write(data);
+    } finally {
+      output.close();
+    }
+    return file;
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.vr.sdk.samples.common.profiling.FrameProfiler;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public final class FrameUploadBudgetTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final FakeClock clock = new FakeClock();
+
+  @Test
+  public void runsAtLeastOneUnitPerFrame() {
+    FrameUploadBudget budget = new FrameUploadBudget(1 * MS, clock);
+    FakeWork work = new FakeWork(5 * MS, 5 * MS, 5 * MS);
+    assertEquals(1, budget.glRunFrame(work));
+    assertEquals(1, budget.glRunFrame(work));
+    assertEquals(1, budget.glRunFrame(work));
+    assertEquals(0, budget.glRunFrame(work));
+    assertEquals(3, budget.getUnitCount());
+    assertEquals(3, budget.getFrameCount());
+    assertEquals(5 * MS, budget.getMaxFrameNanos());
+    assertEquals(15 * MS, budget.getTotalNanos());
+  }
+
+  @Test
+  public void stopsBeforeTheEstimateExceedsTheBudget() {
+    FrameUploadBudget budget = new FrameUploadBudget(10 * MS, clock);
+    FakeWork work = new FakeWork(3 * MS, 3 * MS, 3 * MS, 3 * MS, 3 * MS);
+    // 3 units take 9 ms and a fourth is predicted to end at 12 ms.
+    assertEquals(3, budget.glRunFrame(work));
+    assertEquals(2, budget.glRunFrame(work));
+    assertEquals(9 * MS, budget.getMaxFrameNanos());
+    assertEquals(2, budget.getFrameCount());
+  }
+
+  @Test
+  public void fillsTheBudgetExactly() {
+    FrameUploadBudget budget = new FrameUploadBudget(10 * MS, clock);
+    FakeWork work = new FakeWork(2 * MS, 2 * MS, 2 * MS, 2 * MS, 2 * MS, 2 * MS);
+    assertEquals(5, budget.glRunFrame(work));
+    assertEquals(10 * MS, budget.getMaxFrameNanos());
+  }
+
+  @Test
+  public void estimatesTheMovingAverageOfTheUnitTimes() {
+    FrameUploadBudget budget = new FrameUploadBudget(1 * MS, clock);
+    FakeWork work = new FakeWork(4 * MS, 8 * MS, 1 * MS);
+    budget.glRunFrame(work);
+    // The first unit is the estimate.
+    assertEquals(4 * MS, budget.getEstimatedUnitNanos());
+    budget.glRunFrame(work);
+    assertEquals(5 * MS, budget.getEstimatedUnitNanos());
+    budget.glRunFrame(work);
+    assertEquals(4 * MS, budget.getEstimatedUnitNanos());
+  }
+
+  @Test
+  public void slowUnitsReduceTheUnitsPerFrame() {
+    FrameUploadBudget budget = new FrameUploadBudget(10 * MS, clock);
+    FakeWork work = new FakeWork(1 * MS, 9 * MS, 1 * MS, 1 * MS, 1 * MS);
+    // The fast first unit lets a slow one in, which overruns the budget.
+    assertEquals(2, budget.glRunFrame(work));
+    assertEquals(10 * MS, budget.getMaxFrameNanos());
+    assertEquals(3 * MS, budget.getEstimatedUnitNanos());
+    // The estimate recovers as the remaining fast units run in one frame.
+    assertEquals(3, budget.glRunFrame(work));
+    assertEquals(1 * MS + (long) (.75 * .75 * .75 * 2 * MS), budget.getEstimatedUnitNanos(), 1000);
+  }
+
+  @Test
+  public void emptyQueueRunsNothing() {
+    FrameUploadBudget budget = new FrameUploadBudget(10 * MS, clock);
+    FakeWork work = new FakeWork();
+    assertEquals(0, budget.glRunFrame(work));
+    assertEquals(1, work.calls);
+    assertEquals(0, budget.getFrameCount());
+    assertEquals(0, budget.getEstimatedUnitNanos());
+
+    // Work that becomes ready later still runs.
+    work.add(2 * MS);
+    assertEquals(1, budget.glRunFrame(work));
+    assertEquals(1, budget.getFrameCount());
+  }
+
+  @Test
+  public void resetClearsTheEstimateAndStatistics() {
+    FrameUploadBudget budget = new FrameUploadBudget(10 * MS, clock);
+    budget.glRunFrame(new FakeWork(3 * MS, 3 * MS));
+    budget.reset();
+    assertEquals(0, budget.getEstimatedUnitNanos());
+    assertEquals(0, budget.getUnitCount());
+    assertEquals(0, budget.getFrameCount());
+    assertEquals(0, budget.getTotalNanos());
+    assertEquals(0, budget.getMaxFrameNanos());
+  }
+
+  private static final class FakeClock implements FrameProfiler.Clock {
+    long nanos = 1000 * MS;
+
+    @Override
+    public long nanoTime() {
+      return nanos;
+    }
+  }
+
+  /** Units that advance the clock by the given times. */
+  private final class FakeWork implements FrameUploadBudget.Work {
+    private final Queue<Long> unitNanos = new ArrayDeque<>();
+    int calls;
+
+    FakeWork(long... unitNanos) {
+      for (long nanos : unitNanos) {
+        add(nanos);
+      }
+    }
+
+    void add(long nanos) {
+      unitNanos.add(nanos);
+    }
+
+    @Override
+    public boolean glRunNextUnit() {
+      ++calls;
+      Long nanos = unitNanos.poll();
+      if (nanos == null) {
+        return false;
+      }
+      clock.nanos += nanos;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.opengl.GLES20;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public final class ImageTextureTest {
+  private static final int TEXTURE = 7;
+
+  @Test
+  public void uploadsPowerOfTwoImagesWithMipmaps() {
+    FakeGl gl = new FakeGl(false);
+    assertEquals(TEXTURE, new ImageTexture(4096, 2048).glUpload(gl));
+    assertEquals(
+        Arrays.asList(
+            "gen",
+            "bind 7",
+            param(GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR),
+            param(GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR),
+            param(GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE),
+            param(GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE),
+            "image",
+            "mipmap"),
+        gl.calls);
+  }
+
+  @Test
+  public void uploadsNpotImagesWithMipmapsWhenSupported() {
+    FakeGl gl = new FakeGl(true);
+    new ImageTexture(4000, 2000).glUpload(gl);
+    assertEquals(param(GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR),
+        gl.calls.get(2));
+    assertEquals("mipmap", gl.calls.get(gl.calls.size() - 1));
+  }
+
+  @Test
+  public void uploadsNpotImagesWithoutMipmapsOnPlainEs2() {
+    FakeGl gl = new FakeGl(false);
+    new ImageTexture(4000, 2048).glUpload(gl);
+    assertEquals(
+        Arrays.asList(
+            "gen",
+            "bind 7",
+            param(GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR),
+            param(GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR),
+            param(GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE),
+            param(GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE),
+            "image"),
+        gl.calls);
+  }
+
+  @Test
+  public void generatesMipmapsAfterTheImageIsFilledIn() {
+    FakeGl gl = new FakeGl(false);
+    ImageTexture texture = new ImageTexture(2048, 1024);
+    int name = texture.glCreate(gl);
+    assertFalse(gl.calls.contains("mipmap"));
+    // Other textures may be bound while level 0 is filled in.
+    gl.calls.clear();
+    assertTrue(texture.glGenerateMipmaps(gl, name));
+    assertEquals(Arrays.asList("bind 7", "mipmap"), gl.calls);
+  }
+
+  @Test
+  public void skipsMipmapGenerationWithoutMipmaps() {
+    FakeGl gl = new FakeGl(false);
+    ImageTexture texture = new ImageTexture(2000, 1000);
+    int name = texture.glCreate(gl);
+    gl.calls.clear();
+    assertFalse(texture.glGenerateMipmaps(gl, name));
+    assertTrue(gl.calls.isEmpty());
+  }
+
+  @Test
+  public void decidesMipmapsFromBothSides() {
+    assertTrue(new ImageTexture(1, 1).usesMipmaps(false));
+    assertFalse(new ImageTexture(4096, 2000).usesMipmaps(false));
+    assertFalse(new ImageTexture(3000, 2048).usesMipmaps(false));
+    assertTrue(new ImageTexture(3000, 2000).usesMipmaps(true));
+    assertTrue(ImageTexture.isPowerOfTwo(1 << 30));
+    assertFalse(ImageTexture.isPowerOfTwo(0));
+    assertFalse(ImageTexture.isPowerOfTwo(-2));
+    assertFalse(ImageTexture.isPowerOfTwo(6));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyImages() {
+    new ImageTexture(0, 1);
+  }
+
+  private static String param(int name, int value) {
+    return "param " + name + "=" + value;
+  }
+
+  /** Records the GL calls. */
+  private static final class FakeGl implements ImageTexture.Gl {
+    final List<String> calls = new ArrayList<>();
+    private final boolean npotMipmaps;
+
+    FakeGl(boolean npotMipmaps) {
+      this.npotMipmaps = npotMipmaps;
+    }
+
+    @Override
+    public boolean supportsNpotMipmaps() {
+      return npotMipmaps;
+    }
+
+    @Override
+    public int glGenTexture() {
+      calls.add("gen");
+      return TEXTURE;
+    }
+
+    @Override
+    public void glBindTexture(int texture) {
+      calls.add("bind " + texture);
+    }
+
+    @Override
+    public void glTexParameteri(int name, int value) {
+      calls.add(param(name, value));
+    }
+
+    @Override
+    public void glTexImage2D() {
+      calls.add("image");
+    }
+
+    @Override
+    public void glGenerateMipmap() {
+      calls.add("mipmap");
+    }
+  }
+}
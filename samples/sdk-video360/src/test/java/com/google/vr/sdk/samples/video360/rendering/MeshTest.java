@@ -0,0 +1,414 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import org.junit.Test;
+
+public final class MeshTest {
+  private static final float RADIUS = 50;
+  // Floats per vertex: 3D position + left UV + right UV.
+  private static final int CPV = 7;
+
+  // The direction of the center of the face in each cell of the 3x2 media grid, its +u direction
+  // & its +v direction, i.e., right & down in the media, as seen from inside with -Z forward.
+  private static final float[][] CUBEMAP_CENTERS = {
+    {1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, -1}, {0, 0, 1}
+  };
+  private static final float[][] CUBEMAP_RIGHTS = {
+    {0, 0, 1}, {0, 0, -1}, {1, 0, 0}, {1, 0, 0}, {1, 0, 0}, {-1, 0, 0}
+  };
+  private static final float[][] CUBEMAP_DOWNS = {
+    {0, -1, 0}, {0, -1, 0}, {0, 0, -1}, {0, 0, 1}, {0, -1, 0}, {0, -1, 0}
+  };
+  // The top row of an EAC frame is the left, front & right faces. The bottom row is the down,
+  // back & up faces, turned so the row continues around the X axis with -X at the bottom.
+  private static final float[][] EAC_CENTERS = {
+    {-1, 0, 0}, {0, 0, -1}, {1, 0, 0}, {0, -1, 0}, {0, 0, 1}, {0, 1, 0}
+  };
+  private static final float[][] EAC_RIGHTS = {
+    {0, 0, -1}, {1, 0, 0}, {0, 0, 1}, {0, 0, 1}, {0, 1, 0}, {0, 0, -1}
+  };
+  private static final float[][] EAC_DOWNS = {
+    {0, -1, 0}, {0, -1, 0}, {0, -1, 0}, {-1, 0, 0}, {-1, 0, 0}, {-1, 0, 0}
+  };
+
+  @Test
+  public void indexedSphereMatchesTriangleStripSphere() {
+    int[] formats = {
+        Mesh.MEDIA_MONOSCOPIC, Mesh.MEDIA_STEREO_LEFT_RIGHT, Mesh.MEDIA_STEREO_TOP_BOTTOM};
+    for (int format : formats) {
+      // Small enough to be built on the calling thread.
+      assertSpheresMatch(10, 20, 180, 360, format);
+      // Large enough to be built in parallel bands.
+      assertSpheresMatch(128, 256, 180, 360, format);
+    }
+    // Partial spheres.
+    assertSpheresMatch(30, 40, 90, 120, Mesh.MEDIA_MONOSCOPIC);
+  }
+
+  @Test
+  public void indexedSphereUsesShortIndicesWhenPossible() {
+    Mesh small = Mesh.createIndexedUvSphere(RADIUS, 128, 256, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+    assertTrue(small.getIndexBuffer() instanceof ShortBuffer);
+
+    Mesh large = Mesh.createIndexedUvSphere(RADIUS, 256, 512, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+    assertTrue(large.getIndexBuffer() instanceof IntBuffer);
+    assertIndicesFormConsistentTriangles(large, 256, 512);
+  }
+
+  @Test
+  public void indexedSphereTrianglesCoverEachQuadWithTheSameWinding() {
+    Mesh mesh = Mesh.createIndexedUvSphere(RADIUS, 40, 80, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+    assertIndicesFormConsistentTriangles(mesh, 40, 80);
+  }
+
+  @Test
+  public void indexedSpheresWithTheSameParametersShareGeometry() {
+    Mesh first = Mesh.createIndexedUvSphere(RADIUS, 12, 24, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+    Mesh second = Mesh.createIndexedUvSphere(RADIUS, 12, 24, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+    assertSame(first.getPatches(), second.getPatches());
+
+    // Each Mesh has its own view of the shared buffers.
+    assertNotSame(first.getVertexBuffer(), second.getVertexBuffer());
+    first.getVertexBuffer().position(CPV);
+    assertEquals(0, second.getVertexBuffer().position());
+
+    Mesh stereo =
+        Mesh.createIndexedUvSphere(RADIUS, 12, 24, 180, 360, Mesh.MEDIA_STEREO_TOP_BOTTOM);
+    assertNotSame(first.getPatches(), stereo.getPatches());
+  }
+
+  @Test
+  public void indexedSphereCacheEvictsTheLeastRecentlyUsedGeometry() {
+    Mesh first = Mesh.createIndexedUvSphere(RADIUS, 13, 26, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+    // The cache holds 4 geometries.
+    for (int i = 0; i < 4; ++i) {
+      Mesh.createIndexedUvSphere(RADIUS, 14 + i, 26, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+    }
+    Mesh rebuilt = Mesh.createIndexedUvSphere(RADIUS, 13, 26, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+    assertNotSame(first.getPatches(), rebuilt.getPatches());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void indexedSphereRejectsInvalidFov() {
+    Mesh.createIndexedUvSphere(RADIUS, 10, 10, 181, 360, Mesh.MEDIA_MONOSCOPIC);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void indexedSphereRejectsEmptyTessellation() {
+    Mesh.createIndexedUvSphere(RADIUS, 0, 10, 180, 360, Mesh.MEDIA_MONOSCOPIC);
+  }
+
+  @Test
+  public void cubemapFaceCentersSampleTheCenterOfTheirCell() {
+    assertFaceCenters(Mesh.MEDIA_CUBEMAP_MONOSCOPIC, CUBEMAP_CENTERS);
+    assertFaceCenters(Mesh.MEDIA_EAC_MONOSCOPIC, EAC_CENTERS);
+  }
+
+  @Test
+  public void cubemapFacesAreRotatedLikeTheMedia() {
+    assertFaceAxes(Mesh.MEDIA_CUBEMAP_MONOSCOPIC, CUBEMAP_CENTERS, CUBEMAP_RIGHTS, CUBEMAP_DOWNS);
+    assertFaceAxes(Mesh.MEDIA_EAC_MONOSCOPIC, EAC_CENTERS, EAC_RIGHTS, EAC_DOWNS);
+  }
+
+  @Test
+  public void eacRowsAreContinuous() {
+    Mesh mesh = Mesh.createCubemap(RADIUS, Mesh.MEDIA_EAC_MONOSCOPIC);
+    FloatBuffer vertices = mesh.getVertexBuffer();
+    int subdivisions = getFaceSubdivisions(mesh);
+    for (int cell = 0; cell < 6; ++cell) {
+      if (cell % 3 == 2) {
+        continue;
+      }
+      // The right edge of each cell is the left edge of the next one.
+      for (int j = 0; j <= subdivisions; ++j) {
+        int right = getCubeVertex(subdivisions, cell, subdivisions, j);
+        int left = getCubeVertex(subdivisions, cell + 1, 0, j);
+        for (int c = 0; c < 3; ++c) {
+          assertEquals(
+              "cell " + cell + " row " + j,
+              vertices.get(right * CPV + c), vertices.get(left * CPV + c), 1e-4f * RADIUS);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void cubemapTextureCoordinatesAreLinearInTheFacePlane() {
+    assertFrontFaceProjection(Mesh.MEDIA_CUBEMAP_MONOSCOPIC, false);
+  }
+
+  @Test
+  public void eacTextureCoordinatesAreLinearInTheAngle() {
+    assertFrontFaceProjection(Mesh.MEDIA_EAC_MONOSCOPIC, true);
+  }
+
+  @Test
+  public void cubemapStereoLayoutsOffsetTheRightEye() {
+    assertStereoOffsets(Mesh.MEDIA_CUBEMAP_MONOSCOPIC);
+    assertStereoOffsets(Mesh.MEDIA_EAC_MONOSCOPIC);
+  }
+
+  @Test
+  public void cubemapPatchesAreQuartersOfTheFaces() {
+    int[] formats = {Mesh.MEDIA_CUBEMAP_MONOSCOPIC, Mesh.MEDIA_EAC_STEREO_TOP_BOTTOM};
+    for (int format : formats) {
+      Mesh mesh = Mesh.createCubemap(RADIUS, format);
+      ShortBuffer indices = (ShortBuffer) mesh.getIndexBuffer();
+      SpherePatches patches = mesh.getPatches();
+      int subdivisions = getFaceSubdivisions(mesh);
+      int half = subdivisions / 2;
+      assertEquals(6 * 4, patches.getPatchCount());
+      assertEquals(6 * subdivisions * subdivisions * 6, indices.capacity());
+
+      int nextIndex = 0;
+      for (int patch = 0; patch < patches.getPatchCount(); ++patch) {
+        int cell = patch / 4;
+        int quarter = patch % 4;
+        int first = patches.getFirstIndex(patch);
+        assertEquals(nextIndex, first);
+        assertEquals(half * half * 6, patches.getIndexCount(patch));
+        nextIndex = first + patches.getIndexCount(patch);
+
+        // Row-major quarters, each covering half the rows & columns of the vertex grid.
+        int rowStart = (quarter / 2) * half;
+        int columnStart = (quarter % 2) * half;
+        for (int n = first; n < nextIndex; ++n) {
+          int vertex = (indices.get(n) & 0xFFFF) - cell * (subdivisions + 1) * (subdivisions + 1);
+          String message = "format " + format + " patch " + patch + " index " + n;
+          assertTrue(message, vertex >= 0 && vertex < (subdivisions + 1) * (subdivisions + 1));
+          int i = vertex % (subdivisions + 1);
+          int j = vertex / (subdivisions + 1);
+          assertTrue(message, i >= columnStart && i <= columnStart + half);
+          assertTrue(message, j >= rowStart && j <= rowStart + half);
+        }
+      }
+      assertEquals(indices.capacity(), nextIndex);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void cubemapRejectsSphericalFormats() {
+    Mesh.createCubemap(RADIUS, Mesh.MEDIA_STEREO_TOP_BOTTOM);
+  }
+
+  /**
+   * Checks that each vertex of the triangle strips of createUvSphere has a matching vertex in the
+   * grid of createIndexedUvSphere.
+   */
+  private static void assertSpheresMatch(
+      int latitudes, int longitudes, float verticalFov, float horizontalFov, int format) {
+    FloatBuffer strips = Mesh.createUvSphere(
+        RADIUS, latitudes, longitudes, verticalFov, horizontalFov, format).getVertexBuffer();
+    FloatBuffer grid = Mesh.createIndexedUvSphere(
+        RADIUS, latitudes, longitudes, verticalFov, horizontalFov, format).getVertexBuffer();
+    assertEquals((latitudes + 1) * (longitudes + 1) * CPV, grid.capacity());
+
+    // Each band of strips starts & ends with a degenerate vertex.
+    int verticesPerBand = 2 * (longitudes + 1) + 2;
+    for (int j = 0; j < latitudes; ++j) {
+      for (int i = 0; i < longitudes + 1; ++i) {
+        for (int k = 0; k < 2; ++k) {
+          int stripVertex = j * verticesPerBand + 1 + 2 * i + k;
+          int gridVertex = (j + k) * (longitudes + 1) + i;
+          for (int c = 0; c < CPV; ++c) {
+            // Positions are computed in float by the strips & in double by the grid.
+            float tolerance = c < 3 ? 1e-4f * RADIUS : 1e-5f;
+            assertEquals(
+                "vertex (" + j + ", " + i + ", " + k + ") component " + c,
+                strips.get(stripVertex * CPV + c), grid.get(gridVertex * CPV + c), tolerance);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks that each quad of the grid is covered by 2 triangles and that all the triangles which
+   * aren't degenerate at the poles face the same way relative to the center of the sphere.
+   */
+  private static void assertIndicesFormConsistentTriangles(
+      Mesh mesh, int latitudes, int longitudes) {
+    FloatBuffer vertices = mesh.getVertexBuffer();
+    Buffer indices = mesh.getIndexBuffer();
+    int columns = longitudes + 1;
+    int vertexCount = (latitudes + 1) * columns;
+    assertEquals(latitudes * longitudes * 6, indices.capacity());
+
+    int[] trianglesPerQuad = new int[latitudes * longitudes];
+    int expectedSign = 0;
+    for (int t = 0; t < indices.capacity(); t += 3) {
+      int a = getIndex(indices, t);
+      int b = getIndex(indices, t + 1);
+      int c = getIndex(indices, t + 2);
+      assertTrue(a < vertexCount && b < vertexCount && c < vertexCount);
+
+      int row = Math.min(a, Math.min(b, c)) / columns;
+      int column = Math.min(a % columns, Math.min(b % columns, c % columns));
+      trianglesPerQuad[row * longitudes + column]++;
+
+      float[] edge1 = new float[3];
+      float[] edge2 = new float[3];
+      for (int i = 0; i < 3; ++i) {
+        edge1[i] = vertices.get(b * CPV + i) - vertices.get(a * CPV + i);
+        edge2[i] = vertices.get(c * CPV + i) - vertices.get(a * CPV + i);
+      }
+      float nx = edge1[1] * edge2[2] - edge1[2] * edge2[1];
+      float ny = edge1[2] * edge2[0] - edge1[0] * edge2[2];
+      float nz = edge1[0] * edge2[1] - edge1[1] * edge2[0];
+      if (Math.sqrt(nx * nx + ny * ny + nz * nz) < 1e-3f) {
+        continue;  // Degenerate at a pole.
+      }
+      float outward = nx * vertices.get(a * CPV)
+          + ny * vertices.get(a * CPV + 1)
+          + nz * vertices.get(a * CPV + 2);
+      int sign = outward > 0 ? 1 : -1;
+      if (expectedSign == 0) {
+        expectedSign = sign;
+      }
+      assertEquals("triangle " + t / 3, expectedSign, sign);
+    }
+    for (int quad = 0; quad < trianglesPerQuad.length; ++quad) {
+      assertEquals("quad " + quad, 2, trianglesPerQuad[quad]);
+    }
+  }
+
+  /** Returns the number of rows & columns of quads of each face of a cubemap mesh. */
+  private static int getFaceSubdivisions(Mesh mesh) {
+    int verticesPerFace = mesh.getVertexBuffer().capacity() / CPV / 6;
+    int subdivisions = (int) Math.round(Math.sqrt(verticesPerFace)) - 1;
+    assertEquals(verticesPerFace, (subdivisions + 1) * (subdivisions + 1));
+    return subdivisions;
+  }
+
+  /** Returns the vertex at column i & row j of the face in the given cell of the media grid. */
+  private static int getCubeVertex(int subdivisions, int cell, int i, int j) {
+    return (cell * (subdivisions + 1) + j) * (subdivisions + 1) + i;
+  }
+
+  private static void assertFaceCenters(int format, float[][] centers) {
+    Mesh mesh = Mesh.createCubemap(RADIUS, format);
+    FloatBuffer vertices = mesh.getVertexBuffer();
+    int subdivisions = getFaceSubdivisions(mesh);
+    for (int cell = 0; cell < 6; ++cell) {
+      int center = getCubeVertex(subdivisions, cell, subdivisions / 2, subdivisions / 2);
+      String message = "format " + format + " cell " + cell;
+      assertDirection(message, centers[cell], vertices, center);
+      assertEquals(message, (cell % 3 + .5f) / 3, vertices.get(center * CPV + 3), 1e-6f);
+      assertEquals(message, (cell / 3 + .5f) / 2, vertices.get(center * CPV + 4), 1e-6f);
+    }
+  }
+
+  /** Checks the direction of the middle of the right & bottom edges of each cell. */
+  private static void assertFaceAxes(
+      int format, float[][] centers, float[][] rights, float[][] downs) {
+    Mesh mesh = Mesh.createCubemap(RADIUS, format);
+    FloatBuffer vertices = mesh.getVertexBuffer();
+    int subdivisions = getFaceSubdivisions(mesh);
+    int half = subdivisions / 2;
+    for (int cell = 0; cell < 6; ++cell) {
+      String message = "format " + format + " cell " + cell;
+      float[] right = new float[3];
+      float[] down = new float[3];
+      for (int c = 0; c < 3; ++c) {
+        right[c] = centers[cell][c] + rights[cell][c];
+        down[c] = centers[cell][c] + downs[cell][c];
+      }
+      assertDirection(message + " right", right, vertices,
+          getCubeVertex(subdivisions, cell, subdivisions, half));
+      assertDirection(message + " down", down, vertices,
+          getCubeVertex(subdivisions, cell, half, subdivisions));
+    }
+  }
+
+  /**
+   * Checks how the middle row of the front face is projected. Cubemap texture coordinates are
+   * proportional to the tangent of the angle from the center of the face. EAC ones are
+   * proportional to the angle.
+   */
+  private static void assertFrontFaceProjection(int format, boolean equiAngular) {
+    Mesh mesh = Mesh.createCubemap(RADIUS, format);
+    FloatBuffer vertices = mesh.getVertexBuffer();
+    int subdivisions = getFaceSubdivisions(mesh);
+    int cell = format == Mesh.MEDIA_CUBEMAP_MONOSCOPIC ? 4 : 1;
+    for (int i = 0; i <= subdivisions; ++i) {
+      int vertex = getCubeVertex(subdivisions, cell, i, subdivisions / 2);
+      float x = vertices.get(vertex * CPV);
+      float z = vertices.get(vertex * CPV + 2);
+      assertEquals(RADIUS, (float) Math.sqrt(x * x + z * z), 1e-4f * RADIUS);
+      float faceU = 2f * i / subdivisions - 1;
+      float expected = equiAngular ? faceU * (float) Math.PI / 4 : (float) Math.atan(faceU);
+      assertEquals("vertex " + i, expected, (float) Math.atan2(x, -z), 1e-5f);
+    }
+  }
+
+  private static void assertStereoOffsets(int monoFormat) {
+    FloatBuffer mono = Mesh.createCubemap(RADIUS, monoFormat).getVertexBuffer();
+    FloatBuffer leftRight = Mesh.createCubemap(RADIUS, monoFormat + 1).getVertexBuffer();
+    FloatBuffer topBottom = Mesh.createCubemap(RADIUS, monoFormat + 2).getVertexBuffer();
+    assertEquals(mono.capacity(), leftRight.capacity());
+    assertEquals(mono.capacity(), topBottom.capacity());
+    for (int v = 0; v < mono.capacity() / CPV; ++v) {
+      for (int c = 0; c < 3; ++c) {
+        assertEquals(mono.get(v * CPV + c), leftRight.get(v * CPV + c), 0);
+        assertEquals(mono.get(v * CPV + c), topBottom.get(v * CPV + c), 0);
+      }
+      float u = mono.get(v * CPV + 3);
+      float t = mono.get(v * CPV + 4);
+      // Mono media uses the same coordinates for both eyes.
+      assertEquals(u, mono.get(v * CPV + 5), 0);
+      assertEquals(t, mono.get(v * CPV + 6), 0);
+
+      assertEquals(u / 2, leftRight.get(v * CPV + 3), 1e-6f);
+      assertEquals(t, leftRight.get(v * CPV + 4), 1e-6f);
+      assertEquals(u / 2 + .5f, leftRight.get(v * CPV + 5), 1e-6f);
+      assertEquals(t, leftRight.get(v * CPV + 6), 1e-6f);
+
+      assertEquals(u, topBottom.get(v * CPV + 3), 1e-6f);
+      assertEquals(t / 2, topBottom.get(v * CPV + 4), 1e-6f);
+      assertEquals(u, topBottom.get(v * CPV + 5), 1e-6f);
+      assertEquals(t / 2 + .5f, topBottom.get(v * CPV + 6), 1e-6f);
+    }
+  }
+
+  /** Checks that the vertex lies on the sphere in the direction of the given vector. */
+  private static void assertDirection(
+      String message, float[] direction, FloatBuffer vertices, int vertex) {
+    float length = (float) Math.sqrt(
+        direction[0] * direction[0] + direction[1] * direction[1] + direction[2] * direction[2]);
+    for (int c = 0; c < 3; ++c) {
+      assertEquals(
+          message, RADIUS * direction[c] / length, vertices.get(vertex * CPV + c), 1e-4f * RADIUS);
+    }
+  }
+
+  private static int getIndex(Buffer indices, int position) {
+    if (indices instanceof ShortBuffer) {
+      return ((ShortBuffer) indices).get(position) & 0xFFFF;
+    }
+    return ((IntBuffer) indices).get(position);
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.vr.sdk.samples.common.math.Mat4;
+import com.google.vr.sdk.samples.common.math.Quat;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public final class SpherePatchesTest {
+  private static final float RADIUS = 50;
+  // Floats per vertex: 3D position + left UV + right UV.
+  private static final int CPV = 7;
+  private static final int FRUSTUM_COUNT = 8000;
+  private static final float INTERPUPILLARY_DISTANCE = .064f;
+  // Points sampled along each edge of a triangle when searching for visible points.
+  private static final int TRIANGLE_SAMPLES = 4;
+
+  @Test
+  public void frustumPlanesMatchClipSpace() {
+    Random random = new Random(17);
+    float[] mvp = new float[16];
+    float[] planes = new float[SpherePatches.FRUSTUM_PLANES_SIZE];
+    float[] point = new float[4];
+    float[] clip = new float[4];
+    for (int i = 0; i < 100; ++i) {
+      randomEyeMatrix(random, mvp);
+      SpherePatches.extractFrustumPlanes(mvp, planes);
+      for (int j = 0; j < 100; ++j) {
+        point[0] = random.nextFloat() * 2 - 1;
+        point[1] = random.nextFloat() * 2 - 1;
+        point[2] = random.nextFloat() * 2 - 1;
+        point[3] = 1;
+        Mat4.multiplyVector(clip, 0, mvp, 0, point, 0);
+        float[] expected = {clip[3] + clip[0], clip[3] - clip[0], clip[3] + clip[1],
+            clip[3] - clip[1]};
+        for (int k = 0; k < 4; ++k) {
+          float distance = planes[k * 4] * point[0] + planes[k * 4 + 1] * point[1]
+              + planes[k * 4 + 2] * point[2] + planes[k * 4 + 3];
+          assertEquals(expected[k], distance, 1e-4f);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void gridIndexPositionsCoverTheIndexBufferOnce() {
+    int latitudes = 25;
+    int longitudes = 50;
+    SpherePatches patches = SpherePatches.createGrid(RADIUS, latitudes, longitudes, 180, 360);
+    // 30 degree patches: 6 rows & 12 columns.
+    assertEquals(6 * 12, patches.getPatchCount());
+
+    boolean[] used = new boolean[latitudes * longitudes];
+    for (int row = 0; row < latitudes; ++row) {
+      for (int column = 0; column < longitudes; ++column) {
+        int position = patches.getIndexPosition(row, column);
+        assertEquals(0, position % 6);
+        assertFalse(used[position / 6]);
+        used[position / 6] = true;
+      }
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void uniformPatchesHaveNoGrid() {
+    SpherePatches.createUniform(RADIUS, 6, 600).getIndexPosition(0, 0);
+  }
+
+  @Test
+  public void neverCullsAVisiblePointOfAFullSphere() {
+    assertCullingIsConservative(
+        Mesh.createIndexedUvSphere(RADIUS, 24, 48, 180, 360, Mesh.MEDIA_MONOSCOPIC), .35f, 5);
+  }
+
+  @Test
+  public void neverCullsAVisiblePointOfAPartialSphere() {
+    assertCullingIsConservative(
+        Mesh.createIndexedUvSphere(RADIUS, 30, 30, 180, 180, Mesh.MEDIA_STEREO_LEFT_RIGHT),
+        .35f,
+        4);
+  }
+
+  /**
+   * Culls the mesh against {@link #FRUSTUM_COUNT} random eye frusta and checks that every patch
+   * with a point inside the frustum is drawn. Also checks the average fraction of indices drawn
+   * and the average number of draw calls per eye.
+   */
+  private static void assertCullingIsConservative(
+      Mesh mesh, float maxDrawnFraction, int maxDrawCalls) {
+    SpherePatches patches = mesh.getPatches();
+    int patchCount = patches.getPatchCount();
+    float[][] samples = new float[patchCount][];
+    for (int p = 0; p < patchCount; ++p) {
+      samples[p] = samplePatch(patches, p, mesh.getVertexBuffer(), mesh.getIndexBuffer());
+    }
+    int indexCount = mesh.getIndexBuffer().capacity();
+
+    Random random = new Random(FRUSTUM_COUNT);
+    float[] mvp = new float[16];
+    float[] planes = new float[SpherePatches.FRUSTUM_PLANES_SIZE];
+    int[] ranges = new int[patchCount * 2];
+    boolean[] drawn = new boolean[indexCount];
+    long drawnIndices = 0;
+    long drawCalls = 0;
+    for (int f = 0; f < FRUSTUM_COUNT; ++f) {
+      randomEyeMatrix(random, mvp);
+      SpherePatches.extractFrustumPlanes(mvp, planes);
+      int rangeCount = patches.cull(planes, ranges);
+      drawCalls += rangeCount;
+
+      Arrays.fill(drawn, false);
+      int previousEnd = -1;
+      for (int r = 0; r < rangeCount; ++r) {
+        int first = ranges[r * 2];
+        int count = ranges[r * 2 + 1];
+        // Ranges are sorted & disjoint, and adjacent ones are merged.
+        assertTrue(first > previousEnd);
+        previousEnd = first + count;
+        for (int n = first; n < first + count; ++n) {
+          drawn[n] = true;
+        }
+        drawnIndices += count;
+      }
+
+      for (int p = 0; p < patchCount; ++p) {
+        boolean patchDrawn = patches.isPatchVisible(p, planes);
+        int first = patches.getFirstIndex(p);
+        int last = first + patches.getIndexCount(p) - 1;
+        assertEquals(patchDrawn, drawn[first]);
+        assertEquals(patchDrawn, drawn[last]);
+        if (!patchDrawn && isAnyPointVisible(samples[p], mvp)) {
+          fail("Frustum " + f + " culled a visible point of patch " + p);
+        }
+      }
+    }
+
+    float drawnFraction = (float) drawnIndices / indexCount / FRUSTUM_COUNT;
+    float drawCallsPerEye = (float) drawCalls / FRUSTUM_COUNT;
+    assertTrue("Drew " + drawnFraction + " of the indices", drawnFraction < maxDrawnFraction);
+    assertTrue(drawCallsPerEye + " draw calls per eye", drawCallsPerEye < maxDrawCalls);
+  }
+
+  /**
+   * Returns points spread over each triangle of the patch: its vertices and a grid of points along
+   * and between its edges.
+   */
+  private static float[] samplePatch(
+      SpherePatches patches, int patch, FloatBuffer vertices, Buffer indices) {
+    int triangleCount = patches.getIndexCount(patch) / 3;
+    int pointsPerTriangle = (TRIANGLE_SAMPLES + 1) * (TRIANGLE_SAMPLES + 2) / 2;
+    float[] points = new float[triangleCount * pointsPerTriangle * 3];
+    int n = 0;
+    for (int t = 0; t < triangleCount; ++t) {
+      int first = patches.getFirstIndex(patch) + t * 3;
+      int a = getIndex(indices, first) * CPV;
+      int b = getIndex(indices, first + 1) * CPV;
+      int c = getIndex(indices, first + 2) * CPV;
+      for (int i = 0; i <= TRIANGLE_SAMPLES; ++i) {
+        for (int j = 0; i + j <= TRIANGLE_SAMPLES; ++j) {
+          float u = (float) i / TRIANGLE_SAMPLES;
+          float v = (float) j / TRIANGLE_SAMPLES;
+          for (int axis = 0; axis < 3; ++axis) {
+            points[n++] = (1 - u - v) * vertices.get(a + axis)
+                + u * vertices.get(b + axis)
+                + v * vertices.get(c + axis);
+          }
+        }
+      }
+    }
+    return points;
+  }
+
+  private static int getIndex(Buffer indices, int position) {
+    if (indices instanceof ShortBuffer) {
+      return ((ShortBuffer) indices).get(position) & 0xFFFF;
+    }
+    return ((IntBuffer) indices).get(position);
+  }
+
+  /** Returns true if any of the points is inside the side planes of the frustum. */
+  private static boolean isAnyPointVisible(float[] points, float[] mvp) {
+    for (int n = 0; n < points.length; n += 3) {
+      float x = points[n];
+      float y = points[n + 1];
+      float z = points[n + 2];
+      float clipX = mvp[0] * x + mvp[4] * y + mvp[8] * z + mvp[12];
+      float clipY = mvp[1] * x + mvp[5] * y + mvp[9] * z + mvp[13];
+      float clipW = mvp[3] * x + mvp[7] * y + mvp[11] * z + mvp[15];
+      if (Math.abs(clipX) <= clipW && Math.abs(clipY) <= clipW) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Fills mvp with the matrix of one eye of a randomly oriented head: a perspective projection
+   * with a 60 to 100 degree FOV, an offset of half the IPD and a random rotation.
+   */
+  private static void randomEyeMatrix(Random random, float[] mvp) {
+    // The same matrix as Matrix.perspectiveM, which isn't available in local unit tests.
+    float[] projection = new float[16];
+    float fov = 60 + random.nextFloat() * 40;
+    float aspect = .8f + random.nextFloat() * .4f;
+    float near = .1f;
+    float far = 2 * RADIUS;
+    float focalLength = (float) (1 / Math.tan(Math.toRadians(fov) / 2));
+    projection[0] = focalLength / aspect;
+    projection[5] = focalLength;
+    projection[10] = (far + near) / (near - far);
+    projection[11] = -1;
+    projection[14] = 2 * far * near / (near - far);
+
+    float[] eyeFromHead = new float[16];
+    Mat4.setIdentity(eyeFromHead, 0);
+    eyeFromHead[12] = (random.nextBoolean() ? .5f : -.5f) * INTERPUPILLARY_DISTANCE;
+
+    // A uniformly distributed rotation from a normalized 4D Gaussian quaternion.
+    float[] rotation = new float[4];
+    double length = 0;
+    for (int i = 0; i < 4; ++i) {
+      double value = random.nextGaussian();
+      rotation[i] = (float) value;
+      length += value * value;
+    }
+    length = Math.sqrt(length);
+    for (int i = 0; i < 4; ++i) {
+      rotation[i] /= length;
+    }
+    float[] headFromWorld = new float[16];
+    Quat.toRotationMatrix(rotation, 0, headFromWorld, 0);
+
+    Mat4.multiply(mvp, 0, projection, 0, eyeFromHead, 0, headFromWorld, 0);
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.video360.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public final class SphereTessellationTest {
+  private static final float DISPLAY_PIXELS_PER_DEGREE = 15;
+  private static final float MAX_ERROR_PIXELS = SphereTessellation.DEFAULT_MAX_ERROR_PIXELS;
+
+  @Test
+  public void interpolationErrorMatchesTheGeometryOfAChord() {
+    double[] segments = {Math.toRadians(1), Math.toRadians(7.5), Math.toRadians(30)};
+    for (double segment : segments) {
+      // Walk along the chord between two points of a unit circle and compare the direction of
+      // each point with the angle its linearly interpolated texture coordinate maps to.
+      double expected = 0;
+      for (int i = 0; i <= 10000; ++i) {
+        double t = i / 10000.0;
+        double x = 1 + t * (Math.cos(segment) - 1);
+        double y = t * Math.sin(segment);
+        expected = Math.max(expected, Math.abs(Math.atan2(y, x) - t * segment));
+      }
+      assertEquals(expected, SphereTessellation.maxInterpolationError(segment), expected * .01);
+    }
+  }
+
+  @Test
+  public void interpolationErrorGrowsWithTheCubeOfTheSegment() {
+    assertEquals(0, SphereTessellation.maxInterpolationError(0), 0);
+    double previous = 0;
+    for (int degrees = 1; degrees <= 90; ++degrees) {
+      double error = SphereTessellation.maxInterpolationError(Math.toRadians(degrees));
+      assertTrue(error > previous);
+      previous = error;
+    }
+    double small = SphereTessellation.maxInterpolationError(Math.toRadians(2));
+    double large = SphereTessellation.maxInterpolationError(Math.toRadians(4));
+    assertEquals(8, large / small, .05);
+  }
+
+  @Test
+  public void picksTheCoarsestMeshBelowTheMaximumError() {
+    int[][] sizes = {{1920, 960}, {3840, 1920}, {7680, 3840}};
+    for (int[] size : sizes) {
+      SphereTessellation tessellation = SphereTessellation.forMedia(
+          size[0], size[1], Mesh.MEDIA_MONOSCOPIC, 180, 360,
+          DISPLAY_PIXELS_PER_DEGREE, MAX_ERROR_PIXELS);
+      float pixelsPerDegree =
+          Math.min(DISPLAY_PIXELS_PER_DEGREE, Math.max(size[0] / 360f, size[1] / 180f));
+      double maxErrorRadians = Math.toRadians(MAX_ERROR_PIXELS / pixelsPerDegree);
+
+      assertTrue(tessellation.toString(), diagonalError(180, tessellation.getRows())
+          <= maxErrorRadians);
+      assertTrue(tessellation.toString(), diagonalError(360, tessellation.getColumns())
+          <= maxErrorRadians);
+      // One fewer band in either direction exceeds the error.
+      assertTrue(tessellation.toString(), diagonalError(180, tessellation.getRows() - 1)
+          > maxErrorRadians);
+      assertTrue(tessellation.toString(), diagonalError(360, tessellation.getColumns() - 1)
+          > maxErrorRadians);
+    }
+  }
+
+  @Test
+  public void higherResolutionMediaGetsAFinerMesh() {
+    SphereTessellation preview = forMonoscopic(1024, 512);
+    SphereTessellation hd = forMonoscopic(3840, 1920);
+    SphereTessellation sixK = forMonoscopic(5760, 2880);
+    SphereTessellation eightK = forMonoscopic(7680, 3840);
+    assertTrue(preview.getRows() < hd.getRows());
+    assertTrue(preview.getColumns() < hd.getColumns());
+    assertTrue(hd.getRows() < sixK.getRows());
+    // Beyond the display's resolution the media's resolution doesn't matter.
+    assertEquals(sixK.toString(), eightK.toString());
+    // The default 12x24 sphere is too coarse for 8K media.
+    assertTrue(eightK.getRows() > 12);
+    assertTrue(eightK.getColumns() > 24);
+  }
+
+  @Test
+  public void eachEyeOnlyUsesHalfOfAStereoFrame() {
+    SphereTessellation mono = forMonoscopic(2048, 1024);
+    SphereTessellation topBottom = SphereTessellation.forMedia(
+        2048, 2048, Mesh.MEDIA_STEREO_TOP_BOTTOM, 180, 360,
+        DISPLAY_PIXELS_PER_DEGREE, MAX_ERROR_PIXELS);
+    SphereTessellation leftRight = SphereTessellation.forMedia(
+        4096, 1024, Mesh.MEDIA_STEREO_LEFT_RIGHT, 180, 360,
+        DISPLAY_PIXELS_PER_DEGREE, MAX_ERROR_PIXELS);
+    assertEquals(mono.toString(), topBottom.toString());
+    assertEquals(mono.toString(), leftRight.toString());
+  }
+
+  @Test
+  public void unknownMediaSizeUsesTheDisplayResolution() {
+    assertEquals(forMonoscopic(7680, 3840).toString(), forMonoscopic(0, 0).toString());
+  }
+
+  @Test
+  public void partialSpheresScaleWithTheirFov() {
+    SphereTessellation full = forMonoscopic(3840, 1920);
+    SphereTessellation half = SphereTessellation.forMedia(
+        1920, 1920, Mesh.MEDIA_MONOSCOPIC, 180, 180,
+        DISPLAY_PIXELS_PER_DEGREE, MAX_ERROR_PIXELS);
+    assertEquals(full.getRows(), half.getRows());
+    assertEquals((full.getColumns() + 1) / 2, half.getColumns(), 1);
+  }
+
+  @Test
+  public void clampsTheMeshSize() {
+    SphereTessellation coarse = SphereTessellation.forMedia(
+        64, 32, Mesh.MEDIA_MONOSCOPIC, 180, 360, DISPLAY_PIXELS_PER_DEGREE, 100);
+    assertEquals(4, coarse.getRows());
+    assertEquals(8, coarse.getColumns());
+
+    SphereTessellation fine = SphereTessellation.forMedia(
+        0, 0, Mesh.MEDIA_MONOSCOPIC, 180, 360, 1000, .01f);
+    assertEquals(120, fine.getRows());
+    assertEquals(240, fine.getColumns());
+  }
+
+  @Test
+  public void meshUsesTheTessellation() {
+    Mesh mesh = Mesh.createIndexedUvSphere(
+        50, SphereTessellation.of(20, 40), 180, 360, Mesh.MEDIA_MONOSCOPIC);
+    assertEquals(21 * 41 * 7, mesh.getVertexBuffer().capacity());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyTessellation() {
+    SphereTessellation.of(0, 24);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveErrors() {
+    SphereTessellation.forMedia(
+        3840, 1920, Mesh.MEDIA_MONOSCOPIC, 180, 360, DISPLAY_PIXELS_PER_DEGREE, 0);
+  }
+
+  private static SphereTessellation forMonoscopic(int width, int height) {
+    return SphereTessellation.forMedia(
+        width, height, Mesh.MEDIA_MONOSCOPIC, 180, 360,
+        DISPLAY_PIXELS_PER_DEGREE, MAX_ERROR_PIXELS);
+  }
+
+  /** Error across the diagonal of a quad when fovDegrees is split into bands. */
+  private static double diagonalError(float fovDegrees, int bands) {
+    return SphereTessellation.maxInterpolationError(
+        Math.toRadians(fovDegrees / bands) * Math.sqrt(2));
+  }
+}
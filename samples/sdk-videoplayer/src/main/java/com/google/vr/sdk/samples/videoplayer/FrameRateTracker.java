@@ -0,0 +1,235 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.vr.sdk.samples.videoplayer;
+
+/**
+ * Estimates the rate of a monotonically increasing counter, such as the number of frames rendered
+ * by a video decoder, over a sliding window of time.
+ *
+ * <p>Samples are stored in preallocated ring buffers of primitives so {@link #addSample} doesn't
+ * allocate and runs in amortized constant time. This makes it safe to call every frame on the
+ * render thread. If more than {@code capacity} samples fall within the window, the oldest ones are
+ * dropped and the effective window is shortened.
+ *
+ * <p>This class is not thread-safe. All methods should be called on the same thread.
+ */
+public final class FrameRateTracker {
+  private static final float NANOS_PER_SECOND = 1e9f;
+  private static final long NANOS_PER_MILLI = 1000000;
+
+  // Ring buffers holding the time & counter value of each sample. The oldest sample is at index
+  // head and the newest is at index (head + size - 1) % capacity.
+  private final long[] sampleTimes;
+  private final int[] sampleCounts;
+  // Scratch space for percentile queries.
+  private final long[] scratchIntervals;
+  private int head;
+  private int size;
+  private long windowNanos;
+
+  /**
+   * @param capacity Maximum number of samples retained. This should be at least the expected
+   *     sample rate multiplied by the window length.
+   * @param windowNanos Length of the sliding window in nanoseconds.
+   */
+  public FrameRateTracker(int capacity, long windowNanos) {
+    if (capacity < 2) {
+      throw new IllegalArgumentException("Capacity must be at least 2.");
+    }
+    sampleTimes = new long[capacity];
+    sampleCounts = new int[capacity];
+    scratchIntervals = new long[capacity - 1];
+    setWindowNanos(windowNanos);
+  }
+
+  /**
+   * Changes the length of the sliding window. Samples that are outside of a shorter window are
+   * pruned on the next call to {@link #addSample}.
+   */
+  public void setWindowNanos(long windowNanos) {
+    if (windowNanos <= 0) {
+      throw new IllegalArgumentException("Window must be positive.");
+    }
+    this.windowNanos = windowNanos;
+  }
+
+  /** Discards all samples, e.g., when a new video starts playing. */
+  public void reset() {
+    head = 0;
+    size = 0;
+  }
+
+  /**
+   * Records the value of the counter at the given time and prunes samples that have fallen out of
+   * the window.
+   *
+   * @param timeNanos Time of the sample, typically from {@link System#nanoTime()}. Must not be
+   *     earlier than the previous sample.
+   * @param count Value of the counter at timeNanos.
+   */
+  public void addSample(long timeNanos, int count) {
+    int capacity = sampleTimes.length;
+    if (size == capacity) {
+      // Overwrite the oldest sample.
+      head = (head + 1) % capacity;
+      --size;
+    }
+    int tail = (head + size) % capacity;
+    sampleTimes[tail] = timeNanos;
+    sampleCounts[tail] = count;
+    ++size;
+
+    long cutoffTime = timeNanos - windowNanos;
+    while (size > 1 && sampleTimes[head] < cutoffTime) {
+      head = (head + 1) % capacity;
+      --size;
+    }
+  }
+
+  /** Returns the number of samples within the window. */
+  public int getSampleCount() {
+    return size;
+  }
+
+  /**
+   * Returns the average rate at which the counter increased over the window, in units per second,
+   * or 0 if there aren't enough samples yet.
+   */
+  public float getRatePerSecond() {
+    if (size < 2) {
+      return 0.f;
+    }
+    int tail = (head + size - 1) % sampleTimes.length;
+    long elapsedNanos = sampleTimes[tail] - sampleTimes[head];
+    if (elapsedNanos <= 0) {
+      return 0.f;
+    }
+    return (sampleCounts[tail] - sampleCounts[head]) * NANOS_PER_SECOND / elapsedNanos;
+  }
+
+  /**
+   * Returns the given percentile of the intervals between consecutive samples in the window, or 0
+   * if there aren't enough samples yet. For example, when a sample is added every frame, the 99th
+   * percentile is the frame time that 99% of frames were faster than.
+   *
+   * @param percentile Value in [0, 100].
+   */
+  public long getIntervalPercentileNanos(float percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be in [0, 100].");
+    }
+    int intervalCount = copyIntervals();
+    if (intervalCount == 0) {
+      return 0;
+    }
+    int rank = Math.round(percentile / 100 * (intervalCount - 1));
+    return select(scratchIntervals, intervalCount, rank);
+  }
+
+  /**
+   * Returns the standard deviation of the intervals between consecutive samples in the window, or
+   * 0 if there aren't enough samples yet. This measures how evenly spaced the samples are.
+   */
+  public long getIntervalJitterNanos() {
+    int intervalCount = copyIntervals();
+    if (intervalCount == 0) {
+      return 0;
+    }
+    double mean = 0;
+    for (int i = 0; i < intervalCount; ++i) {
+      mean += scratchIntervals[i];
+    }
+    mean /= intervalCount;
+    double variance = 0;
+    for (int i = 0; i < intervalCount; ++i) {
+      double delta = scratchIntervals[i] - mean;
+      variance += delta * delta;
+    }
+    return (long) Math.sqrt(variance / intervalCount);
+  }
+
+  /**
+   * Appends a human-readable summary of the window to the builder: the rate in units per second
+   * and the median, 99th percentile & jitter of the sample intervals in milliseconds.
+   */
+  public StringBuilder dump(StringBuilder builder) {
+    builder.append("rate=").append(getRatePerSecond()).append("/s interval p50=");
+    appendMillis(builder, getIntervalPercentileNanos(50));
+    builder.append(" p99=");
+    appendMillis(builder, getIntervalPercentileNanos(99));
+    builder.append(" jitter=");
+    appendMillis(builder, getIntervalJitterNanos());
+    return builder;
+  }
+
+  /** Appends nanos as milliseconds with two decimals without going through String.format. */
+  private static void appendMillis(StringBuilder builder, long nanos) {
+    long hundredths = (nanos + NANOS_PER_MILLI / 200) / (NANOS_PER_MILLI / 100);
+    builder.append(hundredths / 100).append('.');
+    if (hundredths % 100 < 10) {
+      builder.append('0');
+    }
+    builder.append(hundredths % 100);
+  }
+
+  /** Fills scratchIntervals with the intervals in the window and returns how many there are. */
+  private int copyIntervals() {
+    int capacity = sampleTimes.length;
+    for (int i = 1; i < size; ++i) {
+      scratchIntervals[i - 1] =
+          sampleTimes[(head + i) % capacity] - sampleTimes[(head + i - 1) % capacity];
+    }
+    return Math.max(0, size - 1);
+  }
+
+  /**
+   * Returns the k-th smallest of the first n values. This partially reorders the values in place
+   * rather than sorting a copy so that queries don't allocate.
+   */
+  private static long select(long[] values, int n, int k) {
+    int left = 0;
+    int right = n - 1;
+    while (left < right) {
+      long pivot = values[(left + right) >>> 1];
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (values[i] < pivot) {
+          ++i;
+        }
+        while (values[j] > pivot) {
+          --j;
+        }
+        if (i <= j) {
+          long swap = values[i];
+          values[i] = values[j];
+          values[j] = swap;
+          ++i;
+          --j;
+        }
+      }
+      // values[left..j] <= pivot <= values[i..right] and anything in between equals the pivot.
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return values[k];
+      }
+    }
+    return values[k];
+  }
+}
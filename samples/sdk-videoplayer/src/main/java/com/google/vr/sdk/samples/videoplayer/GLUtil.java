@@ -164,4 +164,40 @@ public class GLUtil {
     }
     return program;
   }
+
+  /**
+   * Returns the location of a uniform variable. Locations don't change after a program is linked,
+   * so this should be called once after linking rather than every frame.
+   *
+   * @param program A linked GL program.
+   * @param name The name of the uniform.
+   * @return The location of the uniform.
+   * @throws RuntimeException if the program doesn't have an active uniform with this name.
+   */
+  public static int getUniformLocation(int program, String name) {
+    int location = GLES20.glGetUniformLocation(program, name);
+    checkGlError(TAG, "glGetUniformLocation " + name);
+    if (location == -1) {
+      throw new RuntimeException("Could not get uniform location for " + name);
+    }
+    return location;
+  }
+
+  /**
+   * Returns the location of an attribute variable. Like {@link #getUniformLocation}, this should
+   * be called once after linking.
+   *
+   * @param program A linked GL program.
+   * @param name The name of the attribute.
+   * @return The location of the attribute.
+   * @throws RuntimeException if the program doesn't have an active attribute with this name.
+   */
+  public static int getAttribLocation(int program, String name) {
+    int location = GLES20.glGetAttribLocation(program, name);
+    checkGlError(TAG, "glGetAttribLocation " + name);
+    if (location == -1) {
+      throw new RuntimeException("Could not get attribute location for " + name);
+    }
+    return location;
+  }
 }
@@ -6,6 +6,7 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.util.Log;
+import com.google.vr.sdk.samples.common.pose.PosePredictor;
 
 /**
  * Stores settings which are settable through intent extras and persisted in a
@@ -18,6 +19,8 @@ public class Settings {
   public static final String USE_DRM_VIDEO_SAMPLE = "use_drm_video_sample";
   public static final String SHOW_FRAME_RATE_BAR = "show_frame_rate_bar";
   public static final String VIDEO_LENGTH_SECONDS = "video_length_seconds";
+  public static final String POSE_EXTRAPOLATION = "pose_extrapolation";
+  public static final String RECORD_POSE_TRACE = "record_pose_trace";
 
   private final Activity activity;
   // When true, a DRM-protected sample is played back in a protected compositor GL context. When
@@ -29,6 +32,13 @@ public class Settings {
   // When greater than zero, indicates how long the video should run before stopping. This is mainly
   // useful to facilitate faster tests.
   public int videoLengthSeconds = -1;
+  // One of the PosePredictor.EXTRAPOLATE_* values. EXTRAPOLATE_NONE uses the GVR SDK's own head
+  // prediction over the measured frame latency.
+  public int poseExtrapolation = PosePredictor.EXTRAPOLATE_NONE;
+  // When true, the head pose of every frame is recorded and saved to
+  // WatchVideoActivity.POSE_TRACE_FILE in the app's external files directory when it stops. The
+  // trace can be replayed off-device.
+  public boolean recordPoseTrace = false;
 
   public Settings(Activity activity, Bundle intentParams) {
     this.activity = activity;
@@ -46,17 +56,36 @@ public class Settings {
       if (intentParams.containsKey(VIDEO_LENGTH_SECONDS)) {
         videoLengthSeconds = intentParams.getInt(VIDEO_LENGTH_SECONDS, -1);
       }
+      if (intentParams.containsKey(POSE_EXTRAPOLATION)) {
+        poseExtrapolation =
+            intentParams.getInt(POSE_EXTRAPOLATION, PosePredictor.EXTRAPOLATE_NONE);
+      }
+      if (intentParams.containsKey(RECORD_POSE_TRACE)) {
+        recordPoseTrace = intentParams.getBoolean(RECORD_POSE_TRACE, false);
+      }
+    }
+    if (poseExtrapolation < PosePredictor.EXTRAPOLATE_NONE
+        || poseExtrapolation > PosePredictor.EXTRAPOLATE_CONSTANT_ACCELERATION) {
+      Log.w(TAG, "Ignoring unknown pose extrapolation " + poseExtrapolation);
+      poseExtrapolation = PosePredictor.EXTRAPOLATE_NONE;
     }
     storePreferences();
     dump();
   }
 
+  /** Creates the default settings without reading or storing preferences, e.g., for tests. */
+  /* package */ Settings() {
+    activity = null;
+  }
+
   private void readPreferences() {
     SharedPreferences pref =
         activity.getSharedPreferences(LOCAL_PREFERENCE_FILE, Context.MODE_PRIVATE);
     useDrmVideoSample = pref.getBoolean(USE_DRM_VIDEO_SAMPLE, true);
     showFrameRateBar = pref.getBoolean(SHOW_FRAME_RATE_BAR, false);
     videoLengthSeconds = pref.getInt(VIDEO_LENGTH_SECONDS, -1);
+    poseExtrapolation = pref.getInt(POSE_EXTRAPOLATION, PosePredictor.EXTRAPOLATE_NONE);
+    recordPoseTrace = pref.getBoolean(RECORD_POSE_TRACE, false);
   }
 
   private void storePreferences() {
@@ -65,13 +94,17 @@ public class Settings {
     pref.putBoolean(USE_DRM_VIDEO_SAMPLE, useDrmVideoSample)
         .putBoolean(SHOW_FRAME_RATE_BAR, showFrameRateBar)
         .putInt(VIDEO_LENGTH_SECONDS, videoLengthSeconds)
+        .putInt(POSE_EXTRAPOLATION, poseExtrapolation)
+        .putBoolean(RECORD_POSE_TRACE, recordPoseTrace)
         .commit();
   }
 
   public void dump() {
     String settings = String.format(
-        "Use DRM video [%b], Show framerate bar [%b], Playback duration (seconds) [%d]",
-        useDrmVideoSample, showFrameRateBar, videoLengthSeconds);
+        "Use DRM video [%b], Show framerate bar [%b], Playback duration (seconds) [%d], "
+            + "Pose extrapolation [%d], Record pose trace [%b]",
+        useDrmVideoSample, showFrameRateBar, videoLengthSeconds, poseExtrapolation,
+        recordPoseTrace);
     Log.d(TAG, "Video settings: " + settings);
   }
 }
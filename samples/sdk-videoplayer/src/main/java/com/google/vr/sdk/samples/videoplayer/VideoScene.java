@@ -15,18 +15,17 @@
  */
 package com.google.vr.sdk.samples.videoplayer;
 
-import android.content.Context;
 import android.graphics.RectF;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
-import com.google.android.exoplayer2.decoder.DecoderCounters;
 import com.google.vr.ndk.base.BufferViewport;
+import com.google.vr.sdk.samples.common.android.GlTimerQueryProvider;
+import com.google.vr.sdk.samples.common.android.GlesStateGl;
+import com.google.vr.sdk.samples.common.gl.GlStateCache;
+import com.google.vr.sdk.samples.common.profiling.GpuTimer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -37,6 +36,12 @@ import java.util.concurrent.TimeUnit;
 public class VideoScene {
   private static final String TAG = "VideoScreen";
   private static final RectF videoUv = new RectF(0.f, 1.f, 1.f, 0.f);
+  // Enough samples for a few seconds of rendering at 90 Hz.
+  private static final int MAX_FRAME_RATE_SAMPLES = 512;
+  // GPU passes timed by gpuTimer.
+  private static final int GPU_PASS_VIDEO = 0;
+  private static final int GPU_PASS_FRAME_RATE_BAR = 1;
+  private static final String[] GPU_PASS_NAMES = {"video", "frameRateBar"};
 
   private final Settings settings;
   // Helper object for GL resources used by the scene.
@@ -59,7 +64,14 @@ public class VideoScene {
   // Transform from SPRITE_VERTICES_DATA space to world space for the framerate bar under the video.
   private final float[] worldFromFrameRateBar = new float[16];
 
-  private final TreeMap<Long, Integer> frameCounts = new TreeMap<Long, Integer>();
+  // Tracks the number of frames rendered by the video decoder. Only accessed on the GL thread.
+  private final FrameRateTracker videoFrameRate =
+      new FrameRateTracker(MAX_FRAME_RATE_SAMPLES, TimeUnit.SECONDS.toNanos(3));
+  // Each pass runs once per eye.
+  private final GpuTimer gpuTimer =
+      new GpuTimer(new GlTimerQueryProvider(), GPU_PASS_NAMES, 2 * GPU_PASS_NAMES.length);
+  // Skips the program and vertex array changes that the second eye & the frame rate bar repeat.
+  private final GlStateCache glState = GlesStateGl.createCache();
   private volatile int videoSurfaceID = BufferViewport.EXTERNAL_SURFACE_ID_NONE;
   private volatile boolean isVideoPlaying = false;
   private float currentFpsFraction = 0.f;
@@ -120,71 +132,53 @@ public class VideoScene {
    * @param perspectiveFromWorld Transformation from world space to clip space.
    */
   public void draw(float[] perspectiveFromWorld) {
+    gpuTimer.glBeginPass(GPU_PASS_VIDEO);
     Matrix.multiplyMM(perspectiveFromQuad, 0, perspectiveFromWorld, 0, worldFromQuad, 0);
-    int program;
+    Resources.Program program;
     if (isVideoPlaying) {
       program = resources.solidColorProgram;
     } else {
       program = resources.spriteProgram;
     }
 
-    GLES20.glUseProgram(program);
+    glState.glUseProgram(program.id);
     GLUtil.checkGlError(TAG, "glUseProgram");
 
     if (program == resources.spriteProgram) {
-      GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, resources.loadingTextureId);
+      glState.glActiveTexture(GLES20.GL_TEXTURE0);
+      glState.glBindTexture(GLES20.GL_TEXTURE_2D, resources.loadingTextureId);
       GLUtil.checkGlError(TAG, "glBindTexture");
-      final int uImageTexture = GLES20.glGetUniformLocation(program, "uImageTexture");
-      GLUtil.checkGlError(TAG, "glGetUniformLocation uImageTexture");
-      if (uImageTexture == -1) {
-        throw new RuntimeException("Could not get uniform location for uImageTexture");
-      }
-      GLES20.glUniform1i(uImageTexture, 0);
+      GLES20.glUniform1i(program.imageTextureHandle, 0);
     } else {
-      final int uColor = GLES20.glGetUniformLocation(program, "uColor");
-      GLES20.glUniform4f(uColor, 0.f, 0.f, 0.f, 0.f);
+      GLES20.glUniform4f(program.colorHandle, 0.f, 0.f, 0.f, 0.f);
     }
 
-    final int positionAttribute = GLES20.glGetAttribLocation(program, "aPosition");
-    GLUtil.checkGlError(TAG, "glGetAttribLocation aPosition");
-
     GLES20.glVertexAttribPointer(
-        positionAttribute, 3, GLES20.GL_FLOAT, false, Resources.VERTEX_DATA_STRIDE_BYTES,
+        program.positionHandle, 3, GLES20.GL_FLOAT, false, Resources.VERTEX_DATA_STRIDE_BYTES,
         resources.vertexPositions);
     GLUtil.checkGlError(TAG, "glVertexAttribPointer position");
-    GLES20.glEnableVertexAttribArray(positionAttribute);
-    GLUtil.checkGlError(TAG, "glEnableVertexAttribArray position handle");
 
-    final int uvAttribute = GLES20.glGetAttribLocation(program, "aTextureCoord");
-    GLUtil.checkGlError(TAG, "glGetAttribLocation aTextureCoord");
-    if (uvAttribute >= 0) {
+    if (program.textureCoordHandle >= 0) {
       GLES20.glVertexAttribPointer(
-          uvAttribute, 2, GLES20.GL_FLOAT, false, Resources.VERTEX_DATA_STRIDE_BYTES,
-          resources.vertexUVs);
+          program.textureCoordHandle, 2, GLES20.GL_FLOAT, false,
+          Resources.VERTEX_DATA_STRIDE_BYTES, resources.vertexUVs);
       GLUtil.checkGlError(TAG, "glVertexAttribPointer uv handle");
-      GLES20.glEnableVertexAttribArray(uvAttribute);
-      GLUtil.checkGlError(TAG, "glEnableVertexAttribArray uv handle");
     }
+    glState.glEnableVertexAttribArrays(
+        GlStateCache.attribBit(program.positionHandle)
+            | GlStateCache.attribBit(program.textureCoordHandle));
+    GLUtil.checkGlError(TAG, "glEnableVertexAttribArray");
 
-    final int uMVPMatrix = GLES20.glGetUniformLocation(program, "uMVPMatrix");
-    GLUtil.checkGlError(TAG, "glGetUniformLocation uMVPMatrix");
-    if (uMVPMatrix == -1) {
-      throw new RuntimeException("Could not get uniform location for uMVPMatrix");
-    }
-    GLES20.glUniformMatrix4fv(uMVPMatrix, 1, false, perspectiveFromQuad, 0);
+    GLES20.glUniformMatrix4fv(program.mvpMatrixHandle, 1, false, perspectiveFromQuad, 0);
 
     GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, Resources.NUM_VERTICES);
-
-    GLES20.glDisableVertexAttribArray(positionAttribute);
-    if (uvAttribute >= 0) {
-      GLES20.glDisableVertexAttribArray(uvAttribute);
-    }
     GLUtil.checkGlError(TAG, "glDrawArrays");
 
     if (settings.showFrameRateBar) {
+      gpuTimer.glBeginPass(GPU_PASS_FRAME_RATE_BAR);
       drawVideoFrameRateBar(perspectiveFromWorld);
     }
+    gpuTimer.glEndPass();
   }
 
   private void drawVideoFrameRateBar(float[] perspectiveFromWorld) {
@@ -198,75 +192,77 @@ public class VideoScene {
     Matrix.multiplyMM(worldFromFrameRateBar, 0, worldFromQuad, 0, frameRateBarFromQuad, 0);
     Matrix.multiplyMM(perspectiveFromQuad, 0, perspectiveFromWorld, 0, worldFromFrameRateBar, 0);
 
-    GLES20.glUseProgram(resources.solidColorProgram);
-    final int uColor = GLES20.glGetUniformLocation(resources.solidColorProgram, "uColor");
+    Resources.Program program = resources.solidColorProgram;
+    glState.glUseProgram(program.id);
     // Fade between red and 80% gray when the video is DRM-protected. Fade between red and yellow
     // when the video is not protected.
     if (settings.useDrmVideoSample) {
-      GLES20.glUniform4f(uColor, 1.f - 0.2f * colorFpsFraction, 0.8f * colorFpsFraction,
+      GLES20.glUniform4f(
+          program.colorHandle, 1.f - 0.2f * colorFpsFraction, 0.8f * colorFpsFraction,
           0.8f * colorFpsFraction, 1.f);
     } else {
-      GLES20.glUniform4f(uColor, 0.5f + 0.5f * colorFpsFraction, colorFpsFraction, 0.f, 1.f);
+      GLES20.glUniform4f(
+          program.colorHandle, 0.5f + 0.5f * colorFpsFraction, colorFpsFraction, 0.f, 1.f);
     }
-    final int positionAttribute =
-        GLES20.glGetAttribLocation(resources.solidColorProgram, "aPosition");
     GLES20.glVertexAttribPointer(
-        positionAttribute, 3, GLES20.GL_FLOAT, false, Resources.VERTEX_DATA_STRIDE_BYTES,
+        program.positionHandle, 3, GLES20.GL_FLOAT, false, Resources.VERTEX_DATA_STRIDE_BYTES,
         resources.vertexPositions);
-    GLES20.glEnableVertexAttribArray(positionAttribute);
-    final int uMVPMatrix = GLES20.glGetUniformLocation(resources.solidColorProgram, "uMVPMatrix");
-    GLES20.glUniformMatrix4fv(uMVPMatrix, 1, false, perspectiveFromQuad, 0);
+    glState.glEnableVertexAttribArrays(GlStateCache.attribBit(program.positionHandle));
+    GLES20.glUniformMatrix4fv(program.mvpMatrixHandle, 1, false, perspectiveFromQuad, 0);
     GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, Resources.NUM_VERTICES);
-    GLES20.glDisableVertexAttribArray(positionAttribute);
     GLUtil.checkGlError(TAG, "frame rate bar");
   }
 
   /**
    * Updates the average fraction of the native frame rate of the video achieved over the last N
-   * seconds, based on the passed DecoderCounters object.
+   * seconds, based on the number of frames rendered by the video decoder.
    *
    * @param averagingPeriodInSeconds Compute the average over this many seconds in the past.
-   * @param frameRate Native frame rate of the video.
-   * @param counters DecoderCounters object retrieved from the video decoder.
+   * @param nativeFrameRate Native frame rate of the video.
+   * @param renderedFrameCount Total number of frames rendered by the video decoder, e.g.,
+   *     DecoderCounters.renderedOutputBufferCount.
    */
   public void updateVideoFpsFraction(
-      long averagingPeriodInSeconds, float nativeFrameRate, DecoderCounters counters) {
-    if (!settings.showFrameRateBar || counters == null) {
+      long averagingPeriodInSeconds, float nativeFrameRate, int renderedFrameCount) {
+    if (!settings.showFrameRateBar) {
       currentFpsFraction = 0.f;
       return;
     }
     // Compute the frame rate over the last N seconds.
-    final long nowTime = System.nanoTime();
-    final long cutoffTime = nowTime - TimeUnit.SECONDS.toNanos(averagingPeriodInSeconds);
-    long pastTime = 0L;
-    counters.ensureUpdated();
-    final int currentBufferCount = counters.renderedOutputBufferCount;
-    int pastBufferCount = 0;
-
-    // Insert the current buffer count into the map for future computations.
-    frameCounts.put(Long.valueOf(nowTime), Integer.valueOf(currentBufferCount));
-
-    // Loop over the map, pruning outdated entries and stopping at the first one that is within the
-    // cutoff time.
-    for (Iterator<Map.Entry<Long, Integer>> iterator = frameCounts.entrySet().iterator();
-        iterator.hasNext(); ) {
-      Map.Entry<Long, Integer> count = iterator.next();
-      if (count.getKey().longValue() < cutoffTime) {
-        iterator.remove();
-      } else {
-        pastTime = count.getKey().longValue();
-        pastBufferCount = count.getValue().intValue();
-        break;
-      }
-    }
+    videoFrameRate.setWindowNanos(TimeUnit.SECONDS.toNanos(averagingPeriodInSeconds));
+    videoFrameRate.addSample(System.nanoTime(), renderedFrameCount);
 
     // Compute the average fraction of the frame rate and clamp it to [0, 1].
-    float elapsedSeconds = ((float) (nowTime - pastTime)) / 1e9f;
-    float rawFraction =
-        ((float) (currentBufferCount - pastBufferCount)) / (elapsedSeconds * nativeFrameRate);
+    float rawFraction = videoFrameRate.getRatePerSecond() / nativeFrameRate;
     currentFpsFraction = Math.min(1.0f, Math.max(0.f, rawFraction));
   }
 
+  /**
+   * Returns the tracker fed by {@link #updateVideoFpsFraction}. The interval statistics describe
+   * how often the scene was rendered while the rate describes the video decoder's output. Must be
+   * read on the GL thread.
+   */
+  public FrameRateTracker getVideoFrameRateTracker() {
+    return videoFrameRate;
+  }
+
+  /**
+   * Returns the timer which measures the GPU time of {@link #draw}. The caller brackets each
+   * frame's draw calls with {@link GpuTimer#glBeginFrame()} and {@link GpuTimer#glEndFrame()}.
+   */
+  public GpuTimer getGpuTimer() {
+    return gpuTimer;
+  }
+
+  /**
+   * Returns the cache that {@link #draw} routes its GL state changes through. The caller brackets
+   * each frame's draw calls with {@link GlStateCache#glBeginFrame()} and {@link
+   * GlStateCache#glEndFrame()} so that the vertex arrays are disabled before GVR draws.
+   */
+  public GlStateCache getGlStateCache() {
+    return glState;
+  }
+
   /**
    * Create and load OpenGL resources.
    *
@@ -274,10 +270,12 @@ public class VideoScene {
    * counterpart for now, since GL resources are automatically cleaned up when the GL context
    * is destroyed.
    * 
-   * @param context Android activity context used to load the resources.
+   * @param loadingTextureId GL_TEXTURE_2D shown instead of the video while the latter is
+   *     initializing.
    */
-  public void prepareGLResources(Context context) {
-    resources.prepare(context);
+  public void prepareGLResources(int loadingTextureId) {
+    resources.prepare(loadingTextureId);
+    gpuTimer.glInit();
   }
   
   /**
@@ -325,22 +323,24 @@ public class VideoScene {
     static final int VERTEX_DATA_POS_OFFSET = 0;
     static final int VERTEX_DATA_UV_OFFSET = 3;
 
-    int solidColorProgram = 0;
-    int spriteProgram = 0;
+    Program solidColorProgram;
+    Program spriteProgram;
     int loadingTextureId = 0;
     FloatBuffer vertexPositions;
     FloatBuffer vertexUVs;
 
-    /* package */ void prepare(Context context) {
+    /* package */ void prepare(int loadingTextureId) {
       // Prepare shader programs.
-      solidColorProgram = GLUtil.createProgram(VERTEX_SHADER, SOLID_COLOR_FRAGMENT_SHADER);
-      if (solidColorProgram == 0) {
+      int program = GLUtil.createProgram(VERTEX_SHADER, SOLID_COLOR_FRAGMENT_SHADER);
+      if (program == 0) {
         throw new RuntimeException("Could not create video program");
       }
-      spriteProgram = GLUtil.createProgram(VERTEX_SHADER, SPRITE_FRAGMENT_SHADER);
-      if (spriteProgram == 0) {
+      solidColorProgram = new Program(program, false);
+      program = GLUtil.createProgram(VERTEX_SHADER, SPRITE_FRAGMENT_SHADER);
+      if (program == 0) {
         throw new RuntimeException("Could not create sprite program");
       }
+      spriteProgram = new Program(program, true);
   
       // Prepare vertex data.
       ByteBuffer vertices = ByteBuffer.allocateDirect(VERTEX_DATA.length * FLOAT_SIZE_BYTES)
@@ -350,12 +350,43 @@ public class VideoScene {
       vertexPositions.position(VERTEX_DATA_POS_OFFSET);
       vertexUVs = vertices.asFloatBuffer();
       vertexUVs.position(VERTEX_DATA_UV_OFFSET);
-  
-      // Load the texture to be shown instead of the video while the latter is initializing.
-      int[] textureIds = new int[1];
-      GLES20.glGenTextures(1, textureIds, 0);
-      loadingTextureId = textureIds[0];
-      GLUtil.createResourceTexture(context, loadingTextureId, R.raw.loading_bg);
+
+      this.loadingTextureId = loadingTextureId;
+    }
+
+    /**
+     * A linked program and the locations of its variables. The locations are looked up once when
+     * the program is created so drawing doesn't need to query GL by name. Variables that the
+     * program doesn't use have a location of -1.
+     */
+    static final class Program {
+      final int id;
+      final int mvpMatrixHandle;
+      final int positionHandle;
+      final int textureCoordHandle;
+      final int colorHandle;
+      final int imageTextureHandle;
+
+      /**
+       * @param id A linked program.
+       * @param isSprite Whether the program samples a texture rather than drawing a solid color.
+       * @throws RuntimeException if the program lacks a variable it needs.
+       */
+      Program(int id, boolean isSprite) {
+        this.id = id;
+        mvpMatrixHandle = GLUtil.getUniformLocation(id, "uMVPMatrix");
+        positionHandle = GLUtil.getAttribLocation(id, "aPosition");
+        if (isSprite) {
+          textureCoordHandle = GLUtil.getAttribLocation(id, "aTextureCoord");
+          imageTextureHandle = GLUtil.getUniformLocation(id, "uImageTexture");
+          colorHandle = -1;
+        } else {
+          // The solid color shader ignores the texture coordinates.
+          textureCoordHandle = -1;
+          imageTextureHandle = -1;
+          colorHandle = GLUtil.getUniformLocation(id, "uColor");
+        }
+      }
     }
   }
 }
@@ -21,7 +21,10 @@ import android.graphics.RectF;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView.Renderer;
 import android.opengl.Matrix;
+import android.util.Log;
+import android.view.WindowManager;
 import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.decoder.DecoderCounters;
 import com.google.android.exoplayer2.ext.gvr.GvrAudioProcessor;
 import com.google.vr.ndk.base.BufferSpec;
 import com.google.vr.ndk.base.BufferViewport;
@@ -29,6 +32,18 @@ import com.google.vr.ndk.base.BufferViewportList;
 import com.google.vr.ndk.base.Frame;
 import com.google.vr.ndk.base.GvrApi;
 import com.google.vr.ndk.base.SwapChain;
+import com.google.vr.sdk.samples.common.android.LogcatProfileLogger;
+import com.google.vr.sdk.samples.common.gl.GlStateCache;
+import com.google.vr.sdk.samples.common.math.Mat4;
+import com.google.vr.sdk.samples.common.math.Quat;
+import com.google.vr.sdk.samples.common.pose.PosePredictor;
+import com.google.vr.sdk.samples.common.profiling.FrameProfiler;
+import com.google.vr.sdk.samples.common.replay.PoseTrace;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.concurrent.TimeUnit;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -47,6 +62,8 @@ public class VideoSceneRenderer implements Renderer {
   // The scene's clipping planes.
   private static final float NEAR_PLANE = 1.0f;
   private static final float FAR_PLANE = 10.0f;
+  // Five minutes of poses at 90 Hz. Later poses are dropped.
+  private static final int POSE_TRACE_CAPACITY = 5 * 60 * 90;
 
   private final Context context;
   private final GvrApi api;
@@ -55,7 +72,15 @@ public class VideoSceneRenderer implements Renderer {
   private final BufferViewportList viewportList;
   private final BufferViewport scratchViewport;
 
-  private final long predictionOffsetNanos;
+  // Estimates when each frame will be displayed and optionally extrapolates the head pose to then.
+  private final PosePredictor posePredictor = new PosePredictor();
+  private final FrameProfiler frameProfiler = new FrameProfiler();
+  private final FrameProfiler.Logger profileLogger = new LogcatProfileLogger(TAG);
+  // Reused for the video frame rate summary logged alongside the frame profile.
+  private final StringBuilder logBuilder = new StringBuilder();
+  // Records the measured head pose of each frame. Null unless settings.recordPoseTrace is set. Only
+  // accessed on the GL thread.
+  private final PoseTrace poseTrace;
 
   private GvrAudioProcessor gvrAudioProcessor;
   private SwapChain swapChain;
@@ -65,10 +90,15 @@ public class VideoSceneRenderer implements Renderer {
   private volatile int videoSurfaceID = BufferViewport.EXTERNAL_SURFACE_ID_NONE;
   private volatile boolean shouldShowVideo = false;
 
+  // The head pose measured at the start of the frame, before any extrapolation.
+  private final float[] measuredHeadFromWorld = new float[16];
+  // The pose the frame is rendered with, extrapolated to when it's expected to be displayed.
   private final float[] headFromWorld = new float[16];
   private final float[] eyeFromHead = new float[16];
   private final float[][] eyeFromWorld = new float[2][16];
   private final float[] worldFromQuad = new float[16];
+  // headFromWorld as an x, y, z, w quaternion for the spatial audio renderer.
+  private final float[] headOrientation = new float[4];
   // Projection matrix matching the rendered FOV.
   private final float[] eyeProjection = new float[16];
   private final float[] perspectiveFromWorld = new float[16];
@@ -83,7 +113,45 @@ public class VideoSceneRenderer implements Renderer {
     recommendedList = api.createBufferViewportList();
     viewportList = api.createBufferViewportList();
     scratchViewport = api.createBufferViewport();
-    predictionOffsetNanos = TimeUnit.MILLISECONDS.toNanos(50);
+    posePredictor.setModel(settings.poseExtrapolation);
+    poseTrace = settings.recordPoseTrace ? new PoseTrace(POSE_TRACE_CAPACITY) : null;
+    float refreshRate =
+        ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE))
+            .getDefaultDisplay()
+            .getRefreshRate();
+    if (refreshRate > 0) {
+      frameProfiler.setVsyncPeriodNanos((long) (TimeUnit.SECONDS.toNanos(1) / refreshRate));
+    }
+  }
+
+  /**
+   * Returns the frame timing measurements. The profiler is not thread-safe, so this should only be
+   * queried on the GL thread.
+   */
+  public FrameProfiler getFrameProfiler() {
+    return frameProfiler;
+  }
+
+  /**
+   * Writes the head poses recorded since the last call to a file and starts a new trace. Does
+   * nothing unless {@link Settings#recordPoseTrace} is set. This must be called on the GL thread.
+   */
+  public void savePoseTrace(File file) {
+    if (poseTrace == null || poseTrace.size() == 0) {
+      return;
+    }
+    try {
+      OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+      try {
+        poseTrace.write(output);
+      } finally {
+        output.close();
+      }
+      Log.i(TAG, "Saved " + poseTrace.size() + " poses to " + file);
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to save the pose trace", e);
+    }
+    poseTrace.clear();
   }
 
   /** Shuts down the renderer. Can be called from any thread. */
@@ -183,46 +251,75 @@ public class VideoSceneRenderer implements Renderer {
 
   @Override
   public void onDrawFrame(GL10 gl) {
+    frameProfiler.beginFrame();
+    frameProfiler.beginStage(FrameProfiler.STAGE_ACQUIRE);
     Frame frame = swapChain.acquireFrame();
-    updateHeadAndEyeMatrices();
+    frameProfiler.beginStage(FrameProfiler.STAGE_DRAW);
+    // acquireFrame() can block until the compositor is ready, so the frame starts after it returns.
+    long frameStartNanos = System.nanoTime();
+    posePredictor.onFrameStart(frameStartNanos);
+    updateHeadAndEyeMatrices(frameStartNanos);
+    if (poseTrace != null) {
+      poseTrace.add(frameStartNanos, measuredHeadFromWorld, 0);
+    }
     // Populate the BufferViewportList to describe to the GvrApi how the color buffer
     // and video frame ExternalSurface buffer should be rendered. The eyeFromQuad matrix
     // describes how the video Surface frame should be transformed and rendered in eye space.
     populateBufferViewportList();
     drawScene(gl, frame);
+    frameProfiler.beginStage(FrameProfiler.STAGE_SUBMIT);
     frame.submit(viewportList, headFromWorld);
+    posePredictor.onFrameSubmitted(System.nanoTime());
     GLUtil.checkGlError(TAG, "submit frame");
+    frameProfiler.endFrame();
+    if (frameProfiler.maybeLog(profileLogger)) {
+      logVideoFrameRate();
+    }
+  }
+
+  /** Logs the video decoder's frame rate & the scene's frame intervals with the frame profile. */
+  private void logVideoFrameRate() {
+    FrameRateTracker videoFrameRate = videoScene.getVideoFrameRateTracker();
+    if (videoFrameRate.getSampleCount() < 2 || !profileLogger.isLoggable()) {
+      return;
+    }
+    logBuilder.setLength(0);
+    logBuilder.append("video ");
+    profileLogger.log(videoFrameRate.dump(logBuilder).toString());
   }
 
   private void initVideoScene() {
     // Initialize the video scene. Draws the app's color buffer.
     videoScene = new VideoScene(settings);
-    videoScene.prepareGLResources(context);
+    // The texture shown instead of the video while the latter is initializing.
+    int[] loadingTextureId = new int[1];
+    GLES20.glGenTextures(1, loadingTextureId, 0);
+    GLUtil.createResourceTexture(context, loadingTextureId[0], R.raw.loading_bg);
+    videoScene.prepareGLResources(loadingTextureId[0]);
     videoScene.setHasVideoPlaybackStarted(shouldShowVideo);
     videoScene.setVideoSurfaceId(videoSurfaceID);
     videoScene.setVideoTransform(worldFromQuad);
+    frameProfiler.setGpuTimer(videoScene.getGpuTimer());
   }
 
-  private void updateHeadAndEyeMatrices() {
-    api.getHeadSpaceFromStartSpaceRotation(
-        headFromWorld, System.nanoTime() + predictionOffsetNanos);
+  private void updateHeadAndEyeMatrices(long frameStartNanos) {
+    long displayTimeNanos = frameStartNanos + posePredictor.getPredictionHorizonNanos();
+    api.getHeadSpaceFromStartSpaceRotation(measuredHeadFromWorld, frameStartNanos);
+    if (settings.poseExtrapolation == PosePredictor.EXTRAPOLATE_NONE) {
+      // Let the GVR SDK extrapolate the pose over the measured latency.
+      api.getHeadSpaceFromStartSpaceRotation(headFromWorld, displayTimeNanos);
+    } else {
+      posePredictor.addPose(frameStartNanos, measuredHeadFromWorld, 0);
+      posePredictor.predict(displayTimeNanos, headFromWorld, 0);
+    }
     for (int eye = 0; eye < 2; ++eye) {
       api.getEyeFromHeadMatrix(eye, eyeFromHead);
-      Matrix.multiplyMM(eyeFromWorld[eye], 0, eyeFromHead, 0, headFromWorld, 0);
+      Mat4.multiply(eyeFromWorld[eye], 0, eyeFromHead, 0, headFromWorld, 0);
     }
     if (gvrAudioProcessor != null) {
-      float sx = headFromWorld[0];
-      float sy = headFromWorld[5];
-      float sz = headFromWorld[10];
-      float w = (float) Math.sqrt(Math.max(0.0f, 1.0 + sx + sy + sz)) * 0.5f;
-      float x = (float) Math.sqrt(Math.max(0.0f, 1.0 + sx - sy - sz)) * 0.5f;
-      float y = (float) Math.sqrt(Math.max(0.0f, 1.0 - sx + sy - sz)) * 0.5f;
-      float z = (float) Math.sqrt(Math.max(0.0f, 1.0 - sx - sy + sz)) * 0.5f;
+      Quat.fromRotationMatrix(headFromWorld, 0, headOrientation, 0);
       gvrAudioProcessor.updateOrientation(
-          (headFromWorld[6] - headFromWorld[9] < 0) != (x < 0) ? -x : x,
-          (headFromWorld[8] - headFromWorld[2] < 0) != (y < 0) ? -y : y,
-          (headFromWorld[1] - headFromWorld[4] < 0) != (z < 0) ? -z : z,
-          w);
+          headOrientation[0], headOrientation[1], headOrientation[2], headOrientation[3]);
     }
   }
 
@@ -259,8 +356,12 @@ public class VideoSceneRenderer implements Renderer {
         if (videoFormat != null) {
           nativeFrameRate = videoFormat.frameRate;
         }
-        videoScene.updateVideoFpsFraction(
-            3L, nativeFrameRate, videoPlayer.getPlayer().getVideoDecoderCounters());
+        DecoderCounters counters = videoPlayer.getPlayer().getVideoDecoderCounters();
+        if (counters != null) {
+          counters.ensureUpdated();
+          videoScene.updateVideoFpsFraction(
+              3L, nativeFrameRate, counters.renderedOutputBufferCount);
+        }
       }
     }
     // Draw the scene framebuffer consisting of a solid gray background, a static texture if the
@@ -270,12 +371,17 @@ public class VideoSceneRenderer implements Renderer {
     frame.bindBuffer(INDEX_SCENE_BUFFER);
     GLES20.glClearColor(0.2f, 0.2f, 0.2f, 1.0f);
     GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
-    GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+    GlStateCache glState = videoScene.getGlStateCache();
+    glState.glBeginFrame();
+    glState.glDisable(GLES20.GL_DEPTH_TEST);
     GLUtil.checkGlError(TAG, "new frame");
 
+    videoScene.getGpuTimer().glBeginFrame();
     for (int eye = 0; eye < 2; ++eye) {
       drawSceneForEye(gl, eye);
     }
+    videoScene.getGpuTimer().glEndFrame();
+    glState.glEndFrame();
     // Finalize the framebuffer. This discards depth and stencil buffer.
     frame.unbind();
   }
@@ -301,7 +407,7 @@ public class VideoSceneRenderer implements Renderer {
     float b = (float) -Math.tan(Math.toRadians(eyeFov.bottom)) * NEAR_PLANE;
     float t = (float) Math.tan(Math.toRadians(eyeFov.top)) * NEAR_PLANE;
     Matrix.frustumM(eyeProjection, 0, l, r, b, t, NEAR_PLANE, FAR_PLANE);
-    Matrix.multiplyMM(perspectiveFromWorld, 0, eyeProjection, 0, eyeFromWorld[eye], 0);
+    Mat4.multiply(perspectiveFromWorld, 0, eyeProjection, 0, eyeFromWorld[eye], 0);
 
     // Draw the video scene.
     videoScene.draw(perspectiveFromWorld);
@@ -31,6 +31,7 @@ import com.google.android.exoplayer2.drm.UnsupportedDrmException;
 import com.google.vr.ndk.base.AndroidCompat;
 import com.google.vr.ndk.base.GvrLayout;
 import com.google.vr.ndk.base.GvrLayout.ExternalSurfaceListener;
+import java.io.File;
 
 /**
  * Simple activity for video playback using the Asynchronous Reprojection Video Surface API. For a
@@ -47,6 +48,9 @@ import com.google.vr.ndk.base.GvrLayout.ExternalSurfaceListener;
  */
 public class WatchVideoActivity extends Activity {
   private static final String TAG = WatchVideoActivity.class.getSimpleName();
+  // Written when Settings.recordPoseTrace is set. It can be copied off the device with
+  //   adb pull /sdcard/Android/data/com.google.vr.sdk.samples.videoplayer/files/poses.trace
+  public static final String POSE_TRACE_FILE = "poses.trace";
 
   private GvrLayout gvrLayout;
   private GLSurfaceView surfaceView;
@@ -268,6 +272,17 @@ public class WatchVideoActivity extends Activity {
       videoPlayer.releasePlayer();
       videoPlayer = null;
     }
+    if (settings.recordPoseTrace) {
+      // The GL thread runs queued events before it pauses.
+      final File poseTraceFile = new File(getExternalFilesDir(null), POSE_TRACE_FILE);
+      surfaceView.queueEvent(
+          new Runnable() {
+            @Override
+            public void run() {
+              renderer.savePoseTrace(poseTraceFile);
+            }
+          });
+    }
     // Pause the gvrLayout and surfaceView here. The video Surface is guaranteed to be detached and
     // not available after gvrLayout.onPause(). We pause from onStop() to avoid needing to wait
     // for an available video Surface following brief onPause()/onResume() events. Wait for the
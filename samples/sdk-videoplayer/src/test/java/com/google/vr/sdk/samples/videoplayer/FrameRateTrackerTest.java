@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.vr.sdk.samples.videoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public final class FrameRateTrackerTest {
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(3);
+  private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 90;
+
+  @Test
+  public void reportsNothingUntilThereAreTwoSamples() {
+    FrameRateTracker tracker = new FrameRateTracker(16, WINDOW_NANOS);
+    assertEquals(0, tracker.getRatePerSecond(), 0);
+    assertEquals(0, tracker.getIntervalPercentileNanos(50));
+    assertEquals(0, tracker.getIntervalJitterNanos());
+
+    tracker.addSample(FRAME_NANOS, 1);
+    assertEquals(0, tracker.getRatePerSecond(), 0);
+    assertEquals(0, tracker.getIntervalPercentileNanos(50));
+  }
+
+  @Test
+  public void measuresTheRateOfTheCounter() {
+    // A 60 fps video sampled by a 90 Hz render loop, as in VideoScene.
+    FrameRateTracker tracker = new FrameRateTracker(512, WINDOW_NANOS);
+    for (int frame = 0; frame < 10 * 90; ++frame) {
+      tracker.addSample(frame * FRAME_NANOS, frame * 2 / 3);
+    }
+    assertEquals(60, tracker.getRatePerSecond(), 0.1);
+  }
+
+  @Test
+  public void prunesSamplesOutsideOfTheWindow() {
+    FrameRateTracker tracker = new FrameRateTracker(512, WINDOW_NANOS);
+    for (int frame = 0; frame < 10 * 90; ++frame) {
+      tracker.addSample(frame * FRAME_NANOS, frame);
+    }
+    // The window holds 3 s of samples plus the one at its start.
+    assertEquals(3 * 90 + 1, tracker.getSampleCount(), 1);
+
+    // A shorter window takes effect on the next sample.
+    tracker.setWindowNanos(WINDOW_NANOS / 3);
+    tracker.addSample(10 * 90 * FRAME_NANOS, 10 * 90);
+    assertEquals(90 + 1, tracker.getSampleCount(), 1);
+    assertEquals(90, tracker.getRatePerSecond(), 0.1);
+  }
+
+  @Test
+  public void dropsTheOldestSamplesWhenFull() {
+    FrameRateTracker tracker = new FrameRateTracker(10, WINDOW_NANOS);
+    for (int frame = 0; frame < 100; ++frame) {
+      tracker.addSample(frame * FRAME_NANOS, frame);
+    }
+    assertEquals(10, tracker.getSampleCount());
+    assertEquals(90, tracker.getRatePerSecond(), 0.1);
+  }
+
+  @Test
+  public void resetDiscardsAllSamples() {
+    FrameRateTracker tracker = new FrameRateTracker(16, WINDOW_NANOS);
+    tracker.addSample(0, 0);
+    tracker.addSample(FRAME_NANOS, 1);
+    tracker.reset();
+    assertEquals(0, tracker.getSampleCount());
+    assertEquals(0, tracker.getRatePerSecond(), 0);
+  }
+
+  @Test
+  public void percentilesMatchASortedCopyOfTheIntervals() {
+    Random random = new Random(5);
+    FrameRateTracker tracker = new FrameRateTracker(300, WINDOW_NANOS);
+    long[] intervals = new long[199];
+    long time = 0;
+    tracker.addSample(time, 0);
+    for (int i = 0; i < intervals.length; ++i) {
+      // Mostly smooth frames with a few repeated values & some long stalls.
+      intervals[i] = random.nextInt(10) == 0
+          ? FRAME_NANOS * (2 + random.nextInt(3))
+          : FRAME_NANOS + random.nextInt(4) * 1000;
+      time += intervals[i];
+      tracker.addSample(time, i + 1);
+    }
+    Arrays.sort(intervals);
+    float[] percentiles = {0, 1, 25, 50, 75, 90, 99, 100};
+    for (float percentile : percentiles) {
+      int rank = Math.round(percentile / 100 * (intervals.length - 1));
+      assertEquals(
+          "p" + percentile, intervals[rank], tracker.getIntervalPercentileNanos(percentile));
+    }
+  }
+
+  @Test
+  public void jitterIsTheStandardDeviationOfTheIntervals() {
+    FrameRateTracker tracker = new FrameRateTracker(16, WINDOW_NANOS);
+    long time = 0;
+    for (int i = 0; i < 9; ++i) {
+      tracker.addSample(time, i);
+      time += FRAME_NANOS;
+    }
+    assertEquals(0, tracker.getIntervalJitterNanos());
+
+    // Alternating intervals of FRAME_NANOS +- 1 ms.
+    tracker.reset();
+    time = 0;
+    for (int i = 0; i < 9; ++i) {
+      tracker.addSample(time, i);
+      time += FRAME_NANOS + (i % 2 == 0 ? 1 : -1) * TimeUnit.MILLISECONDS.toNanos(1);
+    }
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(1), tracker.getIntervalJitterNanos());
+  }
+
+  @Test
+  public void addSampleDoesNotAllocate() {
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    long thread = Thread.currentThread().getId();
+    FrameRateTracker tracker = new FrameRateTracker(512, WINDOW_NANOS);
+    // Fill the window so that every sample also prunes one, then let the JIT compile addSample.
+    int frame = 0;
+    for (; frame < 100000; ++frame) {
+      tracker.addSample(frame * FRAME_NANOS, frame);
+    }
+
+    // Reading the counter may allocate a little itself & background compilation can be charged to
+    // this thread. Take the least of several rounds, discounting the cost of reading the counter.
+    long allocated = Long.MAX_VALUE;
+    for (int round = 0; round < 5; ++round) {
+      long start = threads.getThreadAllocatedBytes(thread);
+      long overhead = threads.getThreadAllocatedBytes(thread) - start;
+      start = threads.getThreadAllocatedBytes(thread);
+      for (int end = frame + 100000; frame < end; ++frame) {
+        tracker.addSample(frame * FRAME_NANOS, frame);
+      }
+      allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - start - overhead);
+    }
+    assertTrue("addSample allocated " + allocated + " bytes", allocated <= 0);
+  }
+
+  @Test
+  public void dumpsTheRateAndIntervals() {
+    FrameRateTracker tracker = new FrameRateTracker(512, WINDOW_NANOS);
+    long interval = TimeUnit.MILLISECONDS.toNanos(20);
+    for (int frame = 0; frame <= 50; ++frame) {
+      tracker.addSample(frame * interval, frame);
+    }
+    assertEquals(
+        "rate=50.0/s interval p50=20.00 p99=20.00 jitter=0.00",
+        tracker.dump(new StringBuilder()).toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTinyCapacity() {
+    new FrameRateTracker(1, WINDOW_NANOS);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyWindow() {
+    new FrameRateTracker(16, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsPercentileAbove100() {
+    new FrameRateTracker(16, WINDOW_NANOS).getIntervalPercentileNanos(101);
+  }
+}